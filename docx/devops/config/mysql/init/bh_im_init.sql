@@ -89,15 +89,78 @@ CREATE TABLE `im_private_message`
     `id`        bigint(20)                                            NOT NULL AUTO_INCREMENT COMMENT 'id',
     `send_id`   bigint(20)                                            NOT NULL COMMENT '发送用户id',
     `recv_id`   bigint(20)                                            NOT NULL COMMENT '接收用户id',
+    `conversation_id` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL DEFAULT '' COMMENT '会话id 较小用户id_较大用户id',
     `content`   text CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL COMMENT '发送内容',
     `type`      tinyint(1)                                            NOT NULL COMMENT '消息类型 0:文字 1:图片 2:文件 3:语音 10:系统提示',
     `status`    tinyint(1)                                            NOT NULL COMMENT '状态 0:未读 1:已读 2:撤回',
     `send_time` datetime(0)                                           NULL DEFAULT NULL COMMENT '发送时间',
     PRIMARY KEY (`id`) USING BTREE,
-    INDEX `idx_send_recv_id` (`send_id`, `recv_id`) USING BTREE
+    INDEX `idx_send_recv_id` (`send_id`, `recv_id`) USING BTREE,
+    INDEX `idx_conversation_id` (`conversation_id`, `id`) USING BTREE
 ) CHARACTER SET = utf8mb4
   COLLATE = utf8mb4_general_ci COMMENT = '私聊消息';
 
+-- ----------------------------
+-- Table structure for im_group_message_mention
+-- ----------------------------
+DROP TABLE IF EXISTS `im_group_message_mention`;
+CREATE TABLE `im_group_message_mention`
+(
+    `user_id`    bigint(20) NOT NULL COMMENT '被@的用户id',
+    `group_id`   bigint(20) NOT NULL COMMENT '群id',
+    `message_id` bigint(20) NOT NULL COMMENT '消息id',
+    PRIMARY KEY (`user_id`, `message_id`) USING BTREE,
+    INDEX `idx_user_group` (`user_id`, `group_id`, `message_id`) USING BTREE
+) CHARACTER SET = utf8mb4
+  COLLATE = utf8mb4_general_ci COMMENT = '群聊@提及索引';
+
+-- ----------------------------
+-- Table structure for im_private_read_cursor
+-- ----------------------------
+DROP TABLE IF EXISTS `im_private_read_cursor`;
+CREATE TABLE `im_private_read_cursor`
+(
+    `user_id`       bigint(20)  NOT NULL COMMENT '读者id',
+    `friend_id`     bigint(20)  NOT NULL COMMENT '好友id，即消息发送者id',
+    `max_readed_id` bigint(20)  NOT NULL DEFAULT 0 COMMENT '已读的最大消息id',
+    `update_time`   datetime(0) NULL DEFAULT NULL COMMENT '更新时间',
+    PRIMARY KEY (`user_id`, `friend_id`) USING BTREE,
+    INDEX `idx_friend_id` (`friend_id`, `user_id`) USING BTREE
+) CHARACTER SET = utf8mb4
+  COLLATE = utf8mb4_general_ci COMMENT = '私聊已读位置';
+
+-- ----------------------------
+-- Table structure for im_message_tx_state
+-- ----------------------------
+DROP TABLE IF EXISTS `im_message_tx_state`;
+CREATE TABLE `im_message_tx_state`
+(
+    `id`           bigint(20)                                                    NOT NULL COMMENT '消息id',
+    `message_type` varchar(32) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL COMMENT '消息类型 type_private:单聊 type_group:群聊',
+    `status`       tinyint(1)                                                    NOT NULL COMMENT '事务状态 1:已提交 2:已回滚',
+    `create_time`  datetime(0)                                                   NULL DEFAULT NULL COMMENT '创建时间',
+    PRIMARY KEY (`id`) USING BTREE,
+    INDEX `idx_create_time` (`create_time`) USING BTREE
+) CHARACTER SET = utf8mb4
+  COLLATE = utf8mb4_general_ci COMMENT = '消息本地事务状态';
+
+-- ----------------------------
+-- Table structure for im_message_outbox
+-- ----------------------------
+DROP TABLE IF EXISTS `im_message_outbox`;
+CREATE TABLE `im_message_outbox`
+(
+    `id`           bigint(20)                                                     NOT NULL COMMENT '消息id',
+    `message_type` varchar(32) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci  NOT NULL COMMENT '消息类型 type_private:单聊 type_group:群聊',
+    `destination`  varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL COMMENT '消息发送目的地，格式为 主题:Tag',
+    `order_key`    varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci  NOT NULL COMMENT '会话键，决定顺序消息进入的队列',
+    `payload`      mediumblob                                                     NOT NULL COMMENT '编码后的消息事务事件',
+    `create_time`  datetime(0)                                                    NULL DEFAULT NULL COMMENT '创建时间',
+    PRIMARY KEY (`id`) USING BTREE,
+    INDEX `idx_create_time` (`create_time`) USING BTREE
+) CHARACTER SET = utf8mb4
+  COLLATE = utf8mb4_general_ci COMMENT = '顺序消息发件箱';
+
 -- ----------------------------
 -- Table structure for im_user
 -- ----------------------------
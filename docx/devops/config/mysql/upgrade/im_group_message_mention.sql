@@ -0,0 +1,16 @@
+-- ----------------------------
+-- 群聊@提及索引表
+-- 群聊消息入库时同事务写入被@用户的索引，"@我的消息"按用户直接查询索引，不再扫描群聊消息表
+-- 需在发布新版本应用前执行；升级前的历史消息不回填，只能从消息的at_user_ids中查看
+-- 每个数据源一张索引表，与群聊消息所在的分表同库：消息分表分布在多个数据源（message.sharding.dataSources > 1）时，
+-- 在spring.datasource和message.sharding.extraDataSources配置的每个数据源上分别执行本脚本
+-- ----------------------------
+CREATE TABLE IF NOT EXISTS `im_group_message_mention`
+(
+    `user_id`    bigint(20) NOT NULL COMMENT '被@的用户id',
+    `group_id`   bigint(20) NOT NULL COMMENT '群id',
+    `message_id` bigint(20) NOT NULL COMMENT '消息id',
+    PRIMARY KEY (`user_id`, `message_id`) USING BTREE,
+    INDEX `idx_user_group` (`user_id`, `group_id`, `message_id`) USING BTREE
+) CHARACTER SET = utf8mb4
+  COLLATE = utf8mb4_general_ci COMMENT = '群聊@提及索引';
@@ -0,0 +1,39 @@
+-- ----------------------------
+-- 私聊、群聊消息归档表
+-- 归档表结构与热表一致，超过保留时长的消息由归档任务从各分表分批移入，历史消息查询越过冷热边界时继续查询归档表
+-- 执行顺序：先执行本脚本建归档表，再配置message.archive.enabled=true并发布
+-- 每个数据源一张归档表，热表归档到所在数据源的归档表：消息分表分布在多个数据源（message.sharding.dataSources > 1）时，
+-- 在spring.datasource和message.sharding.extraDataSources配置的每个数据源上分别执行本脚本；
+-- 额外数据源上不一定有原表，因此归档表按完整结构建表，不使用LIKE
+-- ----------------------------
+CREATE TABLE IF NOT EXISTS `im_private_message_archive`
+(
+    `id`        bigint(20)                                            NOT NULL AUTO_INCREMENT COMMENT 'id',
+    `send_id`   bigint(20)                                            NOT NULL COMMENT '发送用户id',
+    `recv_id`   bigint(20)                                            NOT NULL COMMENT '接收用户id',
+    `conversation_id` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL DEFAULT '' COMMENT '会话id 较小用户id_较大用户id',
+    `content`   text CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL COMMENT '发送内容',
+    `type`      tinyint(1)                                            NOT NULL COMMENT '消息类型 0:文字 1:图片 2:文件 3:语音 10:系统提示',
+    `status`    tinyint(1)                                            NOT NULL COMMENT '状态 0:未读 1:已读 2:撤回',
+    `send_time` datetime(0)                                           NULL DEFAULT NULL COMMENT '发送时间',
+    PRIMARY KEY (`id`) USING BTREE,
+    INDEX `idx_send_recv_id` (`send_id`, `recv_id`) USING BTREE,
+    INDEX `idx_conversation_id` (`conversation_id`, `id`) USING BTREE
+) CHARACTER SET = utf8mb4
+  COLLATE = utf8mb4_general_ci COMMENT = '私聊消息归档';
+
+CREATE TABLE IF NOT EXISTS `im_group_message_archive`
+(
+    `id`             bigint(20)                                                     NOT NULL AUTO_INCREMENT COMMENT 'id',
+    `group_id`       bigint(20)                                                     NOT NULL COMMENT '群id',
+    `send_id`        bigint(20)                                                     NOT NULL COMMENT '发送用户id',
+    `send_nick_name` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci  NULL DEFAULT '' COMMENT '发送用户昵称',
+    `content`        text CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci          NULL COMMENT '发送内容',
+    `at_user_ids`    varchar(1024) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL DEFAULT '' COMMENT '被@的用户id列表，逗号分隔',
+    `type`           tinyint(1)                                                     NOT NULL COMMENT '消息类型 0:文字 1:图片 2:文件 3:语音 10:系统提示',
+    `status`         tinyint(1)                                                     NULL DEFAULT 0 COMMENT '状态 0:正常  2:撤回',
+    `send_time`      datetime(0)                                                    NULL DEFAULT NULL COMMENT '发送时间',
+    PRIMARY KEY (`id`) USING BTREE,
+    INDEX `idx_group_id` (`group_id`) USING BTREE
+) CHARACTER SET = utf8mb4
+  COLLATE = utf8mb4_general_ci COMMENT = '群聊消息归档';
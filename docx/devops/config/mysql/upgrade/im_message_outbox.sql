@@ -0,0 +1,18 @@
+-- ----------------------------
+-- 顺序消息发件箱表
+-- 顺序模式（message.order.enabled=true）下，消息在执行本地事务前写入发件箱，发送成功后删除；
+-- 本地事务已提交但发送失败或进程退出时，由补发任务按本地事务状态补发
+-- 需在开启顺序模式前执行
+-- ----------------------------
+CREATE TABLE IF NOT EXISTS `im_message_outbox`
+(
+    `id`           bigint(20)                                                     NOT NULL COMMENT '消息id',
+    `message_type` varchar(32) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci  NOT NULL COMMENT '消息类型 type_private:单聊 type_group:群聊',
+    `destination`  varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL COMMENT '消息发送目的地，格式为 主题:Tag',
+    `order_key`    varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci  NOT NULL COMMENT '会话键，决定顺序消息进入的队列',
+    `payload`      mediumblob                                                     NOT NULL COMMENT '编码后的消息事务事件',
+    `create_time`  datetime(0)                                                    NULL DEFAULT NULL COMMENT '创建时间',
+    PRIMARY KEY (`id`) USING BTREE,
+    INDEX `idx_create_time` (`create_time`) USING BTREE
+) CHARACTER SET = utf8mb4
+  COLLATE = utf8mb4_general_ci COMMENT = '顺序消息发件箱';
@@ -0,0 +1,25 @@
+-- ----------------------------
+-- 私聊、群聊消息分表
+-- 分表数需能整除16，以下以4张分表为例；分表结构与原表一致，原表保留作为迁移源表
+-- 执行顺序：
+-- 1. 执行本脚本建分表
+-- 2. 配置message.sharding.tables=4、message.sharding.previousTables=1，message.sharding.legacyMaxId保持未配置（0）并发布：
+--    新消息按会话、群组写入分表，消息id低位嵌入分片槽位；迁移完成前会话、群组查询同时读取原表和分表并按消息id去重，
+--    按id查询、撤回、更新状态访问原表和所有分表，尚未迁移的消息不会从查询结果中消失
+-- 3. 在一个实例上开启message.sharding.migrate.enabled，后台将原表消息迁移到分表；
+--    每批写入分表后按原表同步消息状态，迁移期间发生的撤回、已读不会被迁移复制覆盖
+-- 4. 迁移完成后按日志中的最大消息id配置message.sharding.legacyMaxId，关闭迁移并发布，此后只读取分表
+-- 全新部署没有历史数据时，previousTables配置为与tables相同，legacyMaxId配置为1
+-- 分表数由4调整为8时，建好_4至_7分表，配置tables=8、previousTables=4并清除legacyMaxId后发布，
+-- 将migrate.privateSourceTable、migrate.groupSourceTable依次配置为原分表执行迁移，迁出的消息会从原分表删除，
+-- 全部迁移完成后恢复原来的legacyMaxId并将previousTables配置为8
+-- ----------------------------
+CREATE TABLE IF NOT EXISTS `im_private_message_0` LIKE `im_private_message`;
+CREATE TABLE IF NOT EXISTS `im_private_message_1` LIKE `im_private_message`;
+CREATE TABLE IF NOT EXISTS `im_private_message_2` LIKE `im_private_message`;
+CREATE TABLE IF NOT EXISTS `im_private_message_3` LIKE `im_private_message`;
+
+CREATE TABLE IF NOT EXISTS `im_group_message_0` LIKE `im_group_message`;
+CREATE TABLE IF NOT EXISTS `im_group_message_1` LIKE `im_group_message`;
+CREATE TABLE IF NOT EXISTS `im_group_message_2` LIKE `im_group_message`;
+CREATE TABLE IF NOT EXISTS `im_group_message_3` LIKE `im_group_message`;
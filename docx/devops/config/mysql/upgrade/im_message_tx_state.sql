@@ -0,0 +1,17 @@
+-- ----------------------------
+-- 消息本地事务状态表
+-- 本地事务回滚或回查超时答复回滚时写入，RocketMQ事务回查时给出确定的ROLLBACK；记录按message.tx.check.retentionHours清理
+-- 需在发布事务回查快速应答之前执行
+-- 消息分表分布在多个数据源（message.sharding.dataSources > 1）时，在spring.datasource和
+-- message.sharding.extraDataSources配置的每个数据源上分别执行本脚本，各数据源的表结构保持一致
+-- ----------------------------
+CREATE TABLE IF NOT EXISTS `im_message_tx_state`
+(
+    `id`           bigint(20)                                                    NOT NULL COMMENT '消息id',
+    `message_type` varchar(32) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL COMMENT '消息类型 type_private:单聊 type_group:群聊',
+    `status`       tinyint(1)                                                    NOT NULL COMMENT '事务状态 1:已提交 2:已回滚',
+    `create_time`  datetime(0)                                                   NULL DEFAULT NULL COMMENT '创建时间',
+    PRIMARY KEY (`id`) USING BTREE,
+    INDEX `idx_create_time` (`create_time`) USING BTREE
+) CHARACTER SET = utf8mb4
+  COLLATE = utf8mb4_general_ci COMMENT = '消息本地事务状态';
@@ -0,0 +1,81 @@
+-- ----------------------------
+-- 私聊消息表增加会话id列
+-- 会话id = 较小用户id_较大用户id，两个方向的消息属于同一会话
+-- 新版本应用的历史消息查询只按会话id过滤，会话id为空串的消息不会被查到，因此必须在发布新版本应用之前执行完本脚本
+-- 执行顺序：
+-- 1. 加列（默认值为空串）
+-- 2. 建触发器：旧版本应用写入的消息不带会话id，由触发器在写入时补齐，回填期间和发布期间新写入的消息不会遗漏
+-- 3. 按主键分批回填历史数据
+-- 4. 建会话索引
+-- 5. 发布新版本应用，所有实例升级完成后删除触发器（见文件末尾）
+-- ----------------------------
+ALTER TABLE `im_private_message`
+    ADD COLUMN `conversation_id` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL DEFAULT '' COMMENT '会话id 较小用户id_较大用户id' AFTER `recv_id`;
+
+-- ----------------------------
+-- 写入时补齐会话id，覆盖回填开始后旧版本应用写入的消息
+-- ----------------------------
+DROP TRIGGER IF EXISTS `trg_private_message_conversation_id`;
+DELIMITER $$
+CREATE TRIGGER `trg_private_message_conversation_id`
+    BEFORE INSERT
+    ON `im_private_message`
+    FOR EACH ROW
+BEGIN
+    IF NEW.`conversation_id` = '' THEN
+        SET NEW.`conversation_id` = CONCAT(LEAST(NEW.`send_id`, NEW.`recv_id`), '_', GREATEST(NEW.`send_id`, NEW.`recv_id`));
+    END IF;
+END $$
+DELIMITER ;
+
+-- ----------------------------
+-- 按主键顺序分批回填历史数据，每批10000条，避免长事务和大范围行锁
+-- 消息id为雪花id，区间稀疏，因此按"上一批最大id之后的N条"确定批次边界，而不是按固定的id步长
+-- ----------------------------
+DROP PROCEDURE IF EXISTS `backfill_private_message_conversation_id`;
+DELIMITER $$
+CREATE PROCEDURE `backfill_private_message_conversation_id`()
+BEGIN
+    DECLARE cur_id BIGINT DEFAULT -1;
+    DECLARE end_id BIGINT;
+    DECLARE done TINYINT DEFAULT 0;
+    WHILE done = 0 DO
+        SET end_id = NULL;
+        SELECT `id` INTO end_id FROM `im_private_message`
+        WHERE `id` > cur_id ORDER BY `id` LIMIT 9999, 1;
+        IF end_id IS NULL THEN
+            SELECT MAX(`id`) INTO end_id FROM `im_private_message`;
+            SET done = 1;
+        END IF;
+        IF end_id IS NOT NULL AND end_id > cur_id THEN
+            UPDATE `im_private_message`
+            SET `conversation_id` = CONCAT(LEAST(`send_id`, `recv_id`), '_', GREATEST(`send_id`, `recv_id`))
+            WHERE `id` > cur_id
+              AND `id` <= end_id
+              AND `conversation_id` = '';
+            SET cur_id = end_id;
+        ELSE
+            SET done = 1;
+        END IF;
+    END WHILE;
+END $$
+DELIMITER ;
+
+CALL `backfill_private_message_conversation_id`();
+DROP PROCEDURE IF EXISTS `backfill_private_message_conversation_id`;
+
+-- ----------------------------
+-- 建立会话索引，会话内按id分页和增量拉取为单个索引范围扫描
+-- ----------------------------
+ALTER TABLE `im_private_message`
+    ADD INDEX `idx_conversation_id` (`conversation_id`, `id`) USING BTREE;
+
+-- ----------------------------
+-- 检查回填结果，结果为0后再发布新版本应用
+-- ----------------------------
+SELECT COUNT(1) FROM `im_private_message` WHERE `conversation_id` = '';
+
+-- ----------------------------
+-- 所有实例升级到新版本应用后执行，新版本应用写入时已带会话id
+-- ----------------------------
+-- DROP TRIGGER IF EXISTS `trg_private_message_conversation_id`;
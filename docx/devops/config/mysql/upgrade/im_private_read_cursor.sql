@@ -0,0 +1,15 @@
+-- ----------------------------
+-- 私聊已读位置表
+-- 每个(读者, 好友)一条记录，标记已读只推进已读位置，不再逐行更新私聊消息的状态
+-- 需在发布新版本应用前执行；升级前已标记为已读的消息保留原状态，不需要回填
+-- ----------------------------
+CREATE TABLE IF NOT EXISTS `im_private_read_cursor`
+(
+    `user_id`       bigint(20)  NOT NULL COMMENT '读者id',
+    `friend_id`     bigint(20)  NOT NULL COMMENT '好友id，即消息发送者id',
+    `max_readed_id` bigint(20)  NOT NULL DEFAULT 0 COMMENT '已读的最大消息id',
+    `update_time`   datetime(0) NULL DEFAULT NULL COMMENT '更新时间',
+    PRIMARY KEY (`user_id`, `friend_id`) USING BTREE,
+    INDEX `idx_friend_id` (`friend_id`, `user_id`) USING BTREE
+) CHARACTER SET = utf8mb4
+  COLLATE = utf8mb4_general_ci COMMENT = '私聊已读位置';
@@ -0,0 +1,31 @@
+package com.lb.im.platform.common.codec;
+
+/**
+ * MQ事件编解码器
+ * 负责事件对象与消息体byte[]之间的转换，监听器直接从消息体解码，不再经过String中转
+ */
+public interface EventCodec {
+
+    /**
+     * 编解码器类型，与配置项message.codec.type对应
+     */
+    String type();
+
+    /**
+     * 将事件编码为消息体
+     *
+     * @param event 事件对象
+     * @return 消息体
+     */
+    byte[] encode(Object event);
+
+    /**
+     * 将消息体解码为事件
+     *
+     * @param body  消息体
+     * @param clazz 事件类型
+     * @param <T>   事件类型
+     * @return 事件对象
+     */
+    <T> T decode(byte[] body, Class<T> clazz);
+}
@@ -0,0 +1,74 @@
+package com.lb.im.platform.common.codec;
+
+import com.lb.im.platform.common.codec.impl.JsonEventCodec;
+import com.lb.im.platform.common.codec.impl.KryoEventCodec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * MQ事件编解码器工厂
+ * 编码时按配置选择编解码器；解码时按消息体的首字节自动识别格式，
+ * 新旧格式的消息可以同时在队列中存在，便于灰度切换
+ * Kryo编解码器只处理通过registerKryoClasses注册的类型，使用方需在启动时、编解码之前完成注册
+ */
+public class EventCodecFactory {
+
+    /**
+     * JSON编解码器类型
+     */
+    public static final String CODEC_TYPE_JSON = "json";
+
+    /**
+     * Kryo二进制编解码器类型
+     */
+    public static final String CODEC_TYPE_KRYO = "kryo";
+
+    private static final EventCodec JSON_EVENT_CODEC = new JsonEventCodec();
+
+    // 已注册的Kryo类型，按注册顺序保存
+    private static final List<Class<?>> KRYO_CLASSES = new ArrayList<>();
+
+    private static volatile KryoEventCodec kryoEventCodec = new KryoEventCodec(Collections.emptyList());
+
+    /**
+     * 注册Kryo编解码器允许处理的类型，已注册的类型忽略
+     * 注册id按注册顺序分配，各实例需以相同的顺序注册，新增类型只能追加到末尾
+     *
+     * @param classes 事件类型及其字段中的自定义类型
+     */
+    public static synchronized void registerKryoClasses(Class<?>... classes) {
+        for (Class<?> clazz : classes) {
+            if (!KRYO_CLASSES.contains(clazz)) {
+                KRYO_CLASSES.add(clazz);
+            }
+        }
+        kryoEventCodec = new KryoEventCodec(KRYO_CLASSES);
+    }
+
+    /**
+     * 根据类型获取编解码器，未知类型返回JSON编解码器
+     *
+     * @param type 编解码器类型
+     * @return 编解码器
+     */
+    public static EventCodec getCodec(String type) {
+        return CODEC_TYPE_KRYO.equals(type) ? kryoEventCodec : JSON_EVENT_CODEC;
+    }
+
+    /**
+     * 解码消息体，自动识别消息体格式
+     *
+     * @param body  消息体
+     * @param clazz 事件类型
+     * @param <T>   事件类型
+     * @return 事件对象，消息体为空时返回null
+     */
+    public static <T> T decode(byte[] body, Class<T> clazz) {
+        if (body == null || body.length == 0) {
+            return null;
+        }
+        return KryoEventCodec.isKryoFrame(body) ? kryoEventCodec.decode(body, clazz) : JSON_EVENT_CODEC.decode(body, clazz);
+    }
+}
@@ -0,0 +1,38 @@
+package com.lb.im.platform.common.codec.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.lb.im.common.domain.constans.IMConstants;
+import com.lb.im.platform.common.codec.EventCodec;
+import com.lb.im.platform.common.codec.EventCodecFactory;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON事件编解码器
+ * 与SDK发送的消息格式一致：事件JSON以字符串形式存放在IMConstants.MSG_KEY下
+ */
+public class JsonEventCodec implements EventCodec {
+
+    @Override
+    public String type() {
+        return EventCodecFactory.CODEC_TYPE_JSON;
+    }
+
+    @Override
+    public byte[] encode(Object event) {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put(IMConstants.MSG_KEY, JSON.toJSONString(event));
+        return jsonObject.toJSONString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T decode(byte[] body, Class<T> clazz) {
+        // 直接从byte[]解析外层JSON，省去byte[]到String的拷贝
+        JSONObject jsonObject = JSON.parseObject(body, JSONObject.class);
+        if (jsonObject == null) {
+            return null;
+        }
+        return JSON.parseObject(jsonObject.getString(IMConstants.MSG_KEY), clazz);
+    }
+}
@@ -0,0 +1,142 @@
+package com.lb.im.platform.common.codec.impl;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Registration;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.CompatibleFieldSerializer;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers;
+import com.esotericsoftware.kryo.util.DefaultClassResolver;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import com.lb.im.platform.common.codec.EventCodec;
+import com.lb.im.platform.common.codec.EventCodecFactory;
+import com.lb.im.platform.common.exception.IMException;
+import com.lb.im.platform.common.model.enums.HttpCode;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Kryo二进制事件编解码器
+ *
+ * 技术点：
+ * 1. 消息体格式为：魔数(1字节) + 模式版本(1字节) + Kryo序列化数据
+ * 2. 字段使用CompatibleFieldSerializer序列化，事件类增删字段后新旧版本仍可互相解码
+ * 3. 模式版本高于当前支持版本的消息直接拒绝，避免按错误的格式解码
+ * 4. 写入事件的实际类型，按父类解码时得到的仍是完整的子类事件
+ * 5. Kryo实例非线程安全，每个线程持有一个实例
+ * 6. 只能解码显式注册的类型，消息体无法指定实例化任意类；注册id按注册顺序分配，新增类型只能追加到末尾
+ * 7. 未注册的List实现（Arrays.asList、subList、不可变视图、fastjson的JSONArray等）按ArrayList编码，解码得到ArrayList
+ */
+public class KryoEventCodec implements EventCodec {
+
+    /**
+     * 消息体魔数，JSON消息体以'{'开头，不会与之冲突
+     */
+    public static final byte MAGIC = (byte) 0xC7;
+
+    /**
+     * 当前模式版本
+     */
+    public static final byte SCHEMA_VERSION = 1;
+
+    /**
+     * 帧头长度
+     */
+    private static final int HEADER_LENGTH = 2;
+
+    /**
+     * 第一个注册id，Kryo内置的基本类型注册占用较小的id
+     */
+    private static final int FIRST_REGISTRATION_ID = 20;
+
+    // 事件及其字段类型，按注册顺序分配注册id
+    private final List<Class<?>> eventClasses;
+
+    private final ThreadLocal<Kryo> kryoThreadLocal = ThreadLocal.withInitial(this::newKryo);
+
+    /**
+     * @param eventClasses 允许编解码的事件类型及其字段中的自定义类型，List、Date等通用类型已预先注册
+     */
+    public KryoEventCodec(List<Class<?>> eventClasses) {
+        this.eventClasses = Collections.unmodifiableList(new ArrayList<>(eventClasses));
+    }
+
+    private Kryo newKryo() {
+        Kryo kryo = new Kryo(new ListFallbackClassResolver(), null);
+        kryo.setRegistrationRequired(true);
+        kryo.setReferences(false);
+        kryo.setDefaultSerializer(CompatibleFieldSerializer.class);
+        kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        int id = FIRST_REGISTRATION_ID;
+        kryo.register(ArrayList.class, id++);
+        kryo.register(Date.class, id++);
+        kryo.register(Collections.EMPTY_LIST.getClass(), new DefaultSerializers.CollectionsEmptyListSerializer(), id++);
+        kryo.register(Collections.singletonList(null).getClass(), new DefaultSerializers.CollectionsSingletonListSerializer(), id++);
+        for (Class<?> eventClass : eventClasses) {
+            kryo.register(eventClass, id++);
+        }
+        return kryo;
+    }
+
+    /**
+     * 是否为Kryo编码的消息体
+     */
+    public static boolean isKryoFrame(byte[] body) {
+        return body != null && body.length > HEADER_LENGTH && body[0] == MAGIC;
+    }
+
+    @Override
+    public String type() {
+        return EventCodecFactory.CODEC_TYPE_KRYO;
+    }
+
+    @Override
+    public byte[] encode(Object event) {
+        Output output = new Output(256, -1);
+        output.writeByte(MAGIC);
+        output.writeByte(SCHEMA_VERSION);
+        kryoThreadLocal.get().writeClassAndObject(output, event);
+        return output.toBytes();
+    }
+
+    @Override
+    public <T> T decode(byte[] body, Class<T> clazz) {
+        if (!isKryoFrame(body)) {
+            throw new IMException(HttpCode.PROGRAM_ERROR, "消息体不是Kryo编码格式");
+        }
+        if (body[1] > SCHEMA_VERSION) {
+            throw new IMException(HttpCode.PROGRAM_ERROR, "不支持的消息模式版本:" + body[1]);
+        }
+        Input input = new Input(body, HEADER_LENGTH, body.length - HEADER_LENGTH);
+        Object event;
+        try {
+            event = kryoThreadLocal.get().readClassAndObject(input);
+        } catch (KryoException e) {
+            throw new IMException(HttpCode.PROGRAM_ERROR, "Kryo消息体解码失败:" + e.getMessage());
+        }
+        if (event != null && !clazz.isInstance(event)) {
+            throw new IMException(HttpCode.PROGRAM_ERROR, "消息体类型不匹配:" + event.getClass().getName());
+        }
+        return clazz.cast(event);
+    }
+
+    /**
+     * 未注册的List实现使用ArrayList的注册信息，写入ArrayList的注册id并由CollectionSerializer逐个写入元素
+     */
+    private static class ListFallbackClassResolver extends DefaultClassResolver {
+
+        @Override
+        public Registration getRegistration(Class type) {
+            Registration registration = super.getRegistration(type);
+            if (registration == null && type != null && List.class.isAssignableFrom(type)) {
+                return super.getRegistration(ArrayList.class);
+            }
+            return registration;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.lb.im.platform.common.log;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * 热点路径日志配置
+ * 启动时将配置文件中的采样、限流和脱敏参数设置到HotPathLogger
+ */
+@Component
+public class HotPathLogConfig {
+
+    /**
+     * INFO日志每N条输出1条
+     */
+    @Value("${logging.hotpath.sampleEvery:1}")
+    private Integer sampleEvery;
+
+    /**
+     * 每个调用点每秒最多输出的日志条数
+     */
+    @Value("${logging.hotpath.maxPerSecond:100}")
+    private Integer maxPerSecond;
+
+    /**
+     * 是否输出消息内容原文，默认脱敏
+     */
+    @Value("${logging.hotpath.contentEnabled:false}")
+    private Boolean contentEnabled;
+
+    @PostConstruct
+    public void init() {
+        HotPathLogger.configure(sampleEvery, maxPerSecond, Boolean.TRUE.equals(contentEnabled));
+    }
+}
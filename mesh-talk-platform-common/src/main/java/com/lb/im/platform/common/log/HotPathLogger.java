@@ -0,0 +1,247 @@
+package com.lb.im.platform.common.log;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 热点路径日志工具类
+ * 用于每条消息都会经过的消费、发送、事务等路径，控制日志的CPU开销
+ * 技术点：
+ * 1. 按调用点采样和限流：以日志格式串作为调用点标识，INFO日志每N条输出1条，每个调用点每秒最多输出M条，
+ *    被抑制的条数在该调用点下一次输出时一并打印；WARN、ERROR日志不采样，只限流
+ * 2. 参数延迟渲染：通过lazy包装的参数只在日志真正输出时才计算，避免在日志被关闭或被采样丢弃时构造JSON等字符串
+ * 3. 消息内容默认脱敏：通过content包装的消息内容只输出长度，开启内容日志后才输出原文
+ * 4. 配合logback-im-async.xml中的异步Appender使用，业务线程不等待日志IO
+ */
+public final class HotPathLogger {
+
+    /**
+     * INFO日志的默认采样间隔，每N条输出1条
+     */
+    private static volatile int sampleEvery = 1;
+
+    /**
+     * 每个调用点每秒最多输出的日志条数
+     */
+    private static volatile int maxPerSecond = 100;
+
+    /**
+     * 是否输出消息内容原文
+     */
+    private static volatile boolean contentEnabled = false;
+
+    private final Logger logger;
+
+    // 调用点 -> 采样和限流状态
+    private final ConcurrentMap<String, CallSite> callSites = new ConcurrentHashMap<>();
+
+    private HotPathLogger(Logger logger) {
+        this.logger = logger;
+    }
+
+    public static HotPathLogger getLogger(Class<?> clazz) {
+        return new HotPathLogger(LoggerFactory.getLogger(clazz));
+    }
+
+    /**
+     * 设置全局的采样和脱敏参数
+     *
+     * @param sampleEvery    INFO日志每N条输出1条
+     * @param maxPerSecond   每个调用点每秒最多输出的日志条数
+     * @param contentEnabled 是否输出消息内容原文
+     */
+    public static void configure(int sampleEvery, int maxPerSecond, boolean contentEnabled) {
+        HotPathLogger.sampleEvery = Math.max(sampleEvery, 1);
+        HotPathLogger.maxPerSecond = Math.max(maxPerSecond, 1);
+        HotPathLogger.contentEnabled = contentEnabled;
+    }
+
+    /**
+     * 包装延迟计算的日志参数，只在日志输出时才调用supplier
+     *
+     * @param supplier 参数计算函数
+     * @return 日志参数
+     */
+    public static Object lazy(Supplier<?> supplier) {
+        return new LazyArg(supplier);
+    }
+
+    /**
+     * 包装消息内容，默认只输出内容长度
+     *
+     * @param content 消息内容
+     * @return 日志参数
+     */
+    public static Object content(Object content) {
+        return new ContentArg(content);
+    }
+
+    public boolean isInfoEnabled() {
+        return logger.isInfoEnabled();
+    }
+
+    /**
+     * 输出采样、限流后的INFO日志
+     */
+    public void info(String format, Object... args) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
+        CallSite callSite = this.getCallSite(format);
+        if (!callSite.sample()) {
+            return;
+        }
+        long suppressed = callSite.acquire();
+        if (suppressed < 0) {
+            return;
+        }
+        if (suppressed == 0) {
+            logger.info(format, args);
+        } else {
+            logger.info(format + "|已抑制:{}", append(args, suppressed));
+        }
+    }
+
+    /**
+     * 输出限流后的WARN日志
+     */
+    public void warn(String format, Object... args) {
+        if (!logger.isWarnEnabled()) {
+            return;
+        }
+        long suppressed = this.getCallSite(format).acquire();
+        if (suppressed < 0) {
+            return;
+        }
+        if (suppressed == 0) {
+            logger.warn(format, args);
+        } else {
+            logger.warn(format + "|已抑制:{}", append(args, suppressed));
+        }
+    }
+
+    /**
+     * 输出限流后的ERROR日志，最后一个参数为异常时按SLF4J约定输出堆栈
+     */
+    public void error(String format, Object... args) {
+        if (!logger.isErrorEnabled()) {
+            return;
+        }
+        long suppressed = this.getCallSite(format).acquire();
+        if (suppressed < 0) {
+            return;
+        }
+        if (suppressed == 0) {
+            logger.error(format, args);
+        } else if (args.length > 0 && args[args.length - 1] instanceof Throwable) {
+            Object[] newArgs = new Object[args.length + 1];
+            System.arraycopy(args, 0, newArgs, 0, args.length - 1);
+            newArgs[args.length - 1] = suppressed;
+            newArgs[args.length] = args[args.length - 1];
+            logger.error(format + "|已抑制:{}", newArgs);
+        } else {
+            logger.error(format + "|已抑制:{}", append(args, suppressed));
+        }
+    }
+
+    private CallSite getCallSite(String format) {
+        CallSite callSite = callSites.get(format);
+        if (callSite == null) {
+            callSite = callSites.computeIfAbsent(format, (key) -> new CallSite());
+        }
+        return callSite;
+    }
+
+    private static Object[] append(Object[] args, Object arg) {
+        Object[] newArgs = new Object[args.length + 1];
+        System.arraycopy(args, 0, newArgs, 0, args.length);
+        newArgs[args.length] = arg;
+        return newArgs;
+    }
+
+    /**
+     * 调用点的采样和限流状态
+     */
+    private static class CallSite {
+        // 采样计数
+        private final AtomicLong sampleCounter = new AtomicLong();
+        // 当前限流窗口的起始秒
+        private final AtomicLong windowSecond = new AtomicLong();
+        // 当前限流窗口内已输出的条数
+        private final AtomicInteger windowCount = new AtomicInteger();
+        // 自上次输出以来被抑制的条数
+        private final LongAdder suppressed = new LongAdder();
+
+        private boolean sample() {
+            int every = sampleEvery;
+            if (every <= 1 || sampleCounter.getAndIncrement() % every == 0) {
+                return true;
+            }
+            suppressed.increment();
+            return false;
+        }
+
+        /**
+         * 获取一次输出许可
+         *
+         * @return 允许输出时返回此前被抑制的条数，不允许输出时返回-1
+         */
+        private long acquire() {
+            long second = System.currentTimeMillis() / 1000;
+            long current = windowSecond.get();
+            if (current != second && windowSecond.compareAndSet(current, second)) {
+                windowCount.set(0);
+            }
+            if (windowCount.incrementAndGet() > maxPerSecond) {
+                suppressed.increment();
+                return -1;
+            }
+            return suppressed.sumThenReset();
+        }
+    }
+
+    /**
+     * 延迟计算的日志参数
+     */
+    private static class LazyArg {
+        private final Supplier<?> supplier;
+
+        private LazyArg(Supplier<?> supplier) {
+            this.supplier = supplier;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(supplier.get());
+        }
+    }
+
+    /**
+     * 脱敏的消息内容参数
+     */
+    private static class ContentArg {
+        private final Object content;
+
+        private ContentArg(Object content) {
+            this.content = content;
+        }
+
+        @Override
+        public String toString() {
+            if (content == null) {
+                return "null";
+            }
+            if (contentEnabled) {
+                return content.toString();
+            }
+            return "[内容已脱敏,长度:" + content.toString().length() + "]";
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.lb.im.platform.common.log;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 周期统计日志
+ * 组件按名称登记计数器和即时值，在处理路径上调用logIfDue，到达输出间隔时输出一条统计日志：
+ * 前缀|名称1:值1|名称2:值2...
+ * 技术点：
+ * 1. 计数器为LongAdder，多线程累加时没有竞争
+ * 2. 输出间隔通过CAS判断，同一间隔内并发调用只有一个线程输出，其余调用只读取一次时间
+ * 3. 即时值（队列积压、命中率等）在输出时才计算
+ */
+public final class StatisticsLogger {
+
+    /**
+     * 默认的输出间隔，单位毫秒
+     */
+    public static final long DEFAULT_INTERVAL_MILLIS = 60 * 1000L;
+
+    private final Logger logger;
+
+    // 日志前缀，一般为 组件名 或 组件名|实例名
+    private final String prefix;
+
+    // 输出间隔，单位毫秒
+    private final long intervalMillis;
+
+    // 上次输出统计日志的时间
+    private final AtomicLong lastLogTime = new AtomicLong(System.currentTimeMillis());
+
+    // 按登记顺序输出的统计项
+    private final List<Item> items = new CopyOnWriteArrayList<>();
+
+    public StatisticsLogger(Class<?> clazz, String prefix) {
+        this(clazz, prefix, DEFAULT_INTERVAL_MILLIS);
+    }
+
+    public StatisticsLogger(Class<?> clazz, String prefix, long intervalMillis) {
+        this.logger = LoggerFactory.getLogger(clazz);
+        this.prefix = prefix;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * 登记一个计数器
+     *
+     * @param name 统计项名称
+     * @return 计数器，由调用方累加
+     */
+    public LongAdder counter(String name) {
+        LongAdder adder = new LongAdder();
+        items.add(new Item(name, adder::sum));
+        return adder;
+    }
+
+    /**
+     * 登记一个即时值，输出时调用supplier计算
+     *
+     * @param name     统计项名称
+     * @param supplier 即时值
+     */
+    public void gauge(String name, Supplier<?> supplier) {
+        items.add(new Item(name, supplier));
+    }
+
+    /**
+     * 距上次输出已达到输出间隔时输出一条统计日志
+     */
+    public void logIfDue() {
+        long last = lastLogTime.get();
+        long now = System.currentTimeMillis();
+        if (now - last < intervalMillis || !lastLogTime.compareAndSet(last, now) || !logger.isInfoEnabled()) {
+            return;
+        }
+        StringBuilder message = new StringBuilder(prefix);
+        for (Item item : items) {
+            message.append('|').append(item.name).append(':').append(item.supplier.get());
+        }
+        logger.info(message.toString());
+    }
+
+    private static final class Item {
+        private final String name;
+        private final Supplier<?> supplier;
+
+        private Item(String name, Supplier<?> supplier) {
+            this.name = name;
+            this.supplier = supplier;
+        }
+    }
+}
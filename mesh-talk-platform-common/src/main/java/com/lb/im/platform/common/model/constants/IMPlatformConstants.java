@@ -94,6 +94,16 @@ public class IMPlatformConstants {
      */
     public static final String PLATFORM_REDIS_GROUP_VO_SINGLE_KEY = "platform:group:vo:single:";
 
+    /**
+     * 群聊消息发送上下文
+     */
+    public static final String PLATFORM_REDIS_GROUP_SEND_CONTEXT_KEY = "platform:group:send:context:";
+
+    /**
+     * 群成员集合快照，key为 前缀+群组id:成员集合版本号，值为逗号分隔的成员id
+     */
+    public static final String PLATFORM_REDIS_GROUP_MEMBER_SNAPSHOT_KEY = "platform:group:member:snapshot:";
+
     /**
      * 群成员列表
      */
@@ -114,6 +124,36 @@ public class IMPlatformConstants {
      */
     public static final String PLATFORM_REDIS_MEMBER_ID_KEY = "platform:member:id:list:";
 
+    /**
+     * 私聊已读位置，key为 前缀+读者id:好友id，值为读者已读的好友消息的最大id
+     */
+    public static final String PLATFORM_REDIS_PRIVATE_READED_POSITION_KEY = "platform:private:readed:";
+
+    /**
+     * 群聊最新消息id，key为 前缀+群组id，值为群内已提交的最大消息id
+     */
+    public static final String PLATFORM_REDIS_GROUP_LATEST_MESSAGE_ID_KEY = "platform:group:latest:id:";
+
+    /**
+     * 私聊收件箱，key为 前缀+用户id，成员为补齐19位的消息id:好友id，分值为消息id
+     */
+    public static final String PLATFORM_REDIS_PRIVATE_INBOX_KEY = "platform:inbox:private:";
+
+    /**
+     * 群聊收件箱，key为 前缀+用户id，成员为补齐19位的消息id:群组id，分值为消息id
+     */
+    public static final String PLATFORM_REDIS_GROUP_INBOX_KEY = "platform:inbox:group:";
+
+    /**
+     * 按读扩散查询的群组，成员为群组id，分值为该群组最近一条未写入收件箱的消息id
+     */
+    public static final String PLATFORM_REDIS_INBOX_DIFFUSION_GROUP_KEY = "platform:inbox:diffusion:group";
+
+    /**
+     * 收件箱的起始消息id，id不小于该值的消息均已写入收件箱
+     */
+    public static final String PLATFORM_REDIS_INBOX_START_KEY = "platform:inbox:start";
+
     /**
      * Session数据
      */
@@ -209,6 +249,16 @@ public class IMPlatformConstants {
      */
     public static final String IM_FRIEND_UPDATE_CACHE_LOCK_KEY = "IM_FRIEND_UPDATE_CACHE_LOCK_KEY_";
 
+    /**
+     * 顺序消息发件箱补发任务的锁，同一时刻只有一个实例补发
+     */
+    public static final String IM_MESSAGE_OUTBOX_RELAY_LOCK_KEY = "IM_MESSAGE_OUTBOX_RELAY_LOCK_KEY";
+
+    /**
+     * 消息冷热分层归档任务的锁，同一时刻只有一个实例归档
+     */
+    public static final String IM_MESSAGE_ARCHIVE_LOCK_KEY = "IM_MESSAGE_ARCHIVE_LOCK_KEY";
+
     /**
      * 用户事件消费分组
      */
@@ -224,6 +274,16 @@ public class IMPlatformConstants {
      */
     public static final String EVENT_FRIEND_CONSUMER_GROUP = "event_friend_consumer_group";
 
+    /**
+     * 消息微服务好友事件消费分组，广播消费，用于失效各实例的本地好友缓存
+     */
+    public static final String EVENT_FRIEND_MESSAGE_CONSUMER_GROUP = "event_friend_message_consumer_group";
+
+    /**
+     * 消息微服务群组事件消费分组，广播消费，用于失效各实例的本地群组发送上下文缓存
+     */
+    public static final String EVENT_GROUP_MESSAGE_CONSUMER_GROUP = "event_group_message_consumer_group";
+
     /**
      * 单聊消息
      */
@@ -234,6 +294,16 @@ public class IMPlatformConstants {
      */
     public static final String TYPE_MESSAGE_GROUP = "type_group";
 
+    /**
+     * 事务消息头：消息类型，取值同TYPE_MESSAGE_PRIVATE、TYPE_MESSAGE_GROUP，同时作为消息Tag
+     */
+    public static final String HEADER_MESSAGE_TYPE = "IM_MESSAGE_TYPE";
+
+    /**
+     * 事务消息头：消息id
+     */
+    public static final String HEADER_MESSAGE_ID = "IM_MESSAGE_ID";
+
     /**
      * 拉取历史消息限制
      */
@@ -254,6 +324,36 @@ public class IMPlatformConstants {
      */
     public static final String DEFAULT_DUBBO_VERSION = "1.0.0";
 
+    /**
+     * 私聊消息逻辑表名，分表后的物理表名为：逻辑表名_分表序号
+     */
+    public static final String PRIVATE_MESSAGE_TABLE = "im_private_message";
+
+    /**
+     * 群聊消息逻辑表名，分表后的物理表名为：逻辑表名_分表序号
+     */
+    public static final String GROUP_MESSAGE_TABLE = "im_group_message";
+
+    /**
+     * 消息id中分片槽位占用的位数，槽位数为2的该次幂，物理分表数需能整除槽位数
+     */
+    public static final int MESSAGE_SHARD_SLOT_BITS = 4;
+
+    /**
+     * 私聊消息归档表名，超过保留时长的消息从各分表移入归档表
+     */
+    public static final String PRIVATE_MESSAGE_ARCHIVE_TABLE = "im_private_message_archive";
+
+    /**
+     * 群聊消息归档表名
+     */
+    public static final String GROUP_MESSAGE_ARCHIVE_TABLE = "im_group_message_archive";
+
+    /**
+     * 群聊@提及索引表名，多数据源时每个数据源一张，索引与群组的消息位于同一数据源
+     */
+    public static final String GROUP_MESSAGE_MENTION_TABLE = "im_group_message_mention";
+
 
     public static String getKey(String prefix, String key) {
         return prefix.concat(key);
@@ -0,0 +1,67 @@
+package com.lb.im.platform.common.model.entity;
+
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableName;
+
+import java.io.Serializable;
+
+/**
+ * 群聊@提及索引
+ * 每条群聊消息的每个被@用户一条记录，群聊消息入库时同事务写入，按用户查询@自己的消息不需要扫描消息表
+ */
+@TableName("im_group_message_mention")
+public class GroupMessageMention implements Serializable {
+
+    private static final long serialVersionUID = -3318427916506473221L;
+
+    /**
+     * 被@的用户id
+     */
+    @TableField("user_id")
+    private Long userId;
+
+    /**
+     * 群组id
+     */
+    @TableField("group_id")
+    private Long groupId;
+
+    /**
+     * 消息id
+     */
+    @TableField("message_id")
+    private Long messageId;
+
+    public GroupMessageMention() {
+    }
+
+    public GroupMessageMention(Long userId, Long groupId, Long messageId) {
+        this.userId = userId;
+        this.groupId = groupId;
+        this.messageId = messageId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getGroupId() {
+        return groupId;
+    }
+
+    public void setGroupId(Long groupId) {
+        this.groupId = groupId;
+    }
+
+    public Long getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(Long messageId) {
+        this.messageId = messageId;
+    }
+}
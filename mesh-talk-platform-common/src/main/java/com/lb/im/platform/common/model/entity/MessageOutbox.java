@@ -0,0 +1,120 @@
+package com.lb.im.platform.common.model.entity;
+
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.extension.activerecord.Model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 顺序消息发件箱
+ * 顺序模式下在执行本地事务前写入，消息发送成功后删除，未删除的记录由补发任务按本地事务状态补发或丢弃
+ */
+@TableName("im_message_outbox")
+public class MessageOutbox extends Model<MessageOutbox> {
+
+    private static final long serialVersionUID = 4671083925511928730L;
+
+    /**
+     * 消息id
+     */
+    @TableId(value = "id")
+    private Long id;
+
+    /**
+     * 消息类型 type_private:单聊 type_group:群聊
+     */
+    @TableField("message_type")
+    private String messageType;
+
+    /**
+     * 消息发送目的地，格式为 主题:Tag
+     */
+    @TableField("destination")
+    private String destination;
+
+    /**
+     * 会话键，决定顺序消息进入的队列
+     */
+    @TableField("order_key")
+    private String orderKey;
+
+    /**
+     * 编码后的消息事务事件
+     */
+    @TableField("payload")
+    private byte[] payload;
+
+    /**
+     * 创建时间
+     */
+    @TableField("create_time")
+    private Date createTime;
+
+    public MessageOutbox() {
+    }
+
+    public MessageOutbox(Long id, String messageType, String destination, String orderKey, byte[] payload, Date createTime) {
+        this.id = id;
+        this.messageType = messageType;
+        this.destination = destination;
+        this.orderKey = orderKey;
+        this.payload = payload;
+        this.createTime = createTime;
+    }
+
+    @Override
+    protected Serializable pkVal() {
+        return this.id;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getMessageType() {
+        return messageType;
+    }
+
+    public void setMessageType(String messageType) {
+        this.messageType = messageType;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public void setDestination(String destination) {
+        this.destination = destination;
+    }
+
+    public String getOrderKey() {
+        return orderKey;
+    }
+
+    public void setOrderKey(String orderKey) {
+        this.orderKey = orderKey;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public void setPayload(byte[] payload) {
+        this.payload = payload;
+    }
+
+    public Date getCreateTime() {
+        return createTime;
+    }
+
+    public void setCreateTime(Date createTime) {
+        this.createTime = createTime;
+    }
+}
@@ -0,0 +1,90 @@
+package com.lb.im.platform.common.model.entity;
+
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.extension.activerecord.Model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 消息本地事务状态
+ * 记录事务消息本地事务的最终结果，供RocketMQ事务回查给出确定的答复
+ */
+@TableName("im_message_tx_state")
+public class MessageTxState extends Model<MessageTxState> {
+
+    private static final long serialVersionUID = -2385367164032413709L;
+
+    /**
+     * 消息id
+     */
+    @TableId(value = "id")
+    private Long id;
+
+    /**
+     * 消息类型 type_private:单聊 type_group:群聊
+     */
+    @TableField("message_type")
+    private String messageType;
+
+    /**
+     * 事务状态 1:已提交 2:已回滚
+     */
+    @TableField("status")
+    private Integer status;
+
+    /**
+     * 创建时间
+     */
+    @TableField("create_time")
+    private Date createTime;
+
+    public MessageTxState() {
+    }
+
+    public MessageTxState(Long id, String messageType, Integer status, Date createTime) {
+        this.id = id;
+        this.messageType = messageType;
+        this.status = status;
+        this.createTime = createTime;
+    }
+
+    @Override
+    protected Serializable pkVal() {
+        return this.id;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getMessageType() {
+        return messageType;
+    }
+
+    public void setMessageType(String messageType) {
+        this.messageType = messageType;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public void setStatus(Integer status) {
+        this.status = status;
+    }
+
+    public Date getCreateTime() {
+        return createTime;
+    }
+
+    public void setCreateTime(Date createTime) {
+        this.createTime = createTime;
+    }
+}
@@ -33,6 +33,12 @@ public class PrivateMessage extends Model<PrivateMessage> {
     @JsonSerialize(using = ToStringSerializer.class)
     private Long recvId;
 
+    /**
+     * 会话id，由双方用户id按大小排序后拼接
+     */
+    @TableField("conversation_id")
+    private String conversationId;
+
     /**
      * 发送内容
      */
@@ -86,6 +92,14 @@ public class PrivateMessage extends Model<PrivateMessage> {
         this.recvId = recvId;
     }
 
+    public String getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(String conversationId) {
+        this.conversationId = conversationId;
+    }
+
     public String getContent() {
         return content;
     }
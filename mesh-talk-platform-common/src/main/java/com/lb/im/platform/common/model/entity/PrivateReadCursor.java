@@ -0,0 +1,83 @@
+package com.lb.im.platform.common.model.entity;
+
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableName;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 私聊已读位置
+ * 每个(读者, 好友)一条记录，好友发给读者的消息中id不大于maxReadedId的均为已读
+ */
+@TableName("im_private_read_cursor")
+public class PrivateReadCursor implements Serializable {
+
+    private static final long serialVersionUID = 4125470963150870246L;
+
+    /**
+     * 读者id
+     */
+    @TableField("user_id")
+    private Long userId;
+
+    /**
+     * 好友id，即消息发送者id
+     */
+    @TableField("friend_id")
+    private Long friendId;
+
+    /**
+     * 已读的最大消息id
+     */
+    @TableField("max_readed_id")
+    private Long maxReadedId;
+
+    /**
+     * 更新时间
+     */
+    @TableField("update_time")
+    private Date updateTime;
+
+    public PrivateReadCursor() {
+    }
+
+    public PrivateReadCursor(Long userId, Long friendId, Long maxReadedId, Date updateTime) {
+        this.userId = userId;
+        this.friendId = friendId;
+        this.maxReadedId = maxReadedId;
+        this.updateTime = updateTime;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getFriendId() {
+        return friendId;
+    }
+
+    public void setFriendId(Long friendId) {
+        this.friendId = friendId;
+    }
+
+    public Long getMaxReadedId() {
+        return maxReadedId;
+    }
+
+    public void setMaxReadedId(Long maxReadedId) {
+        this.maxReadedId = maxReadedId;
+    }
+
+    public Date getUpdateTime() {
+        return updateTime;
+    }
+
+    public void setUpdateTime(Date updateTime) {
+        this.updateTime = updateTime;
+    }
+}
@@ -3,6 +3,7 @@ package com.lb.im.platform.common.model.enums;
 public enum HttpCode {
 
     SUCCESS(200,"成功"),
+    PENDING(202,"处理中，请稍后确认结果"),
     NO_LOGIN(400,"未登录"),
     INVALID_TOKEN(401,"token无效或已过期"),
     PARAMS_ERROR(402,"参数错误"),
@@ -0,0 +1,24 @@
+package com.lb.im.platform.common.model.enums;
+
+/**
+ * 消息本地事务状态
+ */
+public enum MessageTxStatus {
+
+    COMMIT(1, "已提交"),
+    ROLLBACK(2, "已回滚");
+
+    private final Integer code;
+
+    private final String desc;
+
+    MessageTxStatus(Integer code, String desc) {
+        this.code = code;
+        this.desc = desc;
+    }
+
+    public Integer code(){
+        return this.code;
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.lb.im.platform.common.model.vo;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 游标分页结果
+ * 按消息id倒序翻页，下一页以本页最后一条消息的id作为游标，查询id小于游标的消息，
+ * 每一页都是一次索引范围扫描，翻页深度不影响查询代价
+ *
+ * @param <T> 数据类型
+ */
+@ApiModel("游标分页结果VO")
+public class CursorPageVO<T> implements Serializable {
+
+    private static final long serialVersionUID = -2637510582746152849L;
+
+    @ApiModelProperty("本页数据")
+    private List<T> list;
+
+    @ApiModelProperty("下一页游标，作为下一次请求的beforeId，没有更多数据时为空")
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long nextCursor;
+
+    @ApiModelProperty("是否还有更多数据")
+    private Boolean hasMore;
+
+    public CursorPageVO() {
+    }
+
+    public CursorPageVO(List<T> list, Long nextCursor, Boolean hasMore) {
+        this.list = list;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * 根据多查询一条的结果构建分页结果
+     * 查询时按size + 1条查询，结果超过size条说明还有下一页，多出的一条不返回
+     *
+     * @param rows        按id倒序查询到的数据，最多size + 1条
+     * @param size        每页条数
+     * @param idExtractor 获取数据id的函数
+     * @return 分页结果，下一页游标为本页最后一条数据的id
+     */
+    public static <T> CursorPageVO<T> of(List<T> rows, int size, Function<T, Long> idExtractor) {
+        if (rows == null || rows.isEmpty()) {
+            return empty();
+        }
+        boolean hasMore = rows.size() > size;
+        List<T> list = hasMore ? new ArrayList<>(rows.subList(0, size)) : rows;
+        Long nextCursor = hasMore ? idExtractor.apply(list.get(list.size() - 1)) : null;
+        return new CursorPageVO<>(list, nextCursor, hasMore);
+    }
+
+    /**
+     * 保留本页的游标，替换本页数据
+     * 按索引记录分页、再按索引加载数据时使用，游标仍取自索引记录
+     *
+     * @param list 本页数据
+     * @return 游标相同的分页结果
+     */
+    public <R> CursorPageVO<R> withList(List<R> list) {
+        return new CursorPageVO<>(list, nextCursor, hasMore);
+    }
+
+    /**
+     * 空的分页结果
+     */
+    public static <T> CursorPageVO<T> empty() {
+        return new CursorPageVO<>(Collections.emptyList(), null, false);
+    }
+
+    public List<T> getList() {
+        return list;
+    }
+
+    public void setList(List<T> list) {
+        this.list = list;
+    }
+
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(Long nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public Boolean getHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(Boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+}
@@ -5,8 +5,8 @@ import com.lb.im.platform.common.serializer.DateToLongSerializer;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
 
+import java.util.Arrays;
 import java.util.Date;
-import java.util.List;
 
 @ApiModel("群消息VO")
 public class GroupMessageVO {
@@ -30,7 +30,7 @@ public class GroupMessageVO {
     private Integer type;
 
     @ApiModelProperty(value = "@用户列表")
-    private List<Long> atUserIds;
+    private long[] atUserIds;
 
     @ApiModelProperty(value = "@用户列表")
     private String atUserIdsStr;
@@ -45,7 +45,7 @@ public class GroupMessageVO {
     public GroupMessageVO() {
     }
 
-    public GroupMessageVO(Long id, Long groupId, Long sendId, String sendNickName, String content, Integer type, List<Long> atUserIds, Integer status, Date sendTime) {
+    public GroupMessageVO(Long id, Long groupId, Long sendId, String sendNickName, String content, Integer type, long[] atUserIds, Integer status, Date sendTime) {
         this.id = id;
         this.groupId = groupId;
         this.sendId = sendId;
@@ -105,11 +105,11 @@ public class GroupMessageVO {
         this.type = type;
     }
 
-    public List<Long> getAtUserIds() {
+    public long[] getAtUserIds() {
         return atUserIds;
     }
 
-    public void setAtUserIds(List<Long> atUserIds) {
+    public void setAtUserIds(long[] atUserIds) {
         this.atUserIds = atUserIds;
     }
 
@@ -133,7 +133,41 @@ public class GroupMessageVO {
         return atUserIdsStr;
     }
 
+    /**
+     * 设置数据库中逗号分隔的@用户列表，查询结果映射时同时解析为@用户id数组，不产生装箱对象和中间字符串
+     */
     public void setAtUserIdsStr(String atUserIdsStr) {
         this.atUserIdsStr = atUserIdsStr;
+        this.atUserIds = parseIds(atUserIdsStr);
+    }
+
+    private static long[] parseIds(String idsStr) {
+        if (idsStr == null || idsStr.isEmpty()) {
+            return new long[0];
+        }
+        int count = 1;
+        for (int i = 0; i < idsStr.length(); i++) {
+            if (idsStr.charAt(i) == ',') {
+                count++;
+            }
+        }
+        long[] ids = new long[count];
+        int size = 0;
+        long value = 0;
+        boolean hasDigit = false;
+        for (int i = 0; i <= idsStr.length(); i++) {
+            char c = i < idsStr.length() ? idsStr.charAt(i) : ',';
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                hasDigit = true;
+            } else if (c == ',') {
+                if (hasDigit) {
+                    ids[size++] = value;
+                }
+                value = 0;
+                hasDigit = false;
+            }
+        }
+        return size == count ? ids : Arrays.copyOf(ids, size);
     }
 }
@@ -0,0 +1,158 @@
+package com.lb.im.platform.common.model.vo;
+
+import com.alibaba.fastjson.JSON;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 群聊消息发送上下文
+ * 一次返回发送群聊消息所需的全部群组数据：群组是否存在、在群成员id及其群内昵称、成员集合版本号
+ * 成员id升序保存，昵称数组与成员id一一对应，发送者的成员身份和昵称通过二分查找获得
+ */
+@ApiModel("群聊消息发送上下文VO")
+public class GroupSendContextVO implements Serializable {
+
+    private static final long serialVersionUID = 3169417360913352307L;
+
+    @ApiModelProperty("群组id")
+    private Long groupId;
+
+    @ApiModelProperty("群组是否存在")
+    private Boolean exists;
+
+    @ApiModelProperty("成员集合版本号，由成员id和群内昵称计算，成员变更后版本号随之变化")
+    private Long version;
+
+    @ApiModelProperty("在群成员id，升序排列")
+    private long[] memberIds;
+
+    @ApiModelProperty("成员群内昵称，与memberIds一一对应")
+    private String[] aliasNames;
+
+    public GroupSendContextVO() {
+    }
+
+    /**
+     * 构建群聊消息发送上下文
+     *
+     * @param groupId    群组id
+     * @param exists     群组是否存在
+     * @param memberList 在群成员列表
+     * @return 群聊消息发送上下文
+     */
+    public static GroupSendContextVO of(Long groupId, boolean exists, List<GroupMemberVO> memberList) {
+        List<GroupMemberVO> members = (!exists || memberList == null) ? new ArrayList<>() : new ArrayList<>(memberList);
+        members.sort((m1, m2) -> Long.compare(m1.getUserId(), m2.getUserId()));
+        long[] memberIds = new long[members.size()];
+        String[] aliasNames = new String[members.size()];
+        for (int i = 0; i < members.size(); i++) {
+            memberIds[i] = members.get(i).getUserId();
+            aliasNames[i] = members.get(i).getAliasName();
+        }
+        GroupSendContextVO context = new GroupSendContextVO();
+        context.setGroupId(groupId);
+        context.setExists(exists);
+        context.setMemberIds(memberIds);
+        context.setAliasNames(aliasNames);
+        context.setVersion(computeVersion(exists, memberIds, aliasNames));
+        return context;
+    }
+
+    /**
+     * 计算成员集合版本号
+     * 相同的成员集合在任意实例上得到相同的版本号，无需额外存储版本计数
+     */
+    private static long computeVersion(boolean exists, long[] memberIds, String[] aliasNames) {
+        long hash = exists ? 1L : 0L;
+        for (int i = 0; i < memberIds.length; i++) {
+            hash = 31 * hash + memberIds[i];
+            hash = 31 * hash + (aliasNames[i] == null ? 0 : aliasNames[i].hashCode());
+        }
+        return hash;
+    }
+
+    /**
+     * 用户是否在群中
+     */
+    public boolean isMember(Long userId) {
+        return userId != null && memberIds != null && Arrays.binarySearch(memberIds, userId) >= 0;
+    }
+
+    /**
+     * 获取用户的群内昵称
+     */
+    public String aliasNameOf(Long userId) {
+        if (userId == null || memberIds == null) {
+            return null;
+        }
+        int index = Arrays.binarySearch(memberIds, userId);
+        return index >= 0 ? aliasNames[index] : null;
+    }
+
+    /**
+     * 获取除发送者外的全部接收者id
+     */
+    public List<Long> receiverIdsOf(Long senderId) {
+        if (memberIds == null || memberIds.length == 0) {
+            return Collections.emptyList();
+        }
+        List<Long> receiverIds = new ArrayList<>(memberIds.length);
+        for (long memberId : memberIds) {
+            if (senderId == null || memberId != senderId) {
+                receiverIds.add(memberId);
+            }
+        }
+        return receiverIds;
+    }
+
+    public Long getGroupId() {
+        return groupId;
+    }
+
+    public void setGroupId(Long groupId) {
+        this.groupId = groupId;
+    }
+
+    public Boolean getExists() {
+        return exists;
+    }
+
+    public void setExists(Boolean exists) {
+        this.exists = exists;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public long[] getMemberIds() {
+        return memberIds;
+    }
+
+    public void setMemberIds(long[] memberIds) {
+        this.memberIds = memberIds;
+    }
+
+    public String[] getAliasNames() {
+        return aliasNames;
+    }
+
+    public void setAliasNames(String[] aliasNames) {
+        this.aliasNames = aliasNames;
+    }
+
+    @Override
+    public String toString() {
+        return JSON.toJSONString(this);
+    }
+}
@@ -0,0 +1,62 @@
+package com.lb.im.platform.common.response;
+
+import com.lb.im.platform.common.exception.IMException;
+import com.lb.im.platform.common.model.enums.HttpCode;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 异步响应消息工厂类
+ * 将业务层返回的CompletableFuture适配为Spring MVC的DeferredResult，
+ * 请求线程在返回DeferredResult后立即释放，Future完成时再写回响应
+ */
+public class DeferredResponseMessageFactory {
+
+    /**
+     * 创建异步响应消息
+     * Future正常完成时返回成功响应；异常完成时按IMException的错误码返回错误响应；超时返回超时错误响应
+     *
+     * @param future        业务层返回的Future
+     * @param timeoutMillis 超时时间，单位毫秒
+     * @param <T>           响应数据类型
+     * @return DeferredResult对象
+     */
+    public static <T> DeferredResult<ResponseMessage<T>> getDeferredResponseMessage(CompletableFuture<T> future, long timeoutMillis) {
+        return getDeferredResponseMessage(future, timeoutMillis, ResponseMessageFactory.getErrorResponseMessage(HttpCode.PROGRAM_ERROR, "请求处理超时，请稍后再试"));
+    }
+
+    /**
+     * 创建可确认结果的异步响应消息
+     * 超时时不返回错误，而是以PENDING状态码返回处理完成之前就已确定的数据（如消息id），
+     * 调用方按该数据确认最终结果，避免因超时重试而重复提交；其余情况与不带预先数据时一致
+     *
+     * @param pendingResult 业务层返回的异步处理结果
+     * @param timeoutMillis 超时时间，单位毫秒
+     * @param <T>           响应数据类型
+     * @return DeferredResult对象
+     */
+    public static <T> DeferredResult<ResponseMessage<T>> getDeferredResponseMessage(PendingResult<T> pendingResult, long timeoutMillis) {
+        return getDeferredResponseMessage(pendingResult.getFuture(), timeoutMillis,
+                                          new ResponseMessage<>(HttpCode.PENDING.getCode(), HttpCode.PENDING.getMsg(), pendingResult.getPendingData()));
+    }
+
+    private static <T> DeferredResult<ResponseMessage<T>> getDeferredResponseMessage(CompletableFuture<T> future, long timeoutMillis, ResponseMessage<T> timeoutResult) {
+        DeferredResult<ResponseMessage<T>> deferredResult = new DeferredResult<>(timeoutMillis, timeoutResult);
+        future.whenComplete((data, throwable) -> {
+            if (throwable == null) {
+                deferredResult.setResult(ResponseMessageFactory.getSuccessResponseMessage(data));
+                return;
+            }
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+            if (cause instanceof IMException) {
+                IMException imException = (IMException) cause;
+                deferredResult.setResult(ResponseMessageFactory.getErrorResponseMessage(imException.getCode(), imException.getMessage()));
+            } else {
+                deferredResult.setResult(ResponseMessageFactory.getErrorResponseMessage(HttpCode.PROGRAM_ERROR));
+            }
+        });
+        return deferredResult;
+    }
+}
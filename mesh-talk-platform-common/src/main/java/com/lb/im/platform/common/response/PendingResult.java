@@ -0,0 +1,36 @@
+package com.lb.im.platform.common.response;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步处理结果
+ * 在处理完成之前就已确定的数据（如生成的消息id）与处理结果的Future一起返回，
+ * 等待超时时以该数据答复处理中，调用方可据此确认最终结果，而不是重新提交请求
+ *
+ * @param <T> 数据类型
+ */
+public class PendingResult<T> {
+
+    /**
+     * 处理完成之前就已确定的数据，超时答复时返回
+     */
+    private final T pendingData;
+
+    /**
+     * 处理结果
+     */
+    private final CompletableFuture<T> future;
+
+    public PendingResult(T pendingData, CompletableFuture<T> future) {
+        this.pendingData = pendingData;
+        this.future = future;
+    }
+
+    public T getPendingData() {
+        return pendingData;
+    }
+
+    public CompletableFuture<T> getFuture() {
+        return future;
+    }
+}
@@ -26,13 +26,22 @@ public class GroupMessageThreadPoolUtils {
                                                                                           new ArrayBlockingQueue<>(4096),
                                                                                           new ThreadPoolExecutor.CallerRunsPolicy());
 
+    /**
+     * 实际执行任务的执行器
+     * 开启虚拟线程模式时每个任务运行在独立的虚拟线程上，阻塞的Dubbo、Redis、数据库调用不再占用平台线程；
+     * 否则使用上面的平台线程池
+     */
+    private static final ExecutorService EXECUTOR_SERVICE = VirtualThreadUtils.isEnabled()
+            ? VirtualThreadUtils.newVirtualThreadPerTaskExecutor()
+            : THREAD_POOL_EXECUTOR;
+
     /**
      * 执行无返回值的异步任务
      *
      * @param task 需要执行的任务，实现了Runnable接口
      */
     public static void execute(Runnable task) {
-        THREAD_POOL_EXECUTOR.execute(task);
+        EXECUTOR_SERVICE.execute(task);
     }
 
     /**
@@ -43,7 +52,7 @@ public class GroupMessageThreadPoolUtils {
      * @return Future对象，可用于获取任务执行结果或取消任务
      */
     public static <T> Future<T> submit(Callable<T> task) {
-        return THREAD_POOL_EXECUTOR.submit(task);
+        return EXECUTOR_SERVICE.submit(task);
     }
 
     /**
@@ -52,6 +61,6 @@ public class GroupMessageThreadPoolUtils {
      * 通常在应用关闭时调用此方法释放资源
      */
     public static void shutdown() {
-        THREAD_POOL_EXECUTOR.shutdown();
+        EXECUTOR_SERVICE.shutdown();
     }
 }
\ No newline at end of file
@@ -25,6 +25,15 @@ public class PrivateMessageThreadPoolUtils {
                                                                                           new ArrayBlockingQueue<>(4096),
                                                                                           new ThreadPoolExecutor.CallerRunsPolicy());
 
+    /**
+     * 实际执行任务的执行器
+     * 开启虚拟线程模式时每个任务运行在独立的虚拟线程上，阻塞的Dubbo、Redis、数据库调用不再占用平台线程；
+     * 否则使用上面的平台线程池
+     */
+    private static final ExecutorService EXECUTOR_SERVICE = VirtualThreadUtils.isEnabled()
+            ? VirtualThreadUtils.newVirtualThreadPerTaskExecutor()
+            : THREAD_POOL_EXECUTOR;
+
     /**
      * 执行无返回值的异步任务
      * 将任务提交到线程池中执行，不关心任务执行结果
@@ -32,7 +41,7 @@ public class PrivateMessageThreadPoolUtils {
      * @param task 待执行的任务（Runnable接口实现）
      */
     public static void execute(Runnable task) {
-        THREAD_POOL_EXECUTOR.execute(task);
+        EXECUTOR_SERVICE.execute(task);
     }
 
     /**
@@ -44,7 +53,7 @@ public class PrivateMessageThreadPoolUtils {
      * @return Future对象，可用于获取任务执行结果或取消任务
      */
     public static <T> Future<T> submit(Callable<T> task) {
-        return THREAD_POOL_EXECUTOR.submit(task);
+        return EXECUTOR_SERVICE.submit(task);
     }
 
     /**
@@ -53,6 +62,6 @@ public class PrivateMessageThreadPoolUtils {
      * 通常在应用程序关闭时调用，以释放线程资源
      */
     public static void shutdown() {
-        THREAD_POOL_EXECUTOR.shutdown();
+        EXECUTOR_SERVICE.shutdown();
     }
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+package com.lb.im.platform.common.threadpool;
+
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 虚拟线程配置类
+ * 开启虚拟线程模式时，Tomcat使用每请求一个虚拟线程的执行器处理请求，
+ * 请求处理中阻塞的Dubbo、Redis、数据库调用不再受Tomcat线程数限制
+ * 各服务的启动类扫描com.lb.im包，引入公共模块即可生效
+ */
+@Configuration
+public class VirtualThreadConfig {
+
+    /**
+     * 替换Tomcat的请求处理执行器
+     * 虚拟线程模式未开启或运行时不支持时不做任何修改
+     *
+     * @return Tomcat协议处理器定制器
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> {
+            if (VirtualThreadUtils.isEnabled()) {
+                protocolHandler.setExecutor(VirtualThreadUtils.newVirtualThreadPerTaskExecutor());
+            }
+        };
+    }
+}
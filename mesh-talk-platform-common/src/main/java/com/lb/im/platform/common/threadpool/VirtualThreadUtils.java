@@ -0,0 +1,84 @@
+package com.lb.im.platform.common.threadpool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 虚拟线程工具类
+ * 在Java 21及以上的运行时开启虚拟线程模式后，为请求处理和异步任务提供每任务一个虚拟线程的执行器
+ * 技术点：
+ * 1. 代码仍按Java 8编译，通过反射调用Executors.newVirtualThreadPerTaskExecutor，低版本运行时自动回退到平台线程
+ * 2. 开关通过JVM参数 -Dim.virtual.threads.enabled=true 或环境变量 IM_VIRTUAL_THREADS_ENABLED=true 开启，
+ *    静态线程池在类加载时读取开关，Spring配置通过宽松绑定读取同一开关
+ */
+public class VirtualThreadUtils {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadUtils.class);
+
+    /**
+     * 虚拟线程开关的配置项名称
+     */
+    public static final String ENABLED_PROPERTY = "im.virtual.threads.enabled";
+
+    /**
+     * 虚拟线程开关的环境变量名称
+     */
+    private static final String ENABLED_ENV = "IM_VIRTUAL_THREADS_ENABLED";
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor方法，运行时不支持虚拟线程时为null
+     */
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadPerTaskExecutorMethod();
+
+    /**
+     * 当前运行时是否支持虚拟线程
+     *
+     * @return 运行时为Java 21及以上时返回true
+     */
+    public static boolean isSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * 是否开启虚拟线程模式
+     * 开关已打开且运行时支持虚拟线程时返回true；开关已打开但运行时不支持时输出告警并返回false
+     *
+     * @return 是否开启虚拟线程模式
+     */
+    public static boolean isEnabled() {
+        boolean switchOn = Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, System.getenv(ENABLED_ENV)));
+        if (switchOn && !isSupported()) {
+            LOGGER.warn("VirtualThreadUtils|已开启虚拟线程模式，但当前运行时不支持虚拟线程，回退到平台线程|{}", System.getProperty("java.version"));
+            return false;
+        }
+        return switchOn;
+    }
+
+    /**
+     * 创建每任务一个虚拟线程的执行器
+     *
+     * @return 虚拟线程执行器
+     * @throws IllegalStateException 当前运行时不支持虚拟线程时抛出
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (!isSupported()) {
+            throw new IllegalStateException("当前运行时不支持虚拟线程");
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (Exception e) {
+            throw new IllegalStateException("创建虚拟线程执行器失败", e);
+        }
+    }
+
+    private static Method findVirtualThreadPerTaskExecutorMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
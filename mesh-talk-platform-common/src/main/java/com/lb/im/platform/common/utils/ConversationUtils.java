@@ -0,0 +1,45 @@
+package com.lb.im.platform.common.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 会话工具类
+ * 单聊会话id由双方用户id按大小排序后拼接，两个方向的消息属于同一会话，
+ * 消息表按(conversation_id, id)建立索引，会话内的消息查询为单个索引范围扫描
+ */
+public class ConversationUtils {
+
+    /**
+     * 会话id中两个用户id的分隔符
+     */
+    public static final String CONVERSATION_ID_SEPARATOR = "_";
+
+    /**
+     * 获取单聊会话id
+     *
+     * @param userId   用户id
+     * @param friendId 好友id
+     * @return 会话id，格式为：较小的用户id_较大的用户id
+     */
+    public static String getPrivateConversationId(Long userId, Long friendId) {
+        long first = Math.min(userId, friendId);
+        long second = Math.max(userId, friendId);
+        return first + CONVERSATION_ID_SEPARATOR + second;
+    }
+
+    /**
+     * 获取用户与多个好友的单聊会话id列表
+     *
+     * @param userId    用户id
+     * @param friendIds 好友id列表
+     * @return 会话id列表，与好友id列表一一对应
+     */
+    public static List<String> getPrivateConversationIds(Long userId, List<Long> friendIds) {
+        List<String> conversationIds = new ArrayList<>(friendIds.size());
+        for (Long friendId : friendIds) {
+            conversationIds.add(getPrivateConversationId(userId, friendId));
+        }
+        return conversationIds;
+    }
+}
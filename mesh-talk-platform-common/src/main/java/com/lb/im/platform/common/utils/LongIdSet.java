@@ -0,0 +1,146 @@
+package com.lb.im.platform.common.utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 不可变的long型id集合
+ * 以有序的基本类型数组保存id，相比HashSet<Long>没有装箱对象和哈希桶的开销，
+ * 适合在本地缓存中大量保存好友id、群成员id等只读集合
+ */
+public final class LongIdSet implements Serializable {
+
+    private static final long serialVersionUID = -4526011254397152863L;
+
+    /**
+     * 空集合
+     */
+    public static final LongIdSet EMPTY = new LongIdSet(new long[0]);
+
+    // 升序排列且去重后的id
+    private final long[] ids;
+
+    private LongIdSet(long[] ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * 由id集合构建，忽略null元素
+     *
+     * @param idList id集合
+     * @return id集合
+     */
+    public static LongIdSet of(Collection<Long> idList) {
+        if (idList == null || idList.isEmpty()) {
+            return EMPTY;
+        }
+        long[] ids = new long[idList.size()];
+        int size = 0;
+        for (Long id : idList) {
+            if (id != null) {
+                ids[size++] = id;
+            }
+        }
+        return of(ids, size);
+    }
+
+    /**
+     * 由id数组构建
+     *
+     * @param ids id数组
+     * @return id集合
+     */
+    public static LongIdSet of(long[] ids) {
+        if (ids == null || ids.length == 0) {
+            return EMPTY;
+        }
+        return of(Arrays.copyOf(ids, ids.length), ids.length);
+    }
+
+    private static LongIdSet of(long[] ids, int size) {
+        if (size == 0) {
+            return EMPTY;
+        }
+        Arrays.sort(ids, 0, size);
+        int distinct = 1;
+        for (int i = 1; i < size; i++) {
+            if (ids[i] != ids[distinct - 1]) {
+                ids[distinct++] = ids[i];
+            }
+        }
+        return new LongIdSet(distinct == ids.length ? ids : Arrays.copyOf(ids, distinct));
+    }
+
+    /**
+     * 是否包含指定id
+     */
+    public boolean contains(Long id) {
+        return id != null && Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    /**
+     * 返回加入指定id后的新集合
+     */
+    public LongIdSet add(long id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index >= 0) {
+            return this;
+        }
+        int insertAt = -index - 1;
+        long[] newIds = new long[ids.length + 1];
+        System.arraycopy(ids, 0, newIds, 0, insertAt);
+        newIds[insertAt] = id;
+        System.arraycopy(ids, insertAt, newIds, insertAt + 1, ids.length - insertAt);
+        return new LongIdSet(newIds);
+    }
+
+    /**
+     * 返回移除指定id后的新集合
+     */
+    public LongIdSet remove(long id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index < 0) {
+            return this;
+        }
+        if (ids.length == 1) {
+            return EMPTY;
+        }
+        long[] newIds = new long[ids.length - 1];
+        System.arraycopy(ids, 0, newIds, 0, index);
+        System.arraycopy(ids, index + 1, newIds, index, ids.length - index - 1);
+        return new LongIdSet(newIds);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public boolean isEmpty() {
+        return ids.length == 0;
+    }
+
+    /**
+     * 返回id数组的副本
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(ids, ids.length);
+    }
+
+    /**
+     * 转换为List，用于调用以List<Long>为参数的接口
+     */
+    public List<Long> toList() {
+        if (ids.length == 0) {
+            return Collections.emptyList();
+        }
+        List<Long> list = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,37 @@
+package com.lb.im.platform.common.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * 雪花id时间换算配置
+ * 启动时将配置文件中的雪花id布局设置到SnowFlakeIdUtils并校验
+ */
+@Component
+public class SnowFlakeIdConfig {
+
+    /**
+     * 是否将按发送时间过滤的查询改写为按消息id范围过滤
+     */
+    @Value("${message.id.time.enabled:true}")
+    private Boolean enabled;
+
+    /**
+     * 雪花算法的起始时间
+     */
+    @Value("${message.id.time.epochMillis:1480166465631}")
+    private Long epochMillis;
+
+    /**
+     * 时间戳左移位数
+     */
+    @Value("${message.id.time.timestampShift:22}")
+    private Integer timestampShift;
+
+    @PostConstruct
+    public void init() {
+        SnowFlakeIdUtils.configure(Boolean.TRUE.equals(enabled), epochMillis, timestampShift);
+    }
+}
@@ -0,0 +1,134 @@
+package com.lb.im.platform.common.utils;
+
+import com.lb.im.common.cache.id.SnowFlakeFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+
+/**
+ * 雪花id时间换算工具类
+ * 雪花id的高位是相对起始时间的毫秒数，同一毫秒内生成的id都不小于 (毫秒数 - 起始时间) << 时间戳左移位数，
+ * 因此"发送时间不早于某时刻"可以改写为"id不小于该时刻的最小id"，按时间过滤的查询变为主键范围扫描，无需send_time索引
+ *
+ * 起始时间和左移位数需与SDK中雪花算法的实现一致，启动时用SDK生成一个id校验换算结果，
+ * 换算出的时间与当前时间相差过大时关闭换算，调用方退回按send_time过滤
+ */
+public class SnowFlakeIdUtils {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnowFlakeIdUtils.class);
+
+    /**
+     * 校验换算结果时允许的最大时间误差，单位毫秒
+     */
+    private static final long MAX_VERIFY_DEVIATION_MILLIS = 60 * 1000L;
+
+    /**
+     * 雪花算法的起始时间
+     */
+    private static volatile long epochMillis = 1480166465631L;
+
+    /**
+     * 时间戳左移位数，即数据中心、机器和序列号占用的位数之和
+     */
+    private static volatile int timestampShift = 22;
+
+    /**
+     * 是否开启按id换算时间
+     */
+    private static volatile boolean enabled = false;
+
+    /**
+     * 雪花id布局是否已通过校验
+     */
+    private static volatile boolean verified = false;
+
+    /**
+     * 设置雪花id的布局并校验
+     *
+     * @param enabled        是否开启按id换算时间
+     * @param epochMillis    雪花算法的起始时间
+     * @param timestampShift 时间戳左移位数
+     */
+    public static void configure(boolean enabled, long epochMillis, int timestampShift) {
+        SnowFlakeIdUtils.epochMillis = epochMillis;
+        SnowFlakeIdUtils.timestampShift = timestampShift;
+        SnowFlakeIdUtils.verified = verify();
+        SnowFlakeIdUtils.enabled = enabled && verified;
+    }
+
+    /**
+     * 雪花id布局是否已通过校验，校验通过后才能按布局解析或组装id
+     */
+    public static boolean isVerified() {
+        return verified;
+    }
+
+    public static long getEpochMillis() {
+        return epochMillis;
+    }
+
+    public static int getTimestampShift() {
+        return timestampShift;
+    }
+
+    /**
+     * 是否开启按id换算时间
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 获取指定时刻生成的最小雪花id
+     *
+     * @param date 时刻
+     * @return 该时刻的最小雪花id，早于起始时间时返回0
+     */
+    public static long getMinIdOfTime(Date date) {
+        long delta = date.getTime() - epochMillis;
+        return delta <= 0 ? 0L : delta << timestampShift;
+    }
+
+    /**
+     * 将时间下界换算为id的开区间下界，用于 id > #{minId} 形式的查询条件
+     *
+     * @param date      时间下界
+     * @param inclusive true表示 send_time >= date，false表示 send_time > date
+     * @return 满足 id > 返回值 的消息即满足时间下界
+     */
+    public static long getIdLowerBound(Date date, boolean inclusive) {
+        long time = inclusive ? date.getTime() : date.getTime() + 1;
+        return Math.max(getMinIdOfTime(new Date(time)) - 1, 0L);
+    }
+
+    /**
+     * 获取雪花id的生成时间
+     *
+     * @param id 雪花id
+     * @return 生成时间的毫秒数
+     */
+    public static long getTimeMillis(long id) {
+        return (id >>> timestampShift) + epochMillis;
+    }
+
+    /**
+     * 用SDK生成一个id，校验换算出的时间与当前时间一致
+     */
+    private static boolean verify() {
+        try {
+            long now = System.currentTimeMillis();
+            long id = SnowFlakeFactory.getSnowFlakeFromCache().nextId();
+            long deviation = Math.abs(getTimeMillis(id) - now);
+            if (deviation > MAX_VERIFY_DEVIATION_MILLIS) {
+                logger.warn("SnowFlakeIdUtils|雪花id换算时间与当前时间相差过大，关闭按id换算时间|起始时间:{}|左移位数:{}|误差(毫秒):{}",
+                            epochMillis, timestampShift, deviation);
+                return false;
+            }
+            return true;
+        } catch (Exception e) {
+            logger.warn("SnowFlakeIdUtils|校验雪花id布局失败，关闭按id换算时间|{}", e.getMessage());
+            return false;
+        }
+    }
+}
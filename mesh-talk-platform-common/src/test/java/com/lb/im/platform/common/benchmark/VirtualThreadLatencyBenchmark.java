@@ -0,0 +1,92 @@
+package com.lb.im.platform.common.benchmark;
+
+import com.lb.im.platform.common.threadpool.VirtualThreadUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 固定线程预算下平台线程池与虚拟线程的请求延迟对比
+ * 每个请求模拟一次阻塞的远程调用（Dubbo、JDBC、Redis）加少量计算，200个并发调用方持续提交请求，
+ * 以SampleTime模式采样每个请求的延迟，结果中的p0.99即p99延迟
+ * 平台线程池的线程数与虚拟线程的载体线程数相同（THREAD_BUDGET），虚拟线程需在Java 21及以上运行
+ *
+ * 运行：使用Java 21在测试类路径下执行本类的main方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(200)
+@Fork(value = 1, jvmArgsAppend = {"-Djdk.virtualThreadScheduler.parallelism=" + VirtualThreadLatencyBenchmark.THREAD_BUDGET,
+                                  "-Djdk.virtualThreadScheduler.maxPoolSize=" + VirtualThreadLatencyBenchmark.THREAD_BUDGET})
+public class VirtualThreadLatencyBenchmark {
+
+    /**
+     * 线程预算：平台线程池的线程数，以及虚拟线程调度器的载体线程数
+     */
+    static final int THREAD_BUDGET = 32;
+
+    /**
+     * 执行器类型：platform为固定大小的平台线程池，virtual为每任务一个虚拟线程
+     */
+    @Param({"platform", "virtual"})
+    private String executorType;
+
+    /**
+     * 模拟阻塞调用的耗时，单位毫秒
+     */
+    @Param({"5"})
+    private long blockingMillis;
+
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("virtual".equals(executorType)) {
+            executor = VirtualThreadUtils.newVirtualThreadPerTaskExecutor();
+        } else {
+            executor = Executors.newFixedThreadPool(THREAD_BUDGET);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public void request(Blackhole blackhole) throws ExecutionException, InterruptedException {
+        blackhole.consume(executor.submit(() -> {
+            TimeUnit.MILLISECONDS.sleep(blockingMillis);
+            Blackhole.consumeCPU(1000);
+            return Boolean.TRUE;
+        }).get());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(VirtualThreadLatencyBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -3,6 +3,7 @@ package com.lb.im.platform.dubbo.group;
 
 import com.lb.im.platform.common.model.params.GroupParams;
 import com.lb.im.platform.common.model.vo.GroupMemberSimpleVO;
+import com.lb.im.platform.common.model.vo.GroupSendContextVO;
 
 import java.util.List;
 
@@ -32,4 +33,9 @@ public interface GroupDubboService {
      * 根据用户id获取在各个群组中的信息
      */
     List<GroupMemberSimpleVO> getGroupMemberSimpleVOList(Long userId);
+
+    /**
+     * 获取群聊消息发送上下文，一次返回群组是否存在、在群成员及群内昵称和成员集合版本号
+     */
+    GroupSendContextVO getGroupSendContext(Long groupId);
 }
@@ -5,6 +5,7 @@ import com.alibaba.fastjson.JSONObject;
 import com.lb.im.common.cache.distribute.DistributedCacheService;
 import com.lb.im.common.cache.lock.DistributedLock;
 import com.lb.im.common.cache.lock.factory.DistributedLockFactory;
+import com.lb.im.platform.common.log.HotPathLogger;
 import com.lb.im.platform.common.model.constants.IMPlatformConstants;
 import com.lb.im.platform.common.model.entity.Friend;
 import com.lb.im.platform.common.model.vo.FriendVO;
@@ -12,8 +13,6 @@ import com.lb.im.platform.friend.application.cache.FriendCacheService;
 import com.lb.im.platform.friend.domain.event.IMFriendEvent;
 import com.lb.im.platform.friend.domain.model.command.FriendCommand;
 import com.lb.im.platform.friend.domain.service.FriendDomainService;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -36,7 +35,7 @@ public class FriendCacheServiceImpl implements FriendCacheService {
      * 日志记录器
      * 用于记录缓存操作过程中的日志
      */
-    private final Logger logger = LoggerFactory.getLogger(FriendCacheServiceImpl.class);
+    private final HotPathLogger logger = HotPathLogger.getLogger(FriendCacheServiceImpl.class);
 
     /**
      * 分布式缓存服务
@@ -107,7 +106,7 @@ public class FriendCacheServiceImpl implements FriendCacheService {
             }
         } catch (Exception e){
             // 记录异常日志
-            logger.error("IMUserCache|更新分布式缓存失败|{}", JSONObject.toJSONString(friendEvent), e);
+            logger.error("IMUserCache|更新分布式缓存失败|{}", HotPathLogger.lazy(() -> JSONObject.toJSONString(friendEvent)), e);
         } finally {
             // 确保锁被释放
             lock.unlock();
@@ -1,11 +1,11 @@
 package com.lb.im.platform.friend.application.consumer;
 
-import cn.hutool.core.util.StrUtil;
-import com.alibaba.fastjson.JSONObject;
-import com.lb.im.common.domain.constans.IMConstants;
+import cn.hutool.core.util.ArrayUtil;
+import com.lb.im.platform.common.codec.EventCodecFactory;
 import com.lb.im.platform.common.model.constants.IMPlatformConstants;
 import com.lb.im.platform.common.model.event.User2FriendEvent;
 import com.lb.im.platform.friend.domain.service.FriendDomainService;
+import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.apache.rocketmq.spring.core.RocketMQListener;
 import org.slf4j.Logger;
@@ -17,25 +17,23 @@ import org.springframework.stereotype.Component;
 @Component
 @ConditionalOnProperty(name = "message.mq.type", havingValue = "rocketmq")
 @RocketMQMessageListener(consumerGroup = IMPlatformConstants.TOPIC_USER_TO_FRIEND_GROUP, topic = IMPlatformConstants.TOPIC_USER_TO_FRIEND)
-public class IMFriendRocketMQEventConsumer implements RocketMQListener<String> {
+public class IMFriendRocketMQEventConsumer implements RocketMQListener<MessageExt> {
     private final Logger logger = LoggerFactory.getLogger(IMFriendRocketMQEventConsumer.class);
 
     @Autowired
     private FriendDomainService domainService;
     @Override
-    public void onMessage(String message) {
-        if (StrUtil.isEmpty(message)){
+    public void onMessage(MessageExt message) {
+        if (ArrayUtil.isEmpty(message.getBody())){
             logger.info("rocketmq|friendConsumer|接收用户微服务发送过来的事件参数为空" );
             return;
         }
-        logger.info("rocketmq|friendConsumer|接收用户微服务发送过来的事件|{}", message);
-        User2FriendEvent user2FriendEvent = this.getEventMessage(message);
+        logger.info("rocketmq|friendConsumer|接收用户微服务发送过来的事件|{}", message.getMsgId());
+        User2FriendEvent user2FriendEvent = this.getEventMessage(message.getBody());
         domainService.updateFriendByFriendId(user2FriendEvent.getHeadImg(), user2FriendEvent.getNickName(), user2FriendEvent.getId());
     }
 
-    private User2FriendEvent getEventMessage(String msg){
-        JSONObject jsonObject = JSONObject.parseObject(msg);
-        String eventStr = jsonObject.getString(IMConstants.MSG_KEY);
-        return JSONObject.parseObject(eventStr, User2FriendEvent.class);
+    private User2FriendEvent getEventMessage(byte[] body) {
+        return EventCodecFactory.decode(body, User2FriendEvent.class);
     }
 }
@@ -1,11 +1,11 @@
 package com.lb.im.platform.friend.application.event;
 
-import cn.hutool.core.util.StrUtil;
-import com.alibaba.fastjson.JSONObject;
-import com.lb.im.common.domain.constans.IMConstants;
+import cn.hutool.core.util.ArrayUtil;
+import com.lb.im.platform.common.codec.EventCodecFactory;
 import com.lb.im.platform.common.model.constants.IMPlatformConstants;
 import com.lb.im.platform.friend.application.cache.FriendCacheService;
 import com.lb.im.platform.friend.domain.event.IMFriendEvent;
+import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.apache.rocketmq.spring.core.RocketMQListener;
 import org.slf4j.Logger;
@@ -29,7 +29,7 @@ import org.springframework.stereotype.Component;
     consumerGroup = IMPlatformConstants.EVENT_FRIEND_CONSUMER_GROUP, // 消费者组
     topic = IMPlatformConstants.TOPIC_EVENT_ROCKETMQ_FRIEND // 订阅的主题
 )
-public class IMFriendRocketMQEventHandler implements RocketMQListener<String> {
+public class IMFriendRocketMQEventHandler implements RocketMQListener<MessageExt> {
 
     private final Logger logger = LoggerFactory.getLogger(IMFriendRocketMQEventHandler.class);
 
@@ -44,20 +44,20 @@ public class IMFriendRocketMQEventHandler implements RocketMQListener<String> {
      * 消息处理方法
      * 接收并处理RocketMQ发送的好友事件消息
      * 
-     * @param message RocketMQ消息内容（JSON字符串）
+     * @param message RocketMQ消息
      */
     @Override
-    public void onMessage(String message) {
-        logger.info("rocketmq|friendEvent|接收好友事件|{}", message);
+    public void onMessage(MessageExt message) {
+        logger.info("rocketmq|friendEvent|接收好友事件|{}", message.getMsgId());
 
         // 参数校验
-        if (StrUtil.isEmpty(message)){
+        if (ArrayUtil.isEmpty(message.getBody())){
             logger.info("rocketmq|friendEvent|接收好友事件参数错误" );
             return;
         }
 
         // 解析事件消息
-        IMFriendEvent friendEvent = this.getEventMessage(message);
+        IMFriendEvent friendEvent = this.getEventMessage(message.getBody());
 
         // 更新好友缓存
         friendCacheService.updateFriendCache(friendEvent);
@@ -65,19 +65,12 @@ public class IMFriendRocketMQEventHandler implements RocketMQListener<String> {
 
     /**
      * 解析事件消息
-     * 将JSON字符串转换为IMFriendEvent对象
+     * 按消息体格式解码为IMFriendEvent对象
      * 
-     * @param msg JSON格式的消息字符串
+     * @param body 消息体，JSON或Kryo编码
      * @return 解析后的好友事件对象
      */
-    private IMFriendEvent getEventMessage(String msg){
-        // 解析JSON对象
-        JSONObject jsonObject = JSONObject.parseObject(msg);
-
-        // 获取事件内容字符串
-        String eventStr = jsonObject.getString(IMConstants.MSG_KEY);
-
-        // 将事件内容转换为IMFriendEvent对象
-        return JSONObject.parseObject(eventStr, IMFriendEvent.class);
+    private IMFriendEvent getEventMessage(byte[] body) {
+        return EventCodecFactory.decode(body, IMFriendEvent.class);
     }
 }
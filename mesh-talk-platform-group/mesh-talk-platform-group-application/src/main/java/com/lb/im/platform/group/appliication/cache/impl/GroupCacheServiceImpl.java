@@ -2,12 +2,11 @@ package com.lb.im.platform.group.appliication.cache.impl;
 
 import com.alibaba.fastjson.JSONObject;
 import com.lb.im.common.cache.distribute.DistributedCacheService;
+import com.lb.im.platform.common.log.HotPathLogger;
 import com.lb.im.platform.common.model.constants.IMPlatformConstants;
 import com.lb.im.platform.group.appliication.cache.GroupCacheService;
 import com.lb.im.platform.common.model.params.GroupParams;
 import com.lb.im.platform.group.domain.event.IMGroupEvent;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -17,7 +16,7 @@ import org.springframework.stereotype.Service;
  */
 @Service
 public class GroupCacheServiceImpl implements GroupCacheService {
-    private final Logger logger = LoggerFactory.getLogger(GroupCacheServiceImpl.class);
+    private final HotPathLogger logger = HotPathLogger.getLogger(GroupCacheServiceImpl.class);
 
     @Autowired
     private DistributedCacheService distributedCacheService; // 分布式缓存服务
@@ -52,7 +51,7 @@ public class GroupCacheServiceImpl implements GroupCacheService {
             case IMPlatformConstants.GROUP_HANDLER_INVITE:
                 this.handlerInvite(imGroupEvent);
             default:
-                logger.info("groupCacheService|群组缓存服务接收到的事件参数为|{}", JSONObject.toJSONString(imGroupEvent));
+                logger.info("groupCacheService|群组缓存服务接收到的事件参数为|{}", HotPathLogger.lazy(() -> JSONObject.toJSONString(imGroupEvent)));
         }
     }
 
@@ -62,7 +61,7 @@ public class GroupCacheServiceImpl implements GroupCacheService {
      * @param imGroupEvent 群组事件对象
      */
     private void handlerInvite(IMGroupEvent imGroupEvent) {
-        logger.info("groupCacheService|进入邀请事件处理|{}", JSONObject.toJSONString(imGroupEvent));
+        logger.info("groupCacheService|进入邀请事件处理|{}", HotPathLogger.lazy(() -> JSONObject.toJSONString(imGroupEvent)));
         this.handlerGroupMember(imGroupEvent);
     }
 
@@ -72,7 +71,7 @@ public class GroupCacheServiceImpl implements GroupCacheService {
      * @param imGroupEvent 群组事件对象
      */
     private void handlerKick(IMGroupEvent imGroupEvent) {
-        logger.info("groupCacheService|进入踢人事件处理|{}", JSONObject.toJSONString(imGroupEvent));
+        logger.info("groupCacheService|进入踢人事件处理|{}", HotPathLogger.lazy(() -> JSONObject.toJSONString(imGroupEvent)));
         this.handlerGroupMember(imGroupEvent);
     }
 
@@ -82,7 +81,7 @@ public class GroupCacheServiceImpl implements GroupCacheService {
      * @param imGroupEvent 群组事件对象
      */
     private void handlerQuit(IMGroupEvent imGroupEvent) {
-        logger.info("groupCacheService|进入退群事件处理|{}", JSONObject.toJSONString(imGroupEvent));
+        logger.info("groupCacheService|进入退群事件处理|{}", HotPathLogger.lazy(() -> JSONObject.toJSONString(imGroupEvent)));
         this.handlerGroupMember(imGroupEvent);
     }
 
@@ -93,7 +92,7 @@ public class GroupCacheServiceImpl implements GroupCacheService {
      * @param imGroupEvent 群组事件对象
      */
     private void handlerDelete(IMGroupEvent imGroupEvent) {
-        logger.info("groupCacheService|进入解散群事件处理|{}", JSONObject.toJSONString(imGroupEvent));
+        logger.info("groupCacheService|进入解散群事件处理|{}", HotPathLogger.lazy(() -> JSONObject.toJSONString(imGroupEvent)));
         // 删除群组VO缓存
         String redisKey = distributedCacheService.getKey(IMPlatformConstants.PLATFORM_REDIS_GROUP_VO_SINGLE_KEY, 
                           new GroupParams(imGroupEvent.getUserId(), imGroupEvent.getId()));
@@ -108,6 +107,9 @@ public class GroupCacheServiceImpl implements GroupCacheService {
         redisKey = distributedCacheService.getKey(IMPlatformConstants.PLATFORM_REDIS_GROUP_SINGLE_KEY, 
                    imGroupEvent.getId());
         distributedCacheService.delete(redisKey);
+
+        // 删除群聊消息发送上下文缓存
+        this.deleteGroupSendContext(imGroupEvent.getId());
         // 群成员缓存会自动过期
     }
 
@@ -118,7 +120,7 @@ public class GroupCacheServiceImpl implements GroupCacheService {
      * @param imGroupEvent 群组事件对象
      */
     private void handlerModify(IMGroupEvent imGroupEvent) {
-        logger.info("groupCacheService|进入修改群事件处理|{}", JSONObject.toJSONString(imGroupEvent));
+        logger.info("groupCacheService|进入修改群事件处理|{}", HotPathLogger.lazy(() -> JSONObject.toJSONString(imGroupEvent)));
         // 删除群组VO缓存
         String redisKey = distributedCacheService.getKey(IMPlatformConstants.PLATFORM_REDIS_GROUP_VO_SINGLE_KEY, 
                           new GroupParams(imGroupEvent.getUserId(), imGroupEvent.getId()));
@@ -128,6 +130,9 @@ public class GroupCacheServiceImpl implements GroupCacheService {
         redisKey = distributedCacheService.getKey(IMPlatformConstants.PLATFORM_REDIS_GROUP_SINGLE_KEY, 
                    imGroupEvent.getId());
         distributedCacheService.delete(redisKey);
+
+        // 修改群组可能修改群内昵称，删除群聊消息发送上下文缓存
+        this.deleteGroupSendContext(imGroupEvent.getId());
     }
 
     /**
@@ -137,7 +142,7 @@ public class GroupCacheServiceImpl implements GroupCacheService {
      * @param imGroupEvent 群组事件对象
      */
     private void handlerCreate(IMGroupEvent imGroupEvent) {
-        logger.info("groupCacheService|进入保存群组事件处理|{}", JSONObject.toJSONString(imGroupEvent));
+        logger.info("groupCacheService|进入保存群组事件处理|{}", HotPathLogger.lazy(() -> JSONObject.toJSONString(imGroupEvent)));
         // 创建群组时不需要清除缓存
     }
 
@@ -172,5 +177,18 @@ public class GroupCacheServiceImpl implements GroupCacheService {
         redisKey = distributedCacheService.getKey(IMPlatformConstants.PLATFORM_REDIS_GROUP_LIST_KEY, 
                    imGroupEvent.getUserId());
         distributedCacheService.delete(redisKey);
+
+        // 删除群聊消息发送上下文缓存
+        this.deleteGroupSendContext(imGroupEvent.getId());
+    }
+
+    /**
+     * 删除群聊消息发送上下文缓存
+     *
+     * @param groupId 群组ID
+     */
+    private void deleteGroupSendContext(Long groupId) {
+        String redisKey = distributedCacheService.getKey(IMPlatformConstants.PLATFORM_REDIS_GROUP_SEND_CONTEXT_KEY, groupId);
+        distributedCacheService.delete(redisKey);
     }
 }
\ No newline at end of file
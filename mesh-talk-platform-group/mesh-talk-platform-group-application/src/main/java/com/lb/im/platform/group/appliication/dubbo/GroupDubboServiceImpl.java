@@ -4,6 +4,7 @@ import com.lb.im.platform.common.model.constants.IMPlatformConstants;
 import com.lb.im.platform.common.model.entity.Group;
 import com.lb.im.platform.common.model.params.GroupParams;
 import com.lb.im.platform.common.model.vo.GroupMemberSimpleVO;
+import com.lb.im.platform.common.model.vo.GroupSendContextVO;
 import com.lb.im.platform.dubbo.group.GroupDubboService;
 import com.lb.im.platform.group.appliication.service.GroupService;
 import org.apache.dubbo.config.annotation.DubboService;
@@ -51,4 +52,9 @@ public class GroupDubboServiceImpl implements GroupDubboService {
     public List<GroupMemberSimpleVO> getGroupMemberSimpleVOList(Long userId) {
         return groupService.getGroupMemberSimpleVOList(userId);
     }
+
+    @Override
+    public GroupSendContextVO getGroupSendContext(Long groupId) {
+        return groupService.getGroupSendContext(groupId);
+    }
 }
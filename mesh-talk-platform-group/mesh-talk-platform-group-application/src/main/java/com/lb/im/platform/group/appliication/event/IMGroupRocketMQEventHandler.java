@@ -1,11 +1,11 @@
 package com.lb.im.platform.group.appliication.event;
 
-import cn.hutool.core.util.StrUtil;
-import com.alibaba.fastjson.JSONObject;
-import com.lb.im.common.domain.constans.IMConstants;
+import cn.hutool.core.util.ArrayUtil;
+import com.lb.im.platform.common.codec.EventCodecFactory;
 import com.lb.im.platform.common.model.constants.IMPlatformConstants;
 import com.lb.im.platform.group.appliication.cache.GroupCacheService;
 import com.lb.im.platform.group.domain.event.IMGroupEvent;
+import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.apache.rocketmq.spring.core.RocketMQListener;
 import org.slf4j.Logger;
@@ -17,26 +17,24 @@ import org.springframework.stereotype.Component;
 @Component
 @ConditionalOnProperty(name = "message.mq.event.type", havingValue = "rocketmq")
 @RocketMQMessageListener(consumerGroup = IMPlatformConstants.EVENT_GROUP_CONSUMER_GROUP, topic = IMPlatformConstants.TOPIC_EVENT_ROCKETMQ_GROUP)
-public class IMGroupRocketMQEventHandler implements RocketMQListener<String> {
+public class IMGroupRocketMQEventHandler implements RocketMQListener<MessageExt> {
     private final Logger logger = LoggerFactory.getLogger(IMGroupRocketMQEventHandler.class);
 
     @Autowired
     private GroupCacheService groupCacheService;
 
     @Override
-    public void onMessage(String message) {
-        if (StrUtil.isEmpty(message)) {
+    public void onMessage(MessageExt message) {
+        if (ArrayUtil.isEmpty(message.getBody())) {
             logger.info("rocketmq|groupEvent|接收群组事件参数错误");
             return;
         }
-        logger.info("rocketmq|groupEvent|接收群组事件参数|{}", message);
-        IMGroupEvent groupEvent = this.getEventMessage(message);
+        logger.info("rocketmq|groupEvent|接收群组事件参数|{}", message.getMsgId());
+        IMGroupEvent groupEvent = this.getEventMessage(message.getBody());
         groupCacheService.updateGroupCache(groupEvent);
     }
 
-    private IMGroupEvent getEventMessage(String msg) {
-        JSONObject jsonObject = JSONObject.parseObject(msg);
-        String eventStr = jsonObject.getString(IMConstants.MSG_KEY);
-        return JSONObject.parseObject(eventStr, IMGroupEvent.class);
+    private IMGroupEvent getEventMessage(byte[] body) {
+        return EventCodecFactory.decode(body, IMGroupEvent.class);
     }
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import com.lb.im.platform.common.model.params.GroupParams;
 import com.lb.im.platform.common.model.vo.GroupInviteVO;
 import com.lb.im.platform.common.model.vo.GroupMemberSimpleVO;
 import com.lb.im.platform.common.model.vo.GroupMemberVO;
+import com.lb.im.platform.common.model.vo.GroupSendContextVO;
 import com.lb.im.platform.common.model.vo.GroupVO;
 
 import java.util.List;
@@ -107,6 +108,11 @@ public interface GroupService {
      */
     List<GroupMemberSimpleVO> getGroupMemberSimpleVOList(Long userId);
 
+    /**
+     * 获取群聊消息发送上下文
+     */
+    GroupSendContextVO getGroupSendContext(Long groupId);
+
     /**
      * 更新某个用户在所有群的头像
      */
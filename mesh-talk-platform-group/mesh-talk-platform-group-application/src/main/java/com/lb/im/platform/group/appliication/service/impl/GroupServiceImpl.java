@@ -16,6 +16,7 @@ import com.lb.im.platform.common.model.enums.HttpCode;
 import com.lb.im.platform.common.model.vo.GroupInviteVO;
 import com.lb.im.platform.common.model.vo.GroupMemberSimpleVO;
 import com.lb.im.platform.common.model.vo.GroupMemberVO;
+import com.lb.im.platform.common.model.vo.GroupSendContextVO;
 import com.lb.im.platform.common.model.vo.GroupVO;
 import com.lb.im.platform.common.session.SessionContext;
 import com.lb.im.platform.common.session.UserSession;
@@ -622,6 +623,31 @@ public class GroupServiceImpl implements GroupService {
         );
     }
 
+    /**
+     * 获取群聊消息发送上下文
+     * 群组是否存在、在群成员及群内昵称合并为一个缓存条目，发送群聊消息只需一次查询
+     *
+     * @param groupId 群组ID
+     * @return 群聊消息发送上下文
+     * @throws IMException 参数错误时抛出异常
+     */
+    @Override
+    public GroupSendContextVO getGroupSendContext(Long groupId) {
+        if (groupId == null) {
+            throw new IMException(HttpCode.PARAMS_ERROR);
+        }
+
+        // 从缓存获取数据，缓存未命中时从数据库构建
+        return distributedCacheService.queryWithPassThrough(
+                IMPlatformConstants.PLATFORM_REDIS_GROUP_SEND_CONTEXT_KEY,
+                groupId,
+                GroupSendContextVO.class,
+                this::buildGroupSendContext,
+                IMPlatformConstants.DEFAULT_REDIS_CACHE_EXPIRE_TIME,
+                TimeUnit.MINUTES
+        );
+    }
+
     /**
      * 更新用户在所有群组中的头像
      *
@@ -634,6 +660,19 @@ public class GroupServiceImpl implements GroupService {
         return groupMemberDomainService.updateHeadImgByUserId(headImg, userId);
     }
 
+    /**
+     * 从数据库构建群聊消息发送上下文
+     *
+     * @param groupId 群组ID
+     * @return 群聊消息发送上下文，群组不存在或已解散时成员为空
+     */
+    private GroupSendContextVO buildGroupSendContext(Long groupId) {
+        Group group = groupDomainService.getGroupById(groupId);
+        boolean exists = group != null && !group.getDeleted();
+        List<GroupMemberVO> memberList = exists ? groupMemberDomainService.getGroupMemberVoListByGroupId(groupId) : null;
+        return GroupSendContextVO.of(groupId, exists, memberList);
+    }
+
     /**
      * 获取群组成员列表并设置在线状态
      *
@@ -0,0 +1,163 @@
+package com.lb.im.platform.message.application.archive;
+
+import com.lb.im.common.cache.lock.DistributedLock;
+import com.lb.im.common.cache.lock.factory.DistributedLockFactory;
+import com.lb.im.platform.common.model.constants.IMPlatformConstants;
+import com.lb.im.platform.common.utils.DateTimeUtils;
+import com.lb.im.platform.message.domain.service.GroupMessageDomainService;
+import com.lb.im.platform.message.domain.service.PrivateMessageDomainService;
+import com.lb.im.platform.message.domain.sharding.MessageShardTable;
+import com.lb.im.platform.message.domain.sharding.MessageShardingRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息冷热分层归档任务
+ * 按固定间隔将各热表中超过保留时长的消息分批移入归档表，热表只保留近期消息，索引深度和缓冲池占用不随总数据量增长
+ *
+ * 技术点：
+ * 1. 按主键顺序分批归档，开启雪花id时间换算时归档条件为主键范围，单批事务小，不产生大范围行锁
+ * 2. 批次之间可配置停顿，限制归档对在线写入的影响
+ * 3. 先写归档表再删热表，重复执行幂等；每次执行持有分布式锁，同一时刻只有一个实例归档，各实例不会争抢同一批行
+ * 4. 每个数据源一张归档表，热表归档到所在数据源的归档表，单批归档在一个本地事务中完成
+ */
+@Component
+@ConditionalOnProperty(name = "message.archive.enabled", havingValue = "true")
+public class MessageArchiveScheduler {
+    private final Logger logger = LoggerFactory.getLogger(MessageArchiveScheduler.class);
+
+    /**
+     * 最短保留天数，拉取离线消息最多回溯一个月，这部分消息必须留在热表
+     */
+    private static final int MIN_RETENTION_DAYS = 32;
+
+    /**
+     * 热表保留天数
+     */
+    @Value("${message.archive.retentionDays:180}")
+    private Integer retentionDays;
+
+    /**
+     * 每批归档的消息条数
+     */
+    @Value("${message.archive.batchSize:1000}")
+    private Integer batchSize;
+
+    /**
+     * 批次之间的停顿时间，单位毫秒
+     */
+    @Value("${message.archive.batchPauseMillis:50}")
+    private Long batchPauseMillis;
+
+    /**
+     * 归档任务的执行间隔，单位分钟
+     */
+    @Value("${message.archive.intervalMinutes:60}")
+    private Long intervalMinutes;
+
+    @Autowired
+    private MessageShardingRouter messageShardingRouter;
+
+    @Autowired
+    private PrivateMessageDomainService privateMessageDomainService;
+
+    @Autowired
+    private GroupMessageDomainService groupMessageDomainService;
+
+    @Autowired
+    private DistributedLockFactory distributedLockFactory;
+
+    // 归档线程
+    private ScheduledExecutorService archiveExecutor;
+
+    @PostConstruct
+    public void init() {
+        if (retentionDays < MIN_RETENTION_DAYS) {
+            logger.warn("MessageArchiveScheduler|热表保留天数:{}小于{}天，按{}天执行", retentionDays, MIN_RETENTION_DAYS, MIN_RETENTION_DAYS);
+            retentionDays = MIN_RETENTION_DAYS;
+        }
+        archiveExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "message-archive");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(intervalMinutes, 1L);
+        archiveExecutor.scheduleWithFixedDelay(this::archive, interval, interval, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (archiveExecutor != null) {
+            archiveExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 依次归档所有私聊、群聊热表，未获取到锁时说明其他实例正在归档，跳过本次执行
+     */
+    private void archive() {
+        DistributedLock lock = distributedLockFactory.getDistributedLock(IMPlatformConstants.IM_MESSAGE_ARCHIVE_LOCK_KEY);
+        try {
+            if (!lock.tryLock()) {
+                return;
+            }
+            Date cutoff = DateTimeUtils.addDays(new Date(), -retentionDays);
+            this.archiveTables("私聊消息", messageShardingRouter.getPrivateTables(),
+                               (table) -> privateMessageDomainService.archiveBatch(table, cutoff, batchSize), cutoff);
+            this.archiveTables("群聊消息", messageShardingRouter.getGroupTables(),
+                               (table) -> groupMessageDomainService.archiveBatch(table, cutoff, batchSize), cutoff);
+        } catch (Exception e) {
+            logger.error("MessageArchiveScheduler|归档任务执行失败，下次执行时继续|{}", e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void archiveTables(String name, List<MessageShardTable> tables, BatchArchiver batchArchiver, Date cutoff) {
+        int size = Math.max(batchSize, 1);
+        for (MessageShardTable table : tables) {
+            long start = System.currentTimeMillis();
+            long total = 0;
+            try {
+                int count;
+                do {
+                    count = batchArchiver.archive(table);
+                    total += count;
+                    if (count >= size && batchPauseMillis > 0) {
+                        TimeUnit.MILLISECONDS.sleep(batchPauseMillis);
+                    }
+                } while (count >= size);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("MessageArchiveScheduler|归档{}失败，下次执行时继续|热表:{}|已归档条数:{}|{}", name, table, total, e.getMessage(), e);
+                continue;
+            }
+            if (total > 0) {
+                logger.info("MessageArchiveScheduler|归档{}完成|热表:{}|归档时间点:{}|归档条数:{}|耗时(毫秒):{}",
+                            name, table, cutoff, total, System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    /**
+     * 单批归档函数，返回本批归档的消息数
+     */
+    @FunctionalInterface
+    private interface BatchArchiver {
+        int archive(MessageShardTable table);
+    }
+}
@@ -0,0 +1,50 @@
+package com.lb.im.platform.message.application.cache;
+
+import java.util.List;
+
+/**
+ * 本地好友id缓存服务接口
+ * 在消息微服务内缓存活跃用户的好友id集合，使好友关系校验成为进程内查询
+ */
+public interface FriendIdCacheService {
+
+    /**
+     * 判断friendId是否为userId的好友
+     *
+     * @param userId   用户id
+     * @param friendId 好友id
+     * @return 是好友返回true
+     */
+    boolean isFriend(Long userId, Long friendId);
+
+    /**
+     * 获取用户的好友id列表
+     *
+     * @param userId 用户id
+     * @return 好友id列表
+     */
+    List<Long> getFriendIdList(Long userId);
+
+    /**
+     * 好友关系建立，存在缓存时将好友id加入缓存
+     *
+     * @param userId   用户id
+     * @param friendId 好友id
+     */
+    void bindFriend(Long userId, Long friendId);
+
+    /**
+     * 好友关系解除，存在缓存时将好友id移出缓存
+     *
+     * @param userId   用户id
+     * @param friendId 好友id
+     */
+    void unbindFriend(Long userId, Long friendId);
+
+    /**
+     * 失效用户的好友id缓存
+     *
+     * @param userId 用户id
+     */
+    void invalidate(Long userId);
+}
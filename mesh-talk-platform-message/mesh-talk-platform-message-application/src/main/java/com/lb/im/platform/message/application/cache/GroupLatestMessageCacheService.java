@@ -0,0 +1,36 @@
+package com.lb.im.platform.message.application.cache;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 群聊最新消息id缓存服务接口
+ * 每个群组只保存一个已提交的最大消息id，群聊消息提交后更新，
+ * 标记已读和拉取未读消息时读取缓存，缓存中不存在时才查询数据库
+ */
+public interface GroupLatestMessageCacheService {
+
+    /**
+     * 群聊消息提交后更新群组的最新消息id，最新消息id只前进不回退
+     *
+     * @param groupId   群组id
+     * @param messageId 已提交的消息id
+     */
+    void updateLatestMessageId(Long groupId, Long messageId);
+
+    /**
+     * 获取群组的最新消息id，缓存中不存在时查询数据库并回填缓存
+     *
+     * @param groupId 群组id
+     * @return 最新消息id，群组没有消息时为0
+     */
+    Long getLatestMessageId(Long groupId);
+
+    /**
+     * 批量获取多个群组的最新消息id，缓存通过一次MGET获取，不存在的群组批量查询数据库并回填缓存
+     *
+     * @param groupIds 群组id集合
+     * @return key为群组id，value为最新消息id，群组没有消息时为0
+     */
+    Map<Long, Long> getLatestMessageIds(Collection<Long> groupIds);
+}
@@ -0,0 +1,44 @@
+package com.lb.im.platform.message.application.cache;
+
+import com.lb.im.platform.common.model.vo.GroupSendContextVO;
+
+/**
+ * 本地群聊消息发送上下文缓存服务接口
+ * 按群组缓存GroupSendContextVO，群成员未变更期间发送群聊消息无需远程调用
+ */
+public interface GroupSendContextCacheService {
+
+    /**
+     * 获取群聊消息发送上下文
+     *
+     * @param groupId 群组id
+     * @return 群聊消息发送上下文
+     */
+    GroupSendContextVO getGroupSendContext(Long groupId);
+
+    /**
+     * 按成员集合版本号发布发送上下文的成员快照，供精简模式的消费者解析发送时的接收者
+     * 同一缓存条目只发布一次，发布时刷新快照的过期时间
+     *
+     * @param context 群聊消息发送上下文
+     * @return 是否已发布，发布失败时调用方应在事件中携带完整的接收者列表
+     */
+    boolean publishMemberSnapshot(GroupSendContextVO context);
+
+    /**
+     * 获取指定成员集合版本的成员快照，即消息发送时的群成员
+     * 依次查找本地发送上下文、本地快照缓存和Redis，不会用当前成员代替发送时的成员
+     *
+     * @param groupId 群组id
+     * @param version 成员集合版本号
+     * @return 升序排列的成员id，快照不存在时返回null
+     */
+    long[] getMemberSnapshot(Long groupId, Long version);
+
+    /**
+     * 失效群组的发送上下文缓存
+     *
+     * @param groupId 群组id
+     */
+    void invalidate(Long groupId);
+}
@@ -0,0 +1,47 @@
+package com.lb.im.platform.message.application.cache;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 私聊已读位置缓存服务接口
+ * 每个(读者, 好友)只保存一个已读的最大消息id，标记已读为一次缓存写入，消息的已读状态在读取时由已读位置推导
+ */
+public interface PrivateReadCursorCacheService {
+
+    /**
+     * 标记读者已读好友发来的消息，已读位置只前进不回退
+     *
+     * @param userId      读者id
+     * @param friendId    好友id
+     * @param maxReadedId 已读的最大消息id
+     */
+    void markReaded(Long userId, Long friendId, Long maxReadedId);
+
+    /**
+     * 标记读者已读与好友会话中当前的全部消息
+     * 只记录标记时刻，已读的最大消息id由后台写入时按标记时刻解析，调用方线程不查询数据库
+     *
+     * @param userId   读者id
+     * @param friendId 好友id
+     */
+    void markReadedLatest(Long userId, Long friendId);
+
+    /**
+     * 获取读者对多个好友的已读位置
+     *
+     * @param userId    读者id
+     * @param friendIds 好友id集合
+     * @return key为好友id，value为已读的最大消息id，没有已读记录时为0
+     */
+    Map<Long, Long> getReadedIds(Long userId, Collection<Long> friendIds);
+
+    /**
+     * 获取多个好友对用户所发消息的已读位置
+     *
+     * @param userId    消息发送者id
+     * @param friendIds 读者（好友）id集合
+     * @return key为好友id，value为该好友已读的用户消息的最大id，没有已读记录时为0
+     */
+    Map<Long, Long> getPeerReadedIds(Long userId, Collection<Long> friendIds);
+}
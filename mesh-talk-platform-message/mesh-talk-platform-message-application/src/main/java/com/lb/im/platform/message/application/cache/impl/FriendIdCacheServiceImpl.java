@@ -0,0 +1,266 @@
+package com.lb.im.platform.message.application.cache.impl;
+
+import com.lb.im.platform.common.log.StatisticsLogger;
+import com.lb.im.platform.common.model.constants.IMPlatformConstants;
+import com.lb.im.platform.common.utils.LongIdSet;
+import com.lb.im.platform.dubbo.friend.FriendDubboService;
+import com.lb.im.platform.message.application.cache.FriendIdCacheService;
+import org.apache.dubbo.config.annotation.DubboReference;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 本地好友id缓存服务实现类
+ *
+ * 技术点：
+ * 1. 首次访问时通过FriendDubboService加载用户的全部好友id，以基本类型有序数组保存
+ * 2. 按LRU淘汰，缓存用户数有上限；每条缓存有最大存活时间，作为事件丢失时的陈旧度上限
+ * 3. 好友绑定、解绑事件到达时直接增删双方缓存中的好友id
+ * 4. 加载期间按用户记录事件版本，只有同一用户在加载期间收到事件时才放弃写入缓存，其他用户的事件不影响加载结果的缓存
+ * 5. 统计命中、加载和事件更新次数，并按固定间隔输出日志
+ */
+@Service
+public class FriendIdCacheServiceImpl implements FriendIdCacheService {
+    /**
+     * 是否开启本地好友缓存，关闭时每次调用FriendDubboService
+     */
+    @Value("${message.friend.cache.enabled:true}")
+    private Boolean enabled;
+
+    /**
+     * 缓存的最大用户数
+     */
+    @Value("${message.friend.cache.maxSize:50000}")
+    private Integer maxSize;
+
+    /**
+     * 缓存最大存活时间，单位秒
+     */
+    @Value("${message.friend.cache.expireSeconds:300}")
+    private Long expireSeconds;
+
+    @DubboReference(version = IMPlatformConstants.DEFAULT_DUBBO_VERSION, check = false)
+    private FriendDubboService friendDubboService;
+
+    // 用户id -> 好友id缓存
+    private Map<Long, FriendIdEntry> cache;
+    // 缓存锁，使用ReentrantLock而非synchronized，运行在虚拟线程上时竞争不会钉住载体线程
+    private final ReentrantLock cacheLock = new ReentrantLock();
+    // 正在加载的用户 -> 加载状态，只保存加载中的用户，由cacheLock保护
+    private final Map<Long, LoadState> loadStates = new HashMap<>();
+
+    // 缓存命中统计
+    private final StatisticsLogger statistics = new StatisticsLogger(FriendIdCacheServiceImpl.class, "FriendIdCacheService|本地好友缓存统计");
+    // 命中次数
+    private final LongAdder hitCount = statistics.counter("命中");
+    // 加载次数
+    private final LongAdder loadCount = statistics.counter("加载");
+    // 事件更新次数
+    private final LongAdder eventCount = statistics.counter("事件更新");
+
+    @PostConstruct
+    public void init() {
+        statistics.gauge("命中率", this::getHitRate);
+        statistics.gauge("缓存用户数", this::getCacheSize);
+        final int capacity = Math.max(maxSize, 1);
+        cache = new LinkedHashMap<Long, FriendIdEntry>(16, 0.75F, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, FriendIdEntry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    @Override
+    public boolean isFriend(Long userId, Long friendId) {
+        if (!this.isEnabled()) {
+            return Boolean.TRUE.equals(friendDubboService.isFriend(userId, friendId));
+        }
+        return this.getFriendIds(userId).contains(friendId);
+    }
+
+    @Override
+    public List<Long> getFriendIdList(Long userId) {
+        if (!this.isEnabled()) {
+            return friendDubboService.getFriendIdList(userId);
+        }
+        return this.getFriendIds(userId).toList();
+    }
+
+    @Override
+    public void bindFriend(Long userId, Long friendId) {
+        if (userId == null || friendId == null) {
+            return;
+        }
+        cacheLock.lock();
+        try {
+            this.markChanged(userId);
+            FriendIdEntry entry = cache.get(userId);
+            if (entry != null) {
+                cache.put(userId, new FriendIdEntry(entry.friendIds.add(friendId), entry.loadTime));
+            }
+        } finally {
+            cacheLock.unlock();
+        }
+        eventCount.increment();
+    }
+
+    @Override
+    public void unbindFriend(Long userId, Long friendId) {
+        if (userId == null || friendId == null) {
+            return;
+        }
+        cacheLock.lock();
+        try {
+            this.markChanged(userId);
+            FriendIdEntry entry = cache.get(userId);
+            if (entry != null) {
+                cache.put(userId, new FriendIdEntry(entry.friendIds.remove(friendId), entry.loadTime));
+            }
+        } finally {
+            cacheLock.unlock();
+        }
+        eventCount.increment();
+    }
+
+    @Override
+    public void invalidate(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        cacheLock.lock();
+        try {
+            this.markChanged(userId);
+            cache.remove(userId);
+        } finally {
+            cacheLock.unlock();
+        }
+        eventCount.increment();
+    }
+
+    /**
+     * 获取用户的好友id集合，缓存不存在或已过期时重新加载
+     */
+    private LongIdSet getFriendIds(Long userId) {
+        long now = System.currentTimeMillis();
+        FriendIdEntry entry;
+        cacheLock.lock();
+        try {
+            entry = cache.get(userId);
+        } finally {
+            cacheLock.unlock();
+        }
+        if (entry != null && now - entry.loadTime < TimeUnit.SECONDS.toMillis(expireSeconds)) {
+            hitCount.increment();
+            statistics.logIfDue();
+            return entry.friendIds;
+        }
+        LoadState loadState;
+        long version;
+        cacheLock.lock();
+        try {
+            loadState = loadStates.computeIfAbsent(userId, (key) -> new LoadState());
+            loadState.loaders++;
+            version = loadState.version;
+        } finally {
+            cacheLock.unlock();
+        }
+        LongIdSet friendIds = null;
+        try {
+            friendIds = LongIdSet.of(friendDubboService.getFriendIdList(userId));
+            loadCount.increment();
+        } finally {
+            cacheLock.lock();
+            try {
+                // 加载期间该用户没有收到事件时才写入缓存，避免旧数据覆盖事件更新
+                if (friendIds != null && version == loadState.version) {
+                    cache.put(userId, new FriendIdEntry(friendIds, now));
+                }
+                if (--loadState.loaders == 0) {
+                    loadStates.remove(userId);
+                }
+            } finally {
+                cacheLock.unlock();
+            }
+        }
+        statistics.logIfDue();
+        return friendIds;
+    }
+
+    /**
+     * 用户的好友关系发生变化，正在加载该用户时递增加载版本，调用方需持有cacheLock
+     */
+    private void markChanged(Long userId) {
+        LoadState loadState = loadStates.get(userId);
+        if (loadState != null) {
+            loadState.version++;
+        }
+    }
+
+    private boolean isEnabled() {
+        return Boolean.TRUE.equals(enabled);
+    }
+
+    private int getCacheSize() {
+        cacheLock.lock();
+        try {
+            return cache.size();
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    public long getEventCount() {
+        return eventCount.sum();
+    }
+
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getLoadCount();
+        return total == 0 ? 0D : (double) hits / total;
+    }
+
+    /**
+     * 用户的加载状态
+     */
+    private static class LoadState {
+        // 加载期间收到的事件数
+        private long version;
+        // 正在加载该用户的调用数
+        private int loaders;
+    }
+
+    /**
+     * 缓存条目
+     */
+    private static class FriendIdEntry {
+        // 好友id集合
+        private final LongIdSet friendIds;
+        // 加载时间，事件更新不刷新加载时间，保证到期后一定重新加载
+        private final long loadTime;
+
+        private FriendIdEntry(LongIdSet friendIds, long loadTime) {
+            this.friendIds = friendIds;
+            this.loadTime = loadTime;
+        }
+    }
+}
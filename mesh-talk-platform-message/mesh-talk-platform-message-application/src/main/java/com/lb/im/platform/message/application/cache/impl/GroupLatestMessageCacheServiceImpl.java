@@ -0,0 +1,165 @@
+package com.lb.im.platform.message.application.cache.impl;
+
+import cn.hutool.core.collection.CollectionUtil;
+import cn.hutool.core.util.StrUtil;
+import com.lb.im.platform.common.log.StatisticsLogger;
+import com.lb.im.platform.common.model.constants.IMPlatformConstants;
+import com.lb.im.platform.message.application.cache.GroupLatestMessageCacheService;
+import com.lb.im.platform.message.domain.service.GroupMessageDomainService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 群聊最新消息id缓存服务实现类
+ *
+ * 技术点：
+ * 1. 最新消息id以十进制字符串保存，通过Lua脚本原子地比较并写入，并发提交时不会被较小的消息id覆盖
+ * 2. 雪花id超过Lua数值的精度范围，脚本中按字符串长度和字典序比较，不转换为数值
+ * 3. 批量获取通过一次MGET完成，请求次数与群组数量无关
+ * 4. 缓存不存在时按分表批量查询数据库，回填同样使用比较写入，回填的旧值不会覆盖期间提交的新消息id；
+ *    没有消息的群组回填0，避免重复查询数据库，0只短时间缓存
+ * 5. 更新失败时删除该群组的缓存，读取方回源数据库，不会因缓存落后而漏拉消息；
+ *    删除也失败时由过期时间兜底，缓存落后的时长不超过过期时间
+ */
+@Service
+public class GroupLatestMessageCacheServiceImpl implements GroupLatestMessageCacheService {
+    private final Logger logger = LoggerFactory.getLogger(GroupLatestMessageCacheServiceImpl.class);
+
+    /**
+     * 当前值不存在或小于参数时写入并设置过期时间（ARGV[2]，单位秒），返回是否写入
+     */
+    private static final String SET_IF_GREATER_LUA =
+            "local current = redis.call('get', KEYS[1]) " +
+            "if (not current) or string.len(current) < string.len(ARGV[1]) " +
+            "or (string.len(current) == string.len(ARGV[1]) and current < ARGV[1]) then " +
+            "redis.call('set', KEYS[1], ARGV[1], 'EX', ARGV[2]) return 1 end " +
+            "return 0";
+
+    private static final DefaultRedisScript<Long> SET_IF_GREATER_SCRIPT = new DefaultRedisScript<>(SET_IF_GREATER_LUA, Long.class);
+
+    /**
+     * 最新消息id的缓存过期时间，单位秒
+     */
+    @Value("${message.group.latest.expireSeconds:86400}")
+    private Long expireSeconds;
+
+    /**
+     * 没有消息的群组缓存0的过期时间，单位秒
+     */
+    @Value("${message.group.latest.emptyExpireSeconds:60}")
+    private Long emptyExpireSeconds;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private GroupMessageDomainService groupMessageDomainService;
+
+    // 缓存命中统计
+    private final StatisticsLogger statistics = new StatisticsLogger(GroupLatestMessageCacheServiceImpl.class, "GroupLatestMessageCacheServiceImpl");
+    // 读取的群组数
+    private final LongAdder readCount = statistics.counter("读取群组数");
+    // 回源数据库的群组数
+    private final LongAdder loadCount = statistics.counter("回源数据库群组数");
+
+    @Override
+    public void updateLatestMessageId(Long groupId, Long messageId) {
+        if (groupId == null || messageId == null) {
+            return;
+        }
+        String key = this.getKey(groupId);
+        try {
+            stringRedisTemplate.execute(SET_IF_GREATER_SCRIPT, Collections.singletonList(key), String.valueOf(messageId), String.valueOf(expireSeconds));
+        } catch (Exception e) {
+            logger.error("GroupLatestMessageCacheServiceImpl|更新群聊最新消息id失败|群组id:{}|消息id:{}|{}", groupId, messageId, e.getMessage());
+            try {
+                stringRedisTemplate.delete(key);
+            } catch (Exception ex) {
+                logger.error("GroupLatestMessageCacheServiceImpl|删除群聊最新消息id失败|群组id:{}|{}", groupId, ex.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public Long getLatestMessageId(Long groupId) {
+        return this.getLatestMessageIds(Collections.singletonList(groupId)).getOrDefault(groupId, 0L);
+    }
+
+    @Override
+    public Map<Long, Long> getLatestMessageIds(Collection<Long> groupIds) {
+        Map<Long, Long> latestIds = new HashMap<>();
+        if (CollectionUtil.isEmpty(groupIds)) {
+            return latestIds;
+        }
+        List<Long> ids = new ArrayList<>(groupIds);
+        List<String> keys = new ArrayList<>(ids.size());
+        for (Long groupId : ids) {
+            keys.add(this.getKey(groupId));
+        }
+        List<String> values = null;
+        try {
+            values = stringRedisTemplate.opsForValue().multiGet(keys);
+        } catch (Exception e) {
+            logger.error("GroupLatestMessageCacheServiceImpl|批量获取群聊最新消息id失败，查询数据库|群组数:{}|{}", ids.size(), e.getMessage());
+        }
+        List<Long> missIds = new ArrayList<>();
+        for (int idx = 0; idx < ids.size(); idx++) {
+            String value = values == null ? null : values.get(idx);
+            if (StrUtil.isEmpty(value)) {
+                missIds.add(ids.get(idx));
+            } else {
+                latestIds.put(ids.get(idx), Long.parseLong(value));
+            }
+        }
+        readCount.add(ids.size());
+        if (!missIds.isEmpty()) {
+            latestIds.putAll(this.loadLatestMessageIds(missIds));
+        }
+        statistics.logIfDue();
+        return latestIds;
+    }
+
+    /**
+     * 从数据库批量加载最新消息id，并通过一次管道回填缓存
+     */
+    private Map<Long, Long> loadLatestMessageIds(List<Long> groupIds) {
+        loadCount.add(groupIds.size());
+        Map<Long, Long> maxMessageIds = groupMessageDomainService.getMaxMessageIds(groupIds);
+        Map<Long, Long> latestIds = new HashMap<>(groupIds.size());
+        for (Long groupId : groupIds) {
+            latestIds.put(groupId, maxMessageIds.getOrDefault(groupId, 0L));
+        }
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                latestIds.forEach((groupId, messageId) ->
+                        stringConnection.eval(SET_IF_GREATER_LUA, ReturnType.INTEGER, 1, this.getKey(groupId), String.valueOf(messageId),
+                                              String.valueOf(messageId > 0 ? expireSeconds : emptyExpireSeconds)));
+                return null;
+            });
+        } catch (Exception e) {
+            logger.error("GroupLatestMessageCacheServiceImpl|回填群聊最新消息id失败|群组数:{}|{}", groupIds.size(), e.getMessage());
+        }
+        return latestIds;
+    }
+
+    private String getKey(Long groupId) {
+        return IMPlatformConstants.getKey(IMPlatformConstants.PLATFORM_REDIS_GROUP_LATEST_MESSAGE_ID_KEY, String.valueOf(groupId));
+    }
+}
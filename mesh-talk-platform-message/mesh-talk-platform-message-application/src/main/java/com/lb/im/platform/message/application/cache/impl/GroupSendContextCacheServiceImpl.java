@@ -0,0 +1,285 @@
+package com.lb.im.platform.message.application.cache.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.lb.im.platform.common.log.StatisticsLogger;
+import com.lb.im.platform.common.model.constants.IMPlatformConstants;
+import com.lb.im.platform.common.model.vo.GroupSendContextVO;
+import com.lb.im.platform.dubbo.group.GroupDubboService;
+import com.lb.im.platform.message.application.cache.GroupSendContextCacheService;
+import org.apache.dubbo.config.annotation.DubboReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 本地群聊消息发送上下文缓存服务实现类
+ *
+ * 技术点：
+ * 1. 缓存未命中时通过GroupDubboService.getGroupSendContext一次获取群组的全部发送数据
+ * 2. 按LRU淘汰，缓存群组数有上限；每条缓存有最大存活时间，作为事件丢失时的陈旧度上限
+ * 3. 群组事件到达时失效本地缓存；失效后的一段时间内加载的数据可能来自群组微服务尚未删除的旧缓存，
+ *    因此只保留到该时间窗口结束，之后重新加载
+ * 4. 精简模式下发送方按成员集合版本号将成员快照写入Redis，每个缓存条目只写一次；
+ *    消费方按版本号解析发送时的成员，本地发送上下文版本一致时直接使用，否则查找本地快照缓存和Redis，
+ *    成员变更后不会把消息投递给发送之后才入群的成员
+ * 5. 统计命中和加载次数，并按固定间隔输出日志
+ */
+@Service
+public class GroupSendContextCacheServiceImpl implements GroupSendContextCacheService {
+    private final Logger logger = LoggerFactory.getLogger(GroupSendContextCacheServiceImpl.class);
+
+    /**
+     * 失效后的数据稳定窗口，单位毫秒
+     */
+    private static final long INVALIDATE_SETTLE_MILLIS = 3000L;
+
+    /**
+     * 是否开启本地群聊消息发送上下文缓存，关闭时每次调用GroupDubboService
+     */
+    @Value("${message.group.cache.enabled:true}")
+    private Boolean enabled;
+
+    /**
+     * 缓存的最大群组数
+     */
+    @Value("${message.group.cache.maxSize:10000}")
+    private Integer maxSize;
+
+    /**
+     * 缓存最大存活时间，单位秒
+     */
+    @Value("${message.group.cache.expireSeconds:300}")
+    private Long expireSeconds;
+
+    /**
+     * 成员快照在Redis中的过期时间，单位秒，需覆盖消息在队列中重试的最长时间
+     */
+    @Value("${message.group.event.snapshotExpireSeconds:86400}")
+    private Long snapshotExpireSeconds;
+
+    @DubboReference(version = IMPlatformConstants.DEFAULT_DUBBO_VERSION, check = false)
+    private GroupDubboService groupDubboService;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 群组id -> 发送上下文
+    private Map<Long, GroupSendContextEntry> cache;
+    // 群组id -> 最近一次失效时间
+    private Map<Long, Long> invalidateTimes;
+    // 群组id:成员集合版本号 -> 成员id，消费方从Redis读取的成员快照
+    private Map<String, long[]> snapshots;
+    // 保护cache、invalidateTimes和snapshots的锁
+    private final ReentrantLock cacheLock = new ReentrantLock();
+
+    // 缓存命中统计
+    private final StatisticsLogger statistics = new StatisticsLogger(GroupSendContextCacheServiceImpl.class, "GroupSendContextCacheService|本地群聊发送上下文缓存统计");
+    // 命中次数
+    private final LongAdder hitCount = statistics.counter("命中");
+    // 加载次数
+    private final LongAdder loadCount = statistics.counter("加载");
+
+    @PostConstruct
+    public void init() {
+        statistics.gauge("命中率", () -> {
+            long hits = hitCount.sum();
+            long loads = loadCount.sum();
+            return hits + loads == 0 ? 0D : (double) hits / (hits + loads);
+        });
+        final int capacity = Math.max(maxSize, 1);
+        cache = new LinkedHashMap<Long, GroupSendContextEntry>(16, 0.75F, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, GroupSendContextEntry> eldest) {
+                return size() > capacity;
+            }
+        };
+        invalidateTimes = new LinkedHashMap<Long, Long>(16, 0.75F, false) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                return size() > capacity;
+            }
+        };
+        snapshots = new LinkedHashMap<String, long[]>(16, 0.75F, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    @Override
+    public GroupSendContextVO getGroupSendContext(Long groupId) {
+        if (!Boolean.TRUE.equals(enabled)) {
+            return groupDubboService.getGroupSendContext(groupId);
+        }
+        long now = System.currentTimeMillis();
+        GroupSendContextEntry entry;
+        cacheLock.lock();
+        try {
+            entry = cache.get(groupId);
+        } finally {
+            cacheLock.unlock();
+        }
+        if (entry != null && now < entry.expireTime) {
+            hitCount.increment();
+            statistics.logIfDue();
+            return entry.context;
+        }
+        GroupSendContextVO context = groupDubboService.getGroupSendContext(groupId);
+        loadCount.increment();
+        if (context != null) {
+            cacheLock.lock();
+            try {
+                long expireTime = now + TimeUnit.SECONDS.toMillis(expireSeconds);
+                Long invalidateTime = invalidateTimes.get(groupId);
+                if (invalidateTime != null && now - invalidateTime < INVALIDATE_SETTLE_MILLIS) {
+                    expireTime = Math.min(expireTime, invalidateTime + INVALIDATE_SETTLE_MILLIS);
+                }
+                cache.put(groupId, new GroupSendContextEntry(context, expireTime));
+            } finally {
+                cacheLock.unlock();
+            }
+        }
+        statistics.logIfDue();
+        return context;
+    }
+
+    @Override
+    public boolean publishMemberSnapshot(GroupSendContextVO context) {
+        if (context == null || context.getGroupId() == null || context.getVersion() == null) {
+            return false;
+        }
+        GroupSendContextEntry entry = this.getEntry(context);
+        if (entry != null && entry.published) {
+            return true;
+        }
+        long[] memberIds = context.getMemberIds() == null ? new long[0] : context.getMemberIds();
+        StringBuilder value = new StringBuilder(memberIds.length * 20);
+        for (long memberId : memberIds) {
+            if (value.length() > 0) {
+                value.append(',');
+            }
+            value.append(memberId);
+        }
+        try {
+            stringRedisTemplate.opsForValue().set(this.getSnapshotKey(context.getGroupId(), context.getVersion()), value.toString(),
+                                                  snapshotExpireSeconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            logger.error("GroupSendContextCacheService|发布群成员快照失败|群组id:{}|版本号:{}|{}", context.getGroupId(), context.getVersion(), e.getMessage());
+            return false;
+        }
+        if (entry != null) {
+            entry.published = true;
+        }
+        return true;
+    }
+
+    @Override
+    public long[] getMemberSnapshot(Long groupId, Long version) {
+        if (groupId == null || version == null) {
+            return null;
+        }
+        String snapshotKey = groupId + ":" + version;
+        cacheLock.lock();
+        try {
+            GroupSendContextEntry entry = cache.get(groupId);
+            if (entry != null && version.equals(entry.context.getVersion())) {
+                hitCount.increment();
+                return entry.context.getMemberIds();
+            }
+            long[] memberIds = snapshots.get(snapshotKey);
+            if (memberIds != null) {
+                hitCount.increment();
+                return memberIds;
+            }
+        } finally {
+            cacheLock.unlock();
+        }
+        String value;
+        try {
+            value = stringRedisTemplate.opsForValue().get(this.getSnapshotKey(groupId, version));
+        } catch (Exception e) {
+            logger.error("GroupSendContextCacheService|读取群成员快照失败|群组id:{}|版本号:{}|{}", groupId, version, e.getMessage());
+            return null;
+        }
+        loadCount.increment();
+        if (value == null) {
+            return null;
+        }
+        long[] memberIds = StrUtil.isEmpty(value) ? new long[0] : Arrays.stream(value.split(",")).mapToLong(Long::parseLong).toArray();
+        cacheLock.lock();
+        try {
+            snapshots.put(snapshotKey, memberIds);
+        } finally {
+            cacheLock.unlock();
+        }
+        statistics.logIfDue();
+        return memberIds;
+    }
+
+    @Override
+    public void invalidate(Long groupId) {
+        if (groupId == null) {
+            return;
+        }
+        cacheLock.lock();
+        try {
+            cache.remove(groupId);
+            invalidateTimes.remove(groupId);
+            invalidateTimes.put(groupId, System.currentTimeMillis());
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    /**
+     * 获取持有该发送上下文实例的缓存条目
+     */
+    private GroupSendContextEntry getEntry(GroupSendContextVO context) {
+        cacheLock.lock();
+        try {
+            GroupSendContextEntry entry = cache.get(context.getGroupId());
+            return entry != null && entry.context == context ? entry : null;
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    private String getSnapshotKey(Long groupId, Long version) {
+        return IMPlatformConstants.getKey(IMPlatformConstants.PLATFORM_REDIS_GROUP_MEMBER_SNAPSHOT_KEY, groupId + ":" + version);
+    }
+
+    /**
+     * 缓存条目
+     */
+    private static class GroupSendContextEntry {
+        // 发送上下文
+        private final GroupSendContextVO context;
+        // 过期时间
+        private final long expireTime;
+        // 成员快照是否已发布到Redis
+        private volatile boolean published;
+
+        private GroupSendContextEntry(GroupSendContextVO context, long expireTime) {
+            this.context = context;
+            this.expireTime = expireTime;
+        }
+    }
+}
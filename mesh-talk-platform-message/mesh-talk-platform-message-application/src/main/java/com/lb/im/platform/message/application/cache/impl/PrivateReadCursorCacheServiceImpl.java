@@ -0,0 +1,307 @@
+package com.lb.im.platform.message.application.cache.impl;
+
+import cn.hutool.core.collection.CollectionUtil;
+import cn.hutool.core.util.StrUtil;
+import com.lb.im.platform.common.log.StatisticsLogger;
+import com.lb.im.platform.common.model.constants.IMPlatformConstants;
+import com.lb.im.platform.common.model.entity.PrivateReadCursor;
+import com.lb.im.platform.message.application.cache.PrivateReadCursorCacheService;
+import com.lb.im.platform.message.domain.service.PrivateMessageDomainService;
+import com.lb.im.platform.message.domain.service.PrivateReadCursorDomainService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 私聊已读位置缓存服务实现类
+ *
+ * 技术点：
+ * 1. 已读位置保存在Redis，与群聊已读位置一致，标记已读只写一个key，不更新任何消息行；
+ *    通过Lua脚本原子地比较并写入，并发标记已读或回填时已读位置不会回退
+ * 2. 变更的已读位置在内存中按(读者, 好友)合并，只保留最大值，由后台线程按固定间隔批量写入已读位置表
+ * 3. Redis中不存在时回源已读位置表并回填Redis，Redis数据丢失不影响已读状态
+ * 4. 批量写入失败时变更合并回内存，下次继续写入；应用关闭前写入剩余变更
+ * 5. 未指定已读位置的标记只记录标记时刻，由后台线程在写入前按标记时刻解析会话的最大消息id并写入Redis，
+ *    标记已读的请求不查询数据库；解析前Redis中的已读位置落后，落后时长不超过写入间隔
+ */
+@Service
+public class PrivateReadCursorCacheServiceImpl implements PrivateReadCursorCacheService {
+    private final Logger logger = LoggerFactory.getLogger(PrivateReadCursorCacheServiceImpl.class);
+
+    /**
+     * 当前已读位置不存在或小于参数时写入，返回是否写入
+     * 消息id超过Lua数值的精度范围，按字符串长度和字典序比较
+     */
+    private static final String SET_IF_GREATER_LUA =
+            "local current = redis.call('get', KEYS[1]) " +
+            "if (not current) or string.len(current) < string.len(ARGV[1]) " +
+            "or (string.len(current) == string.len(ARGV[1]) and current < ARGV[1]) then " +
+            "redis.call('set', KEYS[1], ARGV[1]) return 1 end " +
+            "return 0";
+
+    private static final DefaultRedisScript<Long> SET_IF_GREATER_SCRIPT = new DefaultRedisScript<>(SET_IF_GREATER_LUA, Long.class);
+
+    /**
+     * 已读位置批量写入数据库的间隔，单位毫秒
+     */
+    @Value("${message.private.read.flushIntervalMillis:1000}")
+    private Long flushIntervalMillis;
+
+    /**
+     * 单次批量写入的最大条数
+     */
+    @Value("${message.private.read.flushBatchSize:500}")
+    private Integer flushBatchSize;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private PrivateReadCursorDomainService privateReadCursorDomainService;
+
+    @Autowired
+    private PrivateMessageDomainService privateMessageDomainService;
+
+    // 待写入数据库的已读位置，key为 读者id:好友id
+    private final Map<String, PrivateReadCursor> dirtyCursors = new ConcurrentHashMap<>();
+    // 待解析已读位置的标记，key为 读者id:好友id，只保留最晚的标记时刻
+    private final Map<String, PrivateReadCursor> latestMarks = new ConcurrentHashMap<>();
+    // 写入线程
+    private ScheduledExecutorService flushExecutor;
+
+    // 已读位置写入统计
+    private final StatisticsLogger statistics = new StatisticsLogger(PrivateReadCursorCacheServiceImpl.class, "PrivateReadCursorCacheServiceImpl");
+    // 标记已读次数
+    private final LongAdder markCount = statistics.counter("标记已读次数");
+    // 写入数据库的已读位置条数
+    private final LongAdder flushRowCount = statistics.counter("写入数据库条数");
+    // 回源数据库的次数
+    private final LongAdder loadCount = statistics.counter("回源数据库次数");
+    // 后台解析已读位置的会话数
+    private final LongAdder resolveCount = statistics.counter("解析已读位置次数");
+
+    @PostConstruct
+    public void init() {
+        statistics.gauge("待写入条数", dirtyCursors::size);
+        statistics.gauge("待解析条数", latestMarks::size);
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "private-read-cursor-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(flushIntervalMillis, 10L);
+        flushExecutor.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+            try {
+                flushExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.flush();
+    }
+
+    @Override
+    public void markReaded(Long userId, Long friendId, Long maxReadedId) {
+        if (userId == null || friendId == null || maxReadedId == null) {
+            return;
+        }
+        markCount.increment();
+        String key = this.getCursorKey(userId, friendId);
+        String redisKey = IMPlatformConstants.getKey(IMPlatformConstants.PLATFORM_REDIS_PRIVATE_READED_POSITION_KEY, key);
+        stringRedisTemplate.execute(SET_IF_GREATER_SCRIPT, Collections.singletonList(redisKey), String.valueOf(maxReadedId));
+        this.mergeDirty(key, new PrivateReadCursor(userId, friendId, maxReadedId, new Date()));
+    }
+
+    @Override
+    public void markReadedLatest(Long userId, Long friendId) {
+        if (userId == null || friendId == null) {
+            return;
+        }
+        markCount.increment();
+        this.mergeLatestMark(this.getCursorKey(userId, friendId), new PrivateReadCursor(userId, friendId, null, new Date()));
+    }
+
+    @Override
+    public Map<Long, Long> getReadedIds(Long userId, Collection<Long> friendIds) {
+        return this.getCursors(friendIds, (friendId) -> this.getCursorKey(userId, friendId),
+                               (missIds) -> privateReadCursorDomainService.getReadCursorsOfReader(userId, missIds),
+                               PrivateReadCursor::getFriendId);
+    }
+
+    @Override
+    public Map<Long, Long> getPeerReadedIds(Long userId, Collection<Long> friendIds) {
+        return this.getCursors(friendIds, (friendId) -> this.getCursorKey(friendId, userId),
+                               (missIds) -> privateReadCursorDomainService.getReadCursorsOfFriend(userId, missIds),
+                               PrivateReadCursor::getUserId);
+    }
+
+    /**
+     * 批量获取已读位置，Redis中不存在的回源数据库并回填Redis
+     * 回填同样使用比较写入，回源期间标记的更大已读位置不会被数据库中的旧值覆盖
+     *
+     * @param friendIds    好友id集合
+     * @param keyFunction  好友id对应的已读位置key
+     * @param loader       按好友id列表查询数据库
+     * @param idExtractor  从已读位置记录中取出好友id
+     * @return key为好友id，value为已读的最大消息id
+     */
+    private Map<Long, Long> getCursors(Collection<Long> friendIds, Function<Long, String> keyFunction,
+                                       Function<List<Long>, List<PrivateReadCursor>> loader, Function<PrivateReadCursor, Long> idExtractor) {
+        Map<Long, Long> readedIds = new HashMap<>();
+        if (CollectionUtil.isEmpty(friendIds)) {
+            return readedIds;
+        }
+        List<Long> ids = new ArrayList<>(friendIds);
+        List<String> redisKeys = new ArrayList<>(ids.size());
+        for (Long friendId : ids) {
+            redisKeys.add(IMPlatformConstants.getKey(IMPlatformConstants.PLATFORM_REDIS_PRIVATE_READED_POSITION_KEY, keyFunction.apply(friendId)));
+        }
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(redisKeys);
+        List<Long> missIds = new ArrayList<>();
+        for (int idx = 0; idx < ids.size(); idx++) {
+            String value = values == null ? null : values.get(idx);
+            if (StrUtil.isEmpty(value)) {
+                missIds.add(ids.get(idx));
+                readedIds.put(ids.get(idx), 0L);
+            } else {
+                readedIds.put(ids.get(idx), Long.parseLong(value));
+            }
+        }
+        if (!missIds.isEmpty()) {
+            loadCount.increment();
+            List<PrivateReadCursor> cursors = loader.apply(missIds);
+            for (PrivateReadCursor cursor : cursors) {
+                readedIds.put(idExtractor.apply(cursor), cursor.getMaxReadedId());
+            }
+            if (!cursors.isEmpty()) {
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                    for (PrivateReadCursor cursor : cursors) {
+                        String redisKey = IMPlatformConstants.getKey(IMPlatformConstants.PLATFORM_REDIS_PRIVATE_READED_POSITION_KEY,
+                                                                     keyFunction.apply(idExtractor.apply(cursor)));
+                        stringConnection.eval(SET_IF_GREATER_LUA, ReturnType.INTEGER, 1, redisKey, String.valueOf(cursor.getMaxReadedId()));
+                    }
+                    return null;
+                });
+            }
+        }
+        return readedIds;
+    }
+
+    /**
+     * 将已读位置变更合并到待写入集合，同一(读者, 好友)只保留最大的已读位置
+     */
+    private void mergeDirty(String key, PrivateReadCursor cursor) {
+        dirtyCursors.merge(key, cursor, (oldCursor, newCursor) -> oldCursor.getMaxReadedId() >= newCursor.getMaxReadedId() ? oldCursor : newCursor);
+    }
+
+    /**
+     * 合并待解析的标记，同一(读者, 好友)只保留最晚的标记时刻
+     */
+    private void mergeLatestMark(String key, PrivateReadCursor cursor) {
+        latestMarks.merge(key, cursor, (oldCursor, newCursor) -> oldCursor.getUpdateTime().after(newCursor.getUpdateTime()) ? oldCursor : newCursor);
+    }
+
+    /**
+     * 解析待解析标记的已读位置：按标记时刻查询会话的最大消息id，写入Redis并合并到待写入集合
+     * 标记之后发送的消息不会被计为已读；解析失败的标记放回，下次继续解析
+     */
+    private void resolveLatestMarks() {
+        Iterator<String> iterator = latestMarks.keySet().iterator();
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            PrivateReadCursor mark = latestMarks.remove(key);
+            if (mark == null) {
+                continue;
+            }
+            try {
+                Long maxReadedId = privateMessageDomainService.getMaxMessageId(mark.getUserId(), mark.getFriendId(), mark.getUpdateTime());
+                resolveCount.increment();
+                if (maxReadedId == null) {
+                    continue;
+                }
+                String redisKey = IMPlatformConstants.getKey(IMPlatformConstants.PLATFORM_REDIS_PRIVATE_READED_POSITION_KEY, key);
+                stringRedisTemplate.execute(SET_IF_GREATER_SCRIPT, Collections.singletonList(redisKey), String.valueOf(maxReadedId));
+                this.mergeDirty(key, new PrivateReadCursor(mark.getUserId(), mark.getFriendId(), maxReadedId, mark.getUpdateTime()));
+            } catch (Exception e) {
+                logger.error("PrivateReadCursorCacheServiceImpl|解析已读位置失败，稍后重试|读者id:{}|好友id:{}", mark.getUserId(), mark.getFriendId(), e);
+                this.mergeLatestMark(key, mark);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 解析待解析的标记，再将待写入的已读位置分批写入数据库
+     */
+    private void flush() {
+        try {
+            this.resolveLatestMarks();
+            List<PrivateReadCursor> batch = new ArrayList<>();
+            Iterator<String> iterator = dirtyCursors.keySet().iterator();
+            while (iterator.hasNext()) {
+                PrivateReadCursor cursor = dirtyCursors.remove(iterator.next());
+                if (cursor == null) {
+                    continue;
+                }
+                batch.add(cursor);
+                if (batch.size() >= Math.max(flushBatchSize, 1)) {
+                    this.flushBatch(batch);
+                    batch = new ArrayList<>();
+                }
+            }
+            if (!batch.isEmpty()) {
+                this.flushBatch(batch);
+            }
+            statistics.logIfDue();
+        } catch (Exception e) {
+            logger.error("PrivateReadCursorCacheServiceImpl|写入已读位置异常|{}", e.getMessage(), e);
+        }
+    }
+
+    private void flushBatch(List<PrivateReadCursor> batch) {
+        try {
+            privateReadCursorDomainService.batchSaveMax(batch);
+            flushRowCount.add(batch.size());
+        } catch (Exception e) {
+            logger.error("PrivateReadCursorCacheServiceImpl|批量写入已读位置失败，稍后重试|条数:{}|{}", batch.size(), e.getMessage());
+            for (PrivateReadCursor cursor : batch) {
+                this.mergeDirty(this.getCursorKey(cursor.getUserId(), cursor.getFriendId()), cursor);
+            }
+        }
+    }
+
+    private String getCursorKey(Long userId, Long friendId) {
+        return userId + ":" + friendId;
+    }
+}
@@ -0,0 +1,107 @@
+package com.lb.im.platform.message.application.consumer;
+
+import com.lb.im.platform.common.log.HotPathLogger;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.common.message.MessageExt;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 批量消费的按条确认
+ *
+ * 技术点：
+ * 1. 并发消费时，推送失败的消息由消费者逐条发回重试队列，再通过ackIndex确认整批，已推送的消息不会重新投递；
+ *    某条消息发回失败时ackIndex停在它之前，由容器按原有方式重新投递它及之后的消息
+ * 2. 已推送的消息id记录在有界的本地记录中，顺序消费挂起队列重新投递整批、或并发消费兜底重新投递时，
+ *    已推送的消息直接跳过，只重试推送失败的会话
+ */
+final class BatchConsumeSupport {
+
+    /**
+     * 已推送消息记录的最大条数
+     */
+    private static final int PUSHED_RECORD_CAPACITY = 65536;
+
+    private final HotPathLogger logger;
+
+    // 已推送的消息id，按插入顺序淘汰，由pushedLock保护
+    private final Map<Long, Boolean> pushedIds = new LinkedHashMap<Long, Boolean>(16, 0.75F, false) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > PUSHED_RECORD_CAPACITY;
+        }
+    };
+    // 记录锁，使用ReentrantLock而非synchronized，运行在虚拟线程上时竞争不会钉住载体线程
+    private final ReentrantLock pushedLock = new ReentrantLock();
+
+    BatchConsumeSupport(HotPathLogger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * 消息是否已被本实例推送过
+     */
+    boolean isPushed(Long messageId) {
+        pushedLock.lock();
+        try {
+            return pushedIds.containsKey(messageId);
+        } finally {
+            pushedLock.unlock();
+        }
+    }
+
+    /**
+     * 记录推送成功的消息
+     */
+    void markPushed(List<Long> messageIds) {
+        if (messageIds.isEmpty()) {
+            return;
+        }
+        pushedLock.lock();
+        try {
+            for (Long messageId : messageIds) {
+                pushedIds.put(messageId, Boolean.TRUE);
+            }
+        } finally {
+            pushedLock.unlock();
+        }
+    }
+
+    /**
+     * 并发消费的按条确认：推送失败的消息逐条发回重试队列，其余消息确认消费成功
+     *
+     * @param consumer 消费者
+     * @param messages 本批次的消息
+     * @param failed   推送失败的消息在批次中的下标
+     * @param context  并发消费上下文
+     * @return 消费状态
+     */
+    ConsumeConcurrentlyStatus ackConcurrently(DefaultMQPushConsumer consumer, List<MessageExt> messages, BitSet failed,
+                                              ConsumeConcurrentlyContext context) {
+        int ackIndex = messages.size() - 1;
+        for (int i = failed.nextSetBit(0); i >= 0; i = failed.nextSetBit(i + 1)) {
+            MessageExt message = messages.get(i);
+            try {
+                consumer.sendMessageBack(message, context.getDelayLevelWhenNextConsume(), context.getMessageQueue().getBrokerName());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                ackIndex = i - 1;
+                break;
+            } catch (Exception e) {
+                logger.error("rocketmq|batchConsumer|推送失败的消息发回重试队列失败，由容器重新投递|{}", message.getMsgId(), e);
+                ackIndex = i - 1;
+                break;
+            }
+        }
+        context.setAckIndex(ackIndex);
+        return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+    }
+}
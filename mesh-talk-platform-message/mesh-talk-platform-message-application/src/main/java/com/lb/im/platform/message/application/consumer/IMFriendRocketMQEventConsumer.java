@@ -0,0 +1,57 @@
+package com.lb.im.platform.message.application.consumer;
+
+import cn.hutool.core.util.ArrayUtil;
+import com.alibaba.fastjson.JSONObject;
+import com.lb.im.platform.common.codec.EventCodecFactory;
+import com.lb.im.platform.common.model.constants.IMPlatformConstants;
+import com.lb.im.platform.message.application.cache.FriendIdCacheService;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.spring.annotation.MessageModel;
+import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
+import org.apache.rocketmq.spring.core.RocketMQListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * 好友事件消费者
+ * 广播消费好友微服务发布的好友事件，更新每个消息微服务实例的本地好友id缓存
+ */
+@Component
+@ConditionalOnProperty(name = "message.mq.event.type", havingValue = "rocketmq")
+@RocketMQMessageListener(consumerGroup = IMPlatformConstants.EVENT_FRIEND_MESSAGE_CONSUMER_GROUP,
+                         topic = IMPlatformConstants.TOPIC_EVENT_ROCKETMQ_FRIEND,
+                         messageModel = MessageModel.BROADCASTING)
+public class IMFriendRocketMQEventConsumer implements RocketMQListener<MessageExt> {
+    private final Logger logger = LoggerFactory.getLogger(IMFriendRocketMQEventConsumer.class);
+
+    @Autowired
+    private FriendIdCacheService friendIdCacheService;
+
+    @Override
+    public void onMessage(MessageExt message) {
+        if (ArrayUtil.isEmpty(message.getBody())) {
+            logger.info("rocketmq|friendEventConsumer|接收好友事件参数为空");
+            return;
+        }
+        // 好友事件定义在好友微服务中，这里只解析需要的字段，事件类不在本服务的类路径上，只能解码JSON格式的消息体
+        JSONObject friendEvent = EventCodecFactory.decode(message.getBody(), JSONObject.class);
+        if (friendEvent == null) {
+            logger.error("rocketmq|friendEventConsumer|好友事件转换失败|{}", message.getMsgId());
+            return;
+        }
+        Long userId = friendEvent.getLong("id");
+        Long friendId = friendEvent.getLong("friendId");
+        String handler = friendEvent.getString("handler");
+        // 好友关系是双向的，两端用户的缓存都要更新；好友微服务为两个方向各发布一次事件，重复的增删不改变缓存
+        if (IMPlatformConstants.FRIEND_HANDLER_BIND.equals(handler)) {
+            friendIdCacheService.bindFriend(userId, friendId);
+            friendIdCacheService.bindFriend(friendId, userId);
+        } else if (IMPlatformConstants.FRIEND_HANDLER_UNBIND.equals(handler)) {
+            friendIdCacheService.unbindFriend(userId, friendId);
+            friendIdCacheService.unbindFriend(friendId, userId);
+        }
+    }
+}
@@ -1,62 +1,248 @@
 package com.lb.im.platform.message.application.consumer;
 
-import cn.hutool.core.util.StrUtil;
-import com.alibaba.fastjson.JSONObject;
-import com.lb.im.common.domain.constans.IMConstants;
-import com.lb.im.common.domain.model.IMGroupMessage;
+import cn.hutool.core.collection.CollectionUtil;
 import com.lb.im.common.domain.model.IMUserInfo;
+import com.lb.im.platform.common.codec.EventCodecFactory;
+import com.lb.im.platform.common.log.HotPathLogger;
 import com.lb.im.platform.common.model.constants.IMPlatformConstants;
 import com.lb.im.platform.common.model.enums.MessageStatus;
 import com.lb.im.platform.common.model.vo.GroupMessageVO;
 import com.lb.im.platform.common.utils.BeanUtils;
+import com.lb.im.platform.message.application.fanout.GroupMessageFanoutService;
+import com.lb.im.platform.message.application.push.MessagePushService;
+import com.lb.im.platform.message.application.service.GroupMessageService;
 import com.lb.im.platform.message.domain.event.IMGroupMessageTxEvent;
-import com.lb.im.sdk.client.IMClient;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.apache.rocketmq.spring.core.RocketMQListener;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.apache.rocketmq.spring.core.RocketMQPushConsumerLifecycleListener;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
 @Component
 @ConditionalOnProperty(name = "message.mq.type", havingValue = "rocketmq")
-@RocketMQMessageListener(consumerGroup = IMPlatformConstants.TOPIC_GROUP_TX_MESSAGE_GROUP, topic = IMPlatformConstants.TOPIC_GROUP_TX_MESSAGE)
-public class IMGroupMessageRocketMQEventConsumer implements RocketMQListener<String> {
-    private final Logger logger = LoggerFactory.getLogger(IMGroupMessageRocketMQEventConsumer.class);
+@RocketMQMessageListener(consumerGroup = IMPlatformConstants.TOPIC_GROUP_TX_MESSAGE_GROUP, topic = IMPlatformConstants.TOPIC_GROUP_TX_MESSAGE,
+        selectorExpression = "${message.mq.tx.tag.group:type_group}")
+public class IMGroupMessageRocketMQEventConsumer implements RocketMQListener<MessageExt>, RocketMQPushConsumerLifecycleListener {
+    private final HotPathLogger logger = HotPathLogger.getLogger(IMGroupMessageRocketMQEventConsumer.class);
+
+    @Autowired
+    private GroupMessageFanoutService groupMessageFanoutService;
+
+    @Autowired
+    private GroupMessageService groupMessageService;
 
     @Autowired
-    private IMClient imClient;
+    private MessagePushService messagePushService;
+
+    // 批量消费的按条确认
+    private final BatchConsumeSupport batchConsumeSupport = new BatchConsumeSupport(logger);
+
+    /**
+     * 是否开启批量消费
+     */
+    @Value("${message.consumer.batch.enabled:false}")
+    private Boolean batchEnabled;
+
+    /**
+     * 每次回调最多消费的消息条数
+     */
+    @Value("${message.consumer.batch.maxSize:32}")
+    private Integer batchMaxSize;
+
+    /**
+     * 是否开启顺序消费，需与生产者的顺序模式同时开启
+     */
+    @Value("${message.order.enabled:false}")
+    private Boolean orderEnabled;
+
+    /**
+     * 顺序消费时单条消息的最大重试次数，超过后由客户端发往死信队列并跳过，避免一条毒消息长期阻塞所在队列
+     */
+    @Value("${message.order.maxReconsumeTimes:16}")
+    private Integer orderMaxReconsumeTimes;
 
     @Override
-    public void onMessage(String message) {
-        if (StrUtil.isEmpty(message)){
+    public void onMessage(MessageExt message) {
+        if (message == null || message.getBody() == null || message.getBody().length == 0) {
             logger.info("rocketmq|groupMessageTxConsumer|接收消息微服务发送过来的群聊消息事件参数为空" );
             return;
         }
-        logger.info("rocketmq|groupMessageTxConsumer|接收消息微服务发送过来的群聊消息事件|{}", message);
-        IMGroupMessageTxEvent imGroupMessageTxEvent = this.getEventMessage(message);
+        logger.info("rocketmq|groupMessageTxConsumer|接收消息微服务发送过来的群聊消息事件|{}", message.getMsgId());
+        IMGroupMessageTxEvent imGroupMessageTxEvent = this.getEventMessage(message.getBody());
         if (imGroupMessageTxEvent == null || imGroupMessageTxEvent.getGroupMessageDTO() == null){
             logger.error("rocketmq|groupMessageTxConsumer|接收消息微服务发送过来的群聊消息事件转换失败");
             return;
         }
+        this.sendGroupMessage(imGroupMessageTxEvent);
+        logger.info("发送群聊消息，发送者id:{},群组id:{},内容:{}", imGroupMessageTxEvent.getSenderId(), imGroupMessageTxEvent.getGroupMessageDTO().getGroupId(), HotPathLogger.content(imGroupMessageTxEvent.getGroupMessageDTO().getContent()));
+    }
+
+    /**
+     * 开启批量消费或顺序消费时，替换容器默认的逐条并发回调监听器
+     * 批量消费时每次回调最多拉取batchMaxSize条消息；顺序消费时注册顺序监听器，
+     * 同一队列的消息按序消费，生产者按会话键选择队列，从而保证同一会话内的消息顺序；
+     * 顺序消费默认无限重试，这里限制重试次数，超过后消息进入死信队列，队列继续消费后续消息
+     * 两种方式都按条确认：并发消费只重新投递推送失败的消息，顺序消费挂起队列重试时跳过已推送的消息
+     */
+    @Override
+    public void prepareStart(DefaultMQPushConsumer consumer) {
+        boolean batch = Boolean.TRUE.equals(batchEnabled);
+        boolean orderly = Boolean.TRUE.equals(orderEnabled);
+        if (!batch && !orderly) {
+            return;
+        }
+        if (batch) {
+            int maxSize = Math.max(batchMaxSize, 1);
+            consumer.setConsumeMessageBatchMaxSize(maxSize);
+            consumer.setPullBatchSize(Math.max(consumer.getPullBatchSize(), maxSize));
+        }
+        if (orderly) {
+            consumer.setMaxReconsumeTimes(Math.max(orderMaxReconsumeTimes, 1));
+            consumer.registerMessageListener((MessageListenerOrderly) (messages, context) ->
+                    this.onMessageBatch(messages).isEmpty()
+                            ? ConsumeOrderlyStatus.SUCCESS
+                            : ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT);
+        } else {
+            consumer.registerMessageListener((MessageListenerConcurrently) (messages, context) ->
+                    batchConsumeSupport.ackConcurrently(consumer, messages, this.onMessageBatch(messages), context));
+        }
+    }
+
+    /**
+     * 批量消费群聊消息事件
+     * 同一批次中重复投递的消息和本实例已推送过的消息不再推送；消息按群组分组，每个群组按消息id升序
+     * 切分为发送者、发送终端和接收者都相同的连续片段，每个片段一次交给推送层，
+     * 热点群的突发消息在一次回调内连续处理，群组发送上下文只需从本地缓存解析一次即可被后续消息命中
+     * 某个片段推送失败时，该群组的剩余消息都不再推送并标记为失败，其他群组照常推送
+     *
+     * @param messages 本批次的消息
+     * @return 推送失败的消息在批次中的下标
+     */
+    private BitSet onMessageBatch(List<MessageExt> messages) {
+        Map<Long, List<Integer>> messageIndexes = new HashMap<>();
+        Map<Long, List<IMGroupMessageTxEvent>> groupEvents = new LinkedHashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            MessageExt message = messages.get(i);
+            IMGroupMessageTxEvent imGroupMessageTxEvent = message.getBody() == null ? null : this.getEventMessage(message.getBody());
+            if (imGroupMessageTxEvent == null || imGroupMessageTxEvent.getGroupMessageDTO() == null) {
+                logger.error("rocketmq|groupMessageTxConsumer|接收消息微服务发送过来的群聊消息事件转换失败|{}", message.getMsgId());
+                continue;
+            }
+            List<Integer> indexes = messageIndexes.computeIfAbsent(imGroupMessageTxEvent.getId(), (key) -> new ArrayList<>(1));
+            indexes.add(i);
+            if (indexes.size() > 1 || batchConsumeSupport.isPushed(imGroupMessageTxEvent.getId())) {
+                continue;
+            }
+            groupEvents.computeIfAbsent(imGroupMessageTxEvent.getGroupMessageDTO().getGroupId(), (key) -> new ArrayList<>())
+                    .add(imGroupMessageTxEvent);
+        }
+        BitSet failed = new BitSet(messages.size());
+        int pushedCount = 0;
+        for (List<IMGroupMessageTxEvent> events : groupEvents.values()) {
+            events.sort(Comparator.comparing(IMGroupMessageTxEvent::getId));
+            int pushed = this.sendGroupMessages(events);
+            pushedCount += pushed;
+            for (IMGroupMessageTxEvent imGroupMessageTxEvent : events.subList(pushed, events.size())) {
+                for (Integer index : messageIndexes.get(imGroupMessageTxEvent.getId())) {
+                    failed.set(index);
+                }
+            }
+        }
+        logger.info("rocketmq|groupMessageTxConsumer|批量推送群聊消息|消息数:{}|推送数:{}|失败数:{}|群组数:{}",
+                    messages.size(), pushedCount, failed.cardinality(), groupEvents.size());
+        return failed;
+    }
+
+    /**
+     * 将同一群组的消息切分为发送者、发送终端和接收者都相同的连续片段，逐段交给推送层，某段未全部推送成功时停止
+     *
+     * @param events 同一群组的消息事件，按消息id升序排列
+     * @return 从列表开头起成功推送的条数
+     */
+    private int sendGroupMessages(List<IMGroupMessageTxEvent> events) {
+        // 解析接收者失败的消息及其之后的消息不推送
+        List<List<Long>> eventReceiveIds = new ArrayList<>(events.size());
+        try {
+            for (IMGroupMessageTxEvent imGroupMessageTxEvent : events) {
+                eventReceiveIds.add(groupMessageService.getReceiveIds(imGroupMessageTxEvent));
+            }
+        } catch (Exception e) {
+            logger.error("rocketmq|groupMessageTxConsumer|解析群聊消息接收者失败|{}", events.get(eventReceiveIds.size()).getId(), e);
+        }
+        int pushed = 0;
+        while (pushed < eventReceiveIds.size()) {
+            IMGroupMessageTxEvent first = events.get(pushed);
+            List<Long> receiveIds = eventReceiveIds.get(pushed);
+            int end = pushed + 1;
+            while (end < eventReceiveIds.size()
+                    && Objects.equals(events.get(end).getSenderId(), first.getSenderId())
+                    && Objects.equals(events.get(end).getTerminal(), first.getTerminal())
+                    && Objects.equals(eventReceiveIds.get(end), receiveIds)) {
+                end++;
+            }
+            List<IMGroupMessageTxEvent> segment = events.subList(pushed, end);
+            List<GroupMessageVO> groupMessageVOs = new ArrayList<>(segment.size());
+            for (IMGroupMessageTxEvent imGroupMessageTxEvent : segment) {
+                groupMessageVOs.add(this.buildGroupMessageVO(imGroupMessageTxEvent));
+            }
+            int segmentPushed = messagePushService.sendGroupMessages(new IMUserInfo(first.getSenderId(), first.getTerminal()), receiveIds, groupMessageVOs);
+            List<Long> pushedIds = new ArrayList<>(segmentPushed);
+            for (int i = 0; i < segmentPushed; i++) {
+                pushedIds.add(segment.get(i).getId());
+            }
+            batchConsumeSupport.markPushed(pushedIds);
+            pushed += segmentPushed;
+            if (segmentPushed < segment.size()) {
+                break;
+            }
+        }
+        return pushed;
+    }
+
+    /**
+     * 将群聊消息事件推送给发送时的群成员，大群由扇出服务分片并行推送
+     * 收件箱已在本地事务提交前写入，消费时不再写入
+     *
+     * @param imGroupMessageTxEvent 群聊消息事件
+     */
+    private void sendGroupMessage(IMGroupMessageTxEvent imGroupMessageTxEvent) {
+        GroupMessageVO groupMessageVO = this.buildGroupMessageVO(imGroupMessageTxEvent);
+        List<Long> receiveIds = groupMessageService.getReceiveIds(imGroupMessageTxEvent);
+        groupMessageFanoutService.sendGroupMessage(new IMUserInfo(imGroupMessageTxEvent.getSenderId(), imGroupMessageTxEvent.getTerminal()),
+                                                   receiveIds,
+                                                   groupMessageVO);
+    }
+
+    private GroupMessageVO buildGroupMessageVO(IMGroupMessageTxEvent imGroupMessageTxEvent) {
         GroupMessageVO groupMessageVO = BeanUtils.copyProperties(imGroupMessageTxEvent.getGroupMessageDTO(), GroupMessageVO.class);
         groupMessageVO.setId(imGroupMessageTxEvent.getId());
+        if (CollectionUtil.isNotEmpty(imGroupMessageTxEvent.getGroupMessageDTO().getAtUserIds())) {
+            groupMessageVO.setAtUserIds(imGroupMessageTxEvent.getGroupMessageDTO().getAtUserIds().stream().mapToLong(Long::longValue).toArray());
+        }
         groupMessageVO.setSendId(imGroupMessageTxEvent.getSenderId());
         groupMessageVO.setSendNickName(imGroupMessageTxEvent.getSendNickName());
         groupMessageVO.setSendTime(imGroupMessageTxEvent.getSendTime());
         groupMessageVO.setStatus(MessageStatus.UNSEND.code());
-        IMGroupMessage<GroupMessageVO> sendMessage = new IMGroupMessage<>();
-        sendMessage.setSender(new IMUserInfo(imGroupMessageTxEvent.getSenderId(), imGroupMessageTxEvent.getTerminal()));
-        sendMessage.setReceiveIds(imGroupMessageTxEvent.getUserIds());
-        sendMessage.setData(groupMessageVO);
-        imClient.sendGroupMessage(sendMessage);
-        logger.info("发送群聊消息，发送者id:{},群组id:{},内容:{}", imGroupMessageTxEvent.getSenderId(), imGroupMessageTxEvent.getGroupMessageDTO().getGroupId(), imGroupMessageTxEvent.getGroupMessageDTO().getContent());
+        return groupMessageVO;
     }
 
-    private IMGroupMessageTxEvent getEventMessage(String msg){
-        JSONObject jsonObject = JSONObject.parseObject(msg);
-        String eventStr = jsonObject.getString(IMConstants.MSG_KEY);
-        return JSONObject.parseObject(eventStr, IMGroupMessageTxEvent.class);
+    private IMGroupMessageTxEvent getEventMessage(byte[] body) {
+        return EventCodecFactory.decode(body, IMGroupMessageTxEvent.class);
     }
 }
@@ -0,0 +1,48 @@
+package com.lb.im.platform.message.application.consumer;
+
+import cn.hutool.core.util.ArrayUtil;
+import com.alibaba.fastjson.JSONObject;
+import com.lb.im.platform.common.codec.EventCodecFactory;
+import com.lb.im.platform.common.model.constants.IMPlatformConstants;
+import com.lb.im.platform.message.application.cache.GroupSendContextCacheService;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.spring.annotation.MessageModel;
+import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
+import org.apache.rocketmq.spring.core.RocketMQListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * 群组事件消费者
+ * 广播消费群组微服务发布的群组事件，失效每个消息微服务实例的本地群聊消息发送上下文缓存
+ */
+@Component
+@ConditionalOnProperty(name = "message.mq.event.type", havingValue = "rocketmq")
+@RocketMQMessageListener(consumerGroup = IMPlatformConstants.EVENT_GROUP_MESSAGE_CONSUMER_GROUP,
+                         topic = IMPlatformConstants.TOPIC_EVENT_ROCKETMQ_GROUP,
+                         messageModel = MessageModel.BROADCASTING)
+public class IMGroupRocketMQEventConsumer implements RocketMQListener<MessageExt> {
+    private final Logger logger = LoggerFactory.getLogger(IMGroupRocketMQEventConsumer.class);
+
+    @Autowired
+    private GroupSendContextCacheService groupSendContextCacheService;
+
+    @Override
+    public void onMessage(MessageExt message) {
+        if (ArrayUtil.isEmpty(message.getBody())) {
+            logger.info("rocketmq|groupEventConsumer|接收群组事件参数为空");
+            return;
+        }
+        // 群组事件定义在群组微服务中，这里只解析需要的字段，事件类不在本服务的类路径上，只能解码JSON格式的消息体
+        JSONObject groupEvent = EventCodecFactory.decode(message.getBody(), JSONObject.class);
+        if (groupEvent == null) {
+            logger.error("rocketmq|groupEventConsumer|群组事件转换失败|{}", message.getMsgId());
+            return;
+        }
+        // 群组事件都可能改变群组状态、成员或群内昵称，事件的id为群组id
+        groupSendContextCacheService.invalidate(groupEvent.getLong("id"));
+    }
+}
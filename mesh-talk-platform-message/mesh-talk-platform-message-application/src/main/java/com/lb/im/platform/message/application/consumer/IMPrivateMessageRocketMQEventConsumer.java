@@ -1,45 +1,226 @@
 package com.lb.im.platform.message.application.consumer;
 
-import cn.hutool.core.util.StrUtil;
-import com.alibaba.fastjson.JSONObject;
-import com.lb.im.common.domain.constans.IMConstants;
 import com.lb.im.common.domain.model.IMPrivateMessage;
 import com.lb.im.common.domain.model.IMUserInfo;
+import com.lb.im.platform.common.codec.EventCodecFactory;
+import com.lb.im.platform.common.log.HotPathLogger;
 import com.lb.im.platform.common.model.constants.IMPlatformConstants;
 import com.lb.im.platform.common.model.enums.MessageStatus;
 import com.lb.im.platform.common.model.vo.PrivateMessageVO;
 import com.lb.im.platform.common.utils.BeanUtils;
+import com.lb.im.platform.message.application.push.MessagePushService;
 import com.lb.im.platform.message.domain.event.IMPrivateMessageTxEvent;
 import com.lb.im.sdk.client.IMClient;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.apache.rocketmq.spring.core.RocketMQListener;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.apache.rocketmq.spring.core.RocketMQPushConsumerLifecycleListener;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
 @Component
 @ConditionalOnProperty(name = "message.mq.type", havingValue = "rocketmq")
-@RocketMQMessageListener(consumerGroup = IMPlatformConstants.TOPIC_PRIVATE_TX_MESSAGE_GROUP, topic = IMPlatformConstants.TOPIC_PRIVATE_TX_MESSAGE)
-public class IMPrivateMessageRocketMQEventConsumer implements RocketMQListener<String> {
-    private final Logger logger = LoggerFactory.getLogger(IMPrivateMessageRocketMQEventConsumer.class);
+@RocketMQMessageListener(consumerGroup = IMPlatformConstants.TOPIC_PRIVATE_TX_MESSAGE_GROUP, topic = IMPlatformConstants.TOPIC_PRIVATE_TX_MESSAGE,
+        selectorExpression = "${message.mq.tx.tag.private:type_private}")
+public class IMPrivateMessageRocketMQEventConsumer implements RocketMQListener<MessageExt>, RocketMQPushConsumerLifecycleListener {
+    private final HotPathLogger logger = HotPathLogger.getLogger(IMPrivateMessageRocketMQEventConsumer.class);
 
     @Autowired
     private IMClient imClient;
 
+    @Autowired
+    private MessagePushService messagePushService;
+
+    // 批量消费的按条确认
+    private final BatchConsumeSupport batchConsumeSupport = new BatchConsumeSupport(logger);
+
+    /**
+     * 是否开启批量消费
+     */
+    @Value("${message.consumer.batch.enabled:false}")
+    private Boolean batchEnabled;
+
+    /**
+     * 每次回调最多消费的消息条数
+     */
+    @Value("${message.consumer.batch.maxSize:32}")
+    private Integer batchMaxSize;
+
+    /**
+     * 是否开启顺序消费，需与生产者的顺序模式同时开启
+     */
+    @Value("${message.order.enabled:false}")
+    private Boolean orderEnabled;
+
+    /**
+     * 顺序消费时单条消息的最大重试次数，超过后由客户端发往死信队列并跳过，避免一条毒消息长期阻塞所在队列
+     */
+    @Value("${message.order.maxReconsumeTimes:16}")
+    private Integer orderMaxReconsumeTimes;
+
     @Override
-    public void onMessage(String message) {
-        if (StrUtil.isEmpty(message)) {
+    public void onMessage(MessageExt message) {
+        if (message == null || message.getBody() == null || message.getBody().length == 0) {
             logger.info("rocketmq|privateMessageTxConsumer|接收消息微服务发送过来的单聊消息事件参数为空");
             return;
         }
-        logger.info("rocketmq|privateMessageTxConsumer|接收消息微服务发送过来的单聊消息事件|{}", message);
-        IMPrivateMessageTxEvent imPrivateMessageTxEvent = this.getEventMessage(message);
+        logger.info("rocketmq|privateMessageTxConsumer|接收消息微服务发送过来的单聊消息事件|{}", message.getMsgId());
+        IMPrivateMessageTxEvent imPrivateMessageTxEvent = this.getEventMessage(message.getBody());
         if (imPrivateMessageTxEvent == null || imPrivateMessageTxEvent.getPrivateMessageDTO() == null) {
             logger.error("rocketmq|privateMessageTxConsumer|接收消息微服务发送过来的单聊消息事件转换失败");
             return;
         }
+        PrivateMessageVO privateMessageVO = this.sendPrivateMessage(imPrivateMessageTxEvent);
+        logger.info("发送私聊消息，发送id:{},接收id:{}，内容:{}", privateMessageVO.getSendId(), privateMessageVO.getRecvId(), HotPathLogger.content(privateMessageVO.getContent()));
+    }
+
+    /**
+     * 开启批量消费或顺序消费时，替换容器默认的逐条并发回调监听器
+     * 批量消费时每次回调最多拉取batchMaxSize条消息；顺序消费时注册顺序监听器，
+     * 同一队列的消息按序消费，生产者按会话键选择队列，从而保证同一会话内的消息顺序；
+     * 顺序消费默认无限重试，这里限制重试次数，超过后消息进入死信队列，队列继续消费后续消息
+     * 两种方式都按条确认：并发消费只重新投递推送失败的消息，顺序消费挂起队列重试时跳过已推送的消息
+     */
+    @Override
+    public void prepareStart(DefaultMQPushConsumer consumer) {
+        boolean batch = Boolean.TRUE.equals(batchEnabled);
+        boolean orderly = Boolean.TRUE.equals(orderEnabled);
+        if (!batch && !orderly) {
+            return;
+        }
+        if (batch) {
+            int maxSize = Math.max(batchMaxSize, 1);
+            consumer.setConsumeMessageBatchMaxSize(maxSize);
+            consumer.setPullBatchSize(Math.max(consumer.getPullBatchSize(), maxSize));
+        }
+        if (orderly) {
+            consumer.setMaxReconsumeTimes(Math.max(orderMaxReconsumeTimes, 1));
+            consumer.registerMessageListener((MessageListenerOrderly) (messages, context) ->
+                    this.onMessageBatch(messages).isEmpty()
+                            ? ConsumeOrderlyStatus.SUCCESS
+                            : ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT);
+        } else {
+            consumer.registerMessageListener((MessageListenerConcurrently) (messages, context) ->
+                    batchConsumeSupport.ackConcurrently(consumer, messages, this.onMessageBatch(messages), context));
+        }
+    }
+
+    /**
+     * 批量消费单聊消息事件
+     * 同一批次中重复投递的消息和本实例已推送过的消息不再推送；消息按接收者分组，
+     * 同一接收者的消息再按发送者分为会话，每个会话按消息id升序切分为发送终端相同的连续片段，每个片段一次交给推送层
+     * 某个片段推送失败时，该会话的剩余消息都不再推送并标记为失败，其他会话照常推送
+     *
+     * @param messages 本批次的消息
+     * @return 推送失败的消息在批次中的下标
+     */
+    private BitSet onMessageBatch(List<MessageExt> messages) {
+        Map<Long, List<Integer>> messageIndexes = new HashMap<>();
+        Map<Long, Map<Long, List<IMPrivateMessageTxEvent>>> receiverEvents = new LinkedHashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            MessageExt message = messages.get(i);
+            IMPrivateMessageTxEvent imPrivateMessageTxEvent = message.getBody() == null ? null : this.getEventMessage(message.getBody());
+            if (imPrivateMessageTxEvent == null || imPrivateMessageTxEvent.getPrivateMessageDTO() == null) {
+                logger.error("rocketmq|privateMessageTxConsumer|接收消息微服务发送过来的单聊消息事件转换失败|{}", message.getMsgId());
+                continue;
+            }
+            List<Integer> indexes = messageIndexes.computeIfAbsent(imPrivateMessageTxEvent.getId(), (key) -> new ArrayList<>(1));
+            indexes.add(i);
+            if (indexes.size() > 1 || batchConsumeSupport.isPushed(imPrivateMessageTxEvent.getId())) {
+                continue;
+            }
+            receiverEvents.computeIfAbsent(imPrivateMessageTxEvent.getPrivateMessageDTO().getRecvId(), (key) -> new LinkedHashMap<>())
+                    .computeIfAbsent(imPrivateMessageTxEvent.getSenderId(), (key) -> new ArrayList<>())
+                    .add(imPrivateMessageTxEvent);
+        }
+        BitSet failed = new BitSet(messages.size());
+        int pushedCount = 0;
+        for (Map.Entry<Long, Map<Long, List<IMPrivateMessageTxEvent>>> receiverEntry : receiverEvents.entrySet()) {
+            for (List<IMPrivateMessageTxEvent> events : receiverEntry.getValue().values()) {
+                events.sort(Comparator.comparing(IMPrivateMessageTxEvent::getId));
+                int pushed = this.sendPrivateMessages(receiverEntry.getKey(), events);
+                pushedCount += pushed;
+                for (IMPrivateMessageTxEvent imPrivateMessageTxEvent : events.subList(pushed, events.size())) {
+                    for (Integer index : messageIndexes.get(imPrivateMessageTxEvent.getId())) {
+                        failed.set(index);
+                    }
+                }
+            }
+        }
+        logger.info("rocketmq|privateMessageTxConsumer|批量推送单聊消息|消息数:{}|推送数:{}|失败数:{}|接收者数:{}",
+                    messages.size(), pushedCount, failed.cardinality(), receiverEvents.size());
+        return failed;
+    }
+
+    /**
+     * 将同一会话的单聊消息按发送终端切分为连续片段，逐段交给推送层，某段未全部推送成功时停止
+     *
+     * @param receiveId 接收者id
+     * @param events    同一发送者发给该接收者的消息事件，按消息id升序排列
+     * @return 从列表开头起成功推送的条数
+     */
+    private int sendPrivateMessages(Long receiveId, List<IMPrivateMessageTxEvent> events) {
+        int pushed = 0;
+        while (pushed < events.size()) {
+            IMPrivateMessageTxEvent first = events.get(pushed);
+            int end = pushed + 1;
+            while (end < events.size() && Objects.equals(events.get(end).getTerminal(), first.getTerminal())) {
+                end++;
+            }
+            List<IMPrivateMessageTxEvent> segment = events.subList(pushed, end);
+            List<PrivateMessageVO> privateMessageVOs = new ArrayList<>(segment.size());
+            for (IMPrivateMessageTxEvent imPrivateMessageTxEvent : segment) {
+                privateMessageVOs.add(this.buildPrivateMessageVO(imPrivateMessageTxEvent));
+            }
+            int segmentPushed = messagePushService.sendPrivateMessages(new IMUserInfo(first.getSenderId(), first.getTerminal()), receiveId, privateMessageVOs);
+            List<Long> pushedIds = new ArrayList<>(segmentPushed);
+            for (int i = 0; i < segmentPushed; i++) {
+                pushedIds.add(segment.get(i).getId());
+            }
+            batchConsumeSupport.markPushed(pushedIds);
+            pushed += segmentPushed;
+            if (segmentPushed < segment.size()) {
+                break;
+            }
+        }
+        return pushed;
+    }
+
+    /**
+     * 将单聊消息事件推送给接收者和发送者的其他终端
+     * 收件箱已在本地事务提交前写入，消费时不再写入
+     *
+     * @param imPrivateMessageTxEvent 单聊消息事件
+     * @return 推送的消息数据
+     */
+    private PrivateMessageVO sendPrivateMessage(IMPrivateMessageTxEvent imPrivateMessageTxEvent) {
+        PrivateMessageVO privateMessageVO = this.buildPrivateMessageVO(imPrivateMessageTxEvent);
+        //封装发送消息数据模型
+        IMPrivateMessage<PrivateMessageVO> sendMessage = new IMPrivateMessage<>();
+        sendMessage.setSender(new IMUserInfo(privateMessageVO.getSendId(), imPrivateMessageTxEvent.getTerminal()));
+        sendMessage.setReceiveId(privateMessageVO.getRecvId());
+        sendMessage.setSendToSelf(true);
+        sendMessage.setData(privateMessageVO);
+        imClient.sendPrivateMessage(sendMessage);
+        return privateMessageVO;
+    }
+
+    private PrivateMessageVO buildPrivateMessageVO(IMPrivateMessageTxEvent imPrivateMessageTxEvent) {
         PrivateMessageVO privateMessageVO = BeanUtils.copyProperties(imPrivateMessageTxEvent.getPrivateMessageDTO(), PrivateMessageVO.class);
         //设置消息id
         privateMessageVO.setId(imPrivateMessageTxEvent.getId());
@@ -49,19 +230,10 @@ public class IMPrivateMessageRocketMQEventConsumer implements RocketMQListener<S
         privateMessageVO.setStatus(MessageStatus.UNSEND.code());
         //发送时间
         privateMessageVO.setSendTime(imPrivateMessageTxEvent.getSendTime());
-        //封装发送消息数据模型
-        IMPrivateMessage<PrivateMessageVO> sendMessage = new IMPrivateMessage<>();
-        sendMessage.setSender(new IMUserInfo(privateMessageVO.getSendId(), imPrivateMessageTxEvent.getTerminal()));
-        sendMessage.setReceiveId(privateMessageVO.getRecvId());
-        sendMessage.setSendToSelf(true);
-        sendMessage.setData(privateMessageVO);
-        imClient.sendPrivateMessage(sendMessage);
-        logger.info("发送私聊消息，发送id:{},接收id:{}，内容:{}", privateMessageVO.getSendId(), privateMessageVO.getRecvId(), privateMessageVO.getContent());
+        return privateMessageVO;
     }
 
-    private IMPrivateMessageTxEvent getEventMessage(String msg) {
-        JSONObject jsonObject = JSONObject.parseObject(msg);
-        String eventStr = jsonObject.getString(IMConstants.MSG_KEY);
-        return JSONObject.parseObject(eventStr, IMPrivateMessageTxEvent.class);
+    private IMPrivateMessageTxEvent getEventMessage(byte[] body) {
+        return EventCodecFactory.decode(body, IMPrivateMessageTxEvent.class);
     }
 }
@@ -0,0 +1,34 @@
+package com.lb.im.platform.message.application.fanout;
+
+import com.lb.im.common.domain.model.IMUserInfo;
+import com.lb.im.platform.common.model.vo.GroupMessageVO;
+
+import java.util.List;
+
+/**
+ * 群聊消息扇出服务接口
+ * 供群聊消息消费者推送消息时调用，接收者较多时按用户id分片，各分片并行推送
+ */
+public interface GroupMessageFanoutService {
+
+    /**
+     * 推送群聊消息
+     * 所有分片推送完成后才返回，推送失败或等待超时时抛出异常，由消费者稍后重新投递；
+     * 已推送完成的分片会被记录，重新投递时只推送未完成的分片
+     *
+     * @param sender         发送者信息
+     * @param receiveIds     接收者id列表
+     * @param groupMessageVO 群聊消息数据
+     */
+    void sendGroupMessage(IMUserInfo sender, List<Long> receiveIds, GroupMessageVO groupMessageVO);
+
+    /**
+     * 推送同一批次合并的群聊消息，整个列表作为一帧数据推送，分片方式与单条推送相同
+     * 列表中的消息发送者相同、接收者相同，按消息id升序排列
+     *
+     * @param sender          发送者信息
+     * @param receiveIds      接收者id列表
+     * @param groupMessageVOs 群聊消息数据列表，不能为空
+     */
+    void sendGroupMessages(IMUserInfo sender, List<Long> receiveIds, List<GroupMessageVO> groupMessageVOs);
+}
@@ -0,0 +1,354 @@
+package com.lb.im.platform.message.application.fanout.impl;
+
+import cn.hutool.core.collection.CollectionUtil;
+import com.lb.im.common.domain.model.IMGroupMessage;
+import com.lb.im.common.domain.model.IMUserInfo;
+import com.lb.im.platform.common.log.StatisticsLogger;
+import com.lb.im.platform.common.model.vo.GroupMessageVO;
+import com.lb.im.platform.message.application.fanout.GroupMessageFanoutService;
+import com.lb.im.sdk.client.IMClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 群聊消息扇出服务实现类
+ *
+ * 技术点：
+ * 1. 接收者数量达到阈值时，按用户id哈希将接收者拆分为固定数量的分片，每个分片构造一条只包含该分片接收者的群聊消息
+ * 2. 每个分片固定由一条单线程推送通道处理，同一用户的推送始终进入同一通道，保持用户维度的消息顺序
+ * 3. 每条通道使用有界队列，队列满时提交的消费线程最多等待timeoutMillis，实现按分片的背压；通道关闭或等待超时则拒绝，由消息重试兜底
+ * 4. 按群规模分桶统计扇出次数、平均耗时和最大耗时，并按固定间隔输出日志
+ * 5. 按消息记录已推送完成的分片，部分分片失败时记录保留，消费者重新投递时只推送未完成的分片，已推送的接收者不会重复收到
+ */
+@Service
+public class GroupMessageFanoutServiceImpl implements GroupMessageFanoutService {
+    private final Logger logger = LoggerFactory.getLogger(GroupMessageFanoutServiceImpl.class);
+
+    /**
+     * 群规模分桶的上界，最后一个桶统计超过最大上界的群
+     */
+    private static final int[] SIZE_BUCKET_BOUNDS = {50, 200, 500, 2000};
+
+    /**
+     * 已完成分片记录的最大条数，只保留尚未全部推送完成的消息
+     */
+    private static final int COMPLETED_RECORD_CAPACITY = 65536;
+
+    /**
+     * 是否开启分片扇出，关闭时整条消息一次推送
+     */
+    @Value("${message.group.fanout.enabled:false}")
+    private Boolean enabled;
+
+    /**
+     * 分片数量，即推送通道数量
+     */
+    @Value("${message.group.fanout.shards:8}")
+    private Integer shards;
+
+    /**
+     * 接收者数量达到该值时才分片推送
+     */
+    @Value("${message.group.fanout.minReceivers:200}")
+    private Integer minReceivers;
+
+    /**
+     * 每条推送通道的队列容量
+     */
+    @Value("${message.group.fanout.laneQueueCapacity:1024}")
+    private Integer laneQueueCapacity;
+
+    /**
+     * 等待所有分片推送完成的超时时间，单位毫秒
+     */
+    @Value("${message.group.fanout.timeoutMillis:10000}")
+    private Long timeoutMillis;
+
+    @Autowired
+    private IMClient imClient;
+
+    // 推送通道，下标即分片编号
+    private ThreadPoolExecutor[] lanes;
+
+    // 部分分片推送失败的消息已完成的分片，key为扇出键，按插入顺序淘汰，由completedShardsLock保护
+    private final Map<String, BitSet> completedShards = new LinkedHashMap<String, BitSet>(16, 0.75F, false) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BitSet> eldest) {
+            return size() > COMPLETED_RECORD_CAPACITY;
+        }
+    };
+    // 已完成分片记录的锁
+    private final ReentrantLock completedShardsLock = new ReentrantLock();
+
+    // 扇出耗时统计
+    private final StatisticsLogger statistics = new StatisticsLogger(GroupMessageFanoutServiceImpl.class, "GroupMessageFanoutService|群聊消息扇出统计");
+    // 各群规模分桶的扇出次数
+    private final LongAdder[] bucketCounts = newLongAdders(SIZE_BUCKET_BOUNDS.length + 1);
+    // 各群规模分桶的扇出总耗时，单位纳秒
+    private final LongAdder[] bucketNanos = newLongAdders(SIZE_BUCKET_BOUNDS.length + 1);
+    // 各群规模分桶的最大扇出耗时，单位纳秒
+    private final AtomicLong[] bucketMaxNanos = newAtomicLongs(SIZE_BUCKET_BOUNDS.length + 1);
+    // 重试时因已推送完成而跳过的分片数
+    private final LongAdder skippedShardCount = statistics.counter("重试跳过分片");
+
+    @PostConstruct
+    public void init() {
+        int laneCount = Math.max(shards, 1);
+        lanes = new ThreadPoolExecutor[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            final String threadName = "group-fanout-lane-" + i;
+            lanes[i] = new ThreadPoolExecutor(1,
+                                              1,
+                                              0,
+                                              TimeUnit.MILLISECONDS,
+                                              new ArrayBlockingQueue<>(Math.max(laneQueueCapacity, 1)),
+                                              runnable -> {
+                                                  Thread thread = new Thread(runnable, threadName);
+                                                  thread.setDaemon(true);
+                                                  return thread;
+                                              },
+                                              this::waitForLane);
+        }
+        for (int i = 0; i <= SIZE_BUCKET_BOUNDS.length; i++) {
+            final int bucket = i;
+            String bucketName = i < SIZE_BUCKET_BOUNDS.length ? "<=" + SIZE_BUCKET_BOUNDS[i] : ">" + SIZE_BUCKET_BOUNDS[SIZE_BUCKET_BOUNDS.length - 1];
+            statistics.gauge(bucketName, () -> this.getBucketStatistics(bucket));
+        }
+        statistics.gauge("通道积压", this::getLaneBacklog);
+    }
+
+    /**
+     * 通道队列已满时的拒绝策略：限时等待入队，既实现背压又不打乱通道内的推送顺序
+     * 通道已关闭或等待超时直接拒绝，避免任务进入不再被消费的队列而丢失
+     */
+    private void waitForLane(Runnable runnable, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("群聊消息推送通道已关闭");
+        }
+        boolean queued;
+        try {
+            queued = executor.getQueue().offer(runnable, timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("群聊消息推送通道已中断", e);
+        }
+        if (!queued) {
+            throw new RejectedExecutionException("群聊消息推送通道队列已满");
+        }
+        // 等待期间通道被关闭时，入队的任务可能不会再被执行，撤回后拒绝
+        if (executor.isShutdown() && executor.getQueue().remove(runnable)) {
+            throw new RejectedExecutionException("群聊消息推送通道已关闭");
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    @Override
+    public void sendGroupMessage(IMUserInfo sender, List<Long> receiveIds, GroupMessageVO groupMessageVO) {
+        this.fanout(sender, receiveIds, groupMessageVO, groupMessageVO.getId(), String.valueOf(groupMessageVO.getId()));
+    }
+
+    @Override
+    public void sendGroupMessages(IMUserInfo sender, List<Long> receiveIds, List<GroupMessageVO> groupMessageVOs) {
+        Long firstId = groupMessageVOs.get(0).getId();
+        Long lastId = groupMessageVOs.get(groupMessageVOs.size() - 1).getId();
+        // 同一发送者、同一接收者的消息按id升序排列，首尾id和条数相同即为同一批消息
+        this.fanout(sender, receiveIds, groupMessageVOs, lastId, firstId + "-" + lastId + "-" + groupMessageVOs.size());
+    }
+
+    /**
+     * 推送一帧群聊消息数据，接收者达到阈值时按分片并行推送
+     * 同一扇出键之前已推送完成的分片直接跳过；全部分片完成后清除记录，否则保留记录供重新投递时使用
+     *
+     * @param sender     发送者信息
+     * @param receiveIds 接收者id列表
+     * @param data       推送的数据，单条消息或同一批次合并的消息列表
+     * @param messageId  用于日志的消息id
+     * @param fanoutKey  扇出键，重新投递的同一帧数据扇出键相同
+     */
+    private <T> void fanout(IMUserInfo sender, List<Long> receiveIds, T data, Long messageId, String fanoutKey) {
+        long start = System.nanoTime();
+        int receiverCount = receiveIds == null ? 0 : receiveIds.size();
+        try {
+            if (!Boolean.TRUE.equals(enabled) || receiverCount < Math.max(minReceivers, 1) || lanes.length == 1) {
+                imClient.sendGroupMessage(this.buildGroupMessage(sender, receiveIds, data, true));
+                return;
+            }
+            List<List<Long>> shardReceiveIds = this.splitReceiveIds(receiveIds);
+            BitSet completed = this.getCompletedShards(fanoutKey);
+            List<CompletableFuture<Void>> futures = new ArrayList<>(shardReceiveIds.size());
+            boolean sendToSelf = true;
+            for (int shard = 0; shard < shardReceiveIds.size(); shard++) {
+                List<Long> shardIds = shardReceiveIds.get(shard);
+                if (CollectionUtil.isEmpty(shardIds)) {
+                    continue;
+                }
+                // 只有第一个非空分片推送给发送者自己的其他终端，避免重复；该分片已完成时同样不再推送
+                boolean shardSendToSelf = sendToSelf;
+                sendToSelf = false;
+                if (completed.get(shard)) {
+                    skippedShardCount.increment();
+                    continue;
+                }
+                IMGroupMessage<T> shardMessage = this.buildGroupMessage(sender, shardIds, data, shardSendToSelf);
+                final int completedShard = shard;
+                futures.add(CompletableFuture.runAsync(() -> {
+                    imClient.sendGroupMessage(shardMessage);
+                    this.markShardCompleted(fanoutKey, completedShard);
+                }, lanes[shard]));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            this.clearCompletedShards(fanoutKey);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("群聊消息分片推送被中断", e);
+        } catch (Exception e) {
+            logger.error("GroupMessageFanoutService|群聊消息分片推送失败|{}|接收者数:{}|{}", messageId, receiverCount, e.getMessage());
+            throw new IllegalStateException("群聊消息分片推送失败", e);
+        } finally {
+            this.record(receiverCount, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 获取扇出键已推送完成的分片，没有记录时返回空集合
+     */
+    private BitSet getCompletedShards(String fanoutKey) {
+        completedShardsLock.lock();
+        try {
+            BitSet completed = completedShards.get(fanoutKey);
+            return completed == null ? new BitSet() : (BitSet) completed.clone();
+        } finally {
+            completedShardsLock.unlock();
+        }
+    }
+
+    /**
+     * 记录分片推送完成，在推送通道线程中调用，等待超时后才完成的分片同样会被记录
+     */
+    private void markShardCompleted(String fanoutKey, int shard) {
+        completedShardsLock.lock();
+        try {
+            completedShards.computeIfAbsent(fanoutKey, (key) -> new BitSet()).set(shard);
+        } finally {
+            completedShardsLock.unlock();
+        }
+    }
+
+    /**
+     * 全部分片推送完成后清除记录
+     */
+    private void clearCompletedShards(String fanoutKey) {
+        completedShardsLock.lock();
+        try {
+            completedShards.remove(fanoutKey);
+        } finally {
+            completedShardsLock.unlock();
+        }
+    }
+
+    /**
+     * 按用户id哈希将接收者拆分到各分片，同一用户始终落在同一分片
+     */
+    private List<List<Long>> splitReceiveIds(List<Long> receiveIds) {
+        int shardCount = lanes.length;
+        int expectedSize = receiveIds.size() / shardCount + 1;
+        List<List<Long>> shardReceiveIds = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shardReceiveIds.add(new ArrayList<>(expectedSize));
+        }
+        for (Long receiveId : receiveIds) {
+            int hash = Long.hashCode(receiveId);
+            shardReceiveIds.get(Math.floorMod(hash ^ (hash >>> 16), shardCount)).add(receiveId);
+        }
+        return shardReceiveIds;
+    }
+
+    private <T> IMGroupMessage<T> buildGroupMessage(IMUserInfo sender, List<Long> receiveIds, T data, boolean sendToSelf) {
+        IMGroupMessage<T> sendMessage = new IMGroupMessage<>();
+        sendMessage.setSender(sender);
+        sendMessage.setReceiveIds(receiveIds);
+        sendMessage.setData(data);
+        if (!sendToSelf) {
+            sendMessage.setSendToSelf(false);
+        }
+        return sendMessage;
+    }
+
+    /**
+     * 记录一次扇出的耗时到对应的群规模分桶
+     */
+    private void record(int receiverCount, long nanos) {
+        int bucket = SIZE_BUCKET_BOUNDS.length;
+        for (int i = 0; i < SIZE_BUCKET_BOUNDS.length; i++) {
+            if (receiverCount <= SIZE_BUCKET_BOUNDS[i]) {
+                bucket = i;
+                break;
+            }
+        }
+        bucketCounts[bucket].increment();
+        bucketNanos[bucket].add(nanos);
+        bucketMaxNanos[bucket].accumulateAndGet(nanos, Math::max);
+        statistics.logIfDue();
+    }
+
+    /**
+     * 群规模分桶的扇出次数、平均耗时和最大耗时
+     */
+    private String getBucketStatistics(int bucket) {
+        long count = bucketCounts[bucket].sum();
+        return "[次数:" + count
+                + ",平均耗时(微秒):" + (count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(bucketNanos[bucket].sum() / count))
+                + ",最大耗时(微秒):" + TimeUnit.NANOSECONDS.toMicros(bucketMaxNanos[bucket].get()) + "]";
+    }
+
+    private int getLaneBacklog() {
+        int backlog = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            backlog += lane.getQueue().size();
+        }
+        return backlog;
+    }
+
+    private static LongAdder[] newLongAdders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static AtomicLong[] newAtomicLongs(int size) {
+        AtomicLong[] values = new AtomicLong[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = new AtomicLong();
+        }
+        return values;
+    }
+}
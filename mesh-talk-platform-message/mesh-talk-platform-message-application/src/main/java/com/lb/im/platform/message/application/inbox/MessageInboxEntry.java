@@ -0,0 +1,26 @@
+package com.lb.im.platform.message.application.inbox;
+
+/**
+ * 收件箱条目
+ * 私聊收件箱中peerId为好友id，群聊收件箱中peerId为群组id
+ */
+public class MessageInboxEntry {
+
+    // 消息id
+    private final long messageId;
+    // 好友id或群组id，用于定位消息所在的分表
+    private final long peerId;
+
+    public MessageInboxEntry(long messageId, long peerId) {
+        this.messageId = messageId;
+        this.peerId = peerId;
+    }
+
+    public long getMessageId() {
+        return messageId;
+    }
+
+    public long getPeerId() {
+        return peerId;
+    }
+}
@@ -0,0 +1,27 @@
+package com.lb.im.platform.message.application.inbox;
+
+import java.util.List;
+
+/**
+ * 收件箱的一段读取结果
+ */
+public class MessageInboxRange {
+
+    // 按消息id升序排列的条目
+    private final List<MessageInboxEntry> entries;
+    // 本次读取覆盖到的最大消息id，收件箱中还有更多条目时为最后读取的消息id，已读完时为水位线之前的最大消息id（单批读取的中间结果为null）
+    private final Long coveredMaxId;
+
+    public MessageInboxRange(List<MessageInboxEntry> entries, Long coveredMaxId) {
+        this.entries = entries;
+        this.coveredMaxId = coveredMaxId;
+    }
+
+    public List<MessageInboxEntry> getEntries() {
+        return entries;
+    }
+
+    public Long getCoveredMaxId() {
+        return coveredMaxId;
+    }
+}
@@ -0,0 +1,73 @@
+package com.lb.im.platform.message.application.inbox;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 写扩散收件箱服务接口
+ * 私聊消息和小群消息在本地事务提交前写入每个参与者的收件箱，拉取消息时读取一段收件箱，不再按全部好友、全部群组查询消息表；
+ * 大群消息不写入收件箱，仍按读扩散查询
+ */
+public interface MessageInboxService {
+
+    /**
+     * 是否开启写入收件箱
+     */
+    boolean isWriteEnabled();
+
+    /**
+     * 是否开启从收件箱拉取消息
+     */
+    boolean isSyncEnabled();
+
+    /**
+     * 将私聊消息写入发送者和接收者的收件箱
+     *
+     * @param messageId 消息id
+     * @param sendId    发送者id
+     * @param recvId    接收者id
+     */
+    void appendPrivateMessage(Long messageId, Long sendId, Long recvId);
+
+    /**
+     * 群成员数不超过阈值时将群聊消息写入发送者和所有接收者的收件箱，否则将群组标记为读扩散
+     *
+     * @param messageId  消息id
+     * @param groupId    群组id
+     * @param sendId     发送者id
+     * @param receiveIds 接收者id列表，不包含发送者
+     */
+    void appendGroupMessage(Long messageId, Long groupId, Long sendId, List<Long> receiveIds);
+
+    /**
+     * 读取私聊收件箱中消息id大于afterId的条目
+     *
+     * @param userId    用户id
+     * @param friendIds 当前的好友id，其他会话的条目不返回
+     * @param afterId   消息id下界，不包含
+     * @param limit     最多读取的条数
+     * @return 读取结果，收件箱不能完整覆盖该范围时返回null，由调用方按读扩散查询
+     */
+    MessageInboxRange rangePrivateInbox(Long userId, Set<Long> friendIds, long afterId, int limit);
+
+    /**
+     * 读取群聊收件箱中消息id大于afterId的条目
+     *
+     * @param userId   用户id
+     * @param groupIds 用户当前所在的群组id，其他群组的条目不返回
+     * @param afterId  消息id下界，不包含
+     * @param limit    最多读取的条数
+     * @return 读取结果，收件箱不能完整覆盖该范围时返回null，由调用方按读扩散查询
+     */
+    MessageInboxRange rangeGroupInbox(Long userId, Set<Long> groupIds, long afterId, int limit);
+
+    /**
+     * 获取消息id大于afterId的范围内存在未写入收件箱的消息的群组，这些群组需按读扩散查询
+     *
+     * @param groupIds 群组id集合
+     * @param afterId  消息id下界，不包含
+     * @return 需按读扩散查询的群组id
+     */
+    Set<Long> getDiffusionGroupIds(Collection<Long> groupIds, long afterId);
+}
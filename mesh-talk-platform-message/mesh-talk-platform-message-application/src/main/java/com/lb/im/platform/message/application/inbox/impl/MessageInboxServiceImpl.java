@@ -0,0 +1,400 @@
+package com.lb.im.platform.message.application.inbox.impl;
+
+import cn.hutool.core.collection.CollectionUtil;
+import cn.hutool.core.util.StrUtil;
+import com.lb.im.platform.common.log.StatisticsLogger;
+import com.lb.im.platform.common.model.constants.IMPlatformConstants;
+import com.lb.im.platform.common.utils.SnowFlakeIdUtils;
+import com.lb.im.platform.message.application.inbox.MessageInboxEntry;
+import com.lb.im.platform.message.application.inbox.MessageInboxRange;
+import com.lb.im.platform.message.application.inbox.MessageInboxService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 写扩散收件箱服务实现类
+ *
+ * 技术点：
+ * 1. 每个用户的私聊、群聊收件箱各为一个有序集合，分值为消息id，成员为补齐19位的消息id加好友id或群组id，
+ *    分值因双精度相同时按成员字典序即消息id排列，读取时再按成员中的消息id精确过滤下界
+ * 2. 写入时通过一次管道完成所有参与者的ZADD、按条数裁剪和续期，消费重试时重复写入幂等
+ * 3. 成员数超过阈值的群组不写入收件箱，在读扩散群组集合中记录最近一条消息id，拉取时只对下界之后有消息的大群查询消息表
+ * 4. 收件箱只保证起始消息id之后的完整性，起始消息id在首次读取时按当前时间写入；
+ *    下界早于起始消息id，或收件箱已被裁剪到下界之后时返回null，由调用方回退读扩散
+ * 5. 收件箱在本地事务提交前写入，并发发送时消息id较小的消息仍可能稍晚写入；
+ *    读取时只返回发送时间早于水位线（当前时间减去settleMillis）的条目，拉取下界不会越过尚未写入的消息
+ */
+@Service
+public class MessageInboxServiceImpl implements MessageInboxService {
+    private final Logger logger = LoggerFactory.getLogger(MessageInboxServiceImpl.class);
+
+    /**
+     * 最短过期天数，拉取消息最多回溯一个月，收件箱过期时其中的消息必须都已超出拉取范围
+     */
+    private static final int MIN_EXPIRE_DAYS = 32;
+
+    /**
+     * 单次拉取最多读取收件箱的批次数，过滤掉非当前会话的条目后不足一页时继续读取下一批
+     */
+    private static final int MAX_RANGE_ROUNDS = 4;
+
+    /**
+     * 成员中消息id补齐的位数
+     */
+    private static final int MESSAGE_ID_WIDTH = 19;
+
+    /**
+     * 成员不存在或分值小于参数时写入，返回是否写入
+     */
+    private static final DefaultRedisScript<Long> SET_IF_GREATER_SCORE_SCRIPT = new DefaultRedisScript<>(
+            "local current = redis.call('zscore', KEYS[1], ARGV[1]) " +
+            "if (not current) or tonumber(current) < tonumber(ARGV[2]) then " +
+            "redis.call('zadd', KEYS[1], ARGV[2], ARGV[1]) return 1 end " +
+            "return 0", Long.class);
+
+    /**
+     * 是否开启写入收件箱
+     */
+    @Value("${message.inbox.enabled:false}")
+    private Boolean enabled;
+
+    /**
+     * 是否开启从收件箱拉取消息
+     */
+    @Value("${message.inbox.sync.enabled:false}")
+    private Boolean syncEnabled;
+
+    /**
+     * 收件箱条目的稳定时长，单位毫秒，只读取消息id对应的时间早于当前时间减去该时长的条目
+     */
+    @Value("${message.inbox.sync.settleMillis:2000}")
+    private Long settleMillis;
+
+    /**
+     * 写入收件箱的群聊最大成员数
+     */
+    @Value("${message.inbox.groupMaxMembers:200}")
+    private Integer groupMaxMembers;
+
+    /**
+     * 每个收件箱保留的最大条数
+     */
+    @Value("${message.inbox.maxSize:2000}")
+    private Integer maxSize;
+
+    /**
+     * 收件箱过期天数
+     */
+    @Value("${message.inbox.expireDays:32}")
+    private Integer expireDays;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 收件箱的起始消息id，读取后不再变化
+    private volatile Long startId;
+
+    // 收件箱读写统计
+    private final StatisticsLogger statistics = new StatisticsLogger(MessageInboxServiceImpl.class, "MessageInboxServiceImpl");
+    // 写入收件箱的私聊消息数
+    private final LongAdder privateAppendCount = statistics.counter("写入私聊消息数");
+    // 写入收件箱的群聊消息数
+    private final LongAdder groupAppendCount = statistics.counter("写入群聊消息数");
+    // 按读扩散处理的大群消息数
+    private final LongAdder diffusionCount = statistics.counter("读扩散群聊消息数");
+    // 读取收件箱的次数
+    private final LongAdder rangeCount = statistics.counter("读取次数");
+    // 回退读扩散的次数
+    private final LongAdder fallbackCount = statistics.counter("回退读扩散次数");
+
+    @PostConstruct
+    public void init() {
+        if (expireDays < MIN_EXPIRE_DAYS) {
+            logger.warn("MessageInboxServiceImpl|收件箱过期天数:{}小于{}天，按{}天执行", expireDays, MIN_EXPIRE_DAYS, MIN_EXPIRE_DAYS);
+            expireDays = MIN_EXPIRE_DAYS;
+        }
+        maxSize = Math.max(maxSize, 1);
+    }
+
+    @Override
+    public boolean isWriteEnabled() {
+        return Boolean.TRUE.equals(enabled);
+    }
+
+    @Override
+    public boolean isSyncEnabled() {
+        return this.isWriteEnabled() && Boolean.TRUE.equals(syncEnabled) && SnowFlakeIdUtils.isEnabled();
+    }
+
+    @Override
+    public void appendPrivateMessage(Long messageId, Long sendId, Long recvId) {
+        if (!this.isWriteEnabled() || messageId == null || sendId == null || recvId == null) {
+            return;
+        }
+        this.append(Arrays.asList(this.getKey(IMPlatformConstants.PLATFORM_REDIS_PRIVATE_INBOX_KEY, sendId),
+                                  this.getKey(IMPlatformConstants.PLATFORM_REDIS_PRIVATE_INBOX_KEY, recvId)),
+                    Arrays.asList(this.getMember(messageId, recvId), this.getMember(messageId, sendId)),
+                    messageId);
+        privateAppendCount.increment();
+        statistics.logIfDue();
+    }
+
+    @Override
+    public void appendGroupMessage(Long messageId, Long groupId, Long sendId, List<Long> receiveIds) {
+        if (!this.isWriteEnabled() || messageId == null || groupId == null || sendId == null) {
+            return;
+        }
+        int receiverCount = receiveIds == null ? 0 : receiveIds.size();
+        if (receiverCount + 1 > groupMaxMembers) {
+            stringRedisTemplate.execute(SET_IF_GREATER_SCORE_SCRIPT, Collections.singletonList(IMPlatformConstants.PLATFORM_REDIS_INBOX_DIFFUSION_GROUP_KEY),
+                                        String.valueOf(groupId), String.valueOf(messageId));
+            diffusionCount.increment();
+            statistics.logIfDue();
+            return;
+        }
+        String member = this.getMember(messageId, groupId);
+        List<String> keys = new ArrayList<>(receiverCount + 1);
+        List<String> members = new ArrayList<>(receiverCount + 1);
+        keys.add(this.getKey(IMPlatformConstants.PLATFORM_REDIS_GROUP_INBOX_KEY, sendId));
+        members.add(member);
+        if (receiveIds != null) {
+            for (Long receiveId : receiveIds) {
+                keys.add(this.getKey(IMPlatformConstants.PLATFORM_REDIS_GROUP_INBOX_KEY, receiveId));
+                members.add(member);
+            }
+        }
+        this.append(keys, members, messageId);
+        groupAppendCount.increment();
+        statistics.logIfDue();
+    }
+
+    @Override
+    public MessageInboxRange rangePrivateInbox(Long userId, Set<Long> friendIds, long afterId, int limit) {
+        return this.range(this.getKey(IMPlatformConstants.PLATFORM_REDIS_PRIVATE_INBOX_KEY, userId), friendIds, afterId, limit);
+    }
+
+    @Override
+    public MessageInboxRange rangeGroupInbox(Long userId, Set<Long> groupIds, long afterId, int limit) {
+        return this.range(this.getKey(IMPlatformConstants.PLATFORM_REDIS_GROUP_INBOX_KEY, userId), groupIds, afterId, limit);
+    }
+
+    @Override
+    public Set<Long> getDiffusionGroupIds(Collection<Long> groupIds, long afterId) {
+        Set<Long> diffusionGroupIds = new HashSet<>();
+        if (CollectionUtil.isEmpty(groupIds)) {
+            return diffusionGroupIds;
+        }
+        List<Long> ids = new ArrayList<>(groupIds);
+        List<Object> scores;
+        try {
+            scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (Long groupId : ids) {
+                    stringConnection.zScore(IMPlatformConstants.PLATFORM_REDIS_INBOX_DIFFUSION_GROUP_KEY, String.valueOf(groupId));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            logger.error("MessageInboxServiceImpl|获取读扩散群组失败，全部按读扩散查询|群组数:{}|{}", ids.size(), e.getMessage());
+            diffusionGroupIds.addAll(ids);
+            return diffusionGroupIds;
+        }
+        // 双精度分值的舍入是单调的，消息id大于下界时分值不小于下界的分值，按分值比较不会漏掉群组
+        double bound = (double) afterId;
+        for (int idx = 0; idx < ids.size(); idx++) {
+            Object score = scores.get(idx);
+            if (score != null && (Double) score >= bound) {
+                diffusionGroupIds.add(ids.get(idx));
+            }
+        }
+        return diffusionGroupIds;
+    }
+
+    /**
+     * 通过一次管道将消息写入多个收件箱，并按条数裁剪和续期
+     *
+     * @param keys      收件箱key列表
+     * @param members   与key一一对应的成员
+     * @param messageId 消息id，作为分值
+     */
+    private void append(List<String> keys, List<String> members, long messageId) {
+        double score = (double) messageId;
+        long expireSeconds = TimeUnit.DAYS.toSeconds(expireDays);
+        long trimEnd = -(maxSize + 1L);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (int idx = 0; idx < keys.size(); idx++) {
+                String key = keys.get(idx);
+                stringConnection.zAdd(key, score, members.get(idx));
+                stringConnection.zRemRange(key, 0, trimEnd);
+                stringConnection.expire(key, expireSeconds);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 读取收件箱中消息id大于afterId、小于水位线且属于当前会话的条目
+     * 过滤后不足一页且收件箱中还有更多条目时继续读取下一批，最多读取MAX_RANGE_ROUNDS批；
+     * 读完水位线之前的条目时，覆盖到的最大消息id为水位线之前的最大消息id
+     */
+    private MessageInboxRange range(String key, Set<Long> peerIds, long afterId, int limit) {
+        if (!this.isSyncEnabled()) {
+            return null;
+        }
+        rangeCount.increment();
+        statistics.logIfDue();
+        Long start = this.getStartId();
+        if (start == null || afterId < start) {
+            fallbackCount.increment();
+            return null;
+        }
+        long watermark = SnowFlakeIdUtils.getMinIdOfTime(new Date(System.currentTimeMillis() - Math.max(settleMillis, 0L)));
+        int size = Math.max(limit, 1);
+        List<MessageInboxEntry> entries = new ArrayList<>(size);
+        long rangeAfterId = afterId;
+        for (int round = 0; round < MAX_RANGE_ROUNDS; round++) {
+            MessageInboxRange inboxRange = this.rangeOnce(key, rangeAfterId, watermark, size);
+            if (inboxRange == null) {
+                fallbackCount.increment();
+                return null;
+            }
+            for (MessageInboxEntry entry : inboxRange.getEntries()) {
+                if (peerIds.contains(entry.getPeerId())) {
+                    entries.add(entry);
+                }
+            }
+            if (inboxRange.getCoveredMaxId() == null) {
+                return new MessageInboxRange(entries, watermark - 1);
+            }
+            rangeAfterId = inboxRange.getCoveredMaxId();
+            if (entries.size() >= size) {
+                break;
+            }
+        }
+        return new MessageInboxRange(entries, rangeAfterId);
+    }
+
+    /**
+     * 读取一批收件箱中消息id大于afterId且小于watermark的条目
+     * 多读取一倍的条目，用于跳过分值与上下界相同但消息id不在范围内的成员
+     *
+     * @return 读取结果，收件箱不能完整覆盖该范围时返回null
+     */
+    @SuppressWarnings("unchecked")
+    private MessageInboxRange rangeOnce(String key, long afterId, long watermark, int size) {
+        int fetchCount = size * 2;
+        List<Object> results;
+        try {
+            results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                stringConnection.zRangeByScore(key, (double) afterId, (double) watermark, 0, fetchCount);
+                stringConnection.zCard(key);
+                stringConnection.zRange(key, 0, 0);
+                return null;
+            });
+        } catch (Exception e) {
+            logger.error("MessageInboxServiceImpl|读取收件箱失败，回退读扩散|{}|{}", key, e.getMessage());
+            return null;
+        }
+        Set<String> members = (Set<String>) results.get(0);
+        Long count = (Long) results.get(1);
+        Set<String> first = (Set<String>) results.get(2);
+        // 收件箱已达到条数上限时最早的条目可能已被裁剪，最早的条目在下界之后说明无法确认下界之后的消息都在收件箱中
+        if (count != null && count >= maxSize && CollectionUtil.isNotEmpty(first) && this.getMessageId(first.iterator().next()) > afterId) {
+            return null;
+        }
+        List<MessageInboxEntry> entries = new ArrayList<>(size);
+        if (members != null) {
+            for (String member : members) {
+                long messageId = this.getMessageId(member);
+                if (messageId > afterId && messageId < watermark) {
+                    entries.add(new MessageInboxEntry(messageId, this.getPeerId(member)));
+                }
+            }
+        }
+        boolean truncated = members != null && members.size() >= fetchCount;
+        if (entries.size() > size) {
+            entries = new ArrayList<>(entries.subList(0, size));
+            truncated = true;
+        }
+        if (!truncated) {
+            return new MessageInboxRange(entries, null);
+        }
+        if (entries.isEmpty()) {
+            return null;
+        }
+        return new MessageInboxRange(entries, entries.get(entries.size() - 1).getMessageId());
+    }
+
+    /**
+     * 获取收件箱的起始消息id，不存在时以当前时间对应的最小消息id写入，多个实例同时写入时以先写入的为准
+     */
+    private Long getStartId() {
+        Long start = startId;
+        if (start != null) {
+            return start;
+        }
+        try {
+            String value = stringRedisTemplate.opsForValue().get(IMPlatformConstants.PLATFORM_REDIS_INBOX_START_KEY);
+            if (StrUtil.isEmpty(value)) {
+                stringRedisTemplate.opsForValue().setIfAbsent(IMPlatformConstants.PLATFORM_REDIS_INBOX_START_KEY,
+                                                              String.valueOf(SnowFlakeIdUtils.getMinIdOfTime(new Date())));
+                value = stringRedisTemplate.opsForValue().get(IMPlatformConstants.PLATFORM_REDIS_INBOX_START_KEY);
+            }
+            if (StrUtil.isEmpty(value)) {
+                return null;
+            }
+            start = Long.parseLong(value);
+            startId = start;
+            logger.info("MessageInboxServiceImpl|收件箱起始消息id:{}", start);
+            return start;
+        } catch (Exception e) {
+            logger.error("MessageInboxServiceImpl|获取收件箱起始消息id失败|{}", e.getMessage());
+            return null;
+        }
+    }
+
+    private String getKey(String prefix, Long userId) {
+        return IMPlatformConstants.getKey(prefix, String.valueOf(userId));
+    }
+
+    /**
+     * 成员格式为补齐19位的消息id:好友id或群组id
+     */
+    private String getMember(long messageId, long peerId) {
+        String id = String.valueOf(messageId);
+        StringBuilder member = new StringBuilder(MESSAGE_ID_WIDTH + 21);
+        for (int idx = id.length(); idx < MESSAGE_ID_WIDTH; idx++) {
+            member.append('0');
+        }
+        return member.append(id).append(':').append(peerId).toString();
+    }
+
+    private long getMessageId(String member) {
+        return Long.parseLong(member.substring(0, MESSAGE_ID_WIDTH));
+    }
+
+    private long getPeerId(String member) {
+        return Long.parseLong(member.substring(MESSAGE_ID_WIDTH + 1));
+    }
+}
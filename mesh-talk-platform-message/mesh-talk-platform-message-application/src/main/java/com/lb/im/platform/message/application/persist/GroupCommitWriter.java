@@ -0,0 +1,261 @@
+package com.lb.im.platform.message.application.persist;
+
+import com.lb.im.platform.common.log.StatisticsLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 批量提交写入器（Group Commit）
+ * 并发的调用方将待写入的数据行放入队列，由单个写线程在一个批次窗口内合并为一次多值INSERT写入，
+ * 多个本地事务共享一次数据库提交，每个调用方通过各自的Future获取本行的写入结果
+ *
+ * 技术点：
+ * 1. 攒批条件：达到最大批次条数，或自批次首行入队起超过窗口时间，二者满足其一即刷盘
+ * 2. 整批写入失败时退化为逐行写入，避免一条坏数据导致整批回滚
+ * 3. 统计批次数、行数、最大批次及刷盘耗时，并按固定间隔输出日志
+ *
+ * @param <T> 待写入的数据行类型
+ */
+public class GroupCommitWriter<T> {
+    private final Logger logger = LoggerFactory.getLogger(GroupCommitWriter.class);
+
+    /**
+     * 关闭时等待写线程刷盘的最长时间，单位秒
+     */
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10L;
+
+    // 写入器名称，用于线程名和日志
+    private final String name;
+    // 批次窗口，单位毫秒
+    private final long windowMillis;
+    // 单批最大行数
+    private final int maxBatchSize;
+    // 整批写入函数，返回是否全部写入成功
+    private final Function<List<T>, Boolean> batchWriter;
+    // 单行写入函数，整批失败时逐行兜底
+    private final Predicate<T> singleWriter;
+    // 待写入队列
+    private final BlockingQueue<PendingRow<T>> queue;
+    // 写线程
+    private final Thread writerThread;
+    // 是否运行中
+    private volatile boolean running = true;
+
+    // 批次大小和刷盘耗时统计
+    private final StatisticsLogger statistics;
+    // 刷盘批次数
+    private final LongAdder flushCount;
+    // 刷盘总行数
+    private final LongAdder rowCount;
+    // 整批失败后逐行兜底的批次数
+    private final LongAdder fallbackCount;
+    // 刷盘总耗时，单位纳秒
+    private final LongAdder flushNanos = new LongAdder();
+    // 历史最大批次行数
+    private final AtomicLong maxBatchRows = new AtomicLong();
+
+    public GroupCommitWriter(String name, long windowMillis, int maxBatchSize, int queueCapacity,
+                             Function<List<T>, Boolean> batchWriter, Predicate<T> singleWriter) {
+        this.name = name;
+        this.windowMillis = Math.max(windowMillis, 1L);
+        this.maxBatchSize = Math.max(maxBatchSize, 1);
+        this.batchWriter = batchWriter;
+        this.singleWriter = singleWriter;
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueCapacity, this.maxBatchSize));
+        this.statistics = new StatisticsLogger(GroupCommitWriter.class, "GroupCommitWriter|" + name);
+        this.flushCount = statistics.counter("批次数");
+        this.rowCount = statistics.counter("行数");
+        statistics.gauge("平均批次大小", this::getAverageBatchSize);
+        statistics.gauge("最大批次大小", this::getMaxBatchRows);
+        statistics.gauge("平均刷盘耗时(微秒)", this::getAverageFlushMicros);
+        this.fallbackCount = statistics.counter("逐行兜底批次数");
+        statistics.gauge("队列积压", queue::size);
+        this.writerThread = new Thread(this::runLoop, "group-commit-" + name);
+        this.writerThread.setDaemon(true);
+    }
+
+    /**
+     * 启动写线程
+     */
+    public void start() {
+        writerThread.start();
+    }
+
+    /**
+     * 提交一行待写入的数据
+     * 队列已满或写入器已关闭时返回已完成的失败结果，由调用方回滚本地事务
+     *
+     * @param row 待写入的数据行
+     * @return 本行写入结果，true表示已提交到数据库
+     */
+    public CompletableFuture<Boolean> submit(T row) {
+        PendingRow<T> pendingRow = new PendingRow<>(row);
+        if (!running || !queue.offer(pendingRow)) {
+            logger.warn("GroupCommitWriter|{}|写入队列已满或已关闭，拒绝写入", name);
+            pendingRow.future.complete(false);
+        }
+        return pendingRow.future;
+    }
+
+    /**
+     * 关闭写入器
+     * 停止接收新数据，不中断写线程，写线程在当前批次写完后继续将队列中剩余数据刷盘再退出；
+     * 写线程退出后仍留在队列中的数据行（与关闭并发提交的）按写入失败完成，由调用方回滚
+     */
+    public void shutdown() {
+        running = false;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            logger.warn("GroupCommitWriter|{}|关闭超时，写线程仍在刷盘|队列积压:{}", name, queue.size());
+            return;
+        }
+        PendingRow<T> pendingRow;
+        while ((pendingRow = queue.poll()) != null) {
+            pendingRow.future.complete(false);
+        }
+    }
+
+    /**
+     * 写线程主循环
+     */
+    private void runLoop() {
+        List<PendingRow<T>> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingRow<T> first = queue.poll(windowMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 在批次窗口内继续攒批，直到达到最大条数
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                        break;
+                    }
+                    PendingRow<T> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // 关闭流程不中断写线程，被意外中断时忽略，已攒的批次照常刷盘
+                logger.warn("GroupCommitWriter|{}|写线程被中断，继续刷盘", name);
+            }
+            if (!batch.isEmpty()) {
+                this.flush(batch);
+                batch.clear();
+            }
+            statistics.logIfDue();
+        }
+    }
+
+    /**
+     * 将一个批次写入数据库并完成各行的Future
+     *
+     * @param batch 批次数据
+     */
+    private void flush(List<PendingRow<T>> batch) {
+        long start = System.nanoTime();
+        List<T> rows = new ArrayList<>(batch.size());
+        for (PendingRow<T> pendingRow : batch) {
+            rows.add(pendingRow.row);
+        }
+        boolean batchResult;
+        try {
+            batchResult = Boolean.TRUE.equals(batchWriter.apply(rows));
+        } catch (Exception e) {
+            logger.error("GroupCommitWriter|{}|批量写入失败，退化为逐行写入|批次大小:{}|{}", name, rows.size(), e.getMessage());
+            batchResult = false;
+        }
+        if (batchResult) {
+            for (PendingRow<T> pendingRow : batch) {
+                pendingRow.future.complete(true);
+            }
+        } else {
+            fallbackCount.increment();
+            for (PendingRow<T> pendingRow : batch) {
+                pendingRow.future.complete(this.writeSingle(pendingRow.row));
+            }
+        }
+        flushNanos.add(System.nanoTime() - start);
+        flushCount.increment();
+        rowCount.add(batch.size());
+        maxBatchRows.accumulateAndGet(batch.size(), Math::max);
+    }
+
+    /**
+     * 逐行写入单条数据
+     *
+     * @param row 数据行
+     * @return 是否写入成功
+     */
+    private boolean writeSingle(T row) {
+        try {
+            return singleWriter.test(row);
+        } catch (Exception e) {
+            logger.error("GroupCommitWriter|{}|单行写入失败|{}", name, e.getMessage());
+            return false;
+        }
+    }
+
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
+    public long getRowCount() {
+        return rowCount.sum();
+    }
+
+    public long getFallbackCount() {
+        return fallbackCount.sum();
+    }
+
+    public long getMaxBatchRows() {
+        return maxBatchRows.get();
+    }
+
+    public double getAverageBatchSize() {
+        long flushes = getFlushCount();
+        return flushes == 0 ? 0D : (double) getRowCount() / flushes;
+    }
+
+    public long getAverageFlushMicros() {
+        long flushes = getFlushCount();
+        return flushes == 0 ? 0L : TimeUnit.NANOSECONDS.toMicros(flushNanos.sum() / flushes);
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * 队列中等待写入的数据行
+     */
+    private static class PendingRow<T> {
+        private final T row;
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        private PendingRow(T row) {
+            this.row = row;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.lb.im.platform.message.application.persist;
+
+import com.lb.im.platform.message.domain.event.IMGroupMessageTxEvent;
+import com.lb.im.platform.message.domain.event.IMPrivateMessageTxEvent;
+import org.apache.rocketmq.spring.core.RocketMQLocalTransactionState;
+
+/**
+ * 消息批量持久化服务接口
+ * 供事务消息监听器在执行本地事务时调用，将并发到达的消息合并为批量写入，
+ * 并把每条消息的写入结果映射为RocketMQ本地事务状态
+ */
+public interface MessagePersistService {
+
+    /**
+     * 是否开启批量提交
+     */
+    boolean isEnabled();
+
+    /**
+     * 批量提交私聊消息
+     *
+     * @param imPrivateMessageTxEvent 私聊消息事务事件
+     * @return 写入成功返回COMMIT，写入失败返回ROLLBACK，等待超时返回UNKNOWN交由回查确认
+     */
+    RocketMQLocalTransactionState savePrivateMessage(IMPrivateMessageTxEvent imPrivateMessageTxEvent);
+
+    /**
+     * 批量提交群聊消息
+     *
+     * @param imGroupMessageTxEvent 群聊消息事务事件
+     * @return 写入成功返回COMMIT，写入失败返回ROLLBACK，等待超时返回UNKNOWN交由回查确认
+     */
+    RocketMQLocalTransactionState saveGroupMessage(IMGroupMessageTxEvent imGroupMessageTxEvent);
+}
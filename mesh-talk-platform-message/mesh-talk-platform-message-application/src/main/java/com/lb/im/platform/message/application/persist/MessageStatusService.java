@@ -0,0 +1,18 @@
+package com.lb.im.platform.message.application.persist;
+
+import java.util.List;
+
+/**
+ * 消息状态更新服务接口
+ * 拉取消息后的送达等状态变更先在内存中按消息id合并，再批量写入，避免重连高峰时大量细碎的UPDATE互相竞争
+ */
+public interface MessageStatusService {
+
+    /**
+     * 更新私聊消息状态，状态只前进不回退
+     *
+     * @param status 目标状态
+     * @param ids    消息id列表
+     */
+    void updatePrivateMessageStatus(Integer status, List<Long> ids);
+}
@@ -0,0 +1,244 @@
+package com.lb.im.platform.message.application.persist;
+
+import com.lb.im.platform.common.log.StatisticsLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+
+/**
+ * 消息状态延迟合并写入缓冲区（Write-Behind）
+ * 调用方提交的状态变更先按消息id合并在内存中，由单个写线程按固定窗口刷盘，
+ * 每次刷盘按批次大小拆分为少量 update ... where id in (...) 语句
+ *
+ * 技术点：
+ * 1. 每个缓冲区只接收一种目标状态（如送达），同一消息id在窗口内多次提交只写入一次；
+ *    状态码的大小不代表先后（撤回小于已读），不同目标状态不在缓冲区中合并，其他状态的提交返回false由调用方直接写入
+ * 2. 待写入的消息id数有上限，超过上限时拒绝提交，由调用方直接写入，内存占用有界
+ * 3. 提交持有读锁，刷盘交换缓冲区时持有写锁，交换后的缓冲区不会再被写入
+ * 4. 关闭时将缓冲区剩余的状态变更刷盘
+ * 5. 统计提交次数、实际写入的消息数和UPDATE语句数，按固定间隔输出合并比例
+ * 6. 批量更新失败时将该批消息id放回缓冲区，在下一个窗口重试；放回同样受容量上限约束，放不下或已关闭时丢弃并计数
+ */
+public class StatusWriteBehindBuffer {
+    private final Logger logger = LoggerFactory.getLogger(StatusWriteBehindBuffer.class);
+
+    // 缓冲区名称，用于线程名和日志
+    private final String name;
+    // 缓冲区接收的目标状态
+    private final Integer status;
+    // 刷盘窗口，单位毫秒
+    private final long windowMillis;
+    // 缓冲区最多容纳的消息id数
+    private final int maxPending;
+    // 单条UPDATE语句最多包含的消息id数
+    private final int maxBatchSize;
+    // 批量更新函数，参数为目标状态和消息id列表，返回更新的记录数，需保证不覆盖更靠后的状态
+    private final BiFunction<Integer, List<Long>, Integer> statusUpdater;
+    // 刷盘线程
+    private final Thread flushThread;
+    // 交换缓冲区的读写锁
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    // 待写入目标状态的消息id
+    private volatile Set<Long> pending = ConcurrentHashMap.newKeySet();
+    // 是否运行中
+    private volatile boolean running = true;
+
+    // 合并比例统计
+    private final StatisticsLogger statistics;
+    // 提交的状态变更次数（按消息计）
+    private final LongAdder submittedCount;
+    // 合并后写入的消息数
+    private final LongAdder flushedCount;
+    // 执行的UPDATE语句数
+    private final LongAdder updateCount;
+    // 缓冲区已满被拒绝的提交次数
+    private final LongAdder rejectedCount;
+    // 更新失败放回缓冲区的消息数
+    private final LongAdder requeuedCount;
+    // 更新失败且无法放回缓冲区而丢弃的消息数
+    private final LongAdder droppedCount;
+
+    public StatusWriteBehindBuffer(String name, Integer status, long windowMillis, int maxPending, int maxBatchSize,
+                                   BiFunction<Integer, List<Long>, Integer> statusUpdater) {
+        this.name = name;
+        this.status = status;
+        this.windowMillis = Math.max(windowMillis, 1L);
+        this.maxPending = Math.max(maxPending, 1);
+        this.maxBatchSize = Math.max(maxBatchSize, 1);
+        this.statusUpdater = statusUpdater;
+        this.statistics = new StatisticsLogger(StatusWriteBehindBuffer.class, "StatusWriteBehindBuffer|" + name);
+        this.submittedCount = statistics.counter("提交数");
+        this.flushedCount = statistics.counter("写入消息数");
+        this.updateCount = statistics.counter("UPDATE语句数");
+        statistics.gauge("合并比例", this::getCoalescingRatio);
+        this.rejectedCount = statistics.counter("拒绝次数");
+        this.requeuedCount = statistics.counter("失败重试数");
+        this.droppedCount = statistics.counter("失败丢弃数");
+        statistics.gauge("待写入", () -> pending.size());
+        this.flushThread = new Thread(this::runLoop, "status-write-behind-" + name);
+        this.flushThread.setDaemon(true);
+    }
+
+    /**
+     * 启动刷盘线程
+     */
+    public void start() {
+        flushThread.start();
+    }
+
+    /**
+     * 提交一批消息的状态变更
+     *
+     * @param status 目标状态
+     * @param ids    消息id列表
+     * @return 是否已放入缓冲区，目标状态不是缓冲区接收的状态、缓冲区已满或已关闭时返回false，由调用方直接写入
+     */
+    public boolean submit(Integer status, List<Long> ids) {
+        if (!this.status.equals(status)) {
+            return false;
+        }
+        swapLock.readLock().lock();
+        try {
+            // 在读锁内检查运行状态，关闭后的最后一次刷盘交换缓冲区之后不会再有写入
+            Set<Long> current = pending;
+            if (!running || current.size() + ids.size() > maxPending) {
+                rejectedCount.increment();
+                return false;
+            }
+            current.addAll(ids);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        submittedCount.add(ids.size());
+        return true;
+    }
+
+    /**
+     * 关闭缓冲区
+     * 停止接收新的状态变更，刷盘线程将剩余的状态变更写入后退出
+     */
+    public void shutdown() {
+        running = false;
+        flushThread.interrupt();
+        try {
+            flushThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 刷盘线程主循环
+     */
+    private void runLoop() {
+        while (running) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(windowMillis);
+            } catch (InterruptedException e) {
+                // 关闭时被中断，退出循环后将剩余数据刷盘
+                break;
+            }
+            this.flush();
+            statistics.logIfDue();
+        }
+        this.flush();
+    }
+
+    /**
+     * 交换缓冲区，并将交换出的消息id分批写入目标状态
+     */
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Set<Long> flushing;
+        swapLock.writeLock().lock();
+        try {
+            flushing = pending;
+            pending = ConcurrentHashMap.newKeySet();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        List<Long> ids = new ArrayList<>(flushing);
+        for (int from = 0; from < ids.size(); from += maxBatchSize) {
+            List<Long> batch = ids.subList(from, Math.min(from + maxBatchSize, ids.size()));
+            try {
+                statusUpdater.apply(status, batch);
+                updateCount.increment();
+                flushedCount.add(batch.size());
+            } catch (Exception e) {
+                int requeued = this.requeue(batch);
+                logger.error("StatusWriteBehindBuffer|{}|批量更新消息状态失败|状态:{}|消息数:{}|放回缓冲区:{}", name, status, batch.size(), requeued, e);
+            }
+        }
+    }
+
+    /**
+     * 将更新失败的消息id放回缓冲区，在下一个窗口重试
+     * 只放入缓冲区剩余容量内的消息id，其余的丢弃；已关闭时不再有刷盘，全部丢弃
+     *
+     * @param ids 更新失败的消息id
+     * @return 放回缓冲区的消息数
+     */
+    private int requeue(List<Long> ids) {
+        int requeued = 0;
+        swapLock.readLock().lock();
+        try {
+            Set<Long> current = pending;
+            if (running) {
+                for (Long id : ids) {
+                    if (current.size() >= maxPending) {
+                        break;
+                    }
+                    current.add(id);
+                    requeued++;
+                }
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        requeuedCount.add(requeued);
+        droppedCount.add(ids.size() - requeued);
+        return requeued;
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.sum();
+    }
+
+    public long getFlushedCount() {
+        return flushedCount.sum();
+    }
+
+    public long getUpdateCount() {
+        return updateCount.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    public long getRequeuedCount() {
+        return requeuedCount.sum();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * 合并比例，即提交的状态变更数与实际写入的消息数之比
+     */
+    public double getCoalescingRatio() {
+        long flushed = getFlushedCount();
+        return flushed == 0 ? 0D : (double) getSubmittedCount() / flushed;
+    }
+}
@@ -0,0 +1,141 @@
+package com.lb.im.platform.message.application.persist.impl;
+
+import com.lb.im.platform.common.model.entity.GroupMessage;
+import com.lb.im.platform.common.model.entity.PrivateMessage;
+import com.lb.im.platform.message.application.persist.GroupCommitWriter;
+import com.lb.im.platform.message.application.persist.MessagePersistService;
+import com.lb.im.platform.message.domain.event.IMGroupMessageTxEvent;
+import com.lb.im.platform.message.domain.event.IMPrivateMessageTxEvent;
+import com.lb.im.platform.message.domain.service.GroupMessageDomainService;
+import com.lb.im.platform.message.domain.service.PrivateMessageDomainService;
+import org.apache.rocketmq.spring.core.RocketMQLocalTransactionState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 消息批量持久化服务实现类
+ * 单聊和群聊各自持有一个批量提交写入器，批次窗口、批次大小和等待超时均可配置
+ */
+@Service
+public class MessagePersistServiceImpl implements MessagePersistService {
+    private final Logger logger = LoggerFactory.getLogger(MessagePersistServiceImpl.class);
+
+    /**
+     * 是否开启批量提交
+     */
+    @Value("${message.persist.batch.enabled:false}")
+    private Boolean enabled;
+
+    /**
+     * 批次窗口，单位毫秒
+     */
+    @Value("${message.persist.batch.windowMillis:5}")
+    private Long windowMillis;
+
+    /**
+     * 单批最大消息条数
+     */
+    @Value("${message.persist.batch.maxSize:200}")
+    private Integer maxSize;
+
+    /**
+     * 写入队列容量
+     */
+    @Value("${message.persist.batch.queueCapacity:10000}")
+    private Integer queueCapacity;
+
+    /**
+     * 本地事务等待写入结果的超时时间，单位毫秒
+     */
+    @Value("${message.persist.batch.timeoutMillis:3000}")
+    private Long timeoutMillis;
+
+    @Autowired
+    private PrivateMessageDomainService privateMessageDomainService;
+
+    @Autowired
+    private GroupMessageDomainService groupMessageDomainService;
+
+    // 私聊消息写入器
+    private GroupCommitWriter<PrivateMessage> privateMessageWriter;
+    // 群聊消息写入器
+    private GroupCommitWriter<GroupMessage> groupMessageWriter;
+
+    @PostConstruct
+    public void init() {
+        if (!this.isEnabled()) {
+            return;
+        }
+        privateMessageWriter = new GroupCommitWriter<>("private-message", windowMillis, maxSize, queueCapacity,
+                                                       privateMessageDomainService::saveBatchPrivateMessage,
+                                                       privateMessageDomainService::savePrivateMessage);
+        groupMessageWriter = new GroupCommitWriter<>("group-message", windowMillis, maxSize, queueCapacity,
+                                                     groupMessageDomainService::saveBatchGroupMessage,
+                                                     groupMessageDomainService::saveGroupMessage);
+        privateMessageWriter.start();
+        groupMessageWriter.start();
+        logger.info("MessagePersistService|开启消息批量提交|批次窗口:{}ms|批次大小:{}", windowMillis, maxSize);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (privateMessageWriter != null) {
+            privateMessageWriter.shutdown();
+        }
+        if (groupMessageWriter != null) {
+            groupMessageWriter.shutdown();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(enabled);
+    }
+
+    @Override
+    public RocketMQLocalTransactionState savePrivateMessage(IMPrivateMessageTxEvent imPrivateMessageTxEvent) {
+        PrivateMessage privateMessage = privateMessageDomainService.buildPrivateMessage(imPrivateMessageTxEvent);
+        return this.await(privateMessageWriter.submit(privateMessage), privateMessage.getId());
+    }
+
+    @Override
+    public RocketMQLocalTransactionState saveGroupMessage(IMGroupMessageTxEvent imGroupMessageTxEvent) {
+        GroupMessage groupMessage = groupMessageDomainService.buildGroupMessage(imGroupMessageTxEvent);
+        return this.await(groupMessageWriter.submit(groupMessage), groupMessage.getId());
+    }
+
+    /**
+     * 等待写入结果并转换为本地事务状态
+     * 等待超时说明消息可能仍会被写入，返回UNKNOWN由Broker回查最终结果
+     *
+     * @param future    写入结果
+     * @param messageId 消息id
+     * @return 本地事务状态
+     */
+    private RocketMQLocalTransactionState await(CompletableFuture<Boolean> future, Long messageId) {
+        try {
+            return Boolean.TRUE.equals(future.get(timeoutMillis, TimeUnit.MILLISECONDS))
+                    ? RocketMQLocalTransactionState.COMMIT
+                    : RocketMQLocalTransactionState.ROLLBACK;
+        } catch (TimeoutException e) {
+            logger.warn("MessagePersistService|等待批量写入结果超时|{}", messageId);
+            return RocketMQLocalTransactionState.UNKNOWN;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return RocketMQLocalTransactionState.UNKNOWN;
+        } catch (ExecutionException e) {
+            logger.error("MessagePersistService|批量写入异常|{}", messageId, e);
+            return RocketMQLocalTransactionState.ROLLBACK;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.lb.im.platform.message.application.persist.impl;
+
+import cn.hutool.core.collection.CollectionUtil;
+import com.lb.im.platform.common.model.enums.MessageStatus;
+import com.lb.im.platform.common.threadpool.PrivateMessageThreadPoolUtils;
+import com.lb.im.platform.message.application.persist.MessageStatusService;
+import com.lb.im.platform.message.application.persist.StatusWriteBehindBuffer;
+import com.lb.im.platform.message.domain.service.PrivateMessageDomainService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+
+/**
+ * 消息状态更新服务实现类
+ * 开启延迟合并写入时送达状态进入缓冲区，其他状态、缓冲区已满或未开启时提交到私聊线程池直接写入
+ */
+@Service
+public class MessageStatusServiceImpl implements MessageStatusService {
+    private final Logger logger = LoggerFactory.getLogger(MessageStatusServiceImpl.class);
+
+    /**
+     * 是否开启消息状态延迟合并写入
+     */
+    @Value("${message.status.writeBehind.enabled:true}")
+    private Boolean enabled;
+
+    /**
+     * 刷盘窗口，单位毫秒
+     */
+    @Value("${message.status.writeBehind.windowMillis:200}")
+    private Long windowMillis;
+
+    /**
+     * 缓冲区最多容纳的消息id数
+     */
+    @Value("${message.status.writeBehind.maxPending:100000}")
+    private Integer maxPending;
+
+    /**
+     * 单条UPDATE语句最多包含的消息id数
+     */
+    @Value("${message.status.writeBehind.maxBatchSize:1000}")
+    private Integer maxBatchSize;
+
+    @Autowired
+    private PrivateMessageDomainService privateMessageDomainService;
+
+    // 私聊消息状态缓冲区
+    private StatusWriteBehindBuffer privateStatusBuffer;
+
+    @PostConstruct
+    public void init() {
+        if (!Boolean.TRUE.equals(enabled)) {
+            return;
+        }
+        privateStatusBuffer = new StatusWriteBehindBuffer("private-message-status", MessageStatus.SENDED.code(), windowMillis, maxPending,
+                                                          maxBatchSize, privateMessageDomainService::batchUpdatePrivateMessageStatus);
+        privateStatusBuffer.start();
+        logger.info("MessageStatusService|开启消息状态延迟合并写入|刷盘窗口:{}ms|缓冲上限:{}", windowMillis, maxPending);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (privateStatusBuffer != null) {
+            privateStatusBuffer.shutdown();
+        }
+    }
+
+    @Override
+    public void updatePrivateMessageStatus(Integer status, List<Long> ids) {
+        if (status == null || CollectionUtil.isEmpty(ids)) {
+            return;
+        }
+        if (privateStatusBuffer != null && privateStatusBuffer.submit(status, ids)) {
+            return;
+        }
+        PrivateMessageThreadPoolUtils.execute(() -> privateMessageDomainService.batchUpdatePrivateMessageStatus(status, ids));
+    }
+}
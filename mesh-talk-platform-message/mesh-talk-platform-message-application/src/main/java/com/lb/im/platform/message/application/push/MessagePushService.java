@@ -0,0 +1,35 @@
+package com.lb.im.platform.message.application.push;
+
+import com.lb.im.common.domain.model.IMUserInfo;
+import com.lb.im.platform.common.model.vo.GroupMessageVO;
+import com.lb.im.platform.common.model.vo.PrivateMessageVO;
+
+import java.util.List;
+
+/**
+ * 消息批量推送服务接口
+ * 供批量消费者将同一会话的一组连续消息交给推送层，开启合并推送时整组消息作为一帧推送，
+ * 否则按顺序逐条推送；推送失败时停止推送该组的后续消息，返回已推送的条数，由消费者按条确认
+ */
+public interface MessagePushService {
+
+    /**
+     * 推送同一发送者发给同一接收者的一组单聊消息
+     *
+     * @param sender            发送者信息
+     * @param receiveId         接收者id
+     * @param privateMessageVOs 单聊消息数据列表，按消息id升序排列
+     * @return 从列表开头起成功推送的条数
+     */
+    int sendPrivateMessages(IMUserInfo sender, Long receiveId, List<PrivateMessageVO> privateMessageVOs);
+
+    /**
+     * 推送同一发送者在同一群组发给同一批接收者的一组群聊消息，大群由扇出服务分片并行推送
+     *
+     * @param sender          发送者信息
+     * @param receiveIds      接收者id列表
+     * @param groupMessageVOs 群聊消息数据列表，按消息id升序排列
+     * @return 从列表开头起成功推送的条数
+     */
+    int sendGroupMessages(IMUserInfo sender, List<Long> receiveIds, List<GroupMessageVO> groupMessageVOs);
+}
@@ -0,0 +1,98 @@
+package com.lb.im.platform.message.application.push.impl;
+
+import com.lb.im.common.domain.model.IMPrivateMessage;
+import com.lb.im.common.domain.model.IMUserInfo;
+import com.lb.im.platform.common.model.vo.GroupMessageVO;
+import com.lb.im.platform.common.model.vo.PrivateMessageVO;
+import com.lb.im.platform.message.application.fanout.GroupMessageFanoutService;
+import com.lb.im.platform.message.application.push.MessagePushService;
+import com.lb.im.sdk.client.IMClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * 消息批量推送服务实现类
+ *
+ * 技术点：
+ * 1. IMClient只提供逐条推送的接口，批量推送在这里实现
+ * 2. 开启合并推送时，一组消息以列表作为数据构造一条推送消息，每组只经过一次推送链路；需客户端支持列表数据
+ * 3. 未开启合并推送时按顺序逐条推送，遇到失败即停止，保证已推送的消息是列表的前缀，同一会话内不乱序
+ */
+@Service
+public class MessagePushServiceImpl implements MessagePushService {
+    private final Logger logger = LoggerFactory.getLogger(MessagePushServiceImpl.class);
+
+    /**
+     * 是否将同一会话的一组消息合并为一帧推送
+     */
+    @Value("${message.consumer.batch.coalesce:false}")
+    private Boolean coalesce;
+
+    @Autowired
+    private IMClient imClient;
+
+    @Autowired
+    private GroupMessageFanoutService groupMessageFanoutService;
+
+    @Override
+    public int sendPrivateMessages(IMUserInfo sender, Long receiveId, List<PrivateMessageVO> privateMessageVOs) {
+        if (privateMessageVOs.size() > 1 && Boolean.TRUE.equals(coalesce)) {
+            try {
+                imClient.sendPrivateMessage(this.buildPrivateMessage(sender, receiveId, privateMessageVOs));
+                return privateMessageVOs.size();
+            } catch (Exception e) {
+                logger.error("MessagePushService|合并推送单聊消息失败|接收者:{}|消息数:{}", receiveId, privateMessageVOs.size(), e);
+                return 0;
+            }
+        }
+        int pushed = 0;
+        for (PrivateMessageVO privateMessageVO : privateMessageVOs) {
+            try {
+                imClient.sendPrivateMessage(this.buildPrivateMessage(sender, receiveId, privateMessageVO));
+            } catch (Exception e) {
+                logger.error("MessagePushService|推送单聊消息失败|{}|接收者:{}", privateMessageVO.getId(), receiveId, e);
+                break;
+            }
+            pushed++;
+        }
+        return pushed;
+    }
+
+    @Override
+    public int sendGroupMessages(IMUserInfo sender, List<Long> receiveIds, List<GroupMessageVO> groupMessageVOs) {
+        if (groupMessageVOs.size() > 1 && Boolean.TRUE.equals(coalesce)) {
+            try {
+                groupMessageFanoutService.sendGroupMessages(sender, receiveIds, groupMessageVOs);
+                return groupMessageVOs.size();
+            } catch (Exception e) {
+                logger.error("MessagePushService|合并推送群聊消息失败|群组:{}|消息数:{}", groupMessageVOs.get(0).getGroupId(), groupMessageVOs.size(), e);
+                return 0;
+            }
+        }
+        int pushed = 0;
+        for (GroupMessageVO groupMessageVO : groupMessageVOs) {
+            try {
+                groupMessageFanoutService.sendGroupMessage(sender, receiveIds, groupMessageVO);
+            } catch (Exception e) {
+                logger.error("MessagePushService|推送群聊消息失败|{}|群组:{}", groupMessageVO.getId(), groupMessageVO.getGroupId(), e);
+                break;
+            }
+            pushed++;
+        }
+        return pushed;
+    }
+
+    private <T> IMPrivateMessage<T> buildPrivateMessage(IMUserInfo sender, Long receiveId, T data) {
+        IMPrivateMessage<T> sendMessage = new IMPrivateMessage<>();
+        sendMessage.setSender(sender);
+        sendMessage.setReceiveId(receiveId);
+        sendMessage.setSendToSelf(true);
+        sendMessage.setData(data);
+        return sendMessage;
+    }
+}
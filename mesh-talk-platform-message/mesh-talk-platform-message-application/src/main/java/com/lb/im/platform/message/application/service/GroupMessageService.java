@@ -1,6 +1,8 @@
 package com.lb.im.platform.message.application.service;
 
 import com.lb.im.platform.common.model.dto.GroupMessageDTO;
+import com.lb.im.platform.common.model.vo.CursorPageVO;
+import com.lb.im.platform.common.response.PendingResult;
 import com.lb.im.platform.common.model.vo.GroupMessageVO;
 import com.lb.im.platform.message.domain.event.IMGroupMessageTxEvent;
 
@@ -22,6 +24,15 @@ public interface GroupMessageService {
      */
     Long sendMessage(GroupMessageDTO dto);
 
+    /**
+     * 异步发送群聊消息
+     * 请求线程只完成校验和事件构造，本地事务提交后完成返回的Future
+     *
+     * @param dto 群聊消息数据传输对象
+     * @return 生成的消息ID及其Future，本地事务回滚或发送繁忙时Future异常完成；等待超时时调用方可按消息ID确认发送结果
+     */
+    PendingResult<Long> sendMessageAsync(GroupMessageDTO dto);
+
     /**
      * 保存群聊消息
      * 处理消息事务事件，将消息持久化到数据库
@@ -41,6 +52,16 @@ public interface GroupMessageService {
      */
     boolean checkExists(Long messageId);
 
+    /**
+     * 获取群聊消息的接收者，即消息发送时的群成员（不包含发送者）
+     * 事件携带接收者列表时直接返回；精简模式按成员集合版本号解析发送时的成员快照，
+     * 快照不存在或已过期时回退为从群组服务加载的当前成员，宁可多投递给发送之后才入群的成员，也不丢弃整条推送
+     *
+     * @param imGroupMessageTxEvent 群聊消息事务事件
+     * @return 接收者id列表
+     */
+    List<Long> getReceiveIds(IMGroupMessageTxEvent imGroupMessageTxEvent);
+
     /**
      * 异步拉取群聊消息，通过websocket异步推送
      */
@@ -56,6 +77,16 @@ public interface GroupMessageService {
      */
     List<GroupMessageVO> findHistoryMessage(Long groupId, Long page, Long size);
 
+    /**
+     * 按游标拉取历史聊天记录，返回ID小于beforeId的消息，beforeId为空时从最新消息开始
+     */
+    CursorPageVO<GroupMessageVO> findHistoryMessageByCursor(Long groupId, Long beforeId, Long size);
+
+    /**
+     * 按游标查询@当前用户的群聊消息，返回ID小于beforeId的消息，beforeId为空时从最新消息开始，groupId为空时查询所有群组
+     */
+    CursorPageVO<GroupMessageVO> findMentionMessageByCursor(Long groupId, Long beforeId, Long size);
+
     /**
      * 消息已读,同步其他终端，清空未读数量
      */
@@ -1,6 +1,8 @@
 package com.lb.im.platform.message.application.service;
 
 import com.lb.im.platform.common.model.dto.PrivateMessageDTO;
+import com.lb.im.platform.common.model.vo.CursorPageVO;
+import com.lb.im.platform.common.response.PendingResult;
 import com.lb.im.platform.common.model.vo.PrivateMessageVO;
 import com.lb.im.platform.message.domain.event.IMPrivateMessageTxEvent;
 
@@ -22,6 +24,15 @@ public interface PrivateMessageService {
      */
     Long sendMessage(PrivateMessageDTO dto);
 
+    /**
+     * 异步发送私聊消息
+     * 请求线程只完成校验和事件构造，本地事务提交后完成返回的Future
+     *
+     * @param dto 私聊消息数据传输对象
+     * @return 生成的消息ID及其Future，本地事务回滚或发送繁忙时Future异常完成；等待超时时调用方可按消息ID确认发送结果
+     */
+    PendingResult<Long> sendMessageAsync(PrivateMessageDTO dto);
+
     /**
      * 保存私聊消息事务事件
      * 处理消息事务事件，将消息持久化到数据库
@@ -69,6 +80,17 @@ public interface PrivateMessageService {
      */
     List<PrivateMessageVO> getHistoryMessage(Long friendId, Long page, Long size);
 
+    /**
+     * 按游标获取与指定好友的历史聊天记录
+     * 每页都是一次索引范围扫描，翻页深度不影响查询代价
+     *
+     * @param friendId 好友用户ID
+     * @param beforeId 游标，返回ID小于此值的消息，为空时从最新消息开始
+     * @param size 每页大小
+     * @return 游标分页结果，消息按ID倒序排序
+     */
+    CursorPageVO<PrivateMessageVO> getHistoryMessageByCursor(Long friendId, Long beforeId, Long size);
+
     /**
      * 标记消息为已读状态
      * 将与指定好友的整个会话中的所有消息都置为已读状态
@@ -1,42 +1,54 @@
 package com.lb.im.platform.message.application.service.impl;
 
 import cn.hutool.core.collection.CollectionUtil;
+import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
-import com.alibaba.fastjson.JSONObject;
 import com.lb.im.common.cache.distribute.DistributedCacheService;
-import com.lb.im.common.cache.id.SnowFlakeFactory;
 import com.lb.im.common.domain.constans.IMConstants;
 import com.lb.im.common.domain.model.IMGroupMessage;
 import com.lb.im.common.domain.model.IMUserInfo;
-import com.lb.im.common.mq.MessageSenderService;
 import com.lb.im.platform.common.exception.IMException;
+import com.lb.im.platform.common.log.HotPathLogger;
 import com.lb.im.platform.common.model.constants.IMPlatformConstants;
 import com.lb.im.platform.common.model.dto.GroupMessageDTO;
+import com.lb.im.platform.common.model.entity.GroupMessageMention;
 import com.lb.im.platform.common.model.enums.HttpCode;
 import com.lb.im.platform.common.model.enums.MessageStatus;
 import com.lb.im.platform.common.model.enums.MessageType;
 import com.lb.im.platform.common.model.params.GroupParams;
+import com.lb.im.platform.common.model.vo.CursorPageVO;
 import com.lb.im.platform.common.model.vo.GroupMemberSimpleVO;
 import com.lb.im.platform.common.model.vo.GroupMessageVO;
+import com.lb.im.platform.common.model.vo.GroupSendContextVO;
+import com.lb.im.platform.common.response.PendingResult;
 import com.lb.im.platform.common.session.SessionContext;
 import com.lb.im.platform.common.session.UserSession;
 import com.lb.im.platform.common.threadpool.GroupMessageThreadPoolUtils;
 import com.lb.im.platform.common.utils.DateTimeUtils;
+import com.lb.im.platform.common.utils.SnowFlakeIdUtils;
 import com.lb.im.platform.dubbo.group.GroupDubboService;
+import com.lb.im.platform.message.application.cache.GroupLatestMessageCacheService;
+import com.lb.im.platform.message.application.cache.GroupSendContextCacheService;
+import com.lb.im.platform.message.application.inbox.MessageInboxEntry;
+import com.lb.im.platform.message.application.inbox.MessageInboxRange;
+import com.lb.im.platform.message.application.inbox.MessageInboxService;
 import com.lb.im.platform.message.application.service.GroupMessageService;
+import com.lb.im.platform.message.application.tx.IMMessageTxSender;
 import com.lb.im.platform.message.domain.event.IMGroupMessageTxEvent;
 import com.lb.im.platform.message.domain.service.GroupMessageDomainService;
 import com.lb.im.sdk.client.IMClient;
 import org.apache.dubbo.config.annotation.DubboReference;
+import org.apache.rocketmq.client.producer.LocalTransactionState;
+import org.apache.rocketmq.client.producer.SendResult;
 import org.apache.rocketmq.client.producer.SendStatus;
 import org.apache.rocketmq.client.producer.TransactionSendResult;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -46,11 +58,11 @@ import java.util.stream.Collectors;
  */
 @Service
 public class GroupMessageServiceImpl implements GroupMessageService {
-    private final Logger logger = LoggerFactory.getLogger(GroupMessageServiceImpl.class);
+    private final HotPathLogger logger = HotPathLogger.getLogger(GroupMessageServiceImpl.class);
 
-    // 消息发送服务，用于向消息队列发送事务消息
+    // 事务消息发送器，按配置的编解码器向消息队列发送事务消息
     @Autowired
-    private MessageSenderService messageSenderService;
+    private IMMessageTxSender imMessageTxSender;
 
     // 群聊消息领域服务，处理消息的核心业务逻辑
     @Autowired
@@ -60,6 +72,18 @@ public class GroupMessageServiceImpl implements GroupMessageService {
     @DubboReference(version = IMPlatformConstants.DEFAULT_DUBBO_VERSION, check = false)
     private GroupDubboService groupDubboService;
 
+    // 本地群聊消息发送上下文缓存服务，发送群聊消息时获取群组和成员数据
+    @Autowired
+    private GroupSendContextCacheService groupSendContextCacheService;
+
+    // 群聊最新消息id缓存服务，标记已读时获取最新消息id，拉取未读消息时跳过没有新消息的群组
+    @Autowired
+    private GroupLatestMessageCacheService groupLatestMessageCacheService;
+
+    // 写扩散收件箱服务，开启后拉取消息时优先读取收件箱
+    @Autowired
+    private MessageInboxService messageInboxService;
+
     // 分布式缓存服务，用于存储和获取消息读取位置等信息
     @Autowired
     private DistributedCacheService distributedCacheService;
@@ -68,6 +92,10 @@ public class GroupMessageServiceImpl implements GroupMessageService {
     @Autowired
     private IMClient imClient;
 
+    // 是否开启群聊消息事件精简模式，开启后事件不再携带接收者列表
+    @Value("${message.group.event.compact:false}")
+    private Boolean compactEvent;
+
     /**
      * 发送群聊消息
      * 完整处理群聊消息的发送流程，包括权限验证、事务消息发送
@@ -78,42 +106,83 @@ public class GroupMessageServiceImpl implements GroupMessageService {
      */
     @Override
     public Long sendMessage(GroupMessageDTO dto) {
+        // 校验并构造群聊消息事务事件
+        IMGroupMessageTxEvent imGroupMessageTxEvent = this.buildGroupMessageTxEvent(dto);
+
+        // 发送事务消息到消息队列
+        SendResult sendResult = imMessageTxSender.sendMessage(imGroupMessageTxEvent, IMPlatformConstants.TOPIC_GROUP_TX_MESSAGE, String.valueOf(dto.getGroupId()));
+
+        // 检查消息发送状态
+        if (sendResult == null || sendResult.getSendStatus() != SendStatus.SEND_OK) {
+            logger.error("GroupMessageServiceImpl|发送事务消息失败|消息id:{}|群组id:{}|内容:{}", imGroupMessageTxEvent.getId(), dto.getGroupId(), HotPathLogger.content(dto.getContent()));
+        }
+
+        // 返回消息ID
+        return imGroupMessageTxEvent.getId();
+    }
+
+    /**
+     * 异步发送群聊消息
+     * 在请求线程中完成成员身份校验和事件构造，事务消息的发送和本地事务交由发送线程池执行
+     * 本地事务回滚时Future异常完成
+     *
+     * @param dto 群聊消息数据传输对象
+     * @return 生成的消息ID的Future
+     */
+    @Override
+    public PendingResult<Long> sendMessageAsync(GroupMessageDTO dto) {
+        // 校验并构造群聊消息事务事件，需要在请求线程中获取用户会话
+        IMGroupMessageTxEvent imGroupMessageTxEvent = this.buildGroupMessageTxEvent(dto);
+
+        // 异步发送事务消息到消息队列
+        CompletableFuture<Long> future = imMessageTxSender.sendMessageAsync(imGroupMessageTxEvent, IMPlatformConstants.TOPIC_GROUP_TX_MESSAGE, String.valueOf(dto.getGroupId()))
+                .thenApply(sendResult -> {
+                    if (sendResult instanceof TransactionSendResult
+                            && ((TransactionSendResult) sendResult).getLocalTransactionState() == LocalTransactionState.ROLLBACK_MESSAGE) {
+                        logger.error("GroupMessageServiceImpl|异步发送群聊消息本地事务回滚|{}", imGroupMessageTxEvent.getId());
+                        throw new IMException(HttpCode.PROGRAM_ERROR, "消息发送失败");
+                    }
+                    if (sendResult == null || sendResult.getSendStatus() != SendStatus.SEND_OK) {
+                        logger.error("GroupMessageServiceImpl|发送事务消息失败|消息id:{}|群组id:{}|内容:{}", imGroupMessageTxEvent.getId(), dto.getGroupId(), HotPathLogger.content(dto.getContent()));
+                    }
+                    return imGroupMessageTxEvent.getId();
+                });
+        return new PendingResult<>(imGroupMessageTxEvent.getId(), future);
+    }
+
+    /**
+     * 校验群组和成员身份并构造群聊消息事务事件
+     *
+     * @param dto 群聊消息数据传输对象
+     * @return 群聊消息事务事件
+     * @throws IMException 当群组不存在或用户不在群中时抛出异常
+     */
+    private IMGroupMessageTxEvent buildGroupMessageTxEvent(GroupMessageDTO dto) {
         // 获取当前用户会话
         UserSession userSession = SessionContext.getSession();
 
-        // 检查群组是否存在
-        boolean isExists = groupDubboService.isExists(dto.getGroupId());
-        if (!isExists) {
+        // 一次获取群组是否存在、当前用户的成员身份和接收者列表，群成员未变更时由本地缓存直接返回
+        GroupSendContextVO groupSendContext = groupSendContextCacheService.getGroupSendContext(dto.getGroupId());
+        if (groupSendContext == null || !Boolean.TRUE.equals(groupSendContext.getExists())) {
             throw new IMException(HttpCode.PROGRAM_ERROR, "群组不存在或者已经解散");
         }
 
-        // 检查当前用户是否在群组中
-        GroupMemberSimpleVO groupMemberSimpleVO = groupDubboService.getGroupMemberSimpleVO(new GroupParams(userSession.getUserId(), dto.getGroupId()));
-
         // 验证用户是否有权发送消息
-        if (Objects.isNull(groupMemberSimpleVO) || groupMemberSimpleVO.getQuit()) {
+        if (!groupSendContext.isMember(userSession.getUserId())) {
             throw new IMException(HttpCode.PROGRAM_ERROR, "您已不在群聊里面，无法发送消息");
         }
 
-        // 获取群组中的所有成员ID列表
-        List<Long> userIds = groupDubboService.getUserIdsByGroupId(dto.getGroupId());
-        if (CollectionUtil.isEmpty(userIds)) {
-            userIds = Collections.emptyList();
-        }
-
-        // 过滤掉发送者自己，消息不需要发给自己
-        userIds = userIds.stream()
-                .filter(id -> !userSession.getUserId().equals(id))
-                .collect(Collectors.toList());
+        // 获取群组中除发送者外的所有成员ID列表，消息不需要发给自己
+        List<Long> userIds = groupSendContext.receiverIdsOf(userSession.getUserId());
 
-        // 使用雪花算法生成唯一消息ID
-        Long messageId = SnowFlakeFactory.getSnowFlakeFromCache().nextId();
+        // 使用雪花算法生成唯一消息ID，id中嵌入群组所在的分片槽位
+        Long messageId = groupMessageDomainService.nextMessageId(dto.getGroupId());
 
         // 构造群聊消息事务事件
         IMGroupMessageTxEvent imGroupMessageTxEvent = new IMGroupMessageTxEvent(
                 messageId,                               // 消息ID
                 userSession.getUserId(),                 // 发送者ID
-                groupMemberSimpleVO.getAliasName(),      // 发送者在群中的昵称
+                groupSendContext.aliasNameOf(userSession.getUserId()), // 发送者在群中的昵称
                 userSession.getTerminal(),               // 发送终端类型
                 new Date(),                              // 发送时间
                 IMPlatformConstants.TOPIC_GROUP_TX_MESSAGE, // 消息主题
@@ -121,16 +190,13 @@ public class GroupMessageServiceImpl implements GroupMessageService {
                 dto                                      // 消息内容
         );
 
-        // 发送事务消息到消息队列
-        TransactionSendResult sendResult = messageSenderService.sendMessageInTransaction(imGroupMessageTxEvent, null);
-
-        // 检查消息发送状态
-        if (sendResult.getSendStatus() != SendStatus.SEND_OK) {
-            logger.error("GroupMessageServiceImpl|发送事务消息失败|参数:{}", JSONObject.toJSONString(dto));
+        // 精简模式下事件只携带成员集合版本号，消费者按版本号解析发送时的成员，事件大小与群成员数量无关；
+        // 成员快照发布失败时仍携带完整的接收者列表
+        if (BooleanUtil.isTrue(compactEvent) && groupSendContextCacheService.publishMemberSnapshot(groupSendContext)) {
+            imGroupMessageTxEvent.setUserIds(null);
+            imGroupMessageTxEvent.setMemberVersion(groupSendContext.getVersion());
         }
-
-        // 返回消息ID
-        return messageId;
+        return imGroupMessageTxEvent;
     }
 
     /**
@@ -160,6 +226,43 @@ public class GroupMessageServiceImpl implements GroupMessageService {
         return groupMessageDomainService.checkExists(messageId);
     }
 
+    @Override
+    public List<Long> getReceiveIds(IMGroupMessageTxEvent imGroupMessageTxEvent) {
+        if (imGroupMessageTxEvent.getMemberVersion() == null) {
+            return imGroupMessageTxEvent.getUserIds();
+        }
+        Long groupId = imGroupMessageTxEvent.getGroupMessageDTO().getGroupId();
+        long[] memberIds = groupSendContextCacheService.getMemberSnapshot(groupId, imGroupMessageTxEvent.getMemberVersion());
+        if (memberIds == null) {
+            logger.warn("GroupMessageServiceImpl|发送时的群成员快照不存在，按当前群成员投递|{}|{}", imGroupMessageTxEvent.getId(), imGroupMessageTxEvent.getMemberVersion());
+            return this.getCurrentReceiveIds(groupId, imGroupMessageTxEvent.getSenderId());
+        }
+        List<Long> receiveIds = new ArrayList<>(memberIds.length);
+        for (long memberId : memberIds) {
+            if (memberId != imGroupMessageTxEvent.getSenderId()) {
+                receiveIds.add(memberId);
+            }
+        }
+        return receiveIds;
+    }
+
+    /**
+     * 获取群组当前除发送者外的成员，发送时的成员快照不存在时使用
+     * 由发送上下文缓存返回，缓存未命中时从群组服务加载
+     *
+     * @param groupId  群组id
+     * @param senderId 发送者id
+     * @return 接收者id列表，群组不存在或已解散时返回空列表
+     */
+    private List<Long> getCurrentReceiveIds(Long groupId, Long senderId) {
+        GroupSendContextVO groupSendContext = groupSendContextCacheService.getGroupSendContext(groupId);
+        if (groupSendContext == null || !Boolean.TRUE.equals(groupSendContext.getExists())) {
+            logger.error("GroupMessageServiceImpl|群组不存在或者已经解散，无法加载群成员|{}", groupId);
+            return Collections.emptyList();
+        }
+        return groupSendContext.receiverIdsOf(senderId);
+    }
+
     /**
      * 异步拉取未读群聊消息
      * 获取当前用户所在的所有群组，并拉取每个群组中的未读消息
@@ -167,8 +270,8 @@ public class GroupMessageServiceImpl implements GroupMessageService {
      * 
      * 实现步骤：
      * 1. 获取当前用户所在的所有群组
-     * 2. 对每个群组并行处理，获取用户在该群组的最后读取位置
-     * 3. 查询该位置之后的所有未读消息
+     * 2. 批量获取用户在各群组的最后读取位置和各群组的最新消息id
+     * 3. 跳过最新消息id不大于读取位置的群组，对其余群组并行查询该位置之后的所有未读消息
      * 4. 使用线程池异步将消息推送给用户当前终端
      */
     @Override
@@ -180,10 +283,17 @@ public class GroupMessageServiceImpl implements GroupMessageService {
         if (CollectionUtil.isEmpty(groupMemberList)) {
             return;
         }
-        groupMemberList.parallelStream().forEach((member) -> {
-            String key = String.join(IMConstants.REDIS_KEY_SPLIT, IMConstants.IM_GROUP_READED_POSITION, member.getGroupId().toString(), session.getUserId().toString());
-            String maxReadedIdStr = distributedCacheService.get(key);
-            Long maxReadedId = StrUtil.isEmpty(maxReadedIdStr) ? 0L : Long.parseLong(maxReadedIdStr);
+        // 一次批量获取所有群组的已读位置和最新消息id，只查询有新消息的群组
+        List<Long> groupIds = groupMemberList.stream().map(GroupMemberSimpleVO::getGroupId).collect(Collectors.toList());
+        Map<Long, Long> readedIds = this.getReadedIds(session.getUserId(), groupIds);
+        Map<Long, Long> latestIds = groupLatestMessageCacheService.getLatestMessageIds(groupIds);
+        List<GroupMemberSimpleVO> unreadMemberList = groupMemberList.stream().filter((member) -> {
+            Long latestId = latestIds.get(member.getGroupId());
+            return latestId == null || latestId > readedIds.get(member.getGroupId());
+        }).collect(Collectors.toList());
+        logger.info("GroupMessageServiceImpl|拉取未读群聊消息|用户id:{}|群组数:{}|需查询群组数:{}", session.getUserId(), groupMemberList.size(), unreadMemberList.size());
+        unreadMemberList.parallelStream().forEach((member) -> {
+            Long maxReadedId = readedIds.get(member.getGroupId());
             List<GroupMessageVO> unreadGroupMessageList = groupMessageDomainService.getUnreadGroupMessageList(member.getGroupId(), member.getCreatedTime(),
                                                                                                               session.getUserId(), MessageStatus.RECALL.code(), maxReadedId, IMPlatformConstants.PULL_HISTORY_MESSAGE_LIMIT_COUNR);
             if (!CollectionUtil.isEmpty(unreadGroupMessageList)) {
@@ -204,9 +314,30 @@ public class GroupMessageServiceImpl implements GroupMessageService {
         });
     }
 
+    /**
+     * 一次批量获取用户在多个群组的已读位置
+     *
+     * @param userId   用户id
+     * @param groupIds 群组id列表
+     * @return key为群组id，value为已读的最大消息id，没有已读记录时为0
+     */
+    private Map<Long, Long> getReadedIds(Long userId, List<Long> groupIds) {
+        List<String> keys = groupIds.stream()
+                .map((groupId) -> String.join(IMConstants.REDIS_KEY_SPLIT, IMConstants.IM_GROUP_READED_POSITION, groupId.toString(), userId.toString()))
+                .collect(Collectors.toList());
+        List<String> values = distributedCacheService.multiGet(keys);
+        Map<Long, Long> readedIds = new HashMap<>(groupIds.size());
+        for (int idx = 0; idx < groupIds.size(); idx++) {
+            String value = values == null ? null : values.get(idx);
+            readedIds.put(groupIds.get(idx), StrUtil.isEmpty(value) ? 0L : Long.parseLong(value));
+        }
+        return readedIds;
+    }
+
     /**
      * 拉取群聊消息
      * 加载指定ID之后的群聊消息，只能拉取最近1个月的消息，一次最多拉取100条
+     * 开启收件箱时小群的消息从收件箱读取，大群的消息只查询下界之后有新消息的群组，收件箱不能覆盖拉取范围时查询所有群组
      * 
      * @param minId 消息的最小ID，拉取该ID之后的消息
      * @return 群聊消息列表，按时间顺序排序
@@ -222,16 +353,16 @@ public class GroupMessageServiceImpl implements GroupMessageService {
         }
         // 只能拉取最近1个月的
         Date minDate = DateTimeUtils.addMonths(new Date(), -1);
-        List<GroupMessageVO> groupMessageList = groupMessageDomainService.loadGroupMessageList(minId, minDate, ids,
-                                                                                               MessageStatus.RECALL.code(), IMPlatformConstants.PULL_HISTORY_MESSAGE_LIMIT_COUNR);
+        List<GroupMessageVO> groupMessageList = this.loadMessageFromInbox(session.getUserId(), ids, minId, minDate);
+        if (groupMessageList == null) {
+            groupMessageList = groupMessageDomainService.loadGroupMessageList(minId, minDate, ids,
+                                                                              MessageStatus.RECALL.code(), IMPlatformConstants.PULL_HISTORY_MESSAGE_LIMIT_COUNR);
+        }
         if (CollectionUtil.isEmpty(groupMessageList)) {
             return Collections.emptyList();
         }
-        List<GroupMessageVO> vos = groupMessageList.stream().peek(m -> {
-            // 被@用户列表
-            List<String> atIds = Arrays.asList(StrUtil.split(m.getAtUserIdsStr(), IMConstants.USER_ID_SPLIT));
-            m.setAtUserIds(atIds.stream().map(Long::parseLong).collect(Collectors.toList()));
-        }).collect(Collectors.toList());
+        // 被@用户列表在查询结果映射时已解析为数组
+        List<GroupMessageVO> vos = groupMessageList;
         // 消息状态,数据库没有存群聊的消息状态，需要从redis取
         List<String> keys = ids.stream().map(id -> String.join(IMConstants.REDIS_KEY_SPLIT, IMConstants.IM_GROUP_READED_POSITION,
                                                                id.toString(), session.getUserId().toString())).collect(Collectors.toList());
@@ -253,6 +384,55 @@ public class GroupMessageServiceImpl implements GroupMessageService {
         return vos;
     }
 
+    /**
+     * 从群聊收件箱拉取消息
+     * 小群的消息按收件箱中的消息ID加载，大群只对下界之后有新消息的群组查询消息表，两部分合并后按消息ID升序返回。
+     * 任一部分未读完时，只返回两部分都已覆盖的消息ID之前的消息，其余消息由下次拉取补齐；
+     * 收件箱只覆盖到水位线，读扩散查询到的更新的消息同样留到下次拉取
+     *
+     * @param userId  用户ID
+     * @param ids     用户所在的群组ID列表
+     * @param minId   最小消息ID
+     * @param minDate 最早消息日期
+     * @return 按消息ID升序排列的消息列表，未开启收件箱或收件箱不能覆盖拉取范围时返回null
+     */
+    private List<GroupMessageVO> loadMessageFromInbox(Long userId, List<Long> ids, Long minId, Date minDate) {
+        if (!messageInboxService.isSyncEnabled()) {
+            return null;
+        }
+        int limit = IMPlatformConstants.PULL_HISTORY_MESSAGE_LIMIT_COUNR;
+        long afterId = Math.max(minId == null ? 0L : minId, SnowFlakeIdUtils.getIdLowerBound(minDate, false));
+        MessageInboxRange inboxRange = messageInboxService.rangeGroupInbox(userId, new HashSet<>(ids), afterId, limit);
+        if (inboxRange == null) {
+            return null;
+        }
+        Map<Long, List<Long>> groupMessageIds = new HashMap<>();
+        for (MessageInboxEntry entry : inboxRange.getEntries()) {
+            groupMessageIds.computeIfAbsent(entry.getPeerId(), (key) -> new ArrayList<>()).add(entry.getMessageId());
+        }
+        List<GroupMessageVO> groupMessageList = new ArrayList<>(groupMessageDomainService.getGroupMessagesByIds(groupMessageIds, MessageStatus.RECALL.code()));
+        // 两部分各自覆盖到的最大消息ID，收件箱部分最多到水位线，读扩散部分为null表示已读完
+        Long coveredMaxId = inboxRange.getCoveredMaxId();
+        Set<Long> diffusionGroupIds = messageInboxService.getDiffusionGroupIds(ids, afterId);
+        if (!diffusionGroupIds.isEmpty()) {
+            List<GroupMessageVO> diffusionMessageList = groupMessageDomainService.loadGroupMessageList(afterId, null, new ArrayList<>(diffusionGroupIds),
+                                                                                                      MessageStatus.RECALL.code(), limit);
+            if (diffusionMessageList.size() >= limit) {
+                Long diffusionMaxId = diffusionMessageList.get(diffusionMessageList.size() - 1).getId();
+                coveredMaxId = coveredMaxId == null ? diffusionMaxId : Math.min(coveredMaxId, diffusionMaxId);
+            }
+            groupMessageList.addAll(diffusionMessageList);
+        }
+        // 群组成员数跨过阈值时同一条消息可能同时出现在两部分中，按消息ID去重
+        Map<Long, GroupMessageVO> messageMap = new TreeMap<>();
+        for (GroupMessageVO vo : groupMessageList) {
+            if (coveredMaxId == null || vo.getId() <= coveredMaxId) {
+                messageMap.putIfAbsent(vo.getId(), vo);
+            }
+        }
+        return messageMap.values().stream().limit(limit).collect(Collectors.toList());
+    }
+
     /**
      * 查询群聊历史消息
      * 分页获取指定群组的历史聊天记录
@@ -284,12 +464,54 @@ public class GroupMessageServiceImpl implements GroupMessageService {
         return historyMessage;
     }
 
+    @Override
+    public CursorPageVO<GroupMessageVO> findHistoryMessageByCursor(Long groupId, Long beforeId, Long size) {
+        // 每页大小默认值和上限
+        int pageSize = (size == null || size <= 0) ? IMPlatformConstants.DEFAULT_PAGE_SIZE : (int) Math.min(size, IMPlatformConstants.PULL_HISTORY_MESSAGE_LIMIT_COUNR);
+        // 获取当前用户ID
+        Long userId = SessionContext.getSession().getUserId();
+        GroupMemberSimpleVO groupMember = groupDubboService.getGroupMemberSimpleVO(new GroupParams(userId, groupId));
+        if (groupMember == null || groupMember.getQuit()) {
+            throw new IMException(HttpCode.PROGRAM_ERROR, "您已不在群聊中");
+        }
+        // 多查询一条用于判断是否还有下一页
+        List<GroupMessageVO> historyMessage = groupMessageDomainService.getHistoryMessageBefore(groupId, groupMember.getCreatedTime(), MessageStatus.RECALL.code(), beforeId, pageSize + 1);
+        CursorPageVO<GroupMessageVO> cursorPage = CursorPageVO.of(historyMessage, pageSize, GroupMessageVO::getId);
+        logger.info("按游标拉取群聊记录，用户id:{},群聊id:{},游标:{}，数量:{}", userId, groupId, beforeId, cursorPage.getList().size());
+        return cursorPage;
+    }
+
+    /**
+     * 按游标查询@当前用户的群聊消息
+     * 从@提及索引按消息id倒序取一页，再按主键加载消息，已撤回的消息不返回
+     * 游标取自索引记录，撤回的消息被过滤时不影响翻页
+     *
+     * @param groupId  群组ID，为空时查询所有群组
+     * @param beforeId 消息ID游标，首次查询为空
+     * @param size     每页条数
+     * @return @当前用户的群聊消息分页结果
+     */
+    @Override
+    public CursorPageVO<GroupMessageVO> findMentionMessageByCursor(Long groupId, Long beforeId, Long size) {
+        int pageSize = (size == null || size <= 0) ? IMPlatformConstants.DEFAULT_PAGE_SIZE : (int) Math.min(size, IMPlatformConstants.PULL_HISTORY_MESSAGE_LIMIT_COUNR);
+        Long userId = SessionContext.getSession().getUserId();
+        // 多查询一条用于判断是否还有下一页
+        List<GroupMessageMention> mentions = groupMessageDomainService.getMentions(userId, groupId, beforeId, pageSize + 1);
+        CursorPageVO<GroupMessageMention> mentionPage = CursorPageVO.of(mentions, pageSize, GroupMessageMention::getMessageId);
+        if (mentionPage.getList().isEmpty()) {
+            return CursorPageVO.empty();
+        }
+        List<GroupMessageVO> mentionMessages = groupMessageDomainService.getMentionMessages(mentionPage.getList(), MessageStatus.RECALL.code());
+        logger.info("按游标拉取@我的群聊消息，用户id:{},群聊id:{},游标:{}，数量:{}", userId, groupId, beforeId, mentionMessages.size());
+        return mentionPage.withList(mentionMessages);
+    }
+
     @Override
     public void readedMessage(Long groupId) {
         UserSession session = SessionContext.getSession();
-        // 取出最后的消息id
-        Long maxMessageId = groupMessageDomainService.getMaxMessageId(groupId);
-        if (maxMessageId == null){
+        // 从缓存取出最后的消息id，缓存中不存在时才查询数据库
+        Long maxMessageId = groupLatestMessageCacheService.getLatestMessageId(groupId);
+        if (maxMessageId == null || maxMessageId <= 0){
             return;
         }
         // 推送消息给自己的其他终端
@@ -1,42 +1,54 @@
 package com.lb.im.platform.message.application.service.impl;
 
 import cn.hutool.core.collection.CollectionUtil;
-import cn.hutool.core.util.BooleanUtil;
-import com.alibaba.fastjson.JSONObject;
-import com.lb.im.common.cache.id.SnowFlakeFactory;
 import com.lb.im.common.cache.time.SystemClock;
 import com.lb.im.common.domain.constans.IMConstants;
 import com.lb.im.common.domain.model.IMPrivateMessage;
 import com.lb.im.common.domain.model.IMUserInfo;
-import com.lb.im.common.mq.MessageSenderService;
 import com.lb.im.platform.common.exception.IMException;
+import com.lb.im.platform.common.log.HotPathLogger;
 import com.lb.im.platform.common.model.constants.IMPlatformConstants;
 import com.lb.im.platform.common.model.dto.PrivateMessageDTO;
 import com.lb.im.platform.common.model.enums.HttpCode;
 import com.lb.im.platform.common.model.enums.MessageStatus;
 import com.lb.im.platform.common.model.enums.MessageType;
+import com.lb.im.platform.common.model.vo.CursorPageVO;
 import com.lb.im.platform.common.model.vo.PrivateMessageVO;
+import com.lb.im.platform.common.response.PendingResult;
 import com.lb.im.platform.common.session.SessionContext;
 import com.lb.im.platform.common.session.UserSession;
 import com.lb.im.platform.common.threadpool.PrivateMessageThreadPoolUtils;
+import com.lb.im.platform.common.utils.ConversationUtils;
 import com.lb.im.platform.common.utils.DateTimeUtils;
-import com.lb.im.platform.dubbo.friend.FriendDubboService;
+import com.lb.im.platform.common.utils.SnowFlakeIdUtils;
+import com.lb.im.platform.message.application.cache.FriendIdCacheService;
+import com.lb.im.platform.message.application.cache.PrivateReadCursorCacheService;
+import com.lb.im.platform.message.application.inbox.MessageInboxEntry;
+import com.lb.im.platform.message.application.inbox.MessageInboxRange;
+import com.lb.im.platform.message.application.inbox.MessageInboxService;
+import com.lb.im.platform.message.application.persist.MessageStatusService;
 import com.lb.im.platform.message.application.service.PrivateMessageService;
+import com.lb.im.platform.message.application.tx.IMMessageTxSender;
 import com.lb.im.platform.message.domain.event.IMPrivateMessageTxEvent;
 import com.lb.im.platform.message.domain.service.PrivateMessageDomainService;
 import com.lb.im.sdk.client.IMClient;
-import org.apache.dubbo.config.annotation.DubboReference;
+import org.apache.rocketmq.client.producer.LocalTransactionState;
+import org.apache.rocketmq.client.producer.SendResult;
 import org.apache.rocketmq.client.producer.SendStatus;
 import org.apache.rocketmq.client.producer.TransactionSendResult;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -54,15 +66,21 @@ import java.util.stream.Collectors;
 @Service
 public class PrivateMessageServiceImpl implements PrivateMessageService {
 
-    private final Logger logger = LoggerFactory.getLogger(PrivateMessageServiceImpl.class);
+    private final HotPathLogger logger = HotPathLogger.getLogger(PrivateMessageServiceImpl.class);
     @Autowired
     private IMClient imClient;
     @Autowired
-    private MessageSenderService messageSenderService;
+    private IMMessageTxSender imMessageTxSender;
     @Autowired
     private PrivateMessageDomainService privateMessageDomainService;
-    @DubboReference(version = IMPlatformConstants.DEFAULT_DUBBO_VERSION, check = false)
-    private FriendDubboService friendDubboService;
+    @Autowired
+    private FriendIdCacheService friendIdCacheService;
+    @Autowired
+    private PrivateReadCursorCacheService privateReadCursorCacheService;
+    @Autowired
+    private MessageStatusService messageStatusService;
+    @Autowired
+    private MessageInboxService messageInboxService;
 
     /**
      * 发送私聊消息
@@ -82,34 +100,84 @@ public class PrivateMessageServiceImpl implements PrivateMessageService {
      */
     @Override
     public Long sendMessage(PrivateMessageDTO dto) {
+        // 校验并组装事务消息数据
+        IMPrivateMessageTxEvent imPrivateMessageTxEvent = this.buildPrivateMessageTxEvent(dto);
+
+        // 发送事务消息到消息队列
+        SendResult sendResult = imMessageTxSender.sendMessage(imPrivateMessageTxEvent, IMPlatformConstants.TOPIC_PRIVATE_TX_MESSAGE, this.getConversationKey(imPrivateMessageTxEvent));
+        if (sendResult == null || sendResult.getSendStatus() != SendStatus.SEND_OK) {
+            logger.error("PrivateMessageServiceImpl|发送事务消息失败|消息id:{}|接收id:{}|内容:{}", imPrivateMessageTxEvent.getId(), dto.getRecvId(), HotPathLogger.content(dto.getContent()));
+        }
+
+        // 返回生成的消息ID
+        return imPrivateMessageTxEvent.getId();
+    }
+
+    /**
+     * 异步发送私聊消息
+     * 在请求线程中完成好友关系校验和事件组装，事务消息的发送和本地事务交由发送线程池执行
+     * 本地事务回滚时Future异常完成
+     *
+     * @param dto 私聊消息数据传输对象
+     * @return 生成的消息ID的Future
+     */
+    @Override
+    public PendingResult<Long> sendMessageAsync(PrivateMessageDTO dto) {
+        // 校验并组装事务消息数据，需要在请求线程中获取用户会话
+        IMPrivateMessageTxEvent imPrivateMessageTxEvent = this.buildPrivateMessageTxEvent(dto);
+
+        // 异步发送事务消息到消息队列
+        CompletableFuture<Long> future = imMessageTxSender.sendMessageAsync(imPrivateMessageTxEvent, IMPlatformConstants.TOPIC_PRIVATE_TX_MESSAGE, this.getConversationKey(imPrivateMessageTxEvent))
+                .thenApply(sendResult -> {
+                    if (sendResult instanceof TransactionSendResult
+                            && ((TransactionSendResult) sendResult).getLocalTransactionState() == LocalTransactionState.ROLLBACK_MESSAGE) {
+                        logger.error("PrivateMessageServiceImpl|异步发送私聊消息本地事务回滚|{}", imPrivateMessageTxEvent.getId());
+                        throw new IMException(HttpCode.PROGRAM_ERROR, "消息发送失败");
+                    }
+                    if (sendResult == null || sendResult.getSendStatus() != SendStatus.SEND_OK) {
+                        logger.error("PrivateMessageServiceImpl|发送事务消息失败|消息id:{}|接收id:{}|内容:{}", imPrivateMessageTxEvent.getId(), dto.getRecvId(), HotPathLogger.content(dto.getContent()));
+                    }
+                    return imPrivateMessageTxEvent.getId();
+                });
+        return new PendingResult<>(imPrivateMessageTxEvent.getId(), future);
+    }
+
+    /**
+     * 获取单聊会话键，与消息表的会话id一致，两个方向的消息使用同一会话键
+     *
+     * @param imPrivateMessageTxEvent 私聊消息事务事件
+     * @return 会话键
+     */
+    private String getConversationKey(IMPrivateMessageTxEvent imPrivateMessageTxEvent) {
+        return ConversationUtils.getPrivateConversationId(imPrivateMessageTxEvent.getSenderId(), imPrivateMessageTxEvent.getPrivateMessageDTO().getRecvId());
+    }
+
+    /**
+     * 校验好友关系并组装私聊消息事务事件
+     *
+     * @param dto 私聊消息数据传输对象
+     * @return 私聊消息事务事件
+     * @throws IMException 当消息发送条件不满足时抛出异常，如非好友关系
+     */
+    private IMPrivateMessageTxEvent buildPrivateMessageTxEvent(PrivateMessageDTO dto) {
         // 获取当前用户会话
         UserSession session = SessionContext.getSession();
 
-        // 验证发送者和接收者是否为好友关系
-        Boolean isFriend = friendDubboService.isFriend(session.getUserId(), dto.getRecvId());
-        if (BooleanUtil.isFalse(isFriend)) {
+        // 验证发送者和接收者是否为好友关系，优先查询本地好友缓存
+        if (!friendIdCacheService.isFriend(session.getUserId(), dto.getRecvId())) {
             throw new IMException(HttpCode.PROGRAM_ERROR, "对方不是你的好友，无法发送消息");
         }
 
-        // 使用雪花算法生成全局唯一的消息ID
-        Long messageId = SnowFlakeFactory.getSnowFlakeFromCache().nextId();
+        // 使用雪花算法生成全局唯一的消息ID，id中嵌入会话所在的分片槽位
+        Long messageId = privateMessageDomainService.nextMessageId(session.getUserId(), dto.getRecvId());
 
         // 组装事务消息数据
-        IMPrivateMessageTxEvent imPrivateMessageTxEvent = new IMPrivateMessageTxEvent(messageId,
-                                                                                      session.getUserId(),
-                                                                                      session.getTerminal(),
-                                                                                      IMPlatformConstants.TOPIC_PRIVATE_TX_MESSAGE,
-                                                                                      new Date(),
-                                                                                      dto);
-
-        // 发送事务消息到消息队列
-        TransactionSendResult sendResult = messageSenderService.sendMessageInTransaction(imPrivateMessageTxEvent, null);
-        if (sendResult.getSendStatus() != SendStatus.SEND_OK) {
-            logger.error("PrivateMessageServiceImpl|发送事务消息失败|参数:{}", JSONObject.toJSONString(dto));
-        }
-
-        // 返回生成的消息ID
-        return messageId;
+        return new IMPrivateMessageTxEvent(messageId,
+                                           session.getUserId(),
+                                           session.getTerminal(),
+                                           IMPlatformConstants.TOPIC_PRIVATE_TX_MESSAGE,
+                                           new Date(),
+                                           dto);
     }
 
     /**
@@ -151,7 +219,7 @@ public class PrivateMessageServiceImpl implements PrivateMessageService {
      * 1. 获取当前用户会话信息
      * 2. 验证用户是否在线（已建立WebSocket连接）
      * 3. 获取用户的好友ID列表
-     * 4. 查询所有未读消息
+     * 4. 查询所有未读消息，过滤掉已读位置之前的消息（已在其他终端读过）
      * 5. 并行处理每条消息，通过WebSocket推送给用户
      * 6. 记录日志
      * 
@@ -168,13 +236,20 @@ public class PrivateMessageServiceImpl implements PrivateMessageService {
         }
 
         // 获取用户的好友ID列表
-        List<Long> friendIdList = friendDubboService.getFriendIdList(userSession.getUserId());
+        List<Long> friendIdList = friendIdCacheService.getFriendIdList(userSession.getUserId());
         if (CollectionUtil.isEmpty(friendIdList)) {
             return;
         }
 
         // 查询所有未读消息
         List<PrivateMessageVO> privateMessageList = privateMessageDomainService.getPrivateMessageVOList(userSession.getUserId(), friendIdList);
+        if (!CollectionUtil.isEmpty(privateMessageList)) {
+            Map<Long, Long> readedIds = privateReadCursorCacheService.getReadedIds(userSession.getUserId(),
+                    privateMessageList.stream().map(PrivateMessageVO::getSendId).collect(Collectors.toSet()));
+            privateMessageList = privateMessageList.stream()
+                    .filter(m -> m.getId() > readedIds.getOrDefault(m.getSendId(), 0L))
+                    .collect(Collectors.toList());
+        }
         int messageSize = 0;
 
         // 处理未读消息
@@ -206,9 +281,10 @@ public class PrivateMessageServiceImpl implements PrivateMessageService {
      * 1. 获取当前用户会话信息
      * 2. 获取用户的好友ID列表
      * 3. 设置时间范围限制（最近1个月）
-     * 4. 查询符合条件的消息历史记录
-     * 5. 异步更新接收到的消息状态为已发送
-     * 6. 记录日志并返回消息列表
+     * 4. 开启收件箱时读取一段收件箱并按消息ID加载消息，收件箱不能覆盖拉取范围时查询符合条件的消息历史记录
+     * 5. 按双方的已读位置推导消息的已读状态
+     * 6. 将接收到的消息状态更新为已送达，由状态缓冲区合并后批量写入
+     * 7. 记录日志并返回消息列表
      *
      * @param minId 最小消息ID，用于增量拉取，返回ID大于此值的消息
      * @return 消息历史记录VO对象列表，按消息ID升序排序，最多返回100条
@@ -219,7 +295,7 @@ public class PrivateMessageServiceImpl implements PrivateMessageService {
         UserSession session = SessionContext.getSession();
 
         // 获取用户的好友ID列表
-        List<Long> friendIdList = friendDubboService.getFriendIdList(session.getUserId());
+        List<Long> friendIdList = friendIdCacheService.getFriendIdList(session.getUserId());
         if (CollectionUtil.isEmpty(friendIdList)) {
             return Collections.emptyList();
         }
@@ -227,32 +303,31 @@ public class PrivateMessageServiceImpl implements PrivateMessageService {
         // 设置时间范围限制（最近1个月）
         Date minDate = DateTimeUtils.addMonths(new Date(), -1);
 
-        // 查询符合条件的消息历史记录
-        List<PrivateMessageVO> privateMessageList = privateMessageDomainService.loadMessage(
-            session.getUserId(), 
-            minId, 
-            minDate, 
-            friendIdList, 
-            IMPlatformConstants.PULL_HISTORY_MESSAGE_LIMIT_COUNR
-        );
+        // 优先从收件箱拉取，收件箱不能覆盖拉取范围时查询符合条件的消息历史记录
+        List<PrivateMessageVO> privateMessageList = this.loadMessageFromInbox(session.getUserId(), minId, minDate, friendIdList);
+        if (privateMessageList == null) {
+            privateMessageList = privateMessageDomainService.loadMessage(
+                session.getUserId(), 
+                minId, 
+                minDate, 
+                friendIdList, 
+                IMPlatformConstants.PULL_HISTORY_MESSAGE_LIMIT_COUNR
+            );
+        }
 
         if (CollectionUtil.isEmpty(privateMessageList)) {
             return Collections.emptyList();
         }
 
-        // 异步更新接收到的消息状态为已发送
-        PrivateMessageThreadPoolUtils.execute(() -> {
-            // 筛选出需要更新状态的消息ID列表（接收的且未读的消息）
-            List<Long> ids = privateMessageList.stream()
-                    .filter(m -> !m.getSendId().equals(session.getUserId()) && m.getStatus().equals(MessageStatus.UNSEND.code()))
-                    .map(PrivateMessageVO::getId)
-                    .collect(Collectors.toList());
+        // 按双方的已读位置推导消息的已读状态
+        this.fillReadedStatus(session.getUserId(), privateMessageList);
 
-            if (!CollectionUtil.isEmpty(ids)) {
-                // 批量更新消息状态为已发送
-                privateMessageDomainService.batchUpdatePrivateMessageStatus(MessageStatus.SENDED.code(), ids);
-            }
-        });
+        // 筛选出需要更新状态的消息ID列表（接收的且未送达的消息），更新为已送达
+        List<Long> ids = privateMessageList.stream()
+                .filter(m -> !m.getSendId().equals(session.getUserId()) && m.getStatus().equals(MessageStatus.UNSEND.code()))
+                .map(PrivateMessageVO::getId)
+                .collect(Collectors.toList());
+        messageStatusService.updatePrivateMessageStatus(MessageStatus.SENDED.code(), ids);
 
         // 记录日志
         logger.info("拉取消息，用户id:{},数量:{}", session.getUserId(), privateMessageList.size());
@@ -260,6 +335,33 @@ public class PrivateMessageServiceImpl implements PrivateMessageService {
         return privateMessageList;
     }
 
+    /**
+     * 从私聊收件箱拉取消息
+     * 读取一段收件箱中与当前好友的会话的条目，再按消息ID加载消息，查询代价与好友数量无关
+     *
+     * @param userId       用户ID
+     * @param minId        最小消息ID
+     * @param minDate      最早消息日期
+     * @param friendIdList 好友ID列表
+     * @return 按消息ID升序排列的消息列表，未开启收件箱或收件箱不能覆盖拉取范围时返回null
+     */
+    private List<PrivateMessageVO> loadMessageFromInbox(Long userId, Long minId, Date minDate, List<Long> friendIdList) {
+        if (!messageInboxService.isSyncEnabled()) {
+            return null;
+        }
+        long afterId = Math.max(minId == null ? 0L : minId, SnowFlakeIdUtils.getIdLowerBound(minDate, true));
+        MessageInboxRange inboxRange = messageInboxService.rangePrivateInbox(userId, new HashSet<>(friendIdList), afterId,
+                                                                              IMPlatformConstants.PULL_HISTORY_MESSAGE_LIMIT_COUNR);
+        if (inboxRange == null) {
+            return null;
+        }
+        Map<Long, List<Long>> friendMessageIds = new HashMap<>();
+        for (MessageInboxEntry entry : inboxRange.getEntries()) {
+            friendMessageIds.computeIfAbsent(entry.getPeerId(), (key) -> new ArrayList<>()).add(entry.getMessageId());
+        }
+        return privateMessageDomainService.getPrivateMessagesByIds(userId, friendMessageIds);
+    }
+
     /**
      * 获取与指定好友的历史聊天记录
      * 分页获取与特定好友的历史私聊消息
@@ -292,6 +394,8 @@ public class PrivateMessageServiceImpl implements PrivateMessageService {
         List<PrivateMessageVO> privateMessageList = privateMessageDomainService.loadMessageByUserIdAndFriendId(userId, friendId, stIdx, size);
         if (CollectionUtil.isEmpty(privateMessageList)) {
             privateMessageList = Collections.emptyList();
+        } else {
+            this.fillReadedStatus(userId, privateMessageList);
         }
 
         // 记录日志
@@ -300,9 +404,41 @@ public class PrivateMessageServiceImpl implements PrivateMessageService {
         return privateMessageList;
     }
 
+    /**
+     * 按游标获取与指定好友的历史聊天记录
+     *
+     * 实现步骤：
+     * 1. 处理每页大小，设置默认值和上限
+     * 2. 按会话索引查询ID小于游标的消息，多查询一条用于判断是否还有下一页
+     * 3. 以本页最后一条消息的ID作为下一页游标
+     *
+     * @param friendId 好友用户ID
+     * @param beforeId 游标，返回ID小于此值的消息，为空时从最新消息开始
+     * @param size 每页大小，如果小于1则使用默认值10，最大100
+     * @return 游标分页结果，消息按ID倒序排序
+     */
+    @Override
+    public CursorPageVO<PrivateMessageVO> getHistoryMessageByCursor(Long friendId, Long beforeId, Long size) {
+        // 处理每页大小，设置默认值和上限
+        int pageSize = (size == null || size <= 0) ? IMPlatformConstants.DEFAULT_PAGE_SIZE : (int) Math.min(size, IMPlatformConstants.PULL_HISTORY_MESSAGE_LIMIT_COUNR);
+
+        // 获取当前用户ID
+        Long userId = SessionContext.getSession().getUserId();
+
+        // 查询ID小于游标的消息，多查询一条用于判断是否还有下一页
+        List<PrivateMessageVO> privateMessageList = privateMessageDomainService.loadMessageByUserIdAndFriendIdBefore(userId, friendId, beforeId, pageSize + 1);
+        this.fillReadedStatus(userId, privateMessageList);
+        CursorPageVO<PrivateMessageVO> cursorPage = CursorPageVO.of(privateMessageList, pageSize, PrivateMessageVO::getId);
+
+        // 记录日志
+        logger.info("按游标拉取聊天记录，用户id:{},好友id:{},游标:{}，数量:{}", userId, friendId, beforeId, cursorPage.getList().size());
+
+        return cursorPage;
+    }
+
     /**
      * 标记消息为已读状态
-     * 将与指定好友的整个会话中的所有消息都置为已读状态
+     * 将与指定好友的会话的已读位置推进到当前最大消息ID，不更新消息行，消息的已读状态在读取时由已读位置推导
      * 同时会通知其他终端同步已读状态
      * 
      * 实现步骤：
@@ -310,7 +446,7 @@ public class PrivateMessageServiceImpl implements PrivateMessageService {
      * 2. 获取当前用户会话
      * 3. 构建已读状态消息
      * 4. 通过WebSocket推送已读状态消息
-     * 5. 异步更新数据库中的消息状态
+     * 5. 记录会话的已读位置
      * 6. 记录日志
      *
      * @param friendId 好友用户ID，消息发送者
@@ -344,10 +480,8 @@ public class PrivateMessageServiceImpl implements PrivateMessageService {
         // 通过WebSocket推送已读状态消息
         imClient.sendPrivateMessage(sendMessage);
 
-        // 异步更新数据库中的消息状态
-        PrivateMessageThreadPoolUtils.execute(() -> {
-            privateMessageDomainService.updateMessageStatus(MessageStatus.READED.code(), friendId, session.getUserId());
-        });
+        // 记录会话的已读位置，已读的最大消息id由后台按当前时刻解析并批量写入数据库
+        privateReadCursorCacheService.markReadedLatest(session.getUserId(), friendId);
 
         // 记录日志
         logger.info("消息已读，接收方id:{},发送方id:{}", session.getUserId(), friendId);
@@ -427,7 +561,40 @@ public class PrivateMessageServiceImpl implements PrivateMessageService {
             imClient.sendPrivateMessage(sendMessage);
 
             // 记录日志
-            logger.info("撤回私聊消息，发送id:{},接收id:{}，内容:{}", privateMessage.getSendId(), privateMessage.getRecvId(), privateMessage.getContent());
+            logger.info("撤回私聊消息，发送id:{},接收id:{}，内容:{}", privateMessage.getSendId(), privateMessage.getRecvId(), HotPathLogger.content(privateMessage.getContent()));
         });
     }
+
+    /**
+     * 按已读位置推导私聊消息的已读状态
+     * 收到的消息按当前用户对发送者的已读位置判断，发出的消息按接收者对当前用户的已读位置判断，已撤回的消息保持撤回状态
+     *
+     * @param userId             当前用户ID
+     * @param privateMessageList 私聊消息列表
+     */
+    private void fillReadedStatus(Long userId, List<PrivateMessageVO> privateMessageList) {
+        if (CollectionUtil.isEmpty(privateMessageList)) {
+            return;
+        }
+        Set<Long> senderIds = new HashSet<>();
+        Set<Long> receiverIds = new HashSet<>();
+        for (PrivateMessageVO m : privateMessageList) {
+            if (userId.equals(m.getRecvId())) {
+                senderIds.add(m.getSendId());
+            } else {
+                receiverIds.add(m.getRecvId());
+            }
+        }
+        Map<Long, Long> readedIds = privateReadCursorCacheService.getReadedIds(userId, senderIds);
+        Map<Long, Long> peerReadedIds = privateReadCursorCacheService.getPeerReadedIds(userId, receiverIds);
+        for (PrivateMessageVO m : privateMessageList) {
+            if (MessageStatus.RECALL.code().equals(m.getStatus())) {
+                continue;
+            }
+            Long maxReadedId = userId.equals(m.getRecvId()) ? readedIds.get(m.getSendId()) : peerReadedIds.get(m.getRecvId());
+            if (maxReadedId != null && m.getId() <= maxReadedId) {
+                m.setStatus(MessageStatus.READED.code());
+            }
+        }
+    }
 }
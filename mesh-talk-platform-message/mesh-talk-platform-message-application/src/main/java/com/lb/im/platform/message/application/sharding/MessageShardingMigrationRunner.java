@@ -0,0 +1,96 @@
+package com.lb.im.platform.message.application.sharding;
+
+import com.lb.im.platform.message.domain.service.GroupMessageDomainService;
+import com.lb.im.platform.message.domain.service.PrivateMessageDomainService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.function.BiFunction;
+
+/**
+ * 消息分表数据迁移
+ * 开启后在后台线程中按主键顺序分批读取源表，将消息按当前分表规则写入各分表，不阻塞应用启动
+ *
+ * 迁移步骤：
+ * 1. 按upgrade/im_message_sharding.sql建好分表，配置message.sharding.tables和message.sharding.previousTables后发布，
+ *    新消息直接写入分表，legacyMaxId未配置期间查询同时读取源表和分表
+ * 2. 开启message.sharding.migrate.enabled，由一个实例执行迁移，迁移可重复执行，已存在的消息自动忽略，写入后按源表同步消息状态
+ * 3. 迁移完成后日志输出源表的最大消息id，配置为message.sharding.legacyMaxId，此后只读取分表
+ */
+@Component
+@ConditionalOnProperty(name = "message.sharding.migrate.enabled", havingValue = "true")
+public class MessageShardingMigrationRunner implements ApplicationRunner {
+    private final Logger logger = LoggerFactory.getLogger(MessageShardingMigrationRunner.class);
+
+    /**
+     * 每批迁移的消息条数
+     */
+    @Value("${message.sharding.migrate.batchSize:1000}")
+    private Integer batchSize;
+
+    /**
+     * 私聊消息源表
+     */
+    @Value("${message.sharding.migrate.privateSourceTable:im_private_message}")
+    private String privateSourceTable;
+
+    /**
+     * 群聊消息源表
+     */
+    @Value("${message.sharding.migrate.groupSourceTable:im_group_message}")
+    private String groupSourceTable;
+
+    @Autowired
+    private PrivateMessageDomainService privateMessageDomainService;
+
+    @Autowired
+    private GroupMessageDomainService groupMessageDomainService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Thread migrateThread = new Thread(() -> {
+            this.migrate("私聊消息", privateSourceTable,
+                         (afterId, size) -> privateMessageDomainService.migrateBatch(privateSourceTable, afterId, size));
+            this.migrate("群聊消息", groupSourceTable,
+                         (afterId, size) -> groupMessageDomainService.migrateBatch(groupSourceTable, afterId, size));
+        }, "message-sharding-migrate");
+        migrateThread.setDaemon(true);
+        migrateThread.start();
+    }
+
+    /**
+     * 迁移一张源表
+     *
+     * @param name         消息类别，用于日志
+     * @param sourceTable  源表
+     * @param batchMigrate 单批迁移函数，参数为上一批的最大消息id，返回本批最大消息id，迁移完成时返回null
+     */
+    private void migrate(String name, String sourceTable, BiFunction<Long, Integer, Long> batchMigrate) {
+        int size = Math.max(batchSize, 1);
+        long start = System.currentTimeMillis();
+        long batchCount = 0;
+        Long afterId = 0L;
+        Long lastId = null;
+        logger.info("MessageShardingMigrationRunner|开始迁移{}|源表:{}|每批条数:{}", name, sourceTable, size);
+        try {
+            while (afterId != null) {
+                lastId = afterId;
+                afterId = batchMigrate.apply(afterId, size);
+                if (afterId != null && ++batchCount % 100 == 0) {
+                    logger.info("MessageShardingMigrationRunner|迁移{}中|源表:{}|批次数:{}|当前消息id:{}", name, sourceTable, batchCount, afterId);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("MessageShardingMigrationRunner|迁移{}失败，可重新执行|源表:{}|已完成消息id:{}|{}", name, sourceTable, lastId, e.getMessage(), e);
+            return;
+        }
+        logger.info("MessageShardingMigrationRunner|迁移{}完成|源表:{}|批次数:{}|最大消息id:{}|耗时(毫秒):{}",
+                    name, sourceTable, batchCount, lastId, System.currentTimeMillis() - start);
+    }
+}
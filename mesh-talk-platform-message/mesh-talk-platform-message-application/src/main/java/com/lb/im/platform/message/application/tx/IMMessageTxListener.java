@@ -1,9 +1,12 @@
 package com.lb.im.platform.message.application.tx;
 
-import cn.hutool.core.util.BooleanUtil;
-import com.alibaba.fastjson.JSONObject;
-import com.lb.im.common.domain.constans.IMConstants;
+import com.lb.im.platform.common.codec.EventCodecFactory;
+import com.lb.im.platform.common.log.HotPathLogger;
 import com.lb.im.platform.common.model.constants.IMPlatformConstants;
+import com.lb.im.platform.common.utils.SnowFlakeIdUtils;
+import com.lb.im.platform.message.application.cache.GroupLatestMessageCacheService;
+import com.lb.im.platform.message.application.inbox.MessageInboxService;
+import com.lb.im.platform.message.application.persist.MessagePersistService;
 import com.lb.im.platform.message.application.service.GroupMessageService;
 import com.lb.im.platform.message.application.service.PrivateMessageService;
 import com.lb.im.platform.message.domain.event.IMGroupMessageTxEvent;
@@ -12,8 +15,7 @@ import com.lb.im.platform.message.domain.event.IMPrivateMessageTxEvent;
 import org.apache.rocketmq.spring.annotation.RocketMQTransactionListener;
 import org.apache.rocketmq.spring.core.RocketMQLocalTransactionListener;
 import org.apache.rocketmq.spring.core.RocketMQLocalTransactionState;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.apache.rocketmq.spring.support.RocketMQHeaders;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.Message;
 import org.springframework.stereotype.Component;
@@ -27,7 +29,7 @@ import org.springframework.stereotype.Component;
 @RocketMQTransactionListener(rocketMQTemplateBeanName = "rocketMQTemplate")
 public class IMMessageTxListener implements RocketMQLocalTransactionListener {
     // 日志记录器
-    private final Logger logger = LoggerFactory.getLogger(IMMessageTxListener.class);
+    private final HotPathLogger logger = HotPathLogger.getLogger(IMMessageTxListener.class);
 
     // 单聊消息服务，处理单聊消息的业务逻辑
     @Autowired
@@ -37,9 +39,26 @@ public class IMMessageTxListener implements RocketMQLocalTransactionListener {
     @Autowired
     private GroupMessageService groupMessageService;
 
+    // 消息批量持久化服务，开启批量提交时多条消息合并为一次写入
+    @Autowired
+    private MessagePersistService messagePersistService;
+
+    // 本地事务状态记录器，为事务回查提供快速应答
+    @Autowired
+    private MessageTxStateRecorder messageTxStateRecorder;
+
+    // 群聊最新消息id缓存服务，群聊消息提交后更新
+    @Autowired
+    private GroupLatestMessageCacheService groupLatestMessageCacheService;
+
+    // 写扩散收件箱服务，消息入库后、返回提交状态之前写入
+    @Autowired
+    private MessageInboxService messageInboxService;
+
     /**
      * 执行本地事务
-     * 根据消息类型调用相应的事务处理方法
+     * 按消息头中的消息类型分发，消息体只按具体的事件类型解码一次
+     * 未携带消息头的旧消息先解码通用事件获取消息类型
      *
      * @param message RocketMQ消息对象
      * @param o 附加参数对象
@@ -47,63 +66,142 @@ public class IMMessageTxListener implements RocketMQLocalTransactionListener {
      */
     @Override
     public RocketMQLocalTransactionState executeLocalTransaction(Message message, Object o) {
+        Long messageId = this.getMessageId(message);
+        String messageType = this.getHeader(message, IMPlatformConstants.HEADER_MESSAGE_TYPE);
+        RocketMQLocalTransactionState state;
         try {
-            // 从消息中提取事务事件
-            IMMessageTxEvent imMessageTxEvent = this.getTxMessage(message);
-            
+            if (messageType == null) {
+                IMMessageTxEvent imMessageTxEvent = this.getTxMessage(message);
+                messageType = imMessageTxEvent.getMessageType();
+                messageId = imMessageTxEvent.getId();
+            }
             // 根据消息类型执行相应的本地事务
-            switch (imMessageTxEvent.getMessageType()) {
-                // 单聊消息事务处理
-                case IMPlatformConstants.TYPE_MESSAGE_PRIVATE:
-                    return executePrivateMessageLocalTransaction(message);
+            switch (messageType) {
                 // 群聊消息事务处理
                 case IMPlatformConstants.TYPE_MESSAGE_GROUP:
-                    return executeGroupMessageLocalTransaction(message);
-                // 默认按单聊消息处理
+                    IMGroupMessageTxEvent imGroupMessageTxEvent = this.getTxGroupMessage(message);
+                    messageId = imGroupMessageTxEvent.getId();
+                    state = executeGroupMessageLocalTransaction(imGroupMessageTxEvent);
+                    break;
+                // 单聊消息事务处理，默认按单聊消息处理
+                case IMPlatformConstants.TYPE_MESSAGE_PRIVATE:
                 default:
-                    return executePrivateMessageLocalTransaction(message);
+                    IMPrivateMessageTxEvent imPrivateMessageTxEvent = this.getTxPrivateMessage(message);
+                    messageId = imPrivateMessageTxEvent.getId();
+                    state = executePrivateMessageLocalTransaction(imPrivateMessageTxEvent);
             }
         } catch (Exception e) {
             // 记录异常日志并回滚事务
             logger.info("executeLocalTransaction|消息微服务提交本地事务异常|{}", e.getMessage(), e);
-            return RocketMQLocalTransactionState.ROLLBACK;
+            state = RocketMQLocalTransactionState.ROLLBACK;
+        }
+        // 记录本地事务结果，供事务回查快速应答
+        if (messageId != null) {
+            messageTxStateRecorder.record(messageId, messageType, state);
         }
+        return state;
     }
 
     /**
      * 执行群聊消息本地事务
      * 保存群聊消息到数据库
      *
-     * @param message RocketMQ消息对象
+     * @param imGroupMessageTxEvent 群聊消息事务事件
      * @return 事务状态
      */
-    private RocketMQLocalTransactionState executeGroupMessageLocalTransaction(Message message) {
-        // 从消息中提取群聊消息事务事件
-        IMGroupMessageTxEvent imGroupMessageTxEvent = this.getTxGroupMessage(message);
+    private RocketMQLocalTransactionState executeGroupMessageLocalTransaction(IMGroupMessageTxEvent imGroupMessageTxEvent) {
+        // 开启批量提交时，交由批量写入器合并写入
+        if (messagePersistService.isEnabled()) {
+            RocketMQLocalTransactionState state = messagePersistService.saveGroupMessage(imGroupMessageTxEvent);
+            if (state == RocketMQLocalTransactionState.COMMIT) {
+                this.updateGroupLatestMessageId(imGroupMessageTxEvent);
+                return this.appendGroupInbox(imGroupMessageTxEvent);
+            }
+            return state;
+        }
         
         // 调用服务保存消息
         boolean result = groupMessageService.saveIMGroupMessageTxEvent(imGroupMessageTxEvent);
         
         // 根据保存结果决定事务状态
         if (result) {
+            this.updateGroupLatestMessageId(imGroupMessageTxEvent);
             logger.info("executeGroupMessageLocalTransaction|消息微服务提交群聊本地事务成功|{}", imGroupMessageTxEvent.getId());
-            return RocketMQLocalTransactionState.COMMIT;
+            return this.appendGroupInbox(imGroupMessageTxEvent);
         }
         
         logger.info("executeGroupMessageLocalTransaction|消息微服务提交群聊本地事务失败|{}", imGroupMessageTxEvent.getId());
         return RocketMQLocalTransactionState.ROLLBACK;
     }
 
+    /**
+     * 群聊消息入库后更新群组的最新消息id
+     * 在向消息队列返回提交状态之前执行，消费者推送消息时缓存已是最新；
+     * 本地事务提交后未能返回状态（进程退出、超时）时由事务回查补齐
+     *
+     * @param imGroupMessageTxEvent 群聊消息事务事件
+     */
+    private void updateGroupLatestMessageId(IMGroupMessageTxEvent imGroupMessageTxEvent) {
+        if (imGroupMessageTxEvent.getGroupMessageDTO() == null) {
+            return;
+        }
+        groupLatestMessageCacheService.updateLatestMessageId(imGroupMessageTxEvent.getGroupMessageDTO().getGroupId(), imGroupMessageTxEvent.getId());
+    }
+
+    /**
+     * 群聊消息入库后写入发送时群成员的收件箱
+     * 在返回提交状态之前写入，消息被消费推送之前收件箱已包含该消息；写入失败时返回UNKNOWN，由事务回查重试写入
+     *
+     * @param imGroupMessageTxEvent 群聊消息事务事件
+     * @return 事务状态
+     */
+    private RocketMQLocalTransactionState appendGroupInbox(IMGroupMessageTxEvent imGroupMessageTxEvent) {
+        if (!messageInboxService.isWriteEnabled() || imGroupMessageTxEvent.getGroupMessageDTO() == null) {
+            return RocketMQLocalTransactionState.COMMIT;
+        }
+        try {
+            messageInboxService.appendGroupMessage(imGroupMessageTxEvent.getId(), imGroupMessageTxEvent.getGroupMessageDTO().getGroupId(),
+                                                   imGroupMessageTxEvent.getSenderId(), groupMessageService.getReceiveIds(imGroupMessageTxEvent));
+            return RocketMQLocalTransactionState.COMMIT;
+        } catch (Exception e) {
+            logger.error("appendGroupInbox|群聊消息写入收件箱失败，等待事务回查|{}|{}", imGroupMessageTxEvent.getId(), e.getMessage());
+            return RocketMQLocalTransactionState.UNKNOWN;
+        }
+    }
+
+    /**
+     * 单聊消息入库后写入发送者和接收者的收件箱，写入失败时返回UNKNOWN，由事务回查重试写入
+     *
+     * @param imPrivateMessageTxEvent 单聊消息事务事件
+     * @return 事务状态
+     */
+    private RocketMQLocalTransactionState appendPrivateInbox(IMPrivateMessageTxEvent imPrivateMessageTxEvent) {
+        if (!messageInboxService.isWriteEnabled() || imPrivateMessageTxEvent.getPrivateMessageDTO() == null) {
+            return RocketMQLocalTransactionState.COMMIT;
+        }
+        try {
+            messageInboxService.appendPrivateMessage(imPrivateMessageTxEvent.getId(), imPrivateMessageTxEvent.getSenderId(),
+                                                     imPrivateMessageTxEvent.getPrivateMessageDTO().getRecvId());
+            return RocketMQLocalTransactionState.COMMIT;
+        } catch (Exception e) {
+            logger.error("appendPrivateInbox|单聊消息写入收件箱失败，等待事务回查|{}|{}", imPrivateMessageTxEvent.getId(), e.getMessage());
+            return RocketMQLocalTransactionState.UNKNOWN;
+        }
+    }
+
     /**
      * 执行单聊消息本地事务
      * 保存单聊消息到数据库
      *
-     * @param message RocketMQ消息对象
+     * @param imPrivateMessageTxEvent 单聊消息事务事件
      * @return 事务状态
      */
-    private RocketMQLocalTransactionState executePrivateMessageLocalTransaction(Message message) {
-        // 从消息中提取单聊消息事务事件
-        IMPrivateMessageTxEvent imPrivateMessageTxEvent = this.getTxPrivateMessage(message);
+    private RocketMQLocalTransactionState executePrivateMessageLocalTransaction(IMPrivateMessageTxEvent imPrivateMessageTxEvent) {
+        // 开启批量提交时，交由批量写入器合并写入
+        if (messagePersistService.isEnabled()) {
+            RocketMQLocalTransactionState state = messagePersistService.savePrivateMessage(imPrivateMessageTxEvent);
+            return state == RocketMQLocalTransactionState.COMMIT ? this.appendPrivateInbox(imPrivateMessageTxEvent) : state;
+        }
         
         // 调用服务保存消息
         boolean result = privateMessageService.saveIMPrivateMessageSaveEvent(imPrivateMessageTxEvent);
@@ -111,7 +209,7 @@ public class IMMessageTxListener implements RocketMQLocalTransactionListener {
         // 根据保存结果决定事务状态
         if (result) {
             logger.info("executePrivateMessageLocalTransaction|消息微服务提交单聊本地事务成功|{}", imPrivateMessageTxEvent.getId());
-            return RocketMQLocalTransactionState.COMMIT;
+            return this.appendPrivateInbox(imPrivateMessageTxEvent);
         }
         
         logger.info("executePrivateMessageLocalTransaction|消息微服务提交单聊本地事务失败|{}", imPrivateMessageTxEvent.getId());
@@ -121,49 +219,114 @@ public class IMMessageTxListener implements RocketMQLocalTransactionListener {
     /**
      * 检查本地事务状态
      * 用于RocketMQ回查事务状态，确保消息的可靠投递
+     * 消息id和消息类型从消息头读取，只有未携带消息头的旧消息才解码消息体；
+     * 回查为提交时更新群组的最新消息id并写入收件箱，执行本地事务时未能完成的写入在投递前补齐；
+     * 回查阶段写入失败只记录日志，不再阻塞消息投递；
+     * 半消息的发送时间取Broker回查时携带的产生时间，没有时按雪花id换算，超时仍无记录时答复ROLLBACK
      *
      * @param message RocketMQ消息对象
      * @return 事务状态
      */
     @Override
     public RocketMQLocalTransactionState checkLocalTransaction(Message message) {
-        // 从消息中提取事务事件
-        IMMessageTxEvent imMessageTxEvent = this.getTxMessage(message);
-        logger.info("checkLocalTransaction|消息微服务查询本地事务|{}", imMessageTxEvent.getId());
-        
-        // 默认事务未提交
-        Boolean submitTransaction = Boolean.FALSE;
-        
-        // 根据消息类型检查对应的消息是否存在
-        switch (imMessageTxEvent.getMessageType()) {
-            // 检查单聊消息
-            case IMPlatformConstants.TYPE_MESSAGE_PRIVATE:
-                submitTransaction = privateMessageService.checkExists(imMessageTxEvent.getId());
-                break;
-            // 检查群聊消息
-            case IMPlatformConstants.TYPE_MESSAGE_GROUP:
-                submitTransaction = groupMessageService.checkExists(imMessageTxEvent.getId());
-                break;
-            // 默认检查单聊消息
-            default:
-                submitTransaction = privateMessageService.checkExists(imMessageTxEvent.getId());
+        Long messageId = this.getMessageId(message);
+        String messageType = this.getHeader(message, IMPlatformConstants.HEADER_MESSAGE_TYPE);
+        if (messageId == null || messageType == null) {
+            IMMessageTxEvent imMessageTxEvent = this.getTxMessage(message);
+            messageId = imMessageTxEvent.getId();
+            messageType = imMessageTxEvent.getMessageType();
         }
+        logger.info("checkLocalTransaction|消息微服务查询本地事务|{}", messageId);
         
-        // 根据检查结果返回事务状态
-        return BooleanUtil.isTrue(submitTransaction) ? RocketMQLocalTransactionState.COMMIT : RocketMQLocalTransactionState.UNKNOWN;
+        // 依次由内存、消息表、事务状态表应答，根据消息类型检查对应的消息是否存在
+        final String checkMessageType = messageType;
+        RocketMQLocalTransactionState state = messageTxStateRecorder.check(messageId, messageType, this.getBornTimeMillis(message, messageId), id -> {
+            switch (checkMessageType) {
+                // 检查群聊消息
+                case IMPlatformConstants.TYPE_MESSAGE_GROUP:
+                    return groupMessageService.checkExists(id);
+                // 检查单聊消息，默认也按单聊消息检查
+                case IMPlatformConstants.TYPE_MESSAGE_PRIVATE:
+                default:
+                    return privateMessageService.checkExists(id);
+            }
+        });
+        if (state != RocketMQLocalTransactionState.COMMIT) {
+            return state;
+        }
+        try {
+            if (IMPlatformConstants.TYPE_MESSAGE_GROUP.equals(checkMessageType)) {
+                IMGroupMessageTxEvent imGroupMessageTxEvent = this.getTxGroupMessage(message);
+                this.updateGroupLatestMessageId(imGroupMessageTxEvent);
+                this.appendGroupInbox(imGroupMessageTxEvent);
+            } else if (messageInboxService.isWriteEnabled()) {
+                this.appendPrivateInbox(this.getTxPrivateMessage(message));
+            }
+        } catch (Exception e) {
+            logger.error("checkLocalTransaction|回查提交后补齐缓存和收件箱失败|{}|{}", messageId, e.getMessage());
+        }
+        return state;
+    }
+
+    /**
+     * 读取消息头
+     *
+     * @param message RocketMQ消息对象
+     * @param name    消息头名称
+     * @return 消息头的值，不存在时返回null
+     */
+    private String getHeader(Message message, String name) {
+        Object value = message.getHeaders().get(name);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * 获取半消息的发送时间
+     * Broker回查时消息头携带消息的产生时间；进程内回查（顺序模式、发件箱补发）时没有该消息头，按雪花id换算
+     *
+     * @param message   RocketMQ消息对象
+     * @param messageId 消息id
+     * @return 发送时间的毫秒数，无法确定时返回null
+     */
+    private Long getBornTimeMillis(Message message, Long messageId) {
+        String bornTimestamp = this.getHeader(message, RocketMQHeaders.PREFIX + RocketMQHeaders.BORN_TIMESTAMP);
+        if (bornTimestamp != null) {
+            try {
+                return Long.valueOf(bornTimestamp);
+            } catch (NumberFormatException e) {
+                logger.warn("checkLocalTransaction|消息产生时间格式错误|{}|{}", messageId, bornTimestamp);
+            }
+        }
+        return SnowFlakeIdUtils.isVerified() ? SnowFlakeIdUtils.getTimeMillis(messageId) : null;
+    }
+
+    /**
+     * 从消息头读取消息id
+     *
+     * @param message RocketMQ消息对象
+     * @return 消息id，不存在或格式错误时返回null
+     */
+    private Long getMessageId(Message message) {
+        String messageId = this.getHeader(message, IMPlatformConstants.HEADER_MESSAGE_ID);
+        if (messageId == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(messageId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 
     /**
      * 从消息中提取通用消息事务事件
+     * 直接从消息体byte[]解码，自动识别JSON和二进制格式
      *
      * @param msg RocketMQ消息对象
      * @return 消息事务事件
      */
     private IMMessageTxEvent getTxMessage(Message msg) {
-        String messageString = new String((byte[]) msg.getPayload());
-        JSONObject jsonObject = JSONObject.parseObject(messageString);
-        String txStr = jsonObject.getString(IMConstants.MSG_KEY);
-        return JSONObject.parseObject(txStr, IMMessageTxEvent.class);
+        return EventCodecFactory.decode((byte[]) msg.getPayload(), IMMessageTxEvent.class);
     }
 
     /**
@@ -173,10 +336,7 @@ public class IMMessageTxListener implements RocketMQLocalTransactionListener {
      * @return 单聊消息事务事件
      */
     private IMPrivateMessageTxEvent getTxPrivateMessage(Message msg) {
-        String messageString = new String((byte[]) msg.getPayload());
-        JSONObject jsonObject = JSONObject.parseObject(messageString);
-        String txStr = jsonObject.getString(IMConstants.MSG_KEY);
-        return JSONObject.parseObject(txStr, IMPrivateMessageTxEvent.class);
+        return EventCodecFactory.decode((byte[]) msg.getPayload(), IMPrivateMessageTxEvent.class);
     }
     
     /**
@@ -186,9 +346,6 @@ public class IMMessageTxListener implements RocketMQLocalTransactionListener {
      * @return 群聊消息事务事件
      */
     private IMGroupMessageTxEvent getTxGroupMessage(Message msg) {
-        String messageString = new String((byte[]) msg.getPayload());
-        JSONObject jsonObject = JSONObject.parseObject(messageString);
-        String txStr = jsonObject.getString(IMConstants.MSG_KEY);
-        return JSONObject.parseObject(txStr, IMGroupMessageTxEvent.class);
+        return EventCodecFactory.decode((byte[]) msg.getPayload(), IMGroupMessageTxEvent.class);
     }
 }
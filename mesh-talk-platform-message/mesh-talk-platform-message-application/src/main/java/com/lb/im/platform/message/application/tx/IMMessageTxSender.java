@@ -0,0 +1,292 @@
+package com.lb.im.platform.message.application.tx;
+
+import com.lb.im.platform.common.codec.EventCodec;
+import com.lb.im.platform.common.codec.EventCodecFactory;
+import com.lb.im.platform.common.exception.IMException;
+import com.lb.im.platform.common.log.StatisticsLogger;
+import com.lb.im.platform.common.model.constants.IMPlatformConstants;
+import com.lb.im.platform.common.model.dto.GroupMessageDTO;
+import com.lb.im.platform.common.model.dto.PrivateMessageDTO;
+import com.lb.im.platform.common.model.entity.MessageOutbox;
+import com.lb.im.platform.common.model.enums.HttpCode;
+import com.lb.im.platform.common.threadpool.VirtualThreadUtils;
+import com.lb.im.platform.message.domain.event.IMGroupMessageTxEvent;
+import com.lb.im.platform.message.domain.event.IMMessageTxEvent;
+import com.lb.im.platform.message.domain.event.IMPrivateMessageTxEvent;
+import com.lb.im.platform.message.domain.service.MessageOutboxDomainService;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.TransactionSendResult;
+import org.apache.rocketmq.spring.core.RocketMQLocalTransactionState;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.apache.rocketmq.spring.support.RocketMQHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 事务消息发送器
+ * 按配置的编解码器编码消息事务事件，以编码后的byte[]作为消息体通过RocketMQTemplate发送
+ * 发送时将消息类型作为Tag，并将消息类型和消息id写入消息头：
+ * 本地事务执行和事务回查按消息头分发，无需解析消息体；消费者按Tag过滤，Broker只投递订阅的消息类型
+ * 开启顺序模式时改为先执行本地事务再按会话键发送顺序消息，同一会话的消息进入同一队列；
+ * 本地事务前先写入发件箱，发送成功后删除，本地事务已提交而发送失败的消息由发件箱补发任务补发
+ * 异步发送时由独立的发送线程池执行消息发送，调用方线程立即返回，
+ * 并通过信号量限制在途的异步发送数，超过上限时直接拒绝
+ */
+@Component
+public class IMMessageTxSender {
+    private final Logger logger = LoggerFactory.getLogger(IMMessageTxSender.class);
+
+    /**
+     * 事件编解码器类型：json或kryo
+     */
+    @Value("${message.codec.type:json}")
+    private String codecType;
+
+    /**
+     * 是否开启顺序模式，同一会话的消息进入同一队列并由消费者顺序消费
+     */
+    @Value("${message.order.enabled:false}")
+    private Boolean orderEnabled;
+
+    @Autowired
+    private RocketMQTemplate rocketMQTemplate;
+
+    // 顺序模式下在发送前执行本地事务，延迟注入避免与消息服务之间的循环依赖
+    @Lazy
+    @Autowired
+    private IMMessageTxListener imMessageTxListener;
+
+    // 顺序消息发件箱，记录已进入本地事务但尚未确认发送成功的消息
+    @Autowired
+    private MessageOutboxDomainService messageOutboxDomainService;
+
+    /**
+     * 异步发送线程数
+     */
+    @Value("${message.send.async.threads:32}")
+    private Integer asyncThreads;
+
+    /**
+     * 在途异步发送的最大数量，超过时拒绝新的异步发送
+     */
+    @Value("${message.send.async.maxInFlight:2000}")
+    private Integer asyncMaxInFlight;
+
+    private EventCodec eventCodec;
+
+    // 异步发送执行器，开启虚拟线程模式时每次发送使用一个虚拟线程，在途数量仍由信号量限制
+    private ExecutorService asyncSendExecutor;
+    // 在途异步发送许可
+    private Semaphore asyncInFlightPermits;
+
+    // 异步发送统计
+    private final StatisticsLogger statistics = new StatisticsLogger(IMMessageTxSender.class, "IMMessageTxSender");
+    // 异步发送次数
+    private final LongAdder asyncSendCount = statistics.counter("异步发送次数");
+    // 因在途数量超限被拒绝的次数
+    private final LongAdder asyncRejectCount = statistics.counter("拒绝次数");
+
+    @PostConstruct
+    public void init() {
+        // 注册顺序决定Kryo的注册id，新增类型只能追加到末尾
+        EventCodecFactory.registerKryoClasses(IMPrivateMessageTxEvent.class, PrivateMessageDTO.class,
+                                              IMGroupMessageTxEvent.class, GroupMessageDTO.class);
+        eventCodec = EventCodecFactory.getCodec(codecType);
+        int maxInFlight = Math.max(asyncMaxInFlight, 1);
+        asyncInFlightPermits = new Semaphore(maxInFlight);
+        statistics.gauge("在途数量", () -> maxInFlight - asyncInFlightPermits.availablePermits());
+        if (VirtualThreadUtils.isEnabled()) {
+            asyncSendExecutor = VirtualThreadUtils.newVirtualThreadPerTaskExecutor();
+            return;
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        asyncSendExecutor = new ThreadPoolExecutor(Math.max(asyncThreads, 1),
+                                                   Math.max(asyncThreads, 1),
+                                                   120,
+                                                   TimeUnit.SECONDS,
+                                                   new LinkedBlockingQueue<>(maxInFlight),
+                                                   runnable -> {
+                                                       Thread thread = new Thread(runnable, "message-tx-async-send-" + threadIndex.incrementAndGet());
+                                                       thread.setDaemon(true);
+                                                       return thread;
+                                                   },
+                                                   new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        asyncSendExecutor.shutdown();
+    }
+
+    /**
+     * 发送消息
+     * 默认以事务消息发送；开启顺序模式时先执行本地事务，再按会话键选择队列发送顺序消息
+     *
+     * @param imMessageTxEvent 消息事务事件
+     * @param destination      消息主题
+     * @param orderKey         会话键，单聊为双方用户id组合，群聊为群组id，顺序模式下同一会话的消息进入同一队列
+     * @return 发送结果，顺序模式下消息已保存但发送失败时返回null，由发件箱补发任务补发
+     */
+    public SendResult sendMessage(IMMessageTxEvent imMessageTxEvent, String destination, String orderKey) {
+        if (Boolean.TRUE.equals(orderEnabled)) {
+            return this.sendMessageOrderly(imMessageTxEvent, destination, orderKey);
+        }
+        return this.sendMessageInTransaction(imMessageTxEvent, destination);
+    }
+
+    /**
+     * 发送事务消息
+     *
+     * @param imMessageTxEvent 消息事务事件
+     * @param destination      消息主题
+     * @return 事务消息发送结果
+     */
+    public TransactionSendResult sendMessageInTransaction(IMMessageTxEvent imMessageTxEvent, String destination) {
+        return rocketMQTemplate.sendMessageInTransaction(this.getDestination(imMessageTxEvent, destination), this.buildMessage(imMessageTxEvent), null);
+    }
+
+    /**
+     * 发送顺序消息
+     * RocketMQ的事务消息不支持指定队列，因此顺序模式下先在当前线程执行与事务消息相同的本地事务，
+     * 写入成功后再按会话键哈希选择队列同步发送，同一会话的消息始终进入同一队列
+     * 本地事务结果未知时按事务回查的方式确认一次，仍未确认则按发送失败处理
+     * 执行本地事务前先写入发件箱：发送成功或本地事务回滚时删除，
+     * 本地事务已提交但发送失败、或进程在提交后退出时，由发件箱补发任务按事务回查的结果补发，消息不会只入库不推送
+     *
+     * @param imMessageTxEvent 消息事务事件
+     * @param destination      消息主题
+     * @param orderKey         会话键
+     * @return 发送结果，消息已保存但发送失败时返回null，由发件箱补发任务补发
+     * @throws IMException 写入发件箱失败、本地事务回滚或未确认时抛出
+     */
+    private SendResult sendMessageOrderly(IMMessageTxEvent imMessageTxEvent, String destination, String orderKey) {
+        Message<byte[]> message = this.buildMessage(imMessageTxEvent);
+        String orderlyDestination = this.getDestination(imMessageTxEvent, destination);
+        messageOutboxDomainService.saveOutbox(new MessageOutbox(imMessageTxEvent.getId(), imMessageTxEvent.getMessageType(), orderlyDestination,
+                                                                orderKey, message.getPayload(), new Date()));
+        RocketMQLocalTransactionState state = imMessageTxListener.executeLocalTransaction(message, null);
+        if (state == RocketMQLocalTransactionState.UNKNOWN) {
+            state = imMessageTxListener.checkLocalTransaction(message);
+        }
+        if (state == RocketMQLocalTransactionState.ROLLBACK) {
+            this.deleteOutbox(imMessageTxEvent.getId());
+        }
+        if (state != RocketMQLocalTransactionState.COMMIT) {
+            throw new IMException(HttpCode.PROGRAM_ERROR, "消息发送失败");
+        }
+        SendResult sendResult = this.sendOrderly(message, orderlyDestination, orderKey);
+        if (sendResult == null) {
+            logger.error("IMMessageTxSender|消息已保存，发送顺序消息失败，等待发件箱补发|{}", imMessageTxEvent.getId());
+            return null;
+        }
+        this.deleteOutbox(imMessageTxEvent.getId());
+        return sendResult;
+    }
+
+    /**
+     * 按会话键同步发送顺序消息
+     *
+     * @param message     消息
+     * @param destination 消息发送目的地，格式为 主题:Tag
+     * @param orderKey    会话键
+     * @return 发送结果，发送失败时返回null
+     */
+    SendResult sendOrderly(Message<byte[]> message, String destination, String orderKey) {
+        try {
+            return rocketMQTemplate.syncSendOrderly(destination, message, orderKey);
+        } catch (Exception e) {
+            logger.error("IMMessageTxSender|发送顺序消息失败|{}|{}", message.getHeaders().get(IMPlatformConstants.HEADER_MESSAGE_ID), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 删除发件箱记录，删除失败时补发任务会重复发送一次，消费者按至少一次语义处理
+     */
+    void deleteOutbox(Long messageId) {
+        try {
+            messageOutboxDomainService.deleteOutbox(messageId);
+        } catch (Exception e) {
+            logger.error("IMMessageTxSender|删除发件箱记录失败|{}|{}", messageId, e.getMessage());
+        }
+    }
+
+    /**
+     * 异步发送消息
+     * 在发送线程池中执行消息发送，本地事务执行完成后完成返回的Future
+     * 在途异步发送数达到上限时抛出异常，由调用方直接返回繁忙
+     *
+     * @param imMessageTxEvent 消息事务事件
+     * @param destination      消息主题
+     * @param orderKey         会话键
+     * @return 发送结果的Future
+     * @throws IMException 在途异步发送数达到上限时抛出
+     */
+    public CompletableFuture<SendResult> sendMessageAsync(IMMessageTxEvent imMessageTxEvent, String destination, String orderKey) {
+        if (!asyncInFlightPermits.tryAcquire()) {
+            asyncRejectCount.increment();
+            statistics.logIfDue();
+            throw new IMException(HttpCode.PROGRAM_ERROR, "消息发送繁忙，请稍后再试");
+        }
+        CompletableFuture<SendResult> future = new CompletableFuture<>();
+        try {
+            asyncSendExecutor.execute(() -> {
+                try {
+                    future.complete(this.sendMessage(imMessageTxEvent, destination, orderKey));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    asyncInFlightPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            asyncInFlightPermits.release();
+            asyncRejectCount.increment();
+            throw new IMException(HttpCode.PROGRAM_ERROR, "消息发送繁忙，请稍后再试");
+        }
+        asyncSendCount.increment();
+        statistics.logIfDue();
+        return future;
+    }
+
+    /**
+     * 构造消息，消息类型作为Tag，消息类型和消息id写入消息头
+     */
+    private Message<byte[]> buildMessage(IMMessageTxEvent imMessageTxEvent) {
+        return this.buildMessage(imMessageTxEvent.getId(), imMessageTxEvent.getMessageType(), eventCodec.encode(imMessageTxEvent));
+    }
+
+    /**
+     * 由已编码的消息体构造消息，发件箱补发时使用
+     */
+    Message<byte[]> buildMessage(Long messageId, String messageType, byte[] payload) {
+        return MessageBuilder.withPayload(payload)
+                .setHeader(RocketMQHeaders.KEYS, String.valueOf(messageId))
+                .setHeader(IMPlatformConstants.HEADER_MESSAGE_ID, String.valueOf(messageId))
+                .setHeader(IMPlatformConstants.HEADER_MESSAGE_TYPE, messageType)
+                .build();
+    }
+
+    private String getDestination(IMMessageTxEvent imMessageTxEvent, String destination) {
+        return destination.concat(":").concat(imMessageTxEvent.getMessageType());
+    }
+}
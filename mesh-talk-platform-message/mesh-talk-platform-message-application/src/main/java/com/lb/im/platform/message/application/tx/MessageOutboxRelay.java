@@ -0,0 +1,158 @@
+package com.lb.im.platform.message.application.tx;
+
+import com.lb.im.common.cache.lock.DistributedLock;
+import com.lb.im.common.cache.lock.factory.DistributedLockFactory;
+import com.lb.im.platform.common.model.constants.IMPlatformConstants;
+import com.lb.im.platform.common.model.entity.MessageOutbox;
+import com.lb.im.platform.message.domain.service.MessageOutboxDomainService;
+import org.apache.rocketmq.spring.core.RocketMQLocalTransactionState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 顺序消息发件箱补发任务
+ * 顺序模式下本地事务提交后发送失败、或进程在发送前退出的消息仍留在发件箱中，由本任务按固定间隔补发
+ *
+ * 技术点：
+ * 1. 只处理创建时间早于relayDelaySeconds的记录，避免与正在发送的请求线程重复发送
+ * 2. 按事务回查的方式确认本地事务状态：已提交则按原会话键补发顺序消息，已回滚则丢弃，仍未知则等待下次执行
+ * 3. 超过expireHours仍无法确认的记录记录错误日志后丢弃，与事务状态表的保留时长一致
+ * 4. 通过分布式锁保证同一时刻只有一个实例补发
+ */
+@Component
+@ConditionalOnProperty(name = "message.order.enabled", havingValue = "true")
+public class MessageOutboxRelay {
+    private final Logger logger = LoggerFactory.getLogger(MessageOutboxRelay.class);
+
+    /**
+     * 发件箱记录创建后至少等待的时长，单位秒
+     */
+    @Value("${message.order.outbox.relayDelaySeconds:30}")
+    private Long relayDelaySeconds;
+
+    /**
+     * 补发任务的执行间隔，单位秒
+     */
+    @Value("${message.order.outbox.relayIntervalSeconds:10}")
+    private Long relayIntervalSeconds;
+
+    /**
+     * 每批补发的记录数
+     */
+    @Value("${message.order.outbox.batchSize:100}")
+    private Integer batchSize;
+
+    /**
+     * 本地事务状态仍未知的记录的最长保留时长，单位小时
+     */
+    @Value("${message.order.outbox.expireHours:24}")
+    private Integer expireHours;
+
+    @Autowired
+    private MessageOutboxDomainService messageOutboxDomainService;
+
+    @Autowired
+    private IMMessageTxSender imMessageTxSender;
+
+    @Autowired
+    private IMMessageTxListener imMessageTxListener;
+
+    @Autowired
+    private DistributedLockFactory distributedLockFactory;
+
+    // 补发线程
+    private ScheduledExecutorService relayExecutor;
+
+    @PostConstruct
+    public void init() {
+        relayExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "message-outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(relayIntervalSeconds, 1L);
+        relayExecutor.scheduleWithFixedDelay(this::relay, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (relayExecutor != null) {
+            relayExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 分批处理发件箱中超过等待时长的记录
+     */
+    private void relay() {
+        DistributedLock lock = distributedLockFactory.getDistributedLock(IMPlatformConstants.IM_MESSAGE_OUTBOX_RELAY_LOCK_KEY);
+        try {
+            if (!lock.tryLock()) {
+                return;
+            }
+            int size = Math.max(batchSize, 1);
+            List<MessageOutbox> outboxes;
+            do {
+                Date before = new Date(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(relayDelaySeconds));
+                outboxes = messageOutboxDomainService.getOutboxBefore(before, size);
+                int pending = 0;
+                for (MessageOutbox outbox : outboxes) {
+                    if (!this.relay(outbox)) {
+                        pending++;
+                    }
+                }
+                // 整批都仍未确认或发送失败时，等待下次执行，避免反复查询同一批记录
+                if (pending == outboxes.size()) {
+                    return;
+                }
+            } while (outboxes.size() >= size);
+        } catch (Exception e) {
+            logger.error("MessageOutboxRelay|补发发件箱消息失败，下次执行时继续|{}", e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 处理单条发件箱记录
+     *
+     * @param outbox 发件箱记录
+     * @return 记录是否已处理完成并删除
+     */
+    private boolean relay(MessageOutbox outbox) {
+        Message<byte[]> message = imMessageTxSender.buildMessage(outbox.getId(), outbox.getMessageType(), outbox.getPayload());
+        RocketMQLocalTransactionState state = imMessageTxListener.checkLocalTransaction(message);
+        if (state == RocketMQLocalTransactionState.ROLLBACK) {
+            imMessageTxSender.deleteOutbox(outbox.getId());
+            return true;
+        }
+        if (state == RocketMQLocalTransactionState.UNKNOWN) {
+            if (outbox.getCreateTime() != null
+                    && System.currentTimeMillis() - outbox.getCreateTime().getTime() > TimeUnit.HOURS.toMillis(expireHours)) {
+                logger.error("MessageOutboxRelay|本地事务状态超时未确认，丢弃发件箱记录|{}|{}", outbox.getId(), outbox.getCreateTime());
+                imMessageTxSender.deleteOutbox(outbox.getId());
+                return true;
+            }
+            return false;
+        }
+        if (imMessageTxSender.sendOrderly(message, outbox.getDestination(), outbox.getOrderKey()) == null) {
+            return false;
+        }
+        imMessageTxSender.deleteOutbox(outbox.getId());
+        logger.info("MessageOutboxRelay|补发顺序消息|{}|{}", outbox.getId(), outbox.getOrderKey());
+        return true;
+    }
+}
@@ -0,0 +1,241 @@
+package com.lb.im.platform.message.application.tx;
+
+import com.lb.im.platform.common.log.StatisticsLogger;
+import com.lb.im.platform.common.model.enums.MessageTxStatus;
+import com.lb.im.platform.message.domain.service.MessageTxStateDomainService;
+import org.apache.rocketmq.spring.core.RocketMQLocalTransactionState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * 消息本地事务状态记录器
+ * 为RocketMQ事务回查提供快速答复，减少回查对数据库的访问
+ *
+ * 技术点：
+ * 1. 内存中按LRU保留最近已提交和已回滚的消息id，容量有上限，命中时不访问数据库
+ * 2. 本地事务回滚时写入本地事务状态表，回查时给出确定的ROLLBACK，避免消息行缺失时反复返回UNKNOWN
+ * 3. 消息表和事务状态表中都没有记录、且半消息已超过设定时长时答复ROLLBACK，
+ *    覆盖本地事务未执行（发送半消息后进程退出）和本地事务结果为UNKNOWN（批量提交超时）的情况，避免回查一直返回UNKNOWN
+ * 4. 统计回查由内存、消息表、事务状态表分别应答的次数，超时回滚的次数，以及仍返回UNKNOWN的次数
+ */
+@Component
+public class MessageTxStateRecorder {
+    private final Logger logger = LoggerFactory.getLogger(MessageTxStateRecorder.class);
+
+    /**
+     * 单次清理过期事务状态的最大条数
+     */
+    private static final int CLEAN_LIMIT_COUNT = 1000;
+
+    /**
+     * 内存中保留的事务状态条数上限
+     */
+    @Value("${message.tx.check.cacheSize:100000}")
+    private Integer cacheSize;
+
+    /**
+     * 事务状态表记录的保留时长，单位小时
+     */
+    @Value("${message.tx.check.retentionHours:24}")
+    private Integer retentionHours;
+
+    /**
+     * 半消息发出后超过该时长仍无消息记录和事务状态记录时，回查答复ROLLBACK，单位秒，小于等于0时不启用
+     */
+    @Value("${message.tx.check.rollbackAfterSeconds:120}")
+    private Integer rollbackAfterSeconds;
+
+    @Autowired
+    private MessageTxStateDomainService messageTxStateDomainService;
+
+    // 最近的本地事务状态，key为消息id，value为事务状态
+    private Map<Long, Integer> recentStates;
+    // 保护recentStates的锁
+    private final ReentrantLock recentStatesLock = new ReentrantLock();
+    // 过期事务状态清理线程
+    private ScheduledExecutorService cleanExecutor;
+
+    // 回查应答统计
+    private final StatisticsLogger statistics = new StatisticsLogger(MessageTxStateRecorder.class, "MessageTxStateRecorder|回查统计");
+    // 由内存应答的回查次数
+    private final LongAdder memoryHitCount = statistics.counter("内存应答");
+    // 由消息表应答的回查次数
+    private final LongAdder messageTableHitCount = statistics.counter("消息表应答");
+    // 由事务状态表应答的回查次数
+    private final LongAdder stateTableHitCount = statistics.counter("事务状态表应答");
+    // 半消息超时无记录而答复ROLLBACK的回查次数
+    private final LongAdder expiredRollbackCount = statistics.counter("超时回滚");
+    // 返回UNKNOWN的回查次数
+    private final LongAdder unknownCount = statistics.counter("UNKNOWN");
+
+    @PostConstruct
+    public void init() {
+        final int maxSize = Math.max(cacheSize, 1);
+        recentStates = new LinkedHashMap<Long, Integer>(16, 0.75F, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+                return size() > maxSize;
+            }
+        };
+        cleanExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "message-tx-state-clean");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cleanExecutor.scheduleWithFixedDelay(this::cleanExpired, 1, 1, TimeUnit.HOURS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (cleanExecutor != null) {
+            cleanExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 记录本地事务的执行结果
+     * 已提交和已回滚的状态写入内存，已回滚的状态同时写入事务状态表，UNKNOWN不记录
+     *
+     * @param messageId   消息id
+     * @param messageType 消息类型
+     * @param state       本地事务状态
+     */
+    public void record(Long messageId, String messageType, RocketMQLocalTransactionState state) {
+        if (messageId == null) {
+            return;
+        }
+        if (state == RocketMQLocalTransactionState.COMMIT) {
+            this.putRecentState(messageId, MessageTxStatus.COMMIT.code());
+        } else if (state == RocketMQLocalTransactionState.ROLLBACK) {
+            this.putRecentState(messageId, MessageTxStatus.ROLLBACK.code());
+            try {
+                messageTxStateDomainService.saveState(messageId, messageType, MessageTxStatus.ROLLBACK.code());
+            } catch (Exception e) {
+                logger.error("MessageTxStateRecorder|记录本地事务回滚状态失败|{}|{}", messageId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 回查本地事务状态
+     * 依次查询内存、消息表和事务状态表，都无法确定时，半消息已超过设定时长则答复ROLLBACK并记录，否则返回UNKNOWN
+     *
+     * @param messageId      消息id
+     * @param messageType    消息类型
+     * @param bornTimeMillis 半消息的发送时间，未知时为null，此时不按时长答复ROLLBACK
+     * @param existsChecker  检查消息是否已写入消息表
+     * @return 本地事务状态
+     */
+    public RocketMQLocalTransactionState check(Long messageId, String messageType, Long bornTimeMillis, Function<Long, Boolean> existsChecker) {
+        try {
+            Integer status = this.getRecentState(messageId);
+            if (status != null) {
+                memoryHitCount.increment();
+                return this.toLocalTransactionState(status);
+            }
+            if (Boolean.TRUE.equals(existsChecker.apply(messageId))) {
+                messageTableHitCount.increment();
+                this.putRecentState(messageId, MessageTxStatus.COMMIT.code());
+                return RocketMQLocalTransactionState.COMMIT;
+            }
+            status = messageTxStateDomainService.getStatus(messageId);
+            if (status != null) {
+                stateTableHitCount.increment();
+                this.putRecentState(messageId, status);
+                return this.toLocalTransactionState(status);
+            }
+            if (this.isExpired(bornTimeMillis)) {
+                expiredRollbackCount.increment();
+                logger.warn("MessageTxStateRecorder|半消息超时仍无本地事务记录，回查答复回滚|{}|{}", messageId, new Date(bornTimeMillis));
+                this.record(messageId, messageType, RocketMQLocalTransactionState.ROLLBACK);
+                return RocketMQLocalTransactionState.ROLLBACK;
+            }
+            unknownCount.increment();
+            return RocketMQLocalTransactionState.UNKNOWN;
+        } finally {
+            statistics.logIfDue();
+        }
+    }
+
+    /**
+     * 半消息是否已超过答复ROLLBACK的时长
+     */
+    private boolean isExpired(Long bornTimeMillis) {
+        return bornTimeMillis != null && rollbackAfterSeconds != null && rollbackAfterSeconds > 0
+                && System.currentTimeMillis() - bornTimeMillis > TimeUnit.SECONDS.toMillis(rollbackAfterSeconds);
+    }
+
+    private RocketMQLocalTransactionState toLocalTransactionState(Integer status) {
+        return MessageTxStatus.COMMIT.code().equals(status) ? RocketMQLocalTransactionState.COMMIT : RocketMQLocalTransactionState.ROLLBACK;
+    }
+
+    private Integer getRecentState(Long messageId) {
+        recentStatesLock.lock();
+        try {
+            return recentStates.get(messageId);
+        } finally {
+            recentStatesLock.unlock();
+        }
+    }
+
+    private void putRecentState(Long messageId, Integer status) {
+        recentStatesLock.lock();
+        try {
+            recentStates.put(messageId, status);
+        } finally {
+            recentStatesLock.unlock();
+        }
+    }
+
+    /**
+     * 清理超过保留时长的事务状态记录
+     */
+    private void cleanExpired() {
+        try {
+            Date expireTime = new Date(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(retentionHours));
+            int count;
+            do {
+                count = messageTxStateDomainService.deleteExpired(expireTime, CLEAN_LIMIT_COUNT);
+            } while (count >= CLEAN_LIMIT_COUNT);
+        } catch (Exception e) {
+            logger.error("MessageTxStateRecorder|清理过期本地事务状态失败|{}", e.getMessage());
+        }
+    }
+
+    public long getMemoryHitCount() {
+        return memoryHitCount.sum();
+    }
+
+    public long getMessageTableHitCount() {
+        return messageTableHitCount.sum();
+    }
+
+    public long getStateTableHitCount() {
+        return stateTableHitCount.sum();
+    }
+
+    public long getExpiredRollbackCount() {
+        return expiredRollbackCount.sum();
+    }
+
+    public long getUnknownCount() {
+        return unknownCount.sum();
+    }
+}
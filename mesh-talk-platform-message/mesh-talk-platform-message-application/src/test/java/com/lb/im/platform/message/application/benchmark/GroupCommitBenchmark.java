@@ -0,0 +1,173 @@
+package com.lb.im.platform.message.application.benchmark;
+
+import com.lb.im.platform.message.application.persist.GroupCommitWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 消息写入基准测试：逐条提交与GroupCommitWriter批量提交的吞吐量和延迟
+ * 逐条提交时每个调用方在自己的连接上执行一次INSERT并提交；
+ * 批量提交时调用方将消息交给GroupCommitWriter并等待结果，写线程在批次窗口内合并为一条多值INSERT，与saveBatchPrivateMessage的语句一致
+ * 默认使用H2内存库（MySQL模式），只能体现语句数的差异；
+ * 通过 -Dbenchmark.jdbc.url/-Dbenchmark.jdbc.user/-Dbenchmark.jdbc.password 指向MySQL时可体现提交次数（刷盘）的差异
+ *
+ * 运行：在测试类路径下执行本类的main方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(16)
+public class GroupCommitBenchmark {
+
+    private static final String TABLE = "im_private_message_benchmark";
+
+    private static final String INSERT_SQL = "insert into " + TABLE + "(id, send_id, recv_id, conversation_id, content, type, status, send_time) values ";
+
+    private static final String VALUES_SQL = "(?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * 批次窗口，单位毫秒
+     */
+    @Param({"1", "5"})
+    private long windowMillis;
+
+    /**
+     * 单批最大消息条数
+     */
+    @Param({"200"})
+    private int maxBatchSize;
+
+    // 模拟雪花id，每次写入都是新id
+    private final AtomicLong idGenerator = new AtomicLong(System.currentTimeMillis() << 20);
+
+    // 写线程使用的连接，只由写线程访问
+    private Connection writerConnection;
+
+    private GroupCommitWriter<Long> groupCommitWriter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        try (Connection connection = getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("drop table if exists " + TABLE);
+            statement.execute("create table " + TABLE + " (id bigint not null primary key, send_id bigint not null, recv_id bigint not null, " +
+                              "conversation_id varchar(64) not null default '', content text, type tinyint not null, status tinyint not null, send_time timestamp null)");
+        }
+        writerConnection = getConnection();
+        writerConnection.setAutoCommit(true);
+        groupCommitWriter = new GroupCommitWriter<>("benchmark", windowMillis, maxBatchSize, 10000,
+                                                    this::insertBatch, (id) -> this.insertBatch(Collections.singletonList(id)));
+        groupCommitWriter.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        groupCommitWriter.shutdown();
+        writerConnection.close();
+        try (Connection connection = getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("drop table if exists " + TABLE);
+        }
+    }
+
+    /**
+     * 每个线程一个连接，自动提交，与单条消息的本地事务一致
+     */
+    @State(Scope.Thread)
+    public static class ConnectionState {
+        private Connection connection;
+        private PreparedStatement insertStatement;
+
+        @Setup(Level.Trial)
+        public void open() throws SQLException {
+            connection = getConnection();
+            connection.setAutoCommit(true);
+            insertStatement = connection.prepareStatement(INSERT_SQL + VALUES_SQL);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws SQLException {
+            insertStatement.close();
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public int singleCommit(ConnectionState state) throws SQLException {
+        setValues(state.insertStatement, 0, idGenerator.incrementAndGet());
+        return state.insertStatement.executeUpdate();
+    }
+
+    @Benchmark
+    public boolean groupCommit() throws InterruptedException, ExecutionException, TimeoutException {
+        // 与MessagePersistServiceImpl一致，调用方等待本行的写入结果
+        return groupCommitWriter.submit(idGenerator.incrementAndGet()).get(3, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 多值INSERT写入一批消息，由GroupCommitWriter的写线程调用
+     */
+    private boolean insertBatch(List<Long> ids) {
+        StringBuilder sql = new StringBuilder(INSERT_SQL);
+        for (int idx = 0; idx < ids.size(); idx++) {
+            sql.append(idx == 0 ? "" : ",").append(VALUES_SQL);
+        }
+        try (PreparedStatement statement = writerConnection.prepareStatement(sql.toString())) {
+            for (int idx = 0; idx < ids.size(); idx++) {
+                setValues(statement, idx * 8, ids.get(idx));
+            }
+            return statement.executeUpdate() == ids.size();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void setValues(PreparedStatement statement, int offset, long id) throws SQLException {
+        statement.setLong(offset + 1, id);
+        statement.setLong(offset + 2, 10001L);
+        statement.setLong(offset + 3, 10002L);
+        statement.setString(offset + 4, "10001_10002");
+        statement.setString(offset + 5, "benchmark message content");
+        statement.setInt(offset + 6, 0);
+        statement.setInt(offset + 7, 0);
+        statement.setTimestamp(offset + 8, new Timestamp(System.currentTimeMillis()));
+    }
+
+    private static Connection getConnection() throws SQLException {
+        String url = System.getProperty("benchmark.jdbc.url", "jdbc:h2:mem:message_benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        return DriverManager.getConnection(url, System.getProperty("benchmark.jdbc.user", "sa"), System.getProperty("benchmark.jdbc.password", ""));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GroupCommitBenchmark.class.getSimpleName()).build()).run();
+    }
+}
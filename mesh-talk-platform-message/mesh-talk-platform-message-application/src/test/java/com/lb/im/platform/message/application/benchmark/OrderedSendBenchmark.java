@@ -0,0 +1,495 @@
+package com.lb.im.platform.message.application.benchmark;
+
+import com.lb.im.common.domain.model.IMPrivateMessage;
+import com.lb.im.platform.common.log.HotPathLogger;
+import com.lb.im.platform.common.model.constants.IMPlatformConstants;
+import com.lb.im.platform.common.model.dto.PrivateMessageDTO;
+import com.lb.im.platform.common.model.vo.PrivateMessageVO;
+import com.lb.im.platform.common.utils.ConversationUtils;
+import com.lb.im.platform.message.application.cache.GroupLatestMessageCacheService;
+import com.lb.im.platform.message.application.consumer.IMPrivateMessageRocketMQEventConsumer;
+import com.lb.im.platform.message.application.inbox.MessageInboxService;
+import com.lb.im.platform.message.application.persist.MessagePersistService;
+import com.lb.im.platform.message.application.push.MessagePushService;
+import com.lb.im.platform.message.application.service.GroupMessageService;
+import com.lb.im.platform.message.application.service.PrivateMessageService;
+import com.lb.im.platform.message.application.tx.IMMessageTxListener;
+import com.lb.im.platform.message.application.tx.IMMessageTxSender;
+import com.lb.im.platform.message.application.tx.MessageTxStateRecorder;
+import com.lb.im.platform.message.domain.event.IMPrivateMessageTxEvent;
+import com.lb.im.platform.message.domain.service.MessageOutboxDomainService;
+import com.lb.im.platform.message.domain.service.MessageTxStateDomainService;
+import com.lb.im.sdk.client.IMClient;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.client.producer.LocalTransactionState;
+import org.apache.rocketmq.client.producer.MessageQueueSelector;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.client.producer.TransactionMQProducer;
+import org.apache.rocketmq.client.producer.TransactionSendResult;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.apache.rocketmq.spring.support.RocketMQUtil;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * 消息发送路径基准测试：事务消息（并发消费）与顺序模式（顺序消息 + 顺序消费）的端到端吞吐量和会话内乱序次数
+ * 发送端使用真实的IMMessageTxSender、IMMessageTxListener和RocketMQTemplate（默认按会话键哈希选择队列），
+ * 消费端使用真实的IMPrivateMessageRocketMQEventConsumer，Broker由内存中的N个队列模拟：
+ * 事务消息：发送半消息（一次往返）-> 本地事务写入消息 -> 提交半消息后按轮询进入某个队列，消费者按客户端默认的消费线程数并发消费
+ * 顺序模式：写入发件箱 -> 本地事务写入消息 -> 按会话键同步发送顺序消息（一次往返）-> 删除发件箱记录，消费者每个队列同时只由一个线程消费
+ * 每个会话只由一个发送线程按顺序发送，推送到客户端的消息id小于该会话已推送的最大id时记为一次乱序
+ * 可通过系统属性调整：
+ * -Dbenchmark.queues 队列数，默认8；-Dbenchmark.conversations 会话数，默认64；-Dbenchmark.producers 发送线程数，默认8；
+ * -Dbenchmark.messages 每轮消息数，默认20000；-Dbenchmark.consumeThreads 并发消费线程数，默认20（客户端默认值）；
+ * -Dbenchmark.mq.rttMicros Broker往返耗时，默认500微秒；-Dbenchmark.db.micros 单条语句耗时，默认200微秒；-Dbenchmark.push.micros 单次推送耗时，默认100微秒
+ *
+ * 运行：在测试类路径下执行本类的main方法
+ */
+public class OrderedSendBenchmark {
+
+    private static final int QUEUES = Integer.getInteger("benchmark.queues", 8);
+
+    private static final int CONVERSATIONS = Integer.getInteger("benchmark.conversations", 64);
+
+    private static final int PRODUCERS = Integer.getInteger("benchmark.producers", 8);
+
+    private static final int MESSAGES = Integer.getInteger("benchmark.messages", 20000);
+
+    private static final int CONSUME_THREADS = Integer.getInteger("benchmark.consumeThreads", 20);
+
+    // 模拟的Broker同步往返耗时
+    private static final long MQ_RTT_NANOS = TimeUnit.MICROSECONDS.toNanos(Long.getLong("benchmark.mq.rttMicros", 500L));
+
+    // 模拟的单条数据库语句耗时
+    private static final long DB_NANOS = TimeUnit.MICROSECONDS.toNanos(Long.getLong("benchmark.db.micros", 200L));
+
+    // 模拟的单次推送耗时
+    private static final long PUSH_NANOS = TimeUnit.MICROSECONDS.toNanos(Long.getLong("benchmark.push.micros", 100L));
+
+    // 等待本轮消息全部推送的最长时间
+    private static final long ROUND_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    // 是否为顺序模式
+    private final boolean orderly;
+
+    // 模拟雪花id，每次发送都是新id，同一会话内按发送顺序递增
+    private final AtomicLong idGenerator = new AtomicLong(System.currentTimeMillis() << 20);
+
+    // 模拟Broker的队列
+    private final List<LinkedBlockingQueue<MessageExt>> brokerQueues = new ArrayList<>(QUEUES);
+    private final List<MessageQueue> messageQueues = new ArrayList<>(QUEUES);
+
+    // 已推送的消息数
+    private final AtomicLong pushedCount = new AtomicLong();
+    // 会话内乱序次数
+    private final LongAdder inversionCount = new LongAdder();
+    // 每个会话已推送的最大消息id
+    private final Map<String, AtomicLong> pushedMaxIds = new ConcurrentHashMap<>();
+
+    private IMMessageTxSender imMessageTxSender;
+    private MessageTxStateRecorder messageTxStateRecorder;
+    private IMPrivateMessageRocketMQEventConsumer consumer;
+
+    // 消费端线程：顺序模式每个队列一个线程，并发模式每个队列一个拉取线程加共享的消费线程池
+    private final List<Thread> consumeThreads = new ArrayList<>();
+    private ExecutorService consumeExecutor;
+    private volatile boolean running = true;
+
+    public OrderedSendBenchmark(boolean orderly) {
+        this.orderly = orderly;
+        for (int i = 0; i < QUEUES; i++) {
+            brokerQueues.add(new LinkedBlockingQueue<>());
+            messageQueues.add(new MessageQueue(IMPlatformConstants.TOPIC_PRIVATE_TX_MESSAGE, "benchmark-broker", i));
+        }
+    }
+
+    public void setUp() {
+        // 推送和本地事务的INFO日志按高采样间隔输出，避免日志成为瓶颈
+        HotPathLogger.configure(10000, 1, false);
+
+        IMMessageTxListener imMessageTxListener = new IMMessageTxListener();
+        PrivateMessageService privateMessageService = stubOnly(PrivateMessageService.class);
+        when(privateMessageService.saveIMPrivateMessageSaveEvent(any())).thenAnswer(invocation -> {
+            databaseStatement();
+            return true;
+        });
+        MessageTxStateDomainService messageTxStateDomainService = stubOnly(MessageTxStateDomainService.class);
+        messageTxStateRecorder = new MessageTxStateRecorder();
+        ReflectionTestUtils.setField(messageTxStateRecorder, "cacheSize", 100000);
+        ReflectionTestUtils.setField(messageTxStateRecorder, "retentionHours", 24);
+        ReflectionTestUtils.setField(messageTxStateRecorder, "rollbackAfterSeconds", 120);
+        ReflectionTestUtils.setField(messageTxStateRecorder, "messageTxStateDomainService", messageTxStateDomainService);
+        messageTxStateRecorder.init();
+        ReflectionTestUtils.setField(imMessageTxListener, "privateMessageService", privateMessageService);
+        ReflectionTestUtils.setField(imMessageTxListener, "groupMessageService", stubOnly(GroupMessageService.class));
+        ReflectionTestUtils.setField(imMessageTxListener, "messagePersistService", stubOnly(MessagePersistService.class));
+        ReflectionTestUtils.setField(imMessageTxListener, "messageTxStateRecorder", messageTxStateRecorder);
+        ReflectionTestUtils.setField(imMessageTxListener, "groupLatestMessageCacheService", stubOnly(GroupLatestMessageCacheService.class));
+        ReflectionTestUtils.setField(imMessageTxListener, "messageInboxService", stubOnly(MessageInboxService.class));
+
+        MockBrokerProducer producer = new MockBrokerProducer();
+        producer.setTransactionListener(RocketMQUtil.convert(imMessageTxListener));
+        RocketMQTemplate rocketMQTemplate = new RocketMQTemplate();
+        rocketMQTemplate.setProducer(producer);
+
+        MessageOutboxDomainService messageOutboxDomainService = stubOnly(MessageOutboxDomainService.class);
+        when(messageOutboxDomainService.saveOutbox(any())).thenAnswer(invocation -> {
+            databaseStatement();
+            return true;
+        });
+        doAnswer(invocation -> {
+            databaseStatement();
+            return null;
+        }).when(messageOutboxDomainService).deleteOutbox(anyLong());
+
+        imMessageTxSender = new IMMessageTxSender();
+        ReflectionTestUtils.setField(imMessageTxSender, "codecType", "json");
+        ReflectionTestUtils.setField(imMessageTxSender, "orderEnabled", orderly);
+        ReflectionTestUtils.setField(imMessageTxSender, "rocketMQTemplate", rocketMQTemplate);
+        ReflectionTestUtils.setField(imMessageTxSender, "imMessageTxListener", imMessageTxListener);
+        ReflectionTestUtils.setField(imMessageTxSender, "messageOutboxDomainService", messageOutboxDomainService);
+        ReflectionTestUtils.setField(imMessageTxSender, "asyncThreads", 1);
+        ReflectionTestUtils.setField(imMessageTxSender, "asyncMaxInFlight", 1);
+        imMessageTxSender.init();
+
+        // 并发消费逐条调用onMessage，推送给接收者；顺序消费由批量推送接口推送
+        IMClient imClient = stubOnly(IMClient.class);
+        doAnswer(invocation -> {
+            IMPrivateMessage<PrivateMessageVO> message = invocation.getArgument(0);
+            this.onPushed(message.getData());
+            return null;
+        }).when(imClient).sendPrivateMessage(any());
+        MessagePushService messagePushService = stubOnly(MessagePushService.class);
+        when(messagePushService.sendPrivateMessages(any(), any(), any())).thenAnswer(invocation -> {
+            List<PrivateMessageVO> privateMessageVOs = invocation.getArgument(2);
+            for (PrivateMessageVO privateMessageVO : privateMessageVOs) {
+                this.onPushed(privateMessageVO);
+            }
+            return privateMessageVOs.size();
+        });
+        consumer = new IMPrivateMessageRocketMQEventConsumer();
+        ReflectionTestUtils.setField(consumer, "imClient", imClient);
+        ReflectionTestUtils.setField(consumer, "messagePushService", messagePushService);
+        ReflectionTestUtils.setField(consumer, "batchEnabled", false);
+        ReflectionTestUtils.setField(consumer, "batchMaxSize", 32);
+        ReflectionTestUtils.setField(consumer, "orderEnabled", orderly);
+        ReflectionTestUtils.setField(consumer, "orderMaxReconsumeTimes", 16);
+        this.startConsumer();
+    }
+
+    public void tearDown() throws InterruptedException {
+        running = false;
+        for (Thread thread : consumeThreads) {
+            thread.interrupt();
+            thread.join();
+        }
+        if (consumeExecutor != null) {
+            consumeExecutor.shutdownNow();
+        }
+        imMessageTxSender.destroy();
+        messageTxStateRecorder.destroy();
+    }
+
+    /**
+     * 与监听器容器一致：消费者在prepareStart中注册了顺序监听器时按队列顺序消费，否则并发地逐条调用onMessage
+     */
+    private void startConsumer() {
+        DefaultMQPushConsumer pushConsumer = new DefaultMQPushConsumer(IMPlatformConstants.TOPIC_PRIVATE_TX_MESSAGE_GROUP);
+        consumer.prepareStart(pushConsumer);
+        if (pushConsumer.getMessageListener() instanceof MessageListenerOrderly) {
+            MessageListenerOrderly listener = (MessageListenerOrderly) pushConsumer.getMessageListener();
+            int batchSize = Math.max(pushConsumer.getConsumeMessageBatchMaxSize(), 1);
+            for (int i = 0; i < QUEUES; i++) {
+                final int queueId = i;
+                this.startConsumeThread("benchmark-orderly-consume-" + i, () -> this.consumeOrderly(listener, queueId, batchSize));
+            }
+            return;
+        }
+        consumeExecutor = Executors.newFixedThreadPool(CONSUME_THREADS);
+        for (int i = 0; i < QUEUES; i++) {
+            final int queueId = i;
+            this.startConsumeThread("benchmark-pull-" + i, () -> this.pullConcurrently(queueId));
+        }
+    }
+
+    private void startConsumeThread(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        consumeThreads.add(thread);
+        thread.start();
+    }
+
+    /**
+     * 顺序消费：队列被一个线程独占，一批消费成功后才消费下一批，挂起时重试同一批
+     */
+    private void consumeOrderly(MessageListenerOrderly listener, int queueId, int batchSize) {
+        LinkedBlockingQueue<MessageExt> queue = brokerQueues.get(queueId);
+        ConsumeOrderlyContext context = new ConsumeOrderlyContext(messageQueues.get(queueId));
+        List<MessageExt> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            while (running && listener.consumeMessage(Collections.unmodifiableList(batch), context) != ConsumeOrderlyStatus.SUCCESS) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * 并发消费：拉取线程按队列取出消息，交给共享的消费线程池逐条消费
+     */
+    private void pullConcurrently(int queueId) {
+        LinkedBlockingQueue<MessageExt> queue = brokerQueues.get(queueId);
+        while (running) {
+            MessageExt message;
+            try {
+                message = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            consumeExecutor.execute(() -> consumer.onMessage(message));
+        }
+    }
+
+    /**
+     * 记录推送，消息id小于该会话已推送的最大id时记为一次乱序
+     */
+    private void onPushed(PrivateMessageVO privateMessageVO) {
+        if (PUSH_NANOS > 0) {
+            LockSupport.parkNanos(PUSH_NANOS);
+        }
+        String conversationId = ConversationUtils.getPrivateConversationId(privateMessageVO.getSendId(), privateMessageVO.getRecvId());
+        long previous = pushedMaxIds.computeIfAbsent(conversationId, (key) -> new AtomicLong()).getAndAccumulate(privateMessageVO.getId(), Math::max);
+        if (privateMessageVO.getId() < previous) {
+            inversionCount.increment();
+        }
+        pushedCount.incrementAndGet();
+    }
+
+    /**
+     * 执行一轮发送，等待所有消息推送完成
+     *
+     * @param messages 本轮消息数
+     * @return 本轮结果
+     */
+    public RoundResult runRound(int messages) throws InterruptedException {
+        pushedCount.set(0);
+        inversionCount.reset();
+        pushedMaxIds.clear();
+        int producers = Math.max(Math.min(PRODUCERS, CONVERSATIONS), 1);
+        int perProducer = messages / producers;
+        int total = perProducer * producers;
+        CountDownLatch sendLatch = new CountDownLatch(producers);
+        ExecutorService producerExecutor = Executors.newFixedThreadPool(producers);
+        long start = System.nanoTime();
+        for (int p = 0; p < producers; p++) {
+            final int producerIndex = p;
+            producerExecutor.execute(() -> {
+                try {
+                    this.sendMessages(producerIndex, producers, perProducer);
+                } finally {
+                    sendLatch.countDown();
+                }
+            });
+        }
+        sendLatch.await();
+        long sendNanos = System.nanoTime() - start;
+        producerExecutor.shutdown();
+        long deadline = System.currentTimeMillis() + ROUND_TIMEOUT_MILLIS;
+        while (pushedCount.get() < total && System.currentTimeMillis() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        long endToEndNanos = System.nanoTime() - start;
+        return new RoundResult(total, pushedCount.get(), sendNanos, endToEndNanos, inversionCount.sum());
+    }
+
+    /**
+     * 发送线程按顺序轮流向自己负责的会话发送消息，同一会话只由一个线程发送
+     */
+    private void sendMessages(int producerIndex, int producers, int count) {
+        List<Integer> conversations = new ArrayList<>();
+        for (int c = producerIndex; c < CONVERSATIONS; c += producers) {
+            conversations.add(c);
+        }
+        for (int i = 0; i < count; i++) {
+            int conversation = conversations.get(i % conversations.size());
+            long senderId = 10000L + conversation;
+            long recvId = 20000L + conversation;
+            IMPrivateMessageTxEvent event = new IMPrivateMessageTxEvent(idGenerator.incrementAndGet(), senderId, 0,
+                                                                        IMPlatformConstants.TOPIC_PRIVATE_TX_MESSAGE, new Date(),
+                                                                        new PrivateMessageDTO(recvId, "benchmark message content", 0));
+            imMessageTxSender.sendMessage(event, IMPlatformConstants.TOPIC_PRIVATE_TX_MESSAGE,
+                                          ConversationUtils.getPrivateConversationId(senderId, recvId));
+        }
+    }
+
+    private static void databaseStatement() {
+        if (DB_NANOS > 0) {
+            LockSupport.parkNanos(DB_NANOS);
+        }
+    }
+
+    private static void brokerRoundTrip() {
+        if (MQ_RTT_NANOS > 0) {
+            LockSupport.parkNanos(MQ_RTT_NANOS);
+        }
+    }
+
+    private static <T> T stubOnly(Class<T> type) {
+        // 只做桩、不记录调用，避免压测期间调用记录无限增长
+        return mock(type, withSettings().stubOnly());
+    }
+
+    /**
+     * 模拟Broker的生产者：不连接NameServer，消息写入内存队列
+     * 顺序消息使用调用方传入的队列选择器，事务消息在本地事务提交后按轮询选择队列，与客户端默认的队列选择一致
+     */
+    private class MockBrokerProducer extends TransactionMQProducer {
+        private final AtomicInteger sendWhichQueue = new AtomicInteger();
+        private final AtomicLong offset = new AtomicLong();
+
+        MockBrokerProducer() {
+            super("benchmark-producer");
+        }
+
+        @Override
+        public SendResult send(Message msg, MessageQueueSelector selector, Object arg, long timeout) {
+            brokerRoundTrip();
+            MessageQueue messageQueue = selector.select(messageQueues, msg, arg);
+            return this.append(msg, messageQueue, new SendResult());
+        }
+
+        @Override
+        public TransactionSendResult sendMessageInTransaction(Message msg, Object arg) {
+            // 发送半消息，等待Broker应答
+            brokerRoundTrip();
+            LocalTransactionState state = this.getTransactionListener().executeLocalTransaction(msg, arg);
+            TransactionSendResult result = new TransactionSendResult();
+            result.setLocalTransactionState(state);
+            if (state != LocalTransactionState.COMMIT_MESSAGE) {
+                result.setSendStatus(SendStatus.SEND_OK);
+                return result;
+            }
+            // 提交半消息为单向请求，不等待；提交后的消息按轮询进入某个队列
+            MessageQueue messageQueue = messageQueues.get(Math.abs(sendWhichQueue.getAndIncrement() % messageQueues.size()));
+            this.append(msg, messageQueue, result);
+            return result;
+        }
+
+        private <R extends SendResult> R append(Message msg, MessageQueue messageQueue, R result) {
+            MessageExt messageExt = new MessageExt();
+            messageExt.setTopic(msg.getTopic());
+            messageExt.setBody(msg.getBody());
+            messageExt.setFlag(msg.getFlag());
+            MessageAccessor.setProperties(messageExt, new HashMap<>(msg.getProperties()));
+            messageExt.setQueueId(messageQueue.getQueueId());
+            messageExt.setQueueOffset(offset.incrementAndGet());
+            messageExt.setMsgId(String.valueOf(messageExt.getQueueOffset()));
+            messageExt.setBornTimestamp(System.currentTimeMillis());
+            brokerQueues.get(messageQueue.getQueueId()).add(messageExt);
+            result.setSendStatus(SendStatus.SEND_OK);
+            result.setMsgId(messageExt.getMsgId());
+            result.setMessageQueue(messageQueue);
+            result.setQueueOffset(messageExt.getQueueOffset());
+            return result;
+        }
+    }
+
+    /**
+     * 一轮发送的结果
+     */
+    public static class RoundResult {
+        private final long messages;
+        private final long pushed;
+        private final long sendNanos;
+        private final long endToEndNanos;
+        private final long inversions;
+
+        RoundResult(long messages, long pushed, long sendNanos, long endToEndNanos, long inversions) {
+            this.messages = messages;
+            this.pushed = pushed;
+            this.sendNanos = sendNanos;
+            this.endToEndNanos = endToEndNanos;
+            this.inversions = inversions;
+        }
+
+        public double getSendThroughput() {
+            return messages * 1e9 / sendNanos;
+        }
+
+        public double getEndToEndThroughput() {
+            return pushed * 1e9 / endToEndNanos;
+        }
+
+        public long getInversions() {
+            return inversions;
+        }
+
+        public long getPushed() {
+            return pushed;
+        }
+
+        public long getMessages() {
+            return messages;
+        }
+    }
+
+    private static void run(boolean orderly) throws InterruptedException {
+        String mode = orderly ? "顺序模式" : "事务消息";
+        OrderedSendBenchmark benchmark = new OrderedSendBenchmark(orderly);
+        benchmark.setUp();
+        try {
+            // 预热一轮，不计入结果
+            benchmark.runRound(Math.max(MESSAGES / 5, 1));
+            for (int round = 1; round <= 3; round++) {
+                RoundResult result = benchmark.runRound(MESSAGES);
+                System.out.printf("OrderedSendBenchmark|%s|第%d轮|队列数:%d|会话数:%d|消息数:%d|已推送:%d|发送吞吐(msgs/s):%.0f|端到端吞吐(msgs/s):%.0f|会话内乱序次数:%d%n",
+                                  mode, round, QUEUES, CONVERSATIONS, result.getMessages(), result.getPushed(),
+                                  result.getSendThroughput(), result.getEndToEndThroughput(), result.getInversions());
+            }
+        } finally {
+            benchmark.tearDown();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        run(false);
+        run(true);
+    }
+}
@@ -14,8 +14,10 @@ import java.util.List;
 public class IMGroupMessageTxEvent extends IMMessageTxEvent {
     // 消息发送人昵称（在群聊中显示的名称）
     private String sendNickName;
-    // 接收消息的用户ID列表（群成员列表，不包括发送者自己）
+    // 接收消息的用户ID列表（群成员列表，不包括发送者自己），精简模式下为空
     private List<Long> userIds;
+    // 群成员集合版本号，精简模式下消费者据此从本地缓存解析接收者
+    private Long memberVersion;
     // 群聊消息数据，包含消息内容、类型、群ID等信息
     private GroupMessageDTO groupMessageDTO;
 
@@ -46,6 +48,14 @@ public class IMGroupMessageTxEvent extends IMMessageTxEvent {
         this.userIds = userIds;
     }
 
+    public Long getMemberVersion() {
+        return memberVersion;
+    }
+
+    public void setMemberVersion(Long memberVersion) {
+        this.memberVersion = memberVersion;
+    }
+
     public GroupMessageDTO getGroupMessageDTO() {
         return groupMessageDTO;
     }
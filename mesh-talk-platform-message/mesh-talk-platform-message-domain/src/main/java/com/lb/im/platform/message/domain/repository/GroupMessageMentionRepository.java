@@ -0,0 +1,49 @@
+package com.lb.im.platform.message.domain.repository;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.lb.im.platform.common.model.entity.GroupMessageMention;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+/**
+ * 群聊@提及索引数据库操作仓库
+ */
+public interface GroupMessageMentionRepository extends BaseMapper<GroupMessageMention> {
+
+    /**
+     * 批量写入@提及索引
+     * 已存在的记录忽略，消息重复写入时索引保持幂等
+     *
+     * @param list @提及索引列表
+     * @return 写入的记录数
+     */
+    @Insert({"<script> " +
+            "insert ignore into im_group_message_mention(user_id, group_id, message_id) values " +
+            "<foreach collection='list' item='m' separator=','> " +
+            " (#{m.userId}, #{m.groupId}, #{m.messageId}) " +
+            "</foreach> " +
+            "</script>"})
+    int insertIgnoreBatch(@Param("list") List<GroupMessageMention> list);
+
+    /**
+     * 按消息id倒序查询@用户的消息
+     *
+     * @param userId   被@的用户id
+     * @param groupId  群组id，为空时查询所有群组
+     * @param beforeId 消息id游标，只查询id小于游标的记录，为空时从最新的记录开始
+     * @param size     查询条数
+     * @return @提及索引列表
+     */
+    @Select({"<script> " +
+            "select user_id as userId, group_id as groupId, message_id as messageId from im_group_message_mention " +
+            "where user_id = #{userId} " +
+            " <if test=\"groupId != null\"> and group_id = #{groupId} </if> " +
+            " <if test=\"beforeId != null\"> and message_id <![CDATA[ < ]]> #{beforeId} </if> " +
+            " order by message_id desc limit #{size} " +
+            "</script>"})
+    List<GroupMessageMention> getMentions(@Param("userId") Long userId, @Param("groupId") Long groupId, @Param("beforeId") Long beforeId,
+                                          @Param("size") long size);
+}
@@ -3,8 +3,11 @@ package com.lb.im.platform.message.domain.repository;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.lb.im.platform.common.model.entity.GroupMessage;
 import com.lb.im.platform.common.model.vo.GroupMessageVO;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 
 import java.util.Date;
 import java.util.List;
@@ -21,49 +24,277 @@ public interface GroupMessageRepository extends BaseMapper<GroupMessage> {
      * 使用SQL查询优化，仅返回常数1而不是整个消息对象，提高性能
      * 用于分布式事务的检查阶段，确认消息是否已持久化
      *
+     * @param table 物理表名
      * @param messageId 要检查的消息ID
      * @return 如果消息存在返回1，否则返回null
      */
-    @Select("select 1 from im_group_message where id = #{messageId} limit 1")
-    Integer checkExists(@Param("messageId") Long messageId);
+    @Select("select 1 from ${table} where id = #{messageId} limit 1")
+    Integer checkExists(@Param("table") String table, @Param("messageId") Long messageId);
+
+    /**
+     * 追加写入单条群聊消息
+     * 仅执行INSERT，不做按id的前置查询，主键重复时抛出DuplicateKeyException由调用方处理
+     *
+     * @param table 物理表名
+     * @param message 群聊消息
+     * @return 写入的记录数
+     */
+    @Insert("insert into ${table}(id, group_id, send_id, send_nick_name, at_user_ids, content, type, status, send_time) " +
+            "values (#{m.id}, #{m.groupId}, #{m.sendId}, #{m.sendNickName}, #{m.atUserIds}, #{m.content}, #{m.type}, #{m.status}, #{m.sendTime})")
+    int appendMessage(@Param("table") String table, @Param("m") GroupMessage message);
+
+    /**
+     * 批量写入群聊消息
+     * 多条消息合并为一条多值INSERT语句，由批量提交写入器使用
+     *
+     * @param table 物理表名
+     * @param list 群聊消息列表
+     * @return 写入的记录数
+     */
+    @Insert({"<script> " +
+            "insert into ${table}(id, group_id, send_id, send_nick_name, at_user_ids, content, type, status, send_time) values " +
+            "<foreach collection='list' item='m' separator=','> " +
+            " (#{m.id}, #{m.groupId}, #{m.sendId}, #{m.sendNickName}, #{m.atUserIds}, #{m.content}, #{m.type}, #{m.status}, #{m.sendTime}) " +
+            "</foreach> " +
+            "</script>"})
+    int batchInsert(@Param("table") String table, @Param("list") List<GroupMessage> list);
 
     @Select({"<script> " +
             "select id as id, group_id as groupId, send_id as sendId, send_nick_name as sendNickName, " +
             "at_user_ids as atUserIdsStr, content as content, type as type, status as status, send_time as sendTime " +
-            "from im_group_message where group_id = #{groupId} and send_time <![CDATA[ > ]]> #{sendTime} " +
+            "from ${table} where group_id = #{groupId} " +
+            " <if test=\"sendTime != null\"> and send_time <![CDATA[ > ]]> #{sendTime} </if> " +
             "and send_id  <![CDATA[ <> ]]> #{sendId} and status  <![CDATA[ <> ]]> #{status} " +
             " <if test=\"maxReadId != null and maxReadId != 0\"> " +
             " and id <![CDATA[ > ]]> #{maxReadId} " +
             "</if> " +
             "limit #{limitCount}" +
             "</script>"})
-    List<GroupMessageVO> getUnreadGroupMessageList(@Param("groupId") Long groupId, @Param("sendTime") Date sendTime,
+    List<GroupMessageVO> getUnreadGroupMessageList(@Param("table") String table, @Param("groupId") Long groupId, @Param("sendTime") Date sendTime,
                                                    @Param("sendId") Long sendId, @Param("status") Integer status,
                                                    @Param("maxReadId") Long maxReadId, @Param("limitCount") Integer limitCount);
 
     @Select({"<script> " +
             "select id as id, group_id as groupId, send_id as sendId, send_nick_name as sendNickName, " +
             "at_user_ids as atUserIdsStr, content as content, type as type, status as status, send_time as sendTime " +
-            "from im_group_message where id <![CDATA[ > ]]> #{minId} and send_time <![CDATA[ > ]]> #{minDate}  and group_id in " +
+            "from ${table} where id <![CDATA[ > ]]> #{minId} " +
+            " <if test=\"minDate != null\"> and send_time <![CDATA[ > ]]> #{minDate} </if> " +
+            " and group_id in " +
             "<foreach collection='ids' item='id' index='index' separator=',' open='(' close=')'> " +
             " #{id} " +
             " </foreach> " +
             " and status  <![CDATA[ <> ]]> #{status} " +
             " order by id asc limit #{limitCount} " +
             "</script>"})
-    List<GroupMessageVO> loadGroupMessageList(@Param("minId") Long minId, @Param("minDate") Date minDate, @Param("ids") List<Long> ids,
+    List<GroupMessageVO> loadGroupMessageList(@Param("table") String table, @Param("minId") Long minId, @Param("minDate") Date minDate, @Param("ids") List<Long> ids,
                                               @Param("status") Integer status, @Param("limitCount") Integer limitCount);
 
     @Select({"<script> " +
             "select id as id, group_id as groupId, send_id as sendId, send_nick_name as sendNickName, " +
             "at_user_ids as atUserIdsStr, content as content, type as type, status as status, send_time as sendTime " +
-            "from im_group_message where group_id = #{groupId} and send_time <![CDATA[ > ]]> #{sendTime}   " +
+            "from ${table} where group_id = #{groupId} " +
+            " <if test=\"sendTime != null\"> and send_time <![CDATA[ > ]]> #{sendTime} </if> " +
+            " <if test=\"minId != null\"> and id <![CDATA[ > ]]> #{minId} </if> " +
             " and status  <![CDATA[ <> ]]> #{status} order by id desc limit #{stIdx}, #{size}" +
             "</script>"})
-    List<GroupMessageVO> getHistoryMessage(@Param("groupId") Long groupId, @Param("sendTime") Date sendTime,
+    List<GroupMessageVO> getHistoryMessage(@Param("table") String table, @Param("groupId") Long groupId, @Param("sendTime") Date sendTime, @Param("minId") Long minId,
                                            @Param("status") Integer status, @Param("stIdx") long stIdx, @Param("size") long size);
 
-    @Select("select id from im_group_message where group_id = #{groupId} order by id desc limit 1")
-    Long getMaxMessageId(@Param("groupId") Long groupId);
-}
+    /**
+     * 按游标加载群聊历史消息
+     * 查询id小于游标的消息，按消息ID倒序排列，走group_id索引（隐含主键id）范围扫描，翻页深度不影响查询代价
+     */
+    @Select({"<script> " +
+            "select id as id, group_id as groupId, send_id as sendId, send_nick_name as sendNickName, " +
+            "at_user_ids as atUserIdsStr, content as content, type as type, status as status, send_time as sendTime " +
+            "from ${table} where group_id = #{groupId} " +
+            "<if test='sendTime != null'> and send_time <![CDATA[ > ]]> #{sendTime} </if> " +
+            "<if test='minId != null'> and id <![CDATA[ > ]]> #{minId} </if> " +
+            "<if test='beforeId != null'> and id <![CDATA[ < ]]> #{beforeId} </if> " +
+            " and status  <![CDATA[ <> ]]> #{status} order by id desc limit #{size}" +
+            "</script>"})
+    List<GroupMessageVO> getHistoryMessageBefore(@Param("table") String table, @Param("groupId") Long groupId, @Param("sendTime") Date sendTime, @Param("minId") Long minId,
+                                                 @Param("status") Integer status, @Param("beforeId") Long beforeId, @Param("size") long size);
+
+    /**
+     * 按消息id列表加载群聊消息，排除指定状态的消息
+     *
+     * @param table 物理表名
+     * @param ids 消息id列表
+     * @param status 排除的消息状态
+     * @return 群聊消息列表
+     */
+    @Select({"<script> " +
+            "select id as id, group_id as groupId, send_id as sendId, send_nick_name as sendNickName, " +
+            "at_user_ids as atUserIdsStr, content as content, type as type, status as status, send_time as sendTime " +
+            "from ${table} where id in " +
+            "<foreach collection='ids' item='id' separator=',' open='(' close=')'> " +
+            " #{id} " +
+            "</foreach> " +
+            " and status  <![CDATA[ <> ]]> #{status}" +
+            "</script>"})
+    List<GroupMessageVO> getMessagesByIds(@Param("table") String table, @Param("ids") List<Long> ids, @Param("status") Integer status);
+
+    /**
+     * 统计群聊历史消息数，条件与getHistoryMessage一致，用于偏移分页从热表延续到归档表时计算归档表内的偏移
+     */
+    @Select({"<script> " +
+            "select count(1) from ${table} where group_id = #{groupId} " +
+            "<if test='sendTime != null'> and send_time <![CDATA[ > ]]> #{sendTime} </if> " +
+            "<if test='minId != null'> and id <![CDATA[ > ]]> #{minId} </if> " +
+            " and status  <![CDATA[ <> ]]> #{status}" +
+            "</script>"})
+    long countHistoryMessage(@Param("table") String table, @Param("groupId") Long groupId, @Param("sendTime") Date sendTime, @Param("minId") Long minId,
+                             @Param("status") Integer status);
+
+    @Select("select id from ${table} where group_id = #{groupId} order by id desc limit 1")
+    Long getMaxMessageId(@Param("table") String table, @Param("groupId") Long groupId);
+
+    /**
+     * 批量获取多个群组的最大消息id
+     * 按群组分组取最大id，通过群组索引完成，不回表
+     *
+     * @param table 物理表名
+     * @param groupIds 群组id列表
+     * @return 群聊消息列表，只填充群组id和该群组的最大消息id，没有消息的群组不返回
+     */
+    @Select({"<script> " +
+            "select group_id as groupId, max(id) as id from ${table} where group_id in " +
+            "<foreach collection='groupIds' item='groupId' separator=',' open='(' close=')'> " +
+            " #{groupId} " +
+            "</foreach> " +
+            " group by group_id" +
+            "</script>"})
+    List<GroupMessage> getMaxMessageIds(@Param("table") String table, @Param("groupIds") List<Long> groupIds);
+
+    /**
+     * 按主键顺序读取一批待迁移的群聊消息
+     *
+     * @param table   源表名
+     * @param afterId 上一批的最大消息ID
+     * @param limit   批次大小
+     * @return 群聊消息实体列表，按ID升序
+     */
+    @Select("select id as id, group_id as groupId, send_id as sendId, send_nick_name as sendNickName, at_user_ids as atUserIds, " +
+            "content as content, type as type, status as status, send_time as sendTime " +
+            "from ${table} where id > #{afterId} order by id asc limit #{limit}")
+    List<GroupMessage> getMigrateBatch(@Param("table") String table, @Param("afterId") Long afterId, @Param("limit") int limit);
+
+    /**
+     * 按主键顺序读取一批待归档的群聊消息
+     * 开启雪花id时间换算时按id上界过滤，为主键范围扫描；否则按发送时间过滤
+     *
+     * @param table      热表名
+     * @param beforeId   消息ID上界（不含），为空时不按ID过滤
+     * @param beforeTime 发送时间上界（不含），为空时不按时间过滤
+     * @param limit      批次大小
+     * @return 群聊消息实体列表，按ID升序
+     */
+    @Select({"<script> " +
+            "select id as id, group_id as groupId, send_id as sendId, send_nick_name as sendNickName, at_user_ids as atUserIds, " +
+            "content as content, type as type, status as status, send_time as sendTime " +
+            "from ${table} where 1 = 1 " +
+            "<if test='beforeId != null'> and id <![CDATA[ < ]]> #{beforeId} </if> " +
+            "<if test='beforeTime != null'> and send_time <![CDATA[ < ]]> #{beforeTime} </if> " +
+            "order by id asc limit #{limit} " +
+            "</script>"})
+    List<GroupMessage> getArchiveBatch(@Param("table") String table, @Param("beforeId") Long beforeId, @Param("beforeTime") Date beforeTime, @Param("limit") int limit);
+
+    /**
+     * 批量写入迁移的群聊消息，已存在的消息忽略，迁移可重复执行
+     *
+     * @param table 目标表名
+     * @param list  群聊消息列表
+     * @return 写入的记录数
+     */
+    @Insert({"<script> " +
+            "insert ignore into ${table}(id, group_id, send_id, send_nick_name, at_user_ids, content, type, status, send_time) values " +
+            "<foreach collection='list' item='m' separator=','> " +
+            " (#{m.id}, #{m.groupId}, #{m.sendId}, #{m.sendNickName}, #{m.atUserIds}, #{m.content}, #{m.type}, #{m.status}, #{m.sendTime}) " +
+            "</foreach> " +
+            "</script>"})
+    int insertIgnoreBatch(@Param("table") String table, @Param("list") List<GroupMessage> list);
+
+    /**
+     * 将源表中的消息状态同步到已迁移的群聊消息
+     * 迁移读取源表之后、写入目标表之前，源表中的消息可能已被更新（撤回、已读），写入后按源表的状态补齐
+     *
+     * @param table       目标表名
+     * @param sourceTable 源表名
+     * @param ids         消息ID列表
+     * @return 更新的记录数
+     */
+    @Update({"<script> " +
+            "update ${table} t inner join ${sourceTable} s on t.id = s.id set t.status = s.status where t.id in " +
+            "<foreach collection='ids' item='id' separator=',' open='(' close=')'> " +
+            " #{id} " +
+            " </foreach> " +
+            " and t.status <![CDATA[ <> ]]> s.status " +
+            "</script>"})
+    int syncStatus(@Param("table") String table, @Param("sourceTable") String sourceTable, @Param("ids") List<Long> ids);
+
+    /**
+     * 按消息ID读取群聊消息的状态
+     * 源表与目标表不在同一数据源时无法联表同步状态，先从源表读出状态，再按状态更新目标表
+     *
+     * @param table 源表名
+     * @param ids   消息ID列表
+     * @return 群聊消息实体列表，只包含id和status
+     */
+    @Select({"<script> " +
+            "select id as id, status as status from ${table} where id in " +
+            "<foreach collection='ids' item='id' separator=',' open='(' close=')'> " +
+            " #{id} " +
+            " </foreach> " +
+            "</script>"})
+    List<GroupMessage> getStatusByIds(@Param("table") String table, @Param("ids") List<Long> ids);
+
+    /**
+     * 按源表读出的状态更新已迁移的群聊消息
+     *
+     * @param table  目标表名
+     * @param status 源表中的消息状态
+     * @param ids    消息ID列表
+     * @return 更新的记录数
+     */
+    @Update({"<script> " +
+            "update ${table} set status = #{status} where id in " +
+            "<foreach collection='ids' item='id' separator=',' open='(' close=')'> " +
+            " #{id} " +
+            " </foreach> " +
+            " and status <![CDATA[ <> ]]> #{status} " +
+            "</script>"})
+    int updateStatusByIds(@Param("table") String table, @Param("status") Integer status, @Param("ids") List<Long> ids);
+
+    /**
+     * 删除已迁移到其他分表或已归档的群聊消息
+     *
+     * @param table 源表名
+     * @param ids   消息ID列表
+     * @return 删除的记录数
+     */
+    @Delete({"<script> " +
+            "delete from ${table} where id in " +
+            "<foreach collection='ids' item='id' separator=',' open='(' close=')'> " +
+            " #{id} " +
+            " </foreach> " +
+            "</script>"})
+    int deleteByIds(@Param("table") String table, @Param("ids") List<Long> ids);
 
+    /**
+     * 删除已归档的群聊消息，只删除归档表中状态一致的记录
+     * 写入归档表之后热表中的消息被更新（撤回、已读）时状态不一致，保留在热表由下一批重新归档
+     *
+     * @param table        热表名
+     * @param archiveTable 归档表名
+     * @param ids          消息ID列表
+     * @return 删除的记录数
+     */
+    @Delete({"<script> " +
+            "delete t from ${table} t inner join ${archiveTable} a on t.id = a.id and t.status = a.status where t.id in " +
+            "<foreach collection='ids' item='id' separator=',' open='(' close=')'> " +
+            " #{id} " +
+            " </foreach> " +
+            "</script>"})
+    int deleteArchived(@Param("table") String table, @Param("archiveTable") String archiveTable, @Param("ids") List<Long> ids);
+}
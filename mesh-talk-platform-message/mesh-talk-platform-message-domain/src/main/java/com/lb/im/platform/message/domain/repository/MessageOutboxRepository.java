@@ -0,0 +1,48 @@
+package com.lb.im.platform.message.domain.repository;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.lb.im.platform.common.model.entity.MessageOutbox;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 顺序消息发件箱数据库操作仓库
+ */
+public interface MessageOutboxRepository extends BaseMapper<MessageOutbox> {
+
+    /**
+     * 写入发件箱记录
+     * 同一消息重复写入时忽略
+     *
+     * @param outbox 发件箱记录
+     * @return 写入的记录数
+     */
+    @Insert("insert ignore into im_message_outbox(id, message_type, destination, order_key, payload, create_time) " +
+            "values (#{o.id}, #{o.messageType}, #{o.destination}, #{o.orderKey}, #{o.payload}, #{o.createTime})")
+    int saveOutbox(@Param("o") MessageOutbox outbox);
+
+    /**
+     * 按创建时间查询早于指定时间点的发件箱记录
+     *
+     * @param createTime 时间点
+     * @param limitCount 最大条数
+     * @return 发件箱记录列表
+     */
+    @Select("select id as id, message_type as messageType, destination as destination, order_key as orderKey, payload as payload, " +
+            "create_time as createTime from im_message_outbox where create_time < #{createTime} order by create_time limit #{limitCount}")
+    List<MessageOutbox> getOutboxBefore(@Param("createTime") Date createTime, @Param("limitCount") int limitCount);
+
+    /**
+     * 删除发件箱记录
+     *
+     * @param messageId 消息ID
+     * @return 删除的记录数
+     */
+    @Delete("delete from im_message_outbox where id = #{messageId}")
+    int deleteOutbox(@Param("messageId") Long messageId);
+}
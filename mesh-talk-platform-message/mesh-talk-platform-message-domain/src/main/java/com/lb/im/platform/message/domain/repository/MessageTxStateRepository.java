@@ -0,0 +1,48 @@
+package com.lb.im.platform.message.domain.repository;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.lb.im.platform.common.model.entity.MessageTxState;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.Date;
+
+/**
+ * 消息本地事务状态数据库操作仓库
+ * 记录事务消息本地事务的最终状态，用于事务回查
+ */
+public interface MessageTxStateRepository extends BaseMapper<MessageTxState> {
+
+    /**
+     * 记录本地事务状态
+     * 同一消息重复记录时忽略，保留首次记录的状态
+     *
+     * @param state 本地事务状态
+     * @return 写入的记录数
+     */
+    @Insert("insert ignore into im_message_tx_state(id, message_type, status, create_time) " +
+            "values (#{s.id}, #{s.messageType}, #{s.status}, #{s.createTime})")
+    int saveState(@Param("s") MessageTxState state);
+
+    /**
+     * 查询本地事务状态
+     *
+     * @param messageId 消息ID
+     * @return 事务状态，未记录时为null
+     */
+    @Select("select status from im_message_tx_state where id = #{messageId} limit 1")
+    Integer getStatus(@Param("messageId") Long messageId);
+
+    /**
+     * 清理过期的本地事务状态
+     * 超过Broker回查期限的记录不会再被查询
+     *
+     * @param expireTime 过期时间点
+     * @param limitCount 单次清理的最大条数
+     * @return 删除的记录数
+     */
+    @Delete("delete from im_message_tx_state where create_time < #{expireTime} limit #{limitCount}")
+    int deleteExpired(@Param("expireTime") Date expireTime, @Param("limitCount") int limitCount);
+}
@@ -3,6 +3,8 @@ package com.lb.im.platform.message.domain.repository;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.lb.im.platform.common.model.entity.PrivateMessage;
 import com.lb.im.platform.common.model.vo.PrivateMessageVO;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
@@ -21,104 +23,340 @@ public interface PrivateMessageRepository extends BaseMapper<PrivateMessage> {
      * 检查消息是否存在
      * 用于事务消息的回查机制
      *
+     * @param table 物理表名
      * @param messageId 消息ID
      * @return 如存在返回1，否则为null
      */
-    @Select("select 1 from im_private_message where id = #{messageId} limit 1")
-    Integer checkExists(@Param("messageId") Long messageId);
+    @Select("select 1 from ${table} where id = #{messageId} limit 1")
+    Integer checkExists(@Param("table") String table, @Param("messageId") Long messageId);
+
+    /**
+     * 追加写入单条私聊消息
+     * 仅执行INSERT，不做按id的前置查询，主键重复时抛出DuplicateKeyException由调用方处理
+     *
+     * @param table 物理表名
+     * @param message 私聊消息
+     * @return 写入的记录数
+     */
+    @Insert("insert into ${table}(id, send_id, recv_id, conversation_id, content, type, status, send_time) " +
+            "values (#{m.id}, #{m.sendId}, #{m.recvId}, #{m.conversationId}, #{m.content}, #{m.type}, #{m.status}, #{m.sendTime})")
+    int appendMessage(@Param("table") String table, @Param("m") PrivateMessage message);
+
+    /**
+     * 批量写入私聊消息
+     * 多条消息合并为一条多值INSERT语句，由批量提交写入器使用
+     *
+     * @param table 物理表名
+     * @param list 私聊消息列表
+     * @return 写入的记录数
+     */
+    @Insert({"<script> " +
+            "insert into ${table}(id, send_id, recv_id, conversation_id, content, type, status, send_time) values " +
+            "<foreach collection='list' item='m' separator=','> " +
+            " (#{m.id}, #{m.sendId}, #{m.recvId}, #{m.conversationId}, #{m.content}, #{m.type}, #{m.status}, #{m.sendTime}) " +
+            "</foreach> " +
+            "</script>"})
+    int batchInsert(@Param("table") String table, @Param("list") List<PrivateMessage> list);
 
     @Select({"<script> " +
             "select id as id, send_id as sendId, recv_id as recvId, content as content, type as type, status as status, send_time as sendTime " +
-            "from im_private_message where id = #{messageId} " +
+            "from ${table} where id = #{messageId} " +
             "</script>"})
-    PrivateMessageVO getPrivateMessageById(@Param("messageId") Long messageId);
+    PrivateMessageVO getPrivateMessageById(@Param("table") String table, @Param("messageId") Long messageId);
 
     /**
      * 获取指定用户未读的私聊消息列表
      * 按指定好友ID列表过滤消息发送者
      *
+     * @param table 物理表名
      * @param userId    接收消息的用户ID
      * @param friendIds 好友ID列表，用于过滤消息发送者
      * @return 私聊消息VO列表
      */
     @Select({"<script> " +
             "select id as id, send_id as sendId, recv_id as recvId, content as content, type as type, status as status, send_time as sendTime " +
-            "from im_private_message where recv_id = #{userId} and status = 0 and send_id in   " +
+            "from ${table} where recv_id = #{userId} and status = 0 and send_id in   " +
             "<foreach collection='friendIds' item='friendId' index='index' separator=',' open='(' close=')'> " +
             " #{friendId} " +
             " </foreach> " +
             "</script>"})
-    List<PrivateMessageVO> getPrivateMessageVOList(@Param("userId") Long userId, @Param("friendIds") List<Long> friendIds);
+    List<PrivateMessageVO> getPrivateMessageVOList(@Param("table") String table, @Param("userId") Long userId, @Param("friendIds") List<Long> friendIds);
 
     /**
      * 加载消息历史记录
      * 支持增量拉取，返回指定ID之后的消息
-     * 包含用户与好友之间的双向消息
+     * 按会话ID查询用户与好友之间的双向消息，走(conversation_id, id)索引
      *
-     * @param userId     当前用户ID
-     * @param minId      最小消息ID，用于增量拉取
-     * @param minDate    最早消息日期，限制查询时间范围
-     * @param friendIds  好友ID列表
-     * @param limitCount 限制返回消息数量
+     * @param table 物理表名
+     * @param minId           最小消息ID，用于增量拉取
+     * @param minDate         最早消息日期，限制查询时间范围，已换算为minId时为空
+     * @param conversationIds 会话ID列表
+     * @param limitCount      限制返回消息数量
      * @return 消息历史记录列表
      */
     @Select({"<script> " +
             "select id as id, send_id as sendId, recv_id as recvId, content as content, type as type, status as status, send_time as sendTime " +
-            "from im_private_message where id  <![CDATA[ > ]]> #{minId} and send_time  <![CDATA[ >= ]]> #{minDate} and status  <![CDATA[ <> ]]> 2 and ( " +
-            " ( " +
-            "send_id = #{userId} and recv_id in " +
-            "<foreach collection='friendIds' item='friendId' index='index' separator=',' open='(' close=')'> " +
-            " #{friendId} " +
-            " </foreach> " +
-            " ) " +
-            " or " +
-            " (" +
-            "recv_id = #{userId} and send_id in " +
-            "<foreach collection='friendIds' item='friendId' separator=',' open='(' close=')'> " +
-            " #{friendId} " +
+            "from ${table} where conversation_id in " +
+            "<foreach collection='conversationIds' item='conversationId' separator=',' open='(' close=')'> " +
+            " #{conversationId} " +
             " </foreach> " +
-            ") " +
-            " ) order by id asc limit #{limitCount} " +
+            " and id  <![CDATA[ > ]]> #{minId} " +
+            " <if test='minDate != null'> and send_time  <![CDATA[ >= ]]> #{minDate} </if> " +
+            " and status  <![CDATA[ <> ]]> 2 " +
+            " order by id asc limit #{limitCount} " +
             "</script>"})
-    List<PrivateMessageVO> loadMessage(@Param("userId") Long userId, @Param("minId") Long minId, @Param("minDate") Date minDate, @Param("friendIds") List<Long> friendIds, @Param("limitCount") int limitCount);
+    List<PrivateMessageVO> loadMessage(@Param("table") String table, @Param("minId") Long minId, @Param("minDate") Date minDate, @Param("conversationIds") List<String> conversationIds, @Param("limitCount") int limitCount);
 
     /**
      * 批量更新私聊消息状态
-     * 用于标记消息为已读、已撤回等状态
+     * 用于标记消息为送达、已读等状态，只更新状态值小于目标状态的消息，延迟写入或乱序写入时状态不会回退
      *
+     * @param table 物理表名
      * @param status 目标消息状态
      * @param ids    待更新的消息ID列表
      * @return 成功更新的记录数
      */
     @Update({"<script> " +
-            "update im_private_message set status = #{status} where id in " +
+            "update ${table} set status = #{status} where id in " +
             " <foreach collection='ids' item='id' index='index' separator=',' open='(' close=')'>  " +
             " #{id} " +
             " </foreach> " +
+            " and status <![CDATA[ < ]]> #{status} " +
             "</script>"})
-    int batchUpdatePrivateMessageStatus(@Param("status") Integer status, @Param("ids") List<Long> ids);
+    int batchUpdatePrivateMessageStatus(@Param("table") String table, @Param("status") Integer status, @Param("ids") List<Long> ids);
 
     /**
-     * 加载指定用户与好友之间的历史消息
-     * 支持分页查询，按消息ID倒序排列
+     * 加载指定会话的历史消息
+     * 支持分页查询，按消息ID倒序排列，走(conversation_id, id)索引，无需额外排序
      *
-     * @param userId   当前用户ID
-     * @param friendId 好友ID
-     * @param stIdx    分页起始索引
-     * @param size     每页消息数量
+     * @param table 物理表名
+     * @param conversationId 会话ID
+     * @param stIdx          分页起始索引
+     * @param size           每页消息数量
      * @return 历史消息列表
      */
     @Select({"<script> " +
             "select id as id, send_id as sendId, recv_id as recvId, content as content, type as type, status as status, send_time as sendTime " +
-            "from im_private_message where " +
-            " ((send_id = #{userId} and recv_id = #{friendId}) or (send_id = #{friendId} and recv_id = #{userId})) " +
+            "from ${table} where conversation_id = #{conversationId} " +
             "and status  <![CDATA[ <> ]]> 2 order by id desc limit #{stIdx}, #{size} " +
             "</script>"})
-    List<PrivateMessageVO> loadMessageByUserIdAndFriendId(@Param("userId") Long userId, @Param("friendId") Long friendId, @Param("stIdx") long stIdx, @Param("size") long size);
+    List<PrivateMessageVO> loadMessageByConversationId(@Param("table") String table, @Param("conversationId") String conversationId, @Param("stIdx") long stIdx, @Param("size") long size);
 
-    @Update("update im_private_message set status = #{status} where send_id = #{sendId} and recv_id = #{recvId} and status = 1 ")
-    int updateMessageStatus(@Param("status") Integer status, @Param("sendId") Long sendId, @Param("recvId") Long recvId);
+    /**
+     * 按游标加载指定会话的历史消息
+     * 查询id小于游标的消息，按消息ID倒序排列，走(conversation_id, id)索引范围扫描，翻页深度不影响查询代价
+     *
+     * @param table 物理表名
+     * @param conversationId 会话ID
+     * @param beforeId       游标，为空时从最新消息开始
+     * @param size           查询条数
+     * @return 历史消息列表
+     */
+    @Select({"<script> " +
+            "select id as id, send_id as sendId, recv_id as recvId, content as content, type as type, status as status, send_time as sendTime " +
+            "from ${table} where conversation_id = #{conversationId} " +
+            "<if test='beforeId != null'> and id <![CDATA[ < ]]> #{beforeId} </if> " +
+            "and status  <![CDATA[ <> ]]> 2 order by id desc limit #{size} " +
+            "</script>"})
+    List<PrivateMessageVO> loadMessageByConversationIdBefore(@Param("table") String table, @Param("conversationId") String conversationId, @Param("beforeId") Long beforeId, @Param("size") long size);
+
+    /**
+     * 统计指定会话未撤回的消息数，用于偏移分页从热表延续到归档表时计算归档表内的偏移
+     *
+     * @param table          物理表名
+     * @param conversationId 会话ID
+     * @return 消息数
+     */
+    @Select("select count(1) from ${table} where conversation_id = #{conversationId} and status <> 2")
+    long countByConversationId(@Param("table") String table, @Param("conversationId") String conversationId);
+
+    /**
+     * 获取指定会话的最大消息ID，走(conversation_id, id)索引，只读取索引的一端
+     *
+     * @param table          物理表名
+     * @param conversationId 会话ID
+     * @param beforeId       消息ID上界（不含），为空时不按ID限制
+     * @param time           发送时间上界（含），beforeId为空时生效，都为空时不限制
+     * @return 最大消息ID，会话没有消息时为null
+     */
+    @Select({"<script> " +
+            "select id from ${table} where conversation_id = #{conversationId} " +
+            "<if test='beforeId != null'> and id <![CDATA[ < ]]> #{beforeId} </if> " +
+            "<if test='beforeId == null and time != null'> and send_time <![CDATA[ <= ]]> #{time} </if> " +
+            "order by id desc limit 1" +
+            "</script>"})
+    Long getMaxMessageIdByConversationId(@Param("table") String table, @Param("conversationId") String conversationId,
+                                         @Param("beforeId") Long beforeId, @Param("time") Date time);
+
+    /**
+     * 按消息ID列表加载私聊消息，已撤回的消息不返回
+     *
+     * @param table 物理表名
+     * @param ids   消息ID列表
+     * @return 私聊消息列表
+     */
+    @Select({"<script> " +
+            "select id as id, send_id as sendId, recv_id as recvId, content as content, type as type, status as status, send_time as sendTime " +
+            "from ${table} where id in " +
+            "<foreach collection='ids' item='id' separator=',' open='(' close=')'> " +
+            " #{id} " +
+            " </foreach> " +
+            " and status  <![CDATA[ <> ]]> 2 " +
+            "</script>"})
+    List<PrivateMessageVO> getMessagesByIds(@Param("table") String table, @Param("ids") List<Long> ids);
+
+    @Update("update ${table} set status = #{status} where send_id = #{sendId} and recv_id = #{recvId} and status = 1 ")
+    int updateMessageStatus(@Param("table") String table, @Param("status") Integer status, @Param("sendId") Long sendId, @Param("recvId") Long recvId);
+
+    @Update("update ${table} set status = #{status} where id = #{messageId}")
+    int updateMessageStatusById(@Param("table") String table, @Param("status") Integer status, @Param("messageId") Long messageId);
+
+    /**
+     * 获取指定用户未读的私聊消息实体列表
+     *
+     * @param table     物理表名
+     * @param userId    接收消息的用户ID
+     * @param friendIds 好友ID列表，用于过滤消息发送者
+     * @return 私聊消息实体列表
+     */
+    @Select({"<script> " +
+            "select id as id, send_id as sendId, recv_id as recvId, conversation_id as conversationId, content as content, " +
+            "type as type, status as status, send_time as sendTime " +
+            "from ${table} where recv_id = #{userId} and status = 0 and send_id in " +
+            "<foreach collection='friendIds' item='friendId' separator=',' open='(' close=')'> " +
+            " #{friendId} " +
+            " </foreach> " +
+            "</script>"})
+    List<PrivateMessage> getUnreadPrivateMessageList(@Param("table") String table, @Param("userId") Long userId, @Param("friendIds") List<Long> friendIds);
 
-    @Update("update im_private_message set status = #{status} where id = #{messageId}")
-    int updateMessageStatusById(@Param("status") Integer status, @Param("messageId") Long messageId);
-}
\ No newline at end of file
+    /**
+     * 按主键顺序读取一批待迁移的私聊消息
+     *
+     * @param table   源表名
+     * @param afterId 上一批的最大消息ID
+     * @param limit   批次大小
+     * @return 私聊消息实体列表，按ID升序
+     */
+    @Select("select id as id, send_id as sendId, recv_id as recvId, conversation_id as conversationId, content as content, " +
+            "type as type, status as status, send_time as sendTime " +
+            "from ${table} where id > #{afterId} order by id asc limit #{limit}")
+    List<PrivateMessage> getMigrateBatch(@Param("table") String table, @Param("afterId") Long afterId, @Param("limit") int limit);
+
+    /**
+     * 按主键顺序读取一批待归档的私聊消息
+     * 开启雪花id时间换算时按id上界过滤，为主键范围扫描；否则按发送时间过滤
+     *
+     * @param table      热表名
+     * @param beforeId   消息ID上界（不含），为空时不按ID过滤
+     * @param beforeTime 发送时间上界（不含），为空时不按时间过滤
+     * @param limit      批次大小
+     * @return 私聊消息实体列表，按ID升序
+     */
+    @Select({"<script> " +
+            "select id as id, send_id as sendId, recv_id as recvId, conversation_id as conversationId, content as content, " +
+            "type as type, status as status, send_time as sendTime " +
+            "from ${table} where 1 = 1 " +
+            "<if test='beforeId != null'> and id <![CDATA[ < ]]> #{beforeId} </if> " +
+            "<if test='beforeTime != null'> and send_time <![CDATA[ < ]]> #{beforeTime} </if> " +
+            "order by id asc limit #{limit} " +
+            "</script>"})
+    List<PrivateMessage> getArchiveBatch(@Param("table") String table, @Param("beforeId") Long beforeId, @Param("beforeTime") Date beforeTime, @Param("limit") int limit);
+
+    /**
+     * 批量写入迁移的私聊消息，已存在的消息忽略，迁移可重复执行
+     *
+     * @param table 目标表名
+     * @param list  私聊消息列表
+     * @return 写入的记录数
+     */
+    @Insert({"<script> " +
+            "insert ignore into ${table}(id, send_id, recv_id, conversation_id, content, type, status, send_time) values " +
+            "<foreach collection='list' item='m' separator=','> " +
+            " (#{m.id}, #{m.sendId}, #{m.recvId}, #{m.conversationId}, #{m.content}, #{m.type}, #{m.status}, #{m.sendTime}) " +
+            "</foreach> " +
+            "</script>"})
+    int insertIgnoreBatch(@Param("table") String table, @Param("list") List<PrivateMessage> list);
+
+    /**
+     * 将源表中的消息状态同步到已迁移的私聊消息
+     * 迁移读取源表之后、写入目标表之前，源表中的消息可能已被更新（撤回、已读），写入后按源表的状态补齐
+     *
+     * @param table       目标表名
+     * @param sourceTable 源表名
+     * @param ids         消息ID列表
+     * @return 更新的记录数
+     */
+    @Update({"<script> " +
+            "update ${table} t inner join ${sourceTable} s on t.id = s.id set t.status = s.status where t.id in " +
+            "<foreach collection='ids' item='id' separator=',' open='(' close=')'> " +
+            " #{id} " +
+            " </foreach> " +
+            " and t.status <![CDATA[ <> ]]> s.status " +
+            "</script>"})
+    int syncStatus(@Param("table") String table, @Param("sourceTable") String sourceTable, @Param("ids") List<Long> ids);
+
+    /**
+     * 按消息ID读取私聊消息的状态
+     * 源表与目标表不在同一数据源时无法联表同步状态，先从源表读出状态，再按状态更新目标表
+     *
+     * @param table 源表名
+     * @param ids   消息ID列表
+     * @return 私聊消息实体列表，只包含id和status
+     */
+    @Select({"<script> " +
+            "select id as id, status as status from ${table} where id in " +
+            "<foreach collection='ids' item='id' separator=',' open='(' close=')'> " +
+            " #{id} " +
+            " </foreach> " +
+            "</script>"})
+    List<PrivateMessage> getStatusByIds(@Param("table") String table, @Param("ids") List<Long> ids);
+
+    /**
+     * 按源表读出的状态更新已迁移的私聊消息
+     *
+     * @param table  目标表名
+     * @param status 源表中的消息状态
+     * @param ids    消息ID列表
+     * @return 更新的记录数
+     */
+    @Update({"<script> " +
+            "update ${table} set status = #{status} where id in " +
+            "<foreach collection='ids' item='id' separator=',' open='(' close=')'> " +
+            " #{id} " +
+            " </foreach> " +
+            " and status <![CDATA[ <> ]]> #{status} " +
+            "</script>"})
+    int updateStatusByIds(@Param("table") String table, @Param("status") Integer status, @Param("ids") List<Long> ids);
+
+    /**
+     * 删除已迁移到其他分表或已归档的私聊消息
+     *
+     * @param table 源表名
+     * @param ids   消息ID列表
+     * @return 删除的记录数
+     */
+    @Delete({"<script> " +
+            "delete from ${table} where id in " +
+            "<foreach collection='ids' item='id' separator=',' open='(' close=')'> " +
+            " #{id} " +
+            " </foreach> " +
+            "</script>"})
+    int deleteByIds(@Param("table") String table, @Param("ids") List<Long> ids);
+
+    /**
+     * 删除已归档的私聊消息，只删除归档表中状态一致的记录
+     * 写入归档表之后热表中的消息被更新（撤回、已读）时状态不一致，保留在热表由下一批重新归档
+     *
+     * @param table        热表名
+     * @param archiveTable 归档表名
+     * @param ids          消息ID列表
+     * @return 删除的记录数
+     */
+    @Delete({"<script> " +
+            "delete t from ${table} t inner join ${archiveTable} a on t.id = a.id and t.status = a.status where t.id in " +
+            "<foreach collection='ids' item='id' separator=',' open='(' close=')'> " +
+            " #{id} " +
+            " </foreach> " +
+            "</script>"})
+    int deleteArchived(@Param("table") String table, @Param("archiveTable") String archiveTable, @Param("ids") List<Long> ids);
+}
@@ -0,0 +1,63 @@
+package com.lb.im.platform.message.domain.repository;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.lb.im.platform.common.model.entity.PrivateReadCursor;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+/**
+ * 私聊已读位置数据库操作仓库
+ */
+public interface PrivateReadCursorRepository extends BaseMapper<PrivateReadCursor> {
+
+    /**
+     * 批量保存已读位置
+     * 已存在时取新旧已读位置中的较大值，乱序或重复写入不会使已读位置回退
+     *
+     * @param list 已读位置列表
+     * @return 影响的记录数
+     */
+    @Insert({"<script> " +
+            "insert into im_private_read_cursor(user_id, friend_id, max_readed_id, update_time) values " +
+            "<foreach collection='list' item='c' separator=','> " +
+            " (#{c.userId}, #{c.friendId}, #{c.maxReadedId}, #{c.updateTime}) " +
+            "</foreach> " +
+            "on duplicate key update max_readed_id = greatest(max_readed_id, values(max_readed_id)), update_time = values(update_time) " +
+            "</script>"})
+    int batchSaveMax(@Param("list") List<PrivateReadCursor> list);
+
+    /**
+     * 查询读者对多个好友的已读位置
+     *
+     * @param userId    读者id
+     * @param friendIds 好友id列表
+     * @return 已读位置列表，没有记录的好友不返回
+     */
+    @Select({"<script> " +
+            "select user_id as userId, friend_id as friendId, max_readed_id as maxReadedId " +
+            "from im_private_read_cursor where user_id = #{userId} and friend_id in " +
+            "<foreach collection='friendIds' item='friendId' separator=',' open='(' close=')'> " +
+            " #{friendId} " +
+            " </foreach> " +
+            "</script>"})
+    List<PrivateReadCursor> getReadCursorsOfReader(@Param("userId") Long userId, @Param("friendIds") List<Long> friendIds);
+
+    /**
+     * 查询多个读者对同一好友的已读位置，即好友发出的消息被各读者读到的位置
+     *
+     * @param friendId 好友id
+     * @param userIds  读者id列表
+     * @return 已读位置列表，没有记录的读者不返回
+     */
+    @Select({"<script> " +
+            "select user_id as userId, friend_id as friendId, max_readed_id as maxReadedId " +
+            "from im_private_read_cursor where friend_id = #{friendId} and user_id in " +
+            "<foreach collection='userIds' item='userId' separator=',' open='(' close=')'> " +
+            " #{userId} " +
+            " </foreach> " +
+            "</script>"})
+    List<PrivateReadCursor> getReadCursorsOfFriend(@Param("friendId") Long friendId, @Param("userIds") List<Long> userIds);
+}
@@ -2,11 +2,14 @@ package com.lb.im.platform.message.domain.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.lb.im.platform.common.model.entity.GroupMessage;
+import com.lb.im.platform.common.model.entity.GroupMessageMention;
 import com.lb.im.platform.common.model.vo.GroupMessageVO;
 import com.lb.im.platform.message.domain.event.IMGroupMessageTxEvent;
+import com.lb.im.platform.message.domain.sharding.MessageShardTable;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 群聊消息领域服务接口
@@ -14,6 +17,11 @@ import java.util.List;
  * 继承MyBatis-Plus的IService接口，提供基础的CRUD功能
  */
 public interface GroupMessageDomainService extends IService<GroupMessage> {
+    /**
+     * 生成群聊消息id，id中嵌入群组所在的分片槽位
+     */
+    Long nextMessageId(Long groupId);
+
     /**
      * 保存群聊消息
      * 将群聊消息事务事件转换为实体并持久化到数据库
@@ -23,6 +31,32 @@ public interface GroupMessageDomainService extends IService<GroupMessage> {
      */
     boolean saveIMGroupMessageTxEvent(IMGroupMessageTxEvent imGroupMessageTxEvent);
 
+    /**
+     * 将群聊消息事务事件转换为待持久化的消息实体
+     *
+     * @param imGroupMessageTxEvent 群聊消息事务事件
+     * @return 群聊消息实体，状态为未发送
+     */
+    GroupMessage buildGroupMessage(IMGroupMessageTxEvent imGroupMessageTxEvent);
+
+    /**
+     * 保存单条群聊消息实体
+     * 只追加写入，主键重复（MQ重复投递或事务回查导致的重复写入）视为写入成功
+     *
+     * @param groupMessage 群聊消息实体
+     * @return 保存操作是否成功
+     */
+    boolean saveGroupMessage(GroupMessage groupMessage);
+
+    /**
+     * 批量保存群聊消息实体
+     * 以一条多值INSERT语句写入，所有消息共享同一次提交
+     *
+     * @param groupMessageList 群聊消息实体列表
+     * @return 全部写入成功返回true
+     */
+    boolean saveBatchGroupMessage(List<GroupMessage> groupMessageList);
+
     /**
      * 检测某条消息是否存在
      * 用于分布式事务处理中的事务检查，确认消息是否已成功保存
@@ -47,10 +81,47 @@ public interface GroupMessageDomainService extends IService<GroupMessage> {
      */
     List<GroupMessageVO> getHistoryMessage(Long groupId, Date sendTime, Integer status, long stIdx, long size);
 
+    /**
+     * 按游标拉取在某个群的消息，查询id小于游标的消息
+     */
+    List<GroupMessageVO> getHistoryMessageBefore(Long groupId, Date sendTime, Integer status, Long beforeId, long size);
+
     /**
      * 获取最大消息id
      */
     Long getMaxMessageId(Long groupId);
-}
 
+    /**
+     * 批量获取多个群组的最大消息id，每张分表只查询一次
+     *
+     * @return key为群组id，value为最大消息id，没有消息的群组不包含在结果中
+     */
+    Map<Long, Long> getMaxMessageIds(List<Long> groupIds);
+
+    /**
+     * 按消息id倒序查询@用户的索引记录，groupId为空时查询所有群组
+     */
+    List<GroupMessageMention> getMentions(Long userId, Long groupId, Long beforeId, long size);
 
+    /**
+     * 加载@提及索引对应的群聊消息，排除指定状态的消息，按消息id倒序排列
+     */
+    List<GroupMessageVO> getMentionMessages(List<GroupMessageMention> mentions, Integer status);
+
+    /**
+     * 按消息ID加载多个群组的群聊消息，排除指定状态的消息，按消息id升序排列
+     *
+     * @param groupMessageIds key为群组id，value为该群组的消息id列表
+     */
+    List<GroupMessageVO> getGroupMessagesByIds(Map<Long, List<Long>> groupMessageIds, Integer status);
+
+    /**
+     * 迁移一批群聊消息到当前分表，返回本批的最大消息ID，源表已迁移完成时返回null
+     */
+    Long migrateBatch(String sourceTable, Long afterId, int batchSize);
+
+    /**
+     * 将一批超过保留时长的群聊消息从热表移入归档表，返回本批归档的消息数
+     */
+    int archiveBatch(MessageShardTable table, Date cutoff, int batchSize);
+}
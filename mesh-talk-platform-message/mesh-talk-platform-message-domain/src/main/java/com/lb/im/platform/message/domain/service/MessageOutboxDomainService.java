@@ -0,0 +1,38 @@
+package com.lb.im.platform.message.domain.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.lb.im.platform.common.model.entity.MessageOutbox;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 顺序消息发件箱领域服务接口
+ * 记录已进入本地事务但尚未确认发送成功的顺序消息，供补发任务兜底
+ */
+public interface MessageOutboxDomainService extends IService<MessageOutbox> {
+
+    /**
+     * 写入发件箱记录
+     *
+     * @param outbox 发件箱记录
+     * @return 是否写入成功
+     */
+    boolean saveOutbox(MessageOutbox outbox);
+
+    /**
+     * 查询早于指定时间点的发件箱记录
+     *
+     * @param createTime 时间点
+     * @param limitCount 最大条数
+     * @return 发件箱记录列表
+     */
+    List<MessageOutbox> getOutboxBefore(Date createTime, int limitCount);
+
+    /**
+     * 删除发件箱记录
+     *
+     * @param messageId 消息ID
+     */
+    void deleteOutbox(Long messageId);
+}
@@ -0,0 +1,40 @@
+package com.lb.im.platform.message.domain.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.lb.im.platform.common.model.entity.MessageTxState;
+
+import java.util.Date;
+
+/**
+ * 消息本地事务状态领域服务接口
+ * 持久化事务消息本地事务的最终状态，为事务回查提供确定的答复
+ */
+public interface MessageTxStateDomainService extends IService<MessageTxState> {
+
+    /**
+     * 记录本地事务状态
+     *
+     * @param messageId   消息ID
+     * @param messageType 消息类型
+     * @param status      事务状态
+     * @return 是否记录成功
+     */
+    boolean saveState(Long messageId, String messageType, Integer status);
+
+    /**
+     * 查询本地事务状态
+     *
+     * @param messageId 消息ID
+     * @return 事务状态，未记录时为null
+     */
+    Integer getStatus(Long messageId);
+
+    /**
+     * 清理过期的本地事务状态
+     *
+     * @param expireTime 过期时间点
+     * @param limitCount 单次清理的最大条数
+     * @return 删除的记录数
+     */
+    int deleteExpired(Date expireTime, int limitCount);
+}
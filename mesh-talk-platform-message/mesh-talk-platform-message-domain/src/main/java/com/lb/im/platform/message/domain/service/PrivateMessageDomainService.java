@@ -4,9 +4,11 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.lb.im.platform.common.model.entity.PrivateMessage;
 import com.lb.im.platform.common.model.vo.PrivateMessageVO;
 import com.lb.im.platform.message.domain.event.IMPrivateMessageTxEvent;
+import com.lb.im.platform.message.domain.sharding.MessageShardTable;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 私聊消息领域服务接口
@@ -15,6 +17,15 @@ import java.util.List;
  * 继承MyBatis-Plus的IService接口，提供基础的CRUD功能
  */
 public interface PrivateMessageDomainService extends IService<PrivateMessage> {
+    /**
+     * 生成私聊消息id，id中嵌入会话所在的分片槽位
+     *
+     * @param sendId 发送者id
+     * @param recvId 接收者id
+     * @return 消息id
+     */
+    Long nextMessageId(Long sendId, Long recvId);
+
     /**
      * 保存私聊消息事务事件
      * 将事务事件中的数据转换为实体对象并持久化到数据库
@@ -24,6 +35,32 @@ public interface PrivateMessageDomainService extends IService<PrivateMessage> {
      */
     boolean saveIMPrivateMessageSaveEvent(IMPrivateMessageTxEvent privateMessageSaveEvent);
 
+    /**
+     * 将私聊消息事务事件转换为待持久化的消息实体
+     *
+     * @param privateMessageTxEvent 私聊消息事务事件
+     * @return 私聊消息实体，状态为未发送
+     */
+    PrivateMessage buildPrivateMessage(IMPrivateMessageTxEvent privateMessageTxEvent);
+
+    /**
+     * 保存单条私聊消息实体
+     * 只追加写入，主键重复（MQ重复投递或事务回查导致的重复写入）视为写入成功
+     *
+     * @param privateMessage 私聊消息实体
+     * @return 保存操作是否成功
+     */
+    boolean savePrivateMessage(PrivateMessage privateMessage);
+
+    /**
+     * 批量保存私聊消息实体
+     * 以一条多值INSERT语句写入，所有消息共享同一次提交
+     *
+     * @param privateMessageList 私聊消息实体列表
+     * @return 全部写入成功返回true
+     */
+    boolean saveBatchPrivateMessage(List<PrivateMessage> privateMessageList);
+
     /**
      * 检查指定ID的消息是否存在
      * 用于分布式事务的检查阶段，确认消息是否已成功持久化
@@ -89,6 +126,18 @@ public interface PrivateMessageDomainService extends IService<PrivateMessage> {
      */
     List<PrivateMessageVO> loadMessageByUserIdAndFriendId(Long userId, Long friendId, long stIdx, long size);
 
+    /**
+     * 按游标加载指定用户与好友之间的历史消息
+     * 查询id小于游标的消息，按消息ID倒序排列
+     *
+     * @param userId   当前用户ID
+     * @param friendId 好友ID
+     * @param beforeId 游标，为空时从最新消息开始
+     * @param size     查询条数
+     * @return 历史消息VO对象列表，按消息ID倒序排序
+     */
+    List<PrivateMessageVO> loadMessageByUserIdAndFriendIdBefore(Long userId, Long friendId, Long beforeId, long size);
+
     /**
      * 将消息更新为已读状态
      * 批量更新指定发送者和接收者之间的所有已发送消息状态
@@ -118,4 +167,43 @@ public interface PrivateMessageDomainService extends IService<PrivateMessage> {
      * @return 私聊消息VO对象，包含消息的完整信息
      */
     PrivateMessageVO getPrivateMessageById(Long messageId);
+
+    /**
+     * 迁移一批私聊消息到当前分表
+     *
+     * @param sourceTable 源表名
+     * @param afterId     上一批的最大消息ID，首批传0
+     * @param batchSize   批次大小
+     * @return 本批的最大消息ID，源表已迁移完成时返回null
+     */
+    Long migrateBatch(String sourceTable, Long afterId, int batchSize);
+
+    /**
+     * 将一批超过保留时长的私聊消息从热表移入归档表
+     *
+     * @param table     热表
+     * @param cutoff    归档时间点，早于该时间发送的消息被归档
+     * @param batchSize 批次大小
+     * @return 本批归档的消息数，小于批次大小表示该热表已归档完成
+     */
+    int archiveBatch(MessageShardTable table, Date cutoff, int batchSize);
+
+    /**
+     * 获取用户与好友之间会话中不晚于指定时刻发送的最大消息ID
+     *
+     * @param userId   用户ID
+     * @param friendId 好友ID
+     * @param time     时刻，开启雪花id时间换算时按消息ID限制，否则按发送时间限制；为空时取会话的最大消息ID
+     * @return 最大消息ID，会话没有消息时为null
+     */
+    Long getMaxMessageId(Long userId, Long friendId, Date time);
+
+    /**
+     * 按消息ID加载用户与多个好友之间的私聊消息
+     *
+     * @param userId           用户ID
+     * @param friendMessageIds key为好友ID，value为与该好友会话中的消息ID列表
+     * @return 私聊消息列表，按消息ID升序排列，已撤回的消息不返回
+     */
+    List<PrivateMessageVO> getPrivateMessagesByIds(Long userId, Map<Long, List<Long>> friendMessageIds);
 }
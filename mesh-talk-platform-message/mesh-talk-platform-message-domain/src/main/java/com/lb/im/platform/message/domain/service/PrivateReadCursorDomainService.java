@@ -0,0 +1,39 @@
+package com.lb.im.platform.message.domain.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.lb.im.platform.common.model.entity.PrivateReadCursor;
+
+import java.util.List;
+
+/**
+ * 私聊已读位置领域服务接口
+ * 持久化每个(读者, 好友)的已读位置，私聊消息的已读状态由已读位置推导，不再逐行更新消息状态
+ */
+public interface PrivateReadCursorDomainService extends IService<PrivateReadCursor> {
+
+    /**
+     * 批量保存已读位置，已读位置只前进不回退
+     *
+     * @param list 已读位置列表
+     * @return 影响的记录数
+     */
+    int batchSaveMax(List<PrivateReadCursor> list);
+
+    /**
+     * 查询读者对多个好友的已读位置
+     *
+     * @param userId    读者id
+     * @param friendIds 好友id列表
+     * @return 已读位置列表
+     */
+    List<PrivateReadCursor> getReadCursorsOfReader(Long userId, List<Long> friendIds);
+
+    /**
+     * 查询多个读者对同一好友的已读位置
+     *
+     * @param friendId 好友id
+     * @param userIds  读者id列表
+     * @return 已读位置列表
+     */
+    List<PrivateReadCursor> getReadCursorsOfFriend(Long friendId, List<Long> userIds);
+}
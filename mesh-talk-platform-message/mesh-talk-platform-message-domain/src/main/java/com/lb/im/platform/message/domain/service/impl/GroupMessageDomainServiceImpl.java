@@ -5,25 +5,62 @@ import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.lb.im.platform.common.exception.IMException;
 import com.lb.im.platform.common.model.entity.GroupMessage;
+import com.lb.im.platform.common.model.entity.GroupMessageMention;
 import com.lb.im.platform.common.model.enums.HttpCode;
 import com.lb.im.platform.common.model.enums.MessageStatus;
 import com.lb.im.platform.common.model.vo.GroupMessageVO;
 import com.lb.im.platform.common.utils.BeanUtils;
+import com.lb.im.platform.common.utils.SnowFlakeIdUtils;
 import com.lb.im.platform.message.domain.event.IMGroupMessageTxEvent;
+import com.lb.im.platform.message.domain.repository.GroupMessageMentionRepository;
 import com.lb.im.platform.message.domain.repository.GroupMessageRepository;
 import com.lb.im.platform.message.domain.service.GroupMessageDomainService;
+import com.lb.im.platform.message.domain.sharding.MessageDataSourceContext;
+import com.lb.im.platform.message.domain.sharding.MessageShardTable;
+import com.lb.im.platform.message.domain.sharding.MessageShardingRouter;
+import com.lb.im.platform.message.domain.sharding.ShardingResultMerger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * 群聊消息领域服务实现类
  * 实现群聊消息相关的核心业务逻辑，处理消息的存储和查询操作
  * 使用MyBatis-Plus的ServiceImpl作为基类，提供基础的CRUD功能
+ * 所有分表访问都通过MessageDataSourceContext先路由到分表所在的数据源，@提及索引与群组的消息位于同一数据源
  */
 @Service
 public class GroupMessageDomainServiceImpl extends ServiceImpl<GroupMessageRepository, GroupMessage> implements GroupMessageDomainService {
+    private final Logger logger = LoggerFactory.getLogger(GroupMessageDomainServiceImpl.class);
+
+    @Autowired
+    private MessageShardingRouter messageShardingRouter;
+
+    @Autowired
+    private GroupMessageMentionRepository groupMessageMentionRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Override
+    public Long nextMessageId(Long groupId) {
+        return messageShardingRouter.nextGroupMessageId(groupId);
+    }
 
     /**
      * 保存群聊消息事务事件
@@ -35,6 +72,19 @@ public class GroupMessageDomainServiceImpl extends ServiceImpl<GroupMessageRepos
      */
     @Override
     public boolean saveIMGroupMessageTxEvent(IMGroupMessageTxEvent imGroupMessageTxEvent) {
+        // 保存或更新消息实体
+        return this.saveGroupMessage(this.buildGroupMessage(imGroupMessageTxEvent));
+    }
+
+    /**
+     * 将群聊消息事务事件转换为消息实体
+     *
+     * @param imGroupMessageTxEvent 群聊消息事务事件
+     * @return 群聊消息实体
+     * @throws IMException 参数为空或转换失败时抛出异常
+     */
+    @Override
+    public GroupMessage buildGroupMessage(IMGroupMessageTxEvent imGroupMessageTxEvent) {
         // 参数校验
         if (imGroupMessageTxEvent == null || imGroupMessageTxEvent.getGroupMessageDTO() == null) {
             throw new IMException(HttpCode.PARAMS_ERROR);
@@ -60,9 +110,96 @@ public class GroupMessageDomainServiceImpl extends ServiceImpl<GroupMessageRepos
         if (CollectionUtil.isNotEmpty(imGroupMessageTxEvent.getGroupMessageDTO().getAtUserIds())) {
             groupMessage.setAtUserIds(StrUtil.join(",", imGroupMessageTxEvent.getGroupMessageDTO().getAtUserIds()));
         }
+        return groupMessage;
+    }
 
-        // 保存或更新消息实体
-        return this.saveOrUpdate(groupMessage);
+    /**
+     * 保存单条群聊消息实体
+     * 消息id由雪花算法生成，必然是新数据，因此直接INSERT，省去saveOrUpdate按id的前置SELECT
+     * 主键重复说明该消息已写入（MQ重复投递或事务回查），按写入成功处理，保证幂等
+     * 消息与@提及索引在同一事务中写入
+     *
+     * @param groupMessage 群聊消息实体
+     * @return 保存操作是否成功
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean saveGroupMessage(GroupMessage groupMessage) {
+        MessageShardTable table = messageShardingRouter.getGroupTable(groupMessage.getGroupId());
+        try {
+            if (MessageDataSourceContext.call(table, (t) -> baseMapper.appendMessage(t, groupMessage)) <= 0) {
+                return false;
+            }
+        } catch (DuplicateKeyException e) {
+            logger.info("saveGroupMessage|群聊消息已存在，按写入成功处理|{}", groupMessage.getId());
+            return true;
+        }
+        this.saveMentions(table, Collections.singletonList(groupMessage));
+        return true;
+    }
+
+    /**
+     * 批量保存群聊消息实体
+     * 按群组所在的分表分组，每张分表一条多值INSERT写入；
+     * 同一数据源的消息和@提及索引在该数据源的一个本地事务中提交，不同数据源各自提交，不会组成跨库事务
+     *
+     * @param groupMessageList 群聊消息实体列表
+     * @return 写入条数与列表大小一致时返回true
+     */
+    @Override
+    public boolean saveBatchGroupMessage(List<GroupMessage> groupMessageList) {
+        if (CollectionUtil.isEmpty(groupMessageList)) {
+            return true;
+        }
+        Map<Integer, Map<MessageShardTable, List<GroupMessage>>> dataSourceMessages = new HashMap<>();
+        for (GroupMessage groupMessage : groupMessageList) {
+            MessageShardTable table = messageShardingRouter.getGroupTable(groupMessage.getGroupId());
+            dataSourceMessages.computeIfAbsent(table.getDataSource(), (key) -> new HashMap<>())
+                    .computeIfAbsent(table, (key) -> new ArrayList<>()).add(groupMessage);
+        }
+        int count = 0;
+        for (Map<MessageShardTable, List<GroupMessage>> tableMessages : dataSourceMessages.values()) {
+            Integer inserted = transactionTemplate.execute((status) -> {
+                int rows = 0;
+                for (Map.Entry<MessageShardTable, List<GroupMessage>> entry : tableMessages.entrySet()) {
+                    rows += MessageDataSourceContext.call(entry.getKey(), (t) -> baseMapper.batchInsert(t, entry.getValue()));
+                    this.saveMentions(entry.getKey(), entry.getValue());
+                }
+                return rows;
+            });
+            count += inserted == null ? 0 : inserted;
+        }
+        return count == groupMessageList.size();
+    }
+
+    /**
+     * 写入群聊消息的@提及索引
+     * 被@的用户id在入库时解析一次，同一消息重复@同一用户只写入一条，发送者@自己不写入；
+     * 索引写入消息所在分表的数据源，与消息在同一本地事务中提交
+     *
+     * @param table            消息所在的分表
+     * @param groupMessageList 群聊消息实体列表
+     */
+    private void saveMentions(MessageShardTable table, List<GroupMessage> groupMessageList) {
+        List<GroupMessageMention> mentions = new ArrayList<>();
+        for (GroupMessage groupMessage : groupMessageList) {
+            if (StrUtil.isEmpty(groupMessage.getAtUserIds())) {
+                continue;
+            }
+            Set<Long> userIds = new LinkedHashSet<>();
+            for (String userId : StrUtil.split(groupMessage.getAtUserIds(), ",")) {
+                if (StrUtil.isNotBlank(userId)) {
+                    userIds.add(Long.parseLong(userId.trim()));
+                }
+            }
+            userIds.remove(groupMessage.getSendId());
+            for (Long userId : userIds) {
+                mentions.add(new GroupMessageMention(userId, groupMessage.getGroupId(), groupMessage.getId()));
+            }
+        }
+        if (!mentions.isEmpty()) {
+            MessageDataSourceContext.call(table, (t) -> groupMessageMentionRepository.insertIgnoreBatch(mentions));
+        }
     }
 
     /**
@@ -74,26 +211,352 @@ public class GroupMessageDomainServiceImpl extends ServiceImpl<GroupMessageRepos
      */
     @Override
     public boolean checkExists(Long messageId) {
-        return baseMapper.checkExists(messageId) != null;
+        for (MessageShardTable table : messageShardingRouter.getGroupTablesOfId(messageId)) {
+            if (MessageDataSourceContext.call(table, (t) -> baseMapper.checkExists(t, messageId)) != null) {
+                return true;
+            }
+        }
+        for (MessageShardTable archiveTable : messageShardingRouter.getGroupArchiveTablesOfId(messageId)) {
+            if (MessageDataSourceContext.call(archiveTable, (t) -> baseMapper.checkExists(t, messageId)) != null) {
+                return true;
+            }
+        }
+        return false;
     }
 
+    /**
+     * 拉取未读消息
+     * 开启雪花id时间换算时，入群时间条件换算为id下界并与已读位置合并，查询走(group_id, id)索引范围扫描；
+     * 迁移期间同时查询迁移前的表，合并去重后按消息id升序截取limitCount条
+     */
     @Override
     public List<GroupMessageVO> getUnreadGroupMessageList(Long groupId, Date sendTime, Long sendId, Integer status, Long maxReadId, Integer limitCount) {
-        return baseMapper.getUnreadGroupMessageList(groupId, sendTime, sendId, status, maxReadId, limitCount);
+        if (sendTime != null && SnowFlakeIdUtils.isEnabled()) {
+            long minId = SnowFlakeIdUtils.getIdLowerBound(sendTime, false);
+            long readId = maxReadId == null ? 0L : maxReadId;
+            sendTime = null;
+            maxReadId = Math.max(readId, minId);
+        }
+        Date querySendTime = sendTime;
+        Long queryMaxReadId = maxReadId;
+        List<MessageShardTable> tables = messageShardingRouter.getGroupReadTables(groupId);
+        if (tables.size() == 1) {
+            return MessageDataSourceContext.call(tables.get(0),
+                    (t) -> baseMapper.getUnreadGroupMessageList(t, groupId, querySendTime, sendId, status, queryMaxReadId, limitCount));
+        }
+        List<GroupMessageVO> groupMessageList = new ArrayList<>();
+        for (MessageShardTable table : tables) {
+            groupMessageList.addAll(MessageDataSourceContext.call(table,
+                    (t) -> baseMapper.getUnreadGroupMessageList(t, groupId, querySendTime, sendId, status, queryMaxReadId, limitCount)));
+        }
+        return ShardingResultMerger.mergeAsc(groupMessageList, GroupMessageVO::getId, limitCount);
     }
 
+    /**
+     * 拉取全站消息
+     * 群组id按所在分表分组后逐表查询，合并去重后按消息id升序截取limitCount条；
+     * 开启雪花id时间换算时，最早时间条件换算为id下界，查询为主键范围扫描
+     */
     @Override
     public List<GroupMessageVO> loadGroupMessageList(Long minId, Date minDate, List<Long> ids, Integer status, Integer limitCount) {
-        return baseMapper.loadGroupMessageList(minId, minDate, ids, status, limitCount);
+        if (minDate != null && SnowFlakeIdUtils.isEnabled()) {
+            long minIdOfDate = SnowFlakeIdUtils.getIdLowerBound(minDate, false);
+            minId = minId == null ? minIdOfDate : Math.max(minId, minIdOfDate);
+            minDate = null;
+        }
+        Long queryMinId = minId;
+        Date queryMinDate = minDate;
+        Map<MessageShardTable, List<Long>> tableGroupIds = this.groupGroupIdsByTable(ids);
+        if (tableGroupIds.size() == 1) {
+            Map.Entry<MessageShardTable, List<Long>> entry = tableGroupIds.entrySet().iterator().next();
+            return MessageDataSourceContext.call(entry.getKey(),
+                    (t) -> baseMapper.loadGroupMessageList(t, queryMinId, queryMinDate, entry.getValue(), status, limitCount));
+        }
+        List<GroupMessageVO> groupMessageList = new ArrayList<>();
+        for (Map.Entry<MessageShardTable, List<Long>> entry : tableGroupIds.entrySet()) {
+            groupMessageList.addAll(MessageDataSourceContext.call(entry.getKey(),
+                    (t) -> baseMapper.loadGroupMessageList(t, queryMinId, queryMinDate, entry.getValue(), status, limitCount)));
+        }
+        return ShardingResultMerger.mergeAsc(groupMessageList, GroupMessageVO::getId, limitCount);
     }
 
+    /**
+     * 分页加载群聊历史消息
+     * 迁移期间同时查询迁移前的表，合并去重后分页；
+     * 开启冷热分层且热表不足一页时继续从归档表补齐：热表有部分数据时从本页最后一条按游标查询归档表，
+     * 本页整体落在归档表时扣除热表的消息数得到归档表内的偏移
+     */
     @Override
     public List<GroupMessageVO> getHistoryMessage(Long groupId, Date sendTime, Integer status, long stIdx, long size) {
-        return baseMapper.getHistoryMessage(groupId, sendTime, status, stIdx, size);
+        Long minId = null;
+        if (sendTime != null && SnowFlakeIdUtils.isEnabled()) {
+            minId = SnowFlakeIdUtils.getIdLowerBound(sendTime, false);
+            sendTime = null;
+        }
+        Date querySendTime = sendTime;
+        Long queryMinId = minId;
+        List<MessageShardTable> tables = messageShardingRouter.getGroupReadTables(groupId);
+        List<GroupMessageVO> hotMessageList = null;
+        List<GroupMessageVO> groupMessageList;
+        if (tables.size() == 1) {
+            groupMessageList = MessageDataSourceContext.call(tables.get(0),
+                    (t) -> baseMapper.getHistoryMessage(t, groupId, querySendTime, queryMinId, status, stIdx, size));
+        } else {
+            // 迁移期间各表取前stIdx + size条，合并去重后再分页
+            hotMessageList = new ArrayList<>();
+            for (MessageShardTable table : tables) {
+                hotMessageList.addAll(MessageDataSourceContext.call(table,
+                        (t) -> baseMapper.getHistoryMessage(t, groupId, querySendTime, queryMinId, status, 0L, stIdx + size)));
+            }
+            hotMessageList = ShardingResultMerger.mergeDesc(hotMessageList, GroupMessageVO::getId, 0L, stIdx + size);
+            groupMessageList = new ArrayList<>(hotMessageList.subList((int) Math.min(stIdx, hotMessageList.size()), hotMessageList.size()));
+        }
+        MessageShardTable archiveTable = messageShardingRouter.getGroupArchiveTable(tables.get(0));
+        if (archiveTable == null || groupMessageList.size() >= size) {
+            return groupMessageList;
+        }
+        if (!groupMessageList.isEmpty()) {
+            Long lastId = groupMessageList.get(groupMessageList.size() - 1).getId();
+            long remain = size - groupMessageList.size();
+            groupMessageList.addAll(MessageDataSourceContext.call(archiveTable,
+                    (t) -> baseMapper.getHistoryMessageBefore(t, groupId, querySendTime, queryMinId, status, lastId, remain)));
+            return groupMessageList;
+        }
+        long hotCount = hotMessageList == null
+                ? MessageDataSourceContext.call(tables.get(0), (t) -> baseMapper.countHistoryMessage(t, groupId, querySendTime, queryMinId, status))
+                : hotMessageList.size();
+        long archiveStIdx = Math.max(stIdx - hotCount, 0L);
+        return MessageDataSourceContext.call(archiveTable,
+                (t) -> baseMapper.getHistoryMessage(t, groupId, querySendTime, queryMinId, status, archiveStIdx, size));
+    }
+
+    /**
+     * 按游标加载群聊历史消息
+     * 开启冷热分层且热表不足size条时，游标越过冷热边界，继续从归档表补齐
+     */
+    @Override
+    public List<GroupMessageVO> getHistoryMessageBefore(Long groupId, Date sendTime, Integer status, Long beforeId, long size) {
+        Long minId = null;
+        if (sendTime != null && SnowFlakeIdUtils.isEnabled()) {
+            minId = SnowFlakeIdUtils.getIdLowerBound(sendTime, false);
+            sendTime = null;
+        }
+        Date querySendTime = sendTime;
+        Long queryMinId = minId;
+        List<MessageShardTable> tables = messageShardingRouter.getGroupReadTables(groupId);
+        List<GroupMessageVO> groupMessageList;
+        if (tables.size() == 1) {
+            groupMessageList = MessageDataSourceContext.call(tables.get(0),
+                    (t) -> baseMapper.getHistoryMessageBefore(t, groupId, querySendTime, queryMinId, status, beforeId, size));
+        } else {
+            groupMessageList = new ArrayList<>();
+            for (MessageShardTable table : tables) {
+                groupMessageList.addAll(MessageDataSourceContext.call(table,
+                        (t) -> baseMapper.getHistoryMessageBefore(t, groupId, querySendTime, queryMinId, status, beforeId, size)));
+            }
+            groupMessageList = new ArrayList<>(ShardingResultMerger.mergeDesc(groupMessageList, GroupMessageVO::getId, 0L, size));
+        }
+        MessageShardTable archiveTable = messageShardingRouter.getGroupArchiveTable(tables.get(0));
+        if (archiveTable == null || groupMessageList.size() >= size) {
+            return groupMessageList;
+        }
+        Long archiveBeforeId = groupMessageList.isEmpty() ? beforeId : groupMessageList.get(groupMessageList.size() - 1).getId();
+        long remain = size - groupMessageList.size();
+        groupMessageList.addAll(MessageDataSourceContext.call(archiveTable,
+                (t) -> baseMapper.getHistoryMessageBefore(t, groupId, querySendTime, queryMinId, status, archiveBeforeId, remain)));
+        return groupMessageList;
     }
 
     @Override
     public Long getMaxMessageId(Long groupId) {
-        return baseMapper.getMaxMessageId(groupId);
+        Long maxMessageId = null;
+        for (MessageShardTable table : messageShardingRouter.getGroupReadTables(groupId)) {
+            Long messageId = MessageDataSourceContext.call(table, (t) -> baseMapper.getMaxMessageId(t, groupId));
+            if (messageId != null && (maxMessageId == null || messageId > maxMessageId)) {
+                maxMessageId = messageId;
+            }
+        }
+        return maxMessageId;
+    }
+
+    /**
+     * 查询@用户的消息索引
+     * 指定群组时只查询群组消息所在的数据源；未指定群组时各数据源分别查询size条，合并后按消息id倒序截取size条
+     */
+    @Override
+    public List<GroupMessageMention> getMentions(Long userId, Long groupId, Long beforeId, long size) {
+        if (groupId != null) {
+            return MessageDataSourceContext.call(messageShardingRouter.getGroupTable(groupId),
+                    (t) -> groupMessageMentionRepository.getMentions(userId, groupId, beforeId, size));
+        }
+        List<MessageShardTable> mentionTables = messageShardingRouter.getGroupMentionTables();
+        if (mentionTables.size() == 1) {
+            return MessageDataSourceContext.call(mentionTables.get(0), (t) -> groupMessageMentionRepository.getMentions(userId, null, beforeId, size));
+        }
+        List<GroupMessageMention> mentions = new ArrayList<>();
+        for (MessageShardTable mentionTable : mentionTables) {
+            mentions.addAll(MessageDataSourceContext.call(mentionTable, (t) -> groupMessageMentionRepository.getMentions(userId, null, beforeId, size)));
+        }
+        mentions.sort(Comparator.comparing(GroupMessageMention::getMessageId).reversed());
+        return mentions.size() > size ? new ArrayList<>(mentions.subList(0, (int) size)) : mentions;
+    }
+
+    @Override
+    public List<GroupMessageVO> getMentionMessages(List<GroupMessageMention> mentions, Integer status) {
+        Map<Long, List<Long>> groupMessageIds = mentions.stream()
+                .collect(Collectors.groupingBy(GroupMessageMention::getGroupId, Collectors.mapping(GroupMessageMention::getMessageId, Collectors.toList())));
+        List<GroupMessageVO> groupMessageList = this.getGroupMessagesByIds(groupMessageIds, status);
+        groupMessageList.sort(Comparator.comparing(GroupMessageVO::getId).reversed());
+        return groupMessageList;
+    }
+
+    /**
+     * 按消息ID加载群聊消息
+     * 按群组所在的分表分组，每张分表一次主键IN查询；开启冷热分层时，热表中不存在的消息再从归档表查询
+     */
+    @Override
+    public List<GroupMessageVO> getGroupMessagesByIds(Map<Long, List<Long>> groupMessageIds, Integer status) {
+        if (CollectionUtil.isEmpty(groupMessageIds)) {
+            return new ArrayList<>();
+        }
+        Map<MessageShardTable, List<Long>> tableMessageIds = new HashMap<>();
+        int messageCount = 0;
+        for (Map.Entry<Long, List<Long>> entry : groupMessageIds.entrySet()) {
+            for (MessageShardTable table : messageShardingRouter.getGroupReadTables(entry.getKey())) {
+                tableMessageIds.computeIfAbsent(table, (key) -> new ArrayList<>()).addAll(entry.getValue());
+            }
+            messageCount += entry.getValue().size();
+        }
+        List<GroupMessageVO> groupMessageList = new ArrayList<>(messageCount);
+        for (Map.Entry<MessageShardTable, List<Long>> entry : tableMessageIds.entrySet()) {
+            groupMessageList.addAll(MessageDataSourceContext.call(entry.getKey(), (t) -> baseMapper.getMessagesByIds(t, entry.getValue(), status)));
+        }
+        if (messageShardingRouter.isMigrating()) {
+            groupMessageList = ShardingResultMerger.distinct(groupMessageList, GroupMessageVO::getId);
+        }
+        if (messageShardingRouter.isArchiveEnabled() && groupMessageList.size() < messageCount) {
+            // 热表中不存在的消息按群组所在数据源的归档表分组查询
+            Set<Long> foundIds = groupMessageList.stream().map(GroupMessageVO::getId).collect(Collectors.toSet());
+            Map<MessageShardTable, List<Long>> archiveMissIds = new HashMap<>();
+            groupMessageIds.forEach((groupId, ids) -> {
+                MessageShardTable archiveTable = messageShardingRouter.getGroupArchiveTable(messageShardingRouter.getGroupTable(groupId));
+                for (Long id : ids) {
+                    if (!foundIds.contains(id)) {
+                        archiveMissIds.computeIfAbsent(archiveTable, (key) -> new ArrayList<>()).add(id);
+                    }
+                }
+            });
+            for (Map.Entry<MessageShardTable, List<Long>> entry : archiveMissIds.entrySet()) {
+                groupMessageList.addAll(MessageDataSourceContext.call(entry.getKey(), (t) -> baseMapper.getMessagesByIds(t, entry.getValue(), status)));
+            }
+        }
+        groupMessageList.sort(Comparator.comparing(GroupMessageVO::getId));
+        return groupMessageList;
+    }
+
+    @Override
+    public Map<Long, Long> getMaxMessageIds(List<Long> groupIds) {
+        Map<Long, Long> maxMessageIds = new HashMap<>();
+        if (CollectionUtil.isEmpty(groupIds)) {
+            return maxMessageIds;
+        }
+        this.groupGroupIdsByTable(groupIds).forEach((table, ids) -> {
+            for (GroupMessage groupMessage : MessageDataSourceContext.call(table, (t) -> baseMapper.getMaxMessageIds(t, ids))) {
+                maxMessageIds.merge(groupMessage.getGroupId(), groupMessage.getId(), Math::max);
+            }
+        });
+        return maxMessageIds;
+    }
+
+    /**
+     * 将一批超过保留时长的群聊消息从热表移入归档表
+     * 同一事务中写入热表所在数据源的归档表、按热表补齐状态，再只删除与归档表状态一致的消息
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int archiveBatch(MessageShardTable table, Date cutoff, int batchSize) {
+        MessageShardTable archiveTable = messageShardingRouter.getGroupArchiveTable(table);
+        if (archiveTable == null) {
+            return 0;
+        }
+        Long beforeId = SnowFlakeIdUtils.isEnabled() ? SnowFlakeIdUtils.getMinIdOfTime(cutoff) : null;
+        Date beforeDate = beforeId == null ? cutoff : null;
+        List<GroupMessage> groupMessageList = MessageDataSourceContext.call(table, (t) -> baseMapper.getArchiveBatch(t, beforeId, beforeDate, batchSize));
+        if (CollectionUtil.isEmpty(groupMessageList)) {
+            return 0;
+        }
+        List<Long> ids = groupMessageList.stream().map(GroupMessage::getId).collect(Collectors.toList());
+        int count = MessageDataSourceContext.call(table, (t) -> {
+            baseMapper.insertIgnoreBatch(archiveTable.getTable(), groupMessageList);
+            baseMapper.syncStatus(archiveTable.getTable(), t, ids);
+            return baseMapper.deleteArchived(t, archiveTable.getTable(), ids);
+        });
+        if (count < ids.size()) {
+            logger.info("archiveBatch|归档期间消息状态变化，保留在热表等待重新归档|热表:{}|条数:{}", table, ids.size() - count);
+        }
+        return groupMessageList.size();
+    }
+
+    /**
+     * 迁移一批群聊消息到当前分表
+     * 按主键顺序读取源表的一批消息，按群组路由写入目标分表，已存在的消息忽略，写入后按源表同步消息状态；
+     * 源表本身是当前分表之一时（调整分表数），写入其他分表的消息从源表删除；
+     * 目标分表与源表不在同一数据源时，先从源表读出状态再更新目标分表
+     */
+    @Override
+    public Long migrateBatch(String sourceTable, Long afterId, int batchSize) {
+        MessageShardTable source = messageShardingRouter.locateGroupTable(sourceTable);
+        List<GroupMessage> groupMessageList = MessageDataSourceContext.call(source, (t) -> baseMapper.getMigrateBatch(t, afterId, batchSize));
+        if (CollectionUtil.isEmpty(groupMessageList)) {
+            return null;
+        }
+        boolean sourceIsShard = messageShardingRouter.getGroupTables().contains(source);
+        Map<MessageShardTable, List<GroupMessage>> tableMessages = new HashMap<>();
+        for (GroupMessage groupMessage : groupMessageList) {
+            MessageShardTable table = messageShardingRouter.getGroupTable(groupMessage.getGroupId());
+            if (!table.equals(source)) {
+                tableMessages.computeIfAbsent(table, (key) -> new ArrayList<>()).add(groupMessage);
+            }
+        }
+        for (Map.Entry<MessageShardTable, List<GroupMessage>> entry : tableMessages.entrySet()) {
+            MessageShardTable target = entry.getKey();
+            List<Long> ids = entry.getValue().stream().map(GroupMessage::getId).collect(Collectors.toList());
+            MessageDataSourceContext.call(target, (t) -> baseMapper.insertIgnoreBatch(t, entry.getValue()));
+            if (target.getDataSource() == source.getDataSource()) {
+                MessageDataSourceContext.call(target, (t) -> baseMapper.syncStatus(t, source.getTable(), ids));
+            } else {
+                this.syncStatusAcrossDataSource(source, target, ids);
+            }
+            if (sourceIsShard) {
+                MessageDataSourceContext.call(source, (t) -> baseMapper.deleteByIds(t, ids));
+            }
+        }
+        return groupMessageList.get(groupMessageList.size() - 1).getId();
+    }
+
+    /**
+     * 跨数据源同步迁移消息的状态，迁移期间按id更新消息会同时更新源表和目标分表
+     */
+    private void syncStatusAcrossDataSource(MessageShardTable source, MessageShardTable target, List<Long> ids) {
+        Map<Integer, List<Long>> statusIds = MessageDataSourceContext.call(source, (t) -> baseMapper.getStatusByIds(t, ids)).stream()
+                .collect(Collectors.groupingBy(GroupMessage::getStatus, Collectors.mapping(GroupMessage::getId, Collectors.toList())));
+        statusIds.forEach((status, statusMessageIds) ->
+                MessageDataSourceContext.call(target, (t) -> baseMapper.updateStatusByIds(t, status, statusMessageIds)));
+    }
+
+    /**
+     * 按群组所在分表对群组id分组，迁移期间群组同时归入迁移前的表
+     */
+    private Map<MessageShardTable, List<Long>> groupGroupIdsByTable(List<Long> groupIds) {
+        if (!messageShardingRouter.isMigrating()) {
+            return groupIds.stream().collect(Collectors.groupingBy(messageShardingRouter::getGroupTable));
+        }
+        Map<MessageShardTable, List<Long>> tableGroupIds = new HashMap<>();
+        for (Long groupId : groupIds) {
+            for (MessageShardTable table : messageShardingRouter.getGroupReadTables(groupId)) {
+                tableGroupIds.computeIfAbsent(table, (key) -> new ArrayList<>()).add(groupId);
+            }
+        }
+        return tableGroupIds;
     }
 }
@@ -0,0 +1,40 @@
+package com.lb.im.platform.message.domain.service.impl;
+
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.lb.im.platform.common.exception.IMException;
+import com.lb.im.platform.common.model.entity.MessageOutbox;
+import com.lb.im.platform.common.model.enums.HttpCode;
+import com.lb.im.platform.message.domain.repository.MessageOutboxRepository;
+import com.lb.im.platform.message.domain.service.MessageOutboxDomainService;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 顺序消息发件箱领域服务实现类
+ */
+@Service
+public class MessageOutboxDomainServiceImpl extends ServiceImpl<MessageOutboxRepository, MessageOutbox> implements MessageOutboxDomainService {
+
+    @Override
+    public boolean saveOutbox(MessageOutbox outbox) {
+        if (outbox == null || outbox.getId() == null || outbox.getPayload() == null) {
+            throw new IMException(HttpCode.PARAMS_ERROR);
+        }
+        return baseMapper.saveOutbox(outbox) >= 0;
+    }
+
+    @Override
+    public List<MessageOutbox> getOutboxBefore(Date createTime, int limitCount) {
+        return baseMapper.getOutboxBefore(createTime, limitCount);
+    }
+
+    @Override
+    public void deleteOutbox(Long messageId) {
+        if (messageId == null) {
+            return;
+        }
+        baseMapper.deleteOutbox(messageId);
+    }
+}
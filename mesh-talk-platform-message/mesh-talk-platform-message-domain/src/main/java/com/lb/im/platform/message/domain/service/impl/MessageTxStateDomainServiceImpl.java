@@ -0,0 +1,36 @@
+package com.lb.im.platform.message.domain.service.impl;
+
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.lb.im.platform.common.exception.IMException;
+import com.lb.im.platform.common.model.entity.MessageTxState;
+import com.lb.im.platform.common.model.enums.HttpCode;
+import com.lb.im.platform.message.domain.repository.MessageTxStateRepository;
+import com.lb.im.platform.message.domain.service.MessageTxStateDomainService;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+
+/**
+ * 消息本地事务状态领域服务实现类
+ */
+@Service
+public class MessageTxStateDomainServiceImpl extends ServiceImpl<MessageTxStateRepository, MessageTxState> implements MessageTxStateDomainService {
+
+    @Override
+    public boolean saveState(Long messageId, String messageType, Integer status) {
+        if (messageId == null || status == null) {
+            throw new IMException(HttpCode.PARAMS_ERROR);
+        }
+        return baseMapper.saveState(new MessageTxState(messageId, messageType, status, new Date())) >= 0;
+    }
+
+    @Override
+    public Integer getStatus(Long messageId) {
+        return baseMapper.getStatus(messageId);
+    }
+
+    @Override
+    public int deleteExpired(Date expireTime, int limitCount) {
+        return baseMapper.deleteExpired(expireTime, limitCount);
+    }
+}
@@ -1,8 +1,7 @@
 package com.lb.im.platform.message.domain.service.impl;
 
 import cn.hutool.core.collection.CollectionUtil;
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.lb.im.platform.common.exception.IMException;
 import com.lb.im.platform.common.model.entity.PrivateMessage;
@@ -10,21 +9,59 @@ import com.lb.im.platform.common.model.enums.HttpCode;
 import com.lb.im.platform.common.model.enums.MessageStatus;
 import com.lb.im.platform.common.model.vo.PrivateMessageVO;
 import com.lb.im.platform.common.utils.BeanUtils;
+import com.lb.im.platform.common.utils.ConversationUtils;
+import com.lb.im.platform.common.utils.SnowFlakeIdUtils;
 import com.lb.im.platform.message.domain.event.IMPrivateMessageTxEvent;
 import com.lb.im.platform.message.domain.repository.PrivateMessageRepository;
 import com.lb.im.platform.message.domain.service.PrivateMessageDomainService;
+import com.lb.im.platform.message.domain.sharding.MessageDataSourceContext;
+import com.lb.im.platform.message.domain.sharding.MessageShardTable;
+import com.lb.im.platform.message.domain.sharding.MessageShardingRouter;
+import com.lb.im.platform.message.domain.sharding.ShardingResultMerger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * 私聊消息领域服务实现类
  * 实现私聊消息相关的核心业务逻辑，处理消息的存储、查询和状态管理等操作
  * 使用MyBatis-Plus的ServiceImpl作为基类，提供基础的CRUD功能
+ * 所有分表访问都通过MessageDataSourceContext先路由到分表所在的数据源，再在数据源内访问分表
  */
 @Service
 public class PrivateMessageDomainServiceImpl extends ServiceImpl<PrivateMessageRepository, PrivateMessage> implements PrivateMessageDomainService {
+    private final Logger logger = LoggerFactory.getLogger(PrivateMessageDomainServiceImpl.class);
+
+    @Autowired
+    private MessageShardingRouter messageShardingRouter;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 生成私聊消息id
+     * id中嵌入会话所在的分片槽位，按id查询时可直接定位分表
+     *
+     * @param sendId 发送者id
+     * @param recvId 接收者id
+     * @return 消息id
+     */
+    @Override
+    public Long nextMessageId(Long sendId, Long recvId) {
+        return messageShardingRouter.nextPrivateMessageId(sendId, recvId);
+    }
 
     /**
      * 保存私聊消息事务事件
@@ -42,6 +79,19 @@ public class PrivateMessageDomainServiceImpl extends ServiceImpl<PrivateMessageR
      */
     @Override
     public boolean saveIMPrivateMessageSaveEvent(IMPrivateMessageTxEvent privateMessageTxEvent) {
+        // 保存数据
+        return this.savePrivateMessage(this.buildPrivateMessage(privateMessageTxEvent));
+    }
+
+    /**
+     * 将私聊消息事务事件转换为消息实体
+     *
+     * @param privateMessageTxEvent 私聊消息事务事件
+     * @return 私聊消息实体
+     * @throws IMException 当参数为空或转换失败时抛出异常
+     */
+    @Override
+    public PrivateMessage buildPrivateMessage(IMPrivateMessageTxEvent privateMessageTxEvent) {
         // 参数校验
         if (privateMessageTxEvent == null || privateMessageTxEvent.getPrivateMessageDTO() == null) {
             throw new IMException(HttpCode.PARAMS_ERROR);
@@ -55,12 +105,65 @@ public class PrivateMessageDomainServiceImpl extends ServiceImpl<PrivateMessageR
         privateMessage.setId(privateMessageTxEvent.getId());
         // 设置消息发送人id - 使用事务事件中的发送者ID
         privateMessage.setSendId(privateMessageTxEvent.getSenderId());
+        // 设置会话id - 由发送者和接收者id生成，两个方向的消息属于同一会话
+        privateMessage.setConversationId(ConversationUtils.getPrivateConversationId(privateMessage.getSendId(), privateMessage.getRecvId()));
         // 设置消息状态 - 初始状态为未发送
         privateMessage.setStatus(MessageStatus.UNSEND.code());
         // 设置发送时间 - 使用事务事件中的发送时间
         privateMessage.setSendTime(privateMessageTxEvent.getSendTime());
-        // 保存数据 - 使用MyBatis-Plus的saveOrUpdate方法
-        return this.saveOrUpdate(privateMessage);
+        return privateMessage;
+    }
+
+    /**
+     * 保存单条私聊消息实体
+     * 消息id由雪花算法生成，必然是新数据，因此直接INSERT，省去saveOrUpdate按id的前置SELECT
+     * 主键重复说明该消息已写入（MQ重复投递或事务回查），按写入成功处理，保证幂等
+     *
+     * @param privateMessage 私聊消息实体
+     * @return 保存操作是否成功
+     */
+    @Override
+    public boolean savePrivateMessage(PrivateMessage privateMessage) {
+        try {
+            MessageShardTable table = messageShardingRouter.getPrivateTable(privateMessage.getConversationId());
+            return MessageDataSourceContext.call(table, (t) -> baseMapper.appendMessage(t, privateMessage)) > 0;
+        } catch (DuplicateKeyException e) {
+            logger.info("savePrivateMessage|私聊消息已存在，按写入成功处理|{}", privateMessage.getId());
+            return true;
+        }
+    }
+
+    /**
+     * 批量保存私聊消息实体
+     * 按会话所在的分表分组，每张分表一条多值INSERT写入；
+     * 同一数据源的分表在该数据源的一个本地事务中提交，不同数据源各自提交，不会组成跨库事务
+     *
+     * @param privateMessageList 私聊消息实体列表
+     * @return 写入条数与列表大小一致时返回true
+     */
+    @Override
+    public boolean saveBatchPrivateMessage(List<PrivateMessage> privateMessageList) {
+        if (CollectionUtil.isEmpty(privateMessageList)) {
+            return true;
+        }
+        Map<Integer, Map<MessageShardTable, List<PrivateMessage>>> dataSourceMessages = new HashMap<>();
+        for (PrivateMessage privateMessage : privateMessageList) {
+            MessageShardTable table = messageShardingRouter.getPrivateTable(privateMessage.getConversationId());
+            dataSourceMessages.computeIfAbsent(table.getDataSource(), (key) -> new HashMap<>())
+                    .computeIfAbsent(table, (key) -> new ArrayList<>()).add(privateMessage);
+        }
+        int count = 0;
+        for (Map<MessageShardTable, List<PrivateMessage>> tableMessages : dataSourceMessages.values()) {
+            Integer inserted = transactionTemplate.execute((status) -> {
+                int rows = 0;
+                for (Map.Entry<MessageShardTable, List<PrivateMessage>> entry : tableMessages.entrySet()) {
+                    rows += MessageDataSourceContext.call(entry.getKey(), (t) -> baseMapper.batchInsert(t, entry.getValue()));
+                }
+                return rows;
+            });
+            count += inserted == null ? 0 : inserted;
+        }
+        return count == privateMessageList.size();
     }
 
     /**
@@ -68,14 +171,24 @@ public class PrivateMessageDomainServiceImpl extends ServiceImpl<PrivateMessageR
      * 用于分布式事务的检查阶段，确认消息是否已成功持久化
      * 
      * 实现方式：
-     * 调用Repository层的checkExists方法，该方法返回非空值表示消息存在
+     * 从消息id中的分片槽位定位分表，调用Repository层的checkExists方法，该方法返回非空值表示消息存在
      *
      * @param messageId 要检查的消息ID
      * @return 如果消息存在返回true，否则返回false
      */
     @Override
     public boolean checkExists(Long messageId) {
-        return baseMapper.checkExists(messageId) != null;
+        for (MessageShardTable table : messageShardingRouter.getPrivateTablesOfId(messageId)) {
+            if (MessageDataSourceContext.call(table, (t) -> baseMapper.checkExists(t, messageId)) != null) {
+                return true;
+            }
+        }
+        for (MessageShardTable archiveTable : messageShardingRouter.getPrivateArchiveTablesOfId(messageId)) {
+            if (MessageDataSourceContext.call(archiveTable, (t) -> baseMapper.checkExists(t, messageId)) != null) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -84,8 +197,8 @@ public class PrivateMessageDomainServiceImpl extends ServiceImpl<PrivateMessageR
      * 
      * 实现步骤：
      * 1. 验证参数的有效性
-     * 2. 构建查询条件，筛选未读消息
-     * 3. 执行查询并返回结果
+     * 2. 按会话所在的分表对好友分组
+     * 3. 逐表查询未读消息并合并结果
      *
      * @param userId       接收消息的用户ID
      * @param friendIdList 好友ID列表，用于过滤消息发送者
@@ -98,12 +211,12 @@ public class PrivateMessageDomainServiceImpl extends ServiceImpl<PrivateMessageR
         if (userId == null || CollectionUtil.isEmpty(friendIdList)) {
             throw new IMException(HttpCode.PARAMS_ERROR);
         }
-        // 获取当前用户所有未读消息 - 使用Lambda查询构建器
-        LambdaQueryWrapper<PrivateMessage> queryWrapper = Wrappers.lambdaQuery();
-        queryWrapper.eq(PrivateMessage::getRecvId, userId)  // 接收者是当前用户
-                .eq(PrivateMessage::getStatus, MessageStatus.UNSEND)  // 消息状态为未发送（未读）
-                .in(PrivateMessage::getSendId, friendIdList);  // 发送者在好友列表中
-        return this.list(queryWrapper);  // 执行查询并返回结果
+        // 按会话所在的分表对好友分组，逐表查询未读消息
+        List<PrivateMessage> privateMessageList = new ArrayList<>();
+        for (Map.Entry<MessageShardTable, List<Long>> entry : this.groupFriendIdsByTable(userId, friendIdList).entrySet()) {
+            privateMessageList.addAll(MessageDataSourceContext.call(entry.getKey(), (t) -> baseMapper.getUnreadPrivateMessageList(t, userId, entry.getValue())));
+        }
+        return messageShardingRouter.isMigrating() ? ShardingResultMerger.distinct(privateMessageList, PrivateMessage::getId) : privateMessageList;
     }
 
     /**
@@ -111,7 +224,7 @@ public class PrivateMessageDomainServiceImpl extends ServiceImpl<PrivateMessageR
      * 查询指定用户接收的所有未读消息，并转换为前端展示所需的VO对象
      * 
      * 实现方式：
-     * 直接调用Repository层的getPrivateMessageVOList方法，该方法返回已转换好的VO对象列表
+     * 按会话所在的分表对好友分组，逐表调用Repository层的getPrivateMessageVOList方法并合并结果
      *
      * @param userId    接收消息的用户ID
      * @param friendIds 好友ID列表，用于过滤消息发送者
@@ -119,7 +232,11 @@ public class PrivateMessageDomainServiceImpl extends ServiceImpl<PrivateMessageR
      */
     @Override
     public List<PrivateMessageVO> getPrivateMessageVOList(Long userId, List<Long> friendIds) {
-        return baseMapper.getPrivateMessageVOList(userId, friendIds);
+        List<PrivateMessageVO> privateMessageList = new ArrayList<>();
+        for (Map.Entry<MessageShardTable, List<Long>> entry : this.groupFriendIdsByTable(userId, friendIds).entrySet()) {
+            privateMessageList.addAll(MessageDataSourceContext.call(entry.getKey(), (t) -> baseMapper.getPrivateMessageVOList(t, userId, entry.getValue())));
+        }
+        return messageShardingRouter.isMigrating() ? ShardingResultMerger.distinct(privateMessageList, PrivateMessageVO::getId) : privateMessageList;
     }
 
     /**
@@ -127,7 +244,9 @@ public class PrivateMessageDomainServiceImpl extends ServiceImpl<PrivateMessageR
      * 支持增量拉取，返回指定ID之后的消息
      * 
      * 实现方式：
-     * 直接调用Repository层的loadMessage方法，该方法执行复杂的SQL查询
+     * 将好友ID列表转换为会话ID列表并按分表分组（迁移期间会话同时属于迁移前的表），逐表调用Repository层的loadMessage方法按会话索引查询，
+     * 合并去重后按消息ID升序截取limitCount条；
+     * 开启雪花id时间换算时，最早日期条件换算为id下界，不再按send_time过滤
      *
      * @param userId     当前用户ID
      * @param minId      最小消息ID，用于增量拉取
@@ -138,7 +257,29 @@ public class PrivateMessageDomainServiceImpl extends ServiceImpl<PrivateMessageR
      */
     @Override
     public List<PrivateMessageVO> loadMessage(Long userId, Long minId, Date minDate, List<Long> friendIds, int limitCount) {
-        return baseMapper.loadMessage(userId, minId, minDate, friendIds, limitCount);
+        Map<MessageShardTable, List<String>> tableConversationIds = new HashMap<>();
+        for (String conversationId : ConversationUtils.getPrivateConversationIds(userId, friendIds)) {
+            for (MessageShardTable table : messageShardingRouter.getPrivateReadTables(conversationId)) {
+                tableConversationIds.computeIfAbsent(table, (key) -> new ArrayList<>()).add(conversationId);
+            }
+        }
+        if (minDate != null && SnowFlakeIdUtils.isEnabled()) {
+            long minIdOfDate = SnowFlakeIdUtils.getIdLowerBound(minDate, true);
+            minId = minId == null ? minIdOfDate : Math.max(minId, minIdOfDate);
+            minDate = null;
+        }
+        Long queryMinId = minId;
+        Date queryMinDate = minDate;
+        if (tableConversationIds.size() == 1) {
+            Map.Entry<MessageShardTable, List<String>> entry = tableConversationIds.entrySet().iterator().next();
+            return MessageDataSourceContext.call(entry.getKey(), (t) -> baseMapper.loadMessage(t, queryMinId, queryMinDate, entry.getValue(), limitCount));
+        }
+        List<PrivateMessageVO> privateMessageList = new ArrayList<>();
+        for (Map.Entry<MessageShardTable, List<String>> entry : tableConversationIds.entrySet()) {
+            privateMessageList.addAll(MessageDataSourceContext.call(entry.getKey(),
+                    (t) -> baseMapper.loadMessage(t, queryMinId, queryMinDate, entry.getValue(), limitCount)));
+        }
+        return ShardingResultMerger.mergeAsc(privateMessageList, PrivateMessageVO::getId, limitCount);
     }
 
     /**
@@ -146,7 +287,7 @@ public class PrivateMessageDomainServiceImpl extends ServiceImpl<PrivateMessageR
      * 用于标记多条消息为已读、已撤回等状态
      * 
      * 实现方式：
-     * 直接调用Repository层的batchUpdatePrivateMessageStatus方法执行批量更新操作
+     * 按消息id所在的分表分组，逐表调用Repository层的batchUpdatePrivateMessageStatus方法执行批量更新操作
      *
      * @param status 目标消息状态，如已读(1)、已撤回(2)等
      * @param ids    待更新的消息ID列表
@@ -154,7 +295,17 @@ public class PrivateMessageDomainServiceImpl extends ServiceImpl<PrivateMessageR
      */
     @Override
     public int batchUpdatePrivateMessageStatus(Integer status, List<Long> ids) {
-        return baseMapper.batchUpdatePrivateMessageStatus(status, ids);
+        Map<MessageShardTable, List<Long>> tableIds = new HashMap<>();
+        for (Long id : ids) {
+            for (MessageShardTable table : messageShardingRouter.getPrivateTablesOfId(id)) {
+                tableIds.computeIfAbsent(table, (key) -> new ArrayList<>()).add(id);
+            }
+        }
+        int count = 0;
+        for (Map.Entry<MessageShardTable, List<Long>> entry : tableIds.entrySet()) {
+            count += MessageDataSourceContext.call(entry.getKey(), (t) -> baseMapper.batchUpdatePrivateMessageStatus(t, status, entry.getValue()));
+        }
+        return count;
     }
 
     /**
@@ -162,7 +313,9 @@ public class PrivateMessageDomainServiceImpl extends ServiceImpl<PrivateMessageR
      * 支持分页查询，按消息ID倒序排列
      * 
      * 实现方式：
-     * 直接调用Repository层的loadMessageByUserIdAndFriendId方法执行查询
+     * 根据用户ID和好友ID生成会话ID，调用Repository层的loadMessageByConversationId方法按会话索引查询；
+     * 迁移期间同时查询迁移前的表，合并去重后分页；
+     * 开启冷热分层且热表不足一页时，继续从归档表补齐
      *
      * @param userId   当前用户ID
      * @param friendId 好友ID
@@ -172,7 +325,75 @@ public class PrivateMessageDomainServiceImpl extends ServiceImpl<PrivateMessageR
      */
     @Override
     public List<PrivateMessageVO> loadMessageByUserIdAndFriendId(Long userId, Long friendId, long stIdx, long size) {
-        return baseMapper.loadMessageByUserIdAndFriendId(userId, friendId, stIdx, size);
+        String conversationId = ConversationUtils.getPrivateConversationId(userId, friendId);
+        List<MessageShardTable> tables = messageShardingRouter.getPrivateReadTables(conversationId);
+        List<PrivateMessageVO> hotMessageList = null;
+        List<PrivateMessageVO> privateMessageList;
+        if (tables.size() == 1) {
+            privateMessageList = MessageDataSourceContext.call(tables.get(0), (t) -> baseMapper.loadMessageByConversationId(t, conversationId, stIdx, size));
+        } else {
+            // 迁移期间各表取前stIdx + size条，合并去重后再分页
+            hotMessageList = new ArrayList<>();
+            for (MessageShardTable table : tables) {
+                hotMessageList.addAll(MessageDataSourceContext.call(table, (t) -> baseMapper.loadMessageByConversationId(t, conversationId, 0L, stIdx + size)));
+            }
+            hotMessageList = ShardingResultMerger.mergeDesc(hotMessageList, PrivateMessageVO::getId, 0L, stIdx + size);
+            privateMessageList = new ArrayList<>(hotMessageList.subList((int) Math.min(stIdx, hotMessageList.size()), hotMessageList.size()));
+        }
+        MessageShardTable archiveTable = messageShardingRouter.getPrivateArchiveTable(tables.get(0));
+        if (archiveTable == null || privateMessageList.size() >= size) {
+            return privateMessageList;
+        }
+        // 热表有部分数据时，归档消息都早于热表消息，从本页最后一条继续按游标查询
+        if (!privateMessageList.isEmpty()) {
+            Long lastId = privateMessageList.get(privateMessageList.size() - 1).getId();
+            long remain = size - privateMessageList.size();
+            privateMessageList.addAll(MessageDataSourceContext.call(archiveTable, (t) -> baseMapper.loadMessageByConversationIdBefore(t, conversationId, lastId, remain)));
+            return privateMessageList;
+        }
+        // 本页整体落在归档表中，扣除热表的消息数得到归档表内的偏移；迁移期间合并结果不足一页，即为热表的全部消息
+        long hotCount = hotMessageList == null
+                ? MessageDataSourceContext.call(tables.get(0), (t) -> baseMapper.countByConversationId(t, conversationId))
+                : hotMessageList.size();
+        long archiveStIdx = Math.max(stIdx - hotCount, 0L);
+        return MessageDataSourceContext.call(archiveTable, (t) -> baseMapper.loadMessageByConversationId(t, conversationId, archiveStIdx, size));
+    }
+
+    /**
+     * 按游标加载指定用户与好友之间的历史消息
+     *
+     * 实现方式：
+     * 根据用户ID和好友ID生成会话ID，调用Repository层的loadMessageByConversationIdBefore方法按会话索引范围查询；
+     * 开启冷热分层且热表不足size条时，游标越过冷热边界，继续从归档表补齐
+     *
+     * @param userId   当前用户ID
+     * @param friendId 好友ID
+     * @param beforeId 游标，为空时从最新消息开始
+     * @param size     查询条数
+     * @return 历史消息VO对象列表，按消息ID倒序排序
+     */
+    @Override
+    public List<PrivateMessageVO> loadMessageByUserIdAndFriendIdBefore(Long userId, Long friendId, Long beforeId, long size) {
+        String conversationId = ConversationUtils.getPrivateConversationId(userId, friendId);
+        List<MessageShardTable> tables = messageShardingRouter.getPrivateReadTables(conversationId);
+        List<PrivateMessageVO> privateMessageList;
+        if (tables.size() == 1) {
+            privateMessageList = MessageDataSourceContext.call(tables.get(0), (t) -> baseMapper.loadMessageByConversationIdBefore(t, conversationId, beforeId, size));
+        } else {
+            privateMessageList = new ArrayList<>();
+            for (MessageShardTable table : tables) {
+                privateMessageList.addAll(MessageDataSourceContext.call(table, (t) -> baseMapper.loadMessageByConversationIdBefore(t, conversationId, beforeId, size)));
+            }
+            privateMessageList = new ArrayList<>(ShardingResultMerger.mergeDesc(privateMessageList, PrivateMessageVO::getId, 0L, size));
+        }
+        MessageShardTable archiveTable = messageShardingRouter.getPrivateArchiveTable(tables.get(0));
+        if (archiveTable == null || privateMessageList.size() >= size) {
+            return privateMessageList;
+        }
+        Long archiveBeforeId = privateMessageList.isEmpty() ? beforeId : privateMessageList.get(privateMessageList.size() - 1).getId();
+        long remain = size - privateMessageList.size();
+        privateMessageList.addAll(MessageDataSourceContext.call(archiveTable, (t) -> baseMapper.loadMessageByConversationIdBefore(t, conversationId, archiveBeforeId, remain)));
+        return privateMessageList;
     }
 
     /**
@@ -180,7 +401,7 @@ public class PrivateMessageDomainServiceImpl extends ServiceImpl<PrivateMessageR
      * 批量更新指定发送者和接收者之间的所有已发送消息状态
      * 
      * 实现方式：
-     * 直接调用Repository层的updateMessageStatus方法执行更新操作
+     * 调用Repository层的updateMessageStatus方法执行更新操作，迁移期间同时更新迁移前的表
      *
      * @param status 目标消息状态，通常为已读状态(1)
      * @param sendId 消息发送者ID
@@ -189,7 +410,11 @@ public class PrivateMessageDomainServiceImpl extends ServiceImpl<PrivateMessageR
      */
     @Override
     public int updateMessageStatus(Integer status, Long sendId, Long recvId) {
-        return baseMapper.updateMessageStatus(status, sendId, recvId);
+        int count = 0;
+        for (MessageShardTable table : messageShardingRouter.getPrivateReadTables(sendId, recvId)) {
+            count += MessageDataSourceContext.call(table, (t) -> baseMapper.updateMessageStatus(t, status, sendId, recvId));
+        }
+        return count;
     }
 
     /**
@@ -197,7 +422,8 @@ public class PrivateMessageDomainServiceImpl extends ServiceImpl<PrivateMessageR
      * 用于更新单条消息的状态，如标记为已读、已撤回等
      * 
      * 实现方式：
-     * 直接调用Repository层的updateMessageStatusById方法执行更新操作
+     * 依次更新消息id可能所在的表，命中后返回；迁移期间消息可能同时存在于迁移前后的表中，需更新所有表，
+     * 否则迁移复制或读取时会得到旧状态
      *
      * @param status    目标消息状态，如已读(1)、已撤回(2)等
      * @param messageId 待更新的消息ID
@@ -205,7 +431,25 @@ public class PrivateMessageDomainServiceImpl extends ServiceImpl<PrivateMessageR
      */
     @Override
     public int updateMessageStatusById(Integer status, Long messageId) {
-        return baseMapper.updateMessageStatusById(status, messageId);
+        boolean migrating = messageShardingRouter.isMigrating();
+        int total = 0;
+        for (MessageShardTable table : messageShardingRouter.getPrivateTablesOfId(messageId)) {
+            int count = MessageDataSourceContext.call(table, (t) -> baseMapper.updateMessageStatusById(t, status, messageId));
+            if (count > 0 && !migrating) {
+                return count;
+            }
+            total += count;
+        }
+        if (total > 0) {
+            return total;
+        }
+        for (MessageShardTable archiveTable : messageShardingRouter.getPrivateArchiveTablesOfId(messageId)) {
+            int count = MessageDataSourceContext.call(archiveTable, (t) -> baseMapper.updateMessageStatusById(t, status, messageId));
+            if (count > 0) {
+                return count;
+            }
+        }
+        return 0;
     }
 
     /**
@@ -220,6 +464,167 @@ public class PrivateMessageDomainServiceImpl extends ServiceImpl<PrivateMessageR
      */
     @Override
     public PrivateMessageVO getPrivateMessageById(Long messageId) {
-        return baseMapper.getPrivateMessageById(messageId);
+        for (MessageShardTable table : messageShardingRouter.getPrivateTablesOfId(messageId)) {
+            PrivateMessageVO privateMessage = MessageDataSourceContext.call(table, (t) -> baseMapper.getPrivateMessageById(t, messageId));
+            if (privateMessage != null) {
+                return privateMessage;
+            }
+        }
+        for (MessageShardTable archiveTable : messageShardingRouter.getPrivateArchiveTablesOfId(messageId)) {
+            PrivateMessageVO privateMessage = MessageDataSourceContext.call(archiveTable, (t) -> baseMapper.getPrivateMessageById(t, messageId));
+            if (privateMessage != null) {
+                return privateMessage;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 迁移一批私聊消息到当前分表
+     * 按主键顺序读取源表的一批消息，按会话路由写入目标分表，已存在的消息忽略；
+     * 写入后按源表同步消息状态，读取之后源表发生的更新不会被旧数据覆盖；
+     * 源表本身是当前分表之一时（调整分表数），写入其他分表的消息从源表删除；
+     * 目标分表与源表不在同一数据源时（单张原表拆分到多个数据源），无法联表同步，先从源表读出状态再更新目标分表
+     *
+     * @param sourceTable 源表名
+     * @param afterId     上一批的最大消息ID，首批传0
+     * @param batchSize   批次大小
+     * @return 本批的最大消息ID，源表已迁移完成时返回null
+     */
+    @Override
+    public Long migrateBatch(String sourceTable, Long afterId, int batchSize) {
+        MessageShardTable source = messageShardingRouter.locatePrivateTable(sourceTable);
+        List<PrivateMessage> privateMessageList = MessageDataSourceContext.call(source, (t) -> baseMapper.getMigrateBatch(t, afterId, batchSize));
+        if (CollectionUtil.isEmpty(privateMessageList)) {
+            return null;
+        }
+        boolean sourceIsShard = messageShardingRouter.getPrivateTables().contains(source);
+        Map<MessageShardTable, List<PrivateMessage>> tableMessages = new HashMap<>();
+        for (PrivateMessage privateMessage : privateMessageList) {
+            if (StrUtil.isEmpty(privateMessage.getConversationId())) {
+                privateMessage.setConversationId(ConversationUtils.getPrivateConversationId(privateMessage.getSendId(), privateMessage.getRecvId()));
+            }
+            MessageShardTable table = messageShardingRouter.getPrivateTable(privateMessage.getConversationId());
+            if (!table.equals(source)) {
+                tableMessages.computeIfAbsent(table, (key) -> new ArrayList<>()).add(privateMessage);
+            }
+        }
+        for (Map.Entry<MessageShardTable, List<PrivateMessage>> entry : tableMessages.entrySet()) {
+            MessageShardTable target = entry.getKey();
+            List<Long> ids = entry.getValue().stream().map(PrivateMessage::getId).collect(Collectors.toList());
+            MessageDataSourceContext.call(target, (t) -> baseMapper.insertIgnoreBatch(t, entry.getValue()));
+            if (target.getDataSource() == source.getDataSource()) {
+                MessageDataSourceContext.call(target, (t) -> baseMapper.syncStatus(t, source.getTable(), ids));
+            } else {
+                this.syncStatusAcrossDataSource(source, target, ids);
+            }
+            if (sourceIsShard) {
+                MessageDataSourceContext.call(source, (t) -> baseMapper.deleteByIds(t, ids));
+            }
+        }
+        return privateMessageList.get(privateMessageList.size() - 1).getId();
+    }
+
+    /**
+     * 跨数据源同步迁移消息的状态
+     * 迁移期间按id更新消息会同时更新源表和目标分表，读出源表状态之后的更新不会丢失
+     */
+    private void syncStatusAcrossDataSource(MessageShardTable source, MessageShardTable target, List<Long> ids) {
+        Map<Integer, List<Long>> statusIds = MessageDataSourceContext.call(source, (t) -> baseMapper.getStatusByIds(t, ids)).stream()
+                .collect(Collectors.groupingBy(PrivateMessage::getStatus, Collectors.mapping(PrivateMessage::getId, Collectors.toList())));
+        statusIds.forEach((status, statusMessageIds) ->
+                MessageDataSourceContext.call(target, (t) -> baseMapper.updateStatusByIds(t, status, statusMessageIds)));
+    }
+
+    @Override
+    public Long getMaxMessageId(Long userId, Long friendId, Date time) {
+        String conversationId = ConversationUtils.getPrivateConversationId(userId, friendId);
+        // 该时刻之后生成的雪花id都不小于下一毫秒的最小id；未开启雪花id时间换算时按发送时间限制
+        Long beforeId = time != null && SnowFlakeIdUtils.isEnabled() ? SnowFlakeIdUtils.getMinIdOfTime(new Date(time.getTime() + 1)) : null;
+        Long maxMessageId = null;
+        for (MessageShardTable table : messageShardingRouter.getPrivateReadTables(conversationId)) {
+            Long messageId = MessageDataSourceContext.call(table, (t) -> baseMapper.getMaxMessageIdByConversationId(t, conversationId, beforeId, time));
+            if (messageId != null && (maxMessageId == null || messageId > maxMessageId)) {
+                maxMessageId = messageId;
+            }
+        }
+        return maxMessageId;
+    }
+
+    /**
+     * 按消息ID加载私聊消息
+     * 按会话所在的分表分组，每张分表一次主键IN查询
+     */
+    @Override
+    public List<PrivateMessageVO> getPrivateMessagesByIds(Long userId, Map<Long, List<Long>> friendMessageIds) {
+        if (CollectionUtil.isEmpty(friendMessageIds)) {
+            return new ArrayList<>();
+        }
+        Map<MessageShardTable, List<Long>> tableIds = new HashMap<>();
+        friendMessageIds.forEach((friendId, ids) -> {
+            for (MessageShardTable table : messageShardingRouter.getPrivateReadTables(userId, friendId)) {
+                tableIds.computeIfAbsent(table, (key) -> new ArrayList<>()).addAll(ids);
+            }
+        });
+        List<PrivateMessageVO> privateMessageList = new ArrayList<>();
+        for (Map.Entry<MessageShardTable, List<Long>> entry : tableIds.entrySet()) {
+            privateMessageList.addAll(MessageDataSourceContext.call(entry.getKey(), (t) -> baseMapper.getMessagesByIds(t, entry.getValue())));
+        }
+        if (messageShardingRouter.isMigrating()) {
+            privateMessageList = ShardingResultMerger.distinct(privateMessageList, PrivateMessageVO::getId);
+        }
+        privateMessageList.sort(Comparator.comparing(PrivateMessageVO::getId));
+        return privateMessageList;
+    }
+
+    /**
+     * 将一批超过保留时长的私聊消息从热表移入归档表
+     * 写入归档表、按热表同步状态、删除热表中状态一致的消息在同一事务中执行，归档表与热表位于同一数据源；
+     * 读取之后被撤回的消息状态不一致时保留在热表，下一批重新归档，撤回不会丢失
+     *
+     * @param table     热表
+     * @param cutoff    归档时间点
+     * @param batchSize 批次大小
+     * @return 本批归档的消息数
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int archiveBatch(MessageShardTable table, Date cutoff, int batchSize) {
+        MessageShardTable archiveTable = messageShardingRouter.getPrivateArchiveTable(table);
+        if (archiveTable == null) {
+            return 0;
+        }
+        Long beforeId = SnowFlakeIdUtils.isEnabled() ? SnowFlakeIdUtils.getMinIdOfTime(cutoff) : null;
+        Date beforeDate = beforeId == null ? cutoff : null;
+        List<PrivateMessage> privateMessageList = MessageDataSourceContext.call(table, (t) -> baseMapper.getArchiveBatch(t, beforeId, beforeDate, batchSize));
+        if (CollectionUtil.isEmpty(privateMessageList)) {
+            return 0;
+        }
+        List<Long> ids = privateMessageList.stream().map(PrivateMessage::getId).collect(Collectors.toList());
+        int count = MessageDataSourceContext.call(table, (t) -> {
+            baseMapper.insertIgnoreBatch(archiveTable.getTable(), privateMessageList);
+            baseMapper.syncStatus(archiveTable.getTable(), t, ids);
+            return baseMapper.deleteArchived(t, archiveTable.getTable(), ids);
+        });
+        if (count < ids.size()) {
+            logger.info("archiveBatch|归档期间消息状态变化，保留在热表等待重新归档|热表:{}|条数:{}", table, ids.size() - count);
+        }
+        return privateMessageList.size();
+    }
+
+    /**
+     * 按用户与好友的会话所在分表对好友id分组，迁移期间好友同时归入迁移前的表
+     */
+    private Map<MessageShardTable, List<Long>> groupFriendIdsByTable(Long userId, List<Long> friendIds) {
+        if (!messageShardingRouter.isMigrating()) {
+            return friendIds.stream().collect(Collectors.groupingBy(friendId -> messageShardingRouter.getPrivateTable(userId, friendId)));
+        }
+        Map<MessageShardTable, List<Long>> tableFriendIds = new HashMap<>();
+        for (Long friendId : friendIds) {
+            for (MessageShardTable table : messageShardingRouter.getPrivateReadTables(userId, friendId)) {
+                tableFriendIds.computeIfAbsent(table, (key) -> new ArrayList<>()).add(friendId);
+            }
+        }
+        return tableFriendIds;
     }
 }
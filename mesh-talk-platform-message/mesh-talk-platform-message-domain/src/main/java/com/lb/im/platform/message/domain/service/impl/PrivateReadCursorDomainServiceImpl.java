@@ -0,0 +1,42 @@
+package com.lb.im.platform.message.domain.service.impl;
+
+import cn.hutool.core.collection.CollectionUtil;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.lb.im.platform.common.model.entity.PrivateReadCursor;
+import com.lb.im.platform.message.domain.repository.PrivateReadCursorRepository;
+import com.lb.im.platform.message.domain.service.PrivateReadCursorDomainService;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 私聊已读位置领域服务实现类
+ */
+@Service
+public class PrivateReadCursorDomainServiceImpl extends ServiceImpl<PrivateReadCursorRepository, PrivateReadCursor> implements PrivateReadCursorDomainService {
+
+    @Override
+    public int batchSaveMax(List<PrivateReadCursor> list) {
+        if (CollectionUtil.isEmpty(list)) {
+            return 0;
+        }
+        return baseMapper.batchSaveMax(list);
+    }
+
+    @Override
+    public List<PrivateReadCursor> getReadCursorsOfReader(Long userId, List<Long> friendIds) {
+        if (CollectionUtil.isEmpty(friendIds)) {
+            return Collections.emptyList();
+        }
+        return baseMapper.getReadCursorsOfReader(userId, friendIds);
+    }
+
+    @Override
+    public List<PrivateReadCursor> getReadCursorsOfFriend(Long friendId, List<Long> userIds) {
+        if (CollectionUtil.isEmpty(userIds)) {
+            return Collections.emptyList();
+        }
+        return baseMapper.getReadCursorsOfFriend(friendId, userIds);
+    }
+}
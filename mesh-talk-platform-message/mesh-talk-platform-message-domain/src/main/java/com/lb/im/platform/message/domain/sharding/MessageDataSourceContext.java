@@ -0,0 +1,84 @@
+package com.lb.im.platform.message.domain.sharding;
+
+import com.lb.im.platform.common.exception.IMException;
+import com.lb.im.platform.common.model.enums.HttpCode;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Function;
+
+/**
+ * 消息数据源路由上下文
+ * 访问消息分表前将分表所在的数据源序号放入当前线程，由MessageRoutingDataSource据此选择数据源，访问结束后恢复
+ *
+ * 技术点：
+ * 1. 事务中的连接在第一条语句执行时才获取（LazyConnectionDataSourceProxy），事务绑定到第一条语句所在的数据源
+ * 2. 同一事务访问第二个数据源时直接抛出异常，一次写入只在一个数据源的本地事务中提交，不会退化为跨库事务
+ * 3. 不在上下文中的访问（发件箱、已读位置等非分表数据）使用默认数据源
+ */
+public final class MessageDataSourceContext {
+
+    /**
+     * 默认数据源序号
+     */
+    public static final int DEFAULT_DATA_SOURCE = 0;
+
+    // 事务已绑定的数据源序号在事务资源中的键
+    private static final Object TX_DATA_SOURCE_KEY = new Object();
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private MessageDataSourceContext() {
+    }
+
+    /**
+     * 在分表所在的数据源上执行操作
+     *
+     * @param table  消息物理表
+     * @param action 操作，参数为物理表名
+     * @return 操作结果
+     */
+    public static <T> T call(MessageShardTable table, Function<String, T> action) {
+        checkTransaction(table);
+        Integer previous = CURRENT.get();
+        CURRENT.set(table.getDataSource());
+        try {
+            return action.apply(table.getTable());
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 当前线程访问的数据源序号，不在上下文中时返回默认数据源
+     */
+    public static int current() {
+        Integer dataSource = CURRENT.get();
+        return dataSource == null ? DEFAULT_DATA_SOURCE : dataSource;
+    }
+
+    /**
+     * 校验同一事务只访问一个数据源，第一次访问时将数据源序号绑定到事务，事务结束后解绑
+     */
+    private static void checkTransaction(MessageShardTable table) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        Integer bound = (Integer) TransactionSynchronizationManager.getResource(TX_DATA_SOURCE_KEY);
+        if (bound == null) {
+            TransactionSynchronizationManager.bindResource(TX_DATA_SOURCE_KEY, table.getDataSource());
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(TX_DATA_SOURCE_KEY);
+                }
+            });
+        } else if (bound != table.getDataSource()) {
+            throw new IMException(HttpCode.PROGRAM_ERROR, "同一事务不能访问多个消息数据源:ds" + bound + ",ds" + table.getDataSource());
+        }
+    }
+}
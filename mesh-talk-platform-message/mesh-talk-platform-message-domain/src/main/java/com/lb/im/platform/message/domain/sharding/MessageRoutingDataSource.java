@@ -0,0 +1,16 @@
+package com.lb.im.platform.message.domain.sharding;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * 消息路由数据源
+ * 按MessageDataSourceContext中的数据源序号选择目标数据源，需由LazyConnectionDataSourceProxy包装，
+ * 保证事务中的连接在第一条语句执行时按路由结果获取
+ */
+public class MessageRoutingDataSource extends AbstractRoutingDataSource {
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return MessageDataSourceContext.current();
+    }
+}
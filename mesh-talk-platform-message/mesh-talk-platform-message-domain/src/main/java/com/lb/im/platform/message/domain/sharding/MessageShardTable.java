@@ -0,0 +1,50 @@
+package com.lb.im.platform.message.domain.sharding;
+
+import java.util.Objects;
+
+/**
+ * 消息物理表
+ * 由所在数据源序号和表名组成，先按数据源路由，再在数据源内按表名访问
+ */
+public final class MessageShardTable {
+
+    // 数据源序号
+    private final int dataSource;
+    // 物理表名
+    private final String table;
+
+    public MessageShardTable(int dataSource, String table) {
+        this.dataSource = dataSource;
+        this.table = table;
+    }
+
+    public int getDataSource() {
+        return dataSource;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MessageShardTable)) {
+            return false;
+        }
+        MessageShardTable that = (MessageShardTable) o;
+        return dataSource == that.dataSource && table.equals(that.table);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(dataSource, table);
+    }
+
+    @Override
+    public String toString() {
+        return "ds" + dataSource + "." + table;
+    }
+}
@@ -0,0 +1,410 @@
+package com.lb.im.platform.message.domain.sharding;
+
+import com.lb.im.common.cache.id.SnowFlakeFactory;
+import com.lb.im.platform.common.exception.IMException;
+import com.lb.im.platform.common.model.constants.IMPlatformConstants;
+import com.lb.im.platform.common.model.enums.HttpCode;
+import com.lb.im.platform.common.utils.ConversationUtils;
+import com.lb.im.platform.common.utils.SnowFlakeIdUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 消息分表路由
+ * 三条路由规则：
+ * 1. 私聊消息按会话id路由，同一会话的消息在同一张表，会话内的查询只访问一张表
+ * 2. 群聊消息按群组id路由，同一群的消息在同一张表
+ * 3. 按消息id查询时，从id低位取出生成时嵌入的分片槽位直接定位分表；
+ *    分表前写入的历史消息（id不大于legacyMaxId）或雪花id布局未通过校验时，依次查询所有分表；
+ *    legacyMaxId未配置（不大于0）时所有消息id都按历史消息处理
+ *
+ * 迁移期间：分表数（tables）与迁移前的分表数（previousTables）不同且legacyMaxId未配置时，
+ * 会话、群组维度的查询同时读取当前布局和迁移前布局的表并按消息id去重合并，按id查询和更新覆盖两种布局的所有表，
+ * 迁移完成并配置legacyMaxId后只读取当前布局
+ *
+ * 槽位数固定为2^MESSAGE_SHARD_SLOT_BITS，物理分表序号 = 槽位 % 分表数，
+ * 分表数调整时槽位不变，只需按新的分表数迁移数据，消息id无需变化
+ * 多数据源时先路由数据源再路由表：分表序号为i的表位于数据源 i % 数据源数，数据源数须整除分表数，
+ * 同一槽位在调整分表数前后位于同一数据源，迁移和归档都在数据源内完成；只有从单张原表拆分时跨数据源
+ * 开启冷热分层后，超过保留时长的消息由各分表移入归档表，历史消息查询在热表不足一页时继续查询归档表
+ * 依赖SnowFlakeIdConfig先完成雪花id布局校验
+ */
+@Component
+@DependsOn("snowFlakeIdConfig")
+public class MessageShardingRouter {
+    private final Logger logger = LoggerFactory.getLogger(MessageShardingRouter.class);
+
+    /**
+     * 分片槽位数
+     */
+    private static final int SLOT_COUNT = 1 << IMPlatformConstants.MESSAGE_SHARD_SLOT_BITS;
+
+    /**
+     * 物理分表数，为1时使用不带序号的原表
+     */
+    @Value("${message.sharding.tables:1}")
+    private Integer tables;
+
+    /**
+     * 消息分表所在的数据源数，须整除分表数，为1时所有分表位于默认数据源
+     */
+    @Value("${message.sharding.dataSources:1}")
+    private Integer dataSources;
+
+    /**
+     * 分表前写入的最大消息id，不大于该值的消息id未嵌入槽位；未配置（不大于0）时所有消息id都按历史消息处理
+     */
+    @Value("${message.sharding.legacyMaxId:0}")
+    private Long legacyMaxId;
+
+    /**
+     * 迁移前的物理分表数，为1时迁移源为不带序号的原表
+     */
+    @Value("${message.sharding.previousTables:1}")
+    private Integer previousTables;
+
+    /**
+     * SDK雪花id的序列号位数
+     */
+    @Value("${message.sharding.sequenceBits:12}")
+    private Integer sequenceBits;
+
+    /**
+     * 是否开启消息冷热分层，开启前需先建好归档表
+     */
+    @Value("${message.archive.enabled:false}")
+    private Boolean archiveEnabled;
+
+    // 嵌入槽位的id生成器，雪花id布局未通过校验时为空
+    private ShardedMessageIdGenerator idGenerator;
+    // 私聊消息物理表
+    private List<MessageShardTable> privateTables;
+    // 群聊消息物理表
+    private List<MessageShardTable> groupTables;
+    // 迁移前布局的私聊消息物理表
+    private List<MessageShardTable> previousPrivateTables;
+    // 迁移前布局的群聊消息物理表
+    private List<MessageShardTable> previousGroupTables;
+    // 按历史消息id查询时访问的私聊消息物理表，当前布局在前
+    private List<MessageShardTable> legacyPrivateTables;
+    // 按历史消息id查询时访问的群聊消息物理表，当前布局在前
+    private List<MessageShardTable> legacyGroupTables;
+    // 是否处于迁移期间
+    private boolean migrating;
+
+    @PostConstruct
+    public void init() {
+        if (tables == null || tables < 1 || tables > SLOT_COUNT || SLOT_COUNT % tables != 0) {
+            throw new IMException(HttpCode.PROGRAM_ERROR, "消息分表数必须能整除" + SLOT_COUNT);
+        }
+        if (previousTables == null || previousTables < 1 || previousTables > SLOT_COUNT || SLOT_COUNT % previousTables != 0) {
+            throw new IMException(HttpCode.PROGRAM_ERROR, "迁移前的消息分表数必须能整除" + SLOT_COUNT);
+        }
+        if (dataSources == null || dataSources < 1 || tables % dataSources != 0) {
+            throw new IMException(HttpCode.PROGRAM_ERROR, "消息数据源数必须能整除消息分表数");
+        }
+        if (previousTables > 1 && previousTables % dataSources != 0) {
+            throw new IMException(HttpCode.PROGRAM_ERROR, "消息数据源数必须能整除迁移前的消息分表数");
+        }
+        privateTables = this.buildTables(IMPlatformConstants.PRIVATE_MESSAGE_TABLE, tables);
+        groupTables = this.buildTables(IMPlatformConstants.GROUP_MESSAGE_TABLE, tables);
+        migrating = !previousTables.equals(tables) && !this.isLegacyMaxIdConfigured();
+        previousPrivateTables = migrating ? this.buildTables(IMPlatformConstants.PRIVATE_MESSAGE_TABLE, previousTables) : privateTables;
+        previousGroupTables = migrating ? this.buildTables(IMPlatformConstants.GROUP_MESSAGE_TABLE, previousTables) : groupTables;
+        legacyPrivateTables = this.union(privateTables, previousPrivateTables);
+        legacyGroupTables = this.union(groupTables, previousGroupTables);
+        if (SnowFlakeIdUtils.isVerified()) {
+            idGenerator = new ShardedMessageIdGenerator(SnowFlakeIdUtils.getEpochMillis(), SnowFlakeIdUtils.getTimestampShift(),
+                    sequenceBits, IMPlatformConstants.MESSAGE_SHARD_SLOT_BITS, SnowFlakeFactory.getSnowFlakeFromCache().nextId());
+        } else {
+            logger.warn("MessageShardingRouter|雪花id布局未通过校验，消息id不嵌入分片槽位，按id查询时访问所有分表");
+        }
+        if (migrating) {
+            logger.warn("MessageShardingRouter|迁移期间，会话查询同时读取迁移前的{}张表，迁移完成后需配置分表前最大消息id", previousTables);
+        } else if (tables > 1 && !this.isLegacyMaxIdConfigured()) {
+            logger.warn("MessageShardingRouter|未配置分表前最大消息id，按id查询时访问所有分表");
+        }
+        logger.info("MessageShardingRouter|消息分表数:{}|数据源数:{}|迁移前分表数:{}|分表前最大消息id:{}|冷热分层:{}",
+                    tables, dataSources, previousTables, legacyMaxId, archiveEnabled);
+    }
+
+    /**
+     * 生成私聊消息id，id中嵌入会话所在的槽位
+     *
+     * @param sendId 发送者id
+     * @param recvId 接收者id
+     * @return 消息id
+     */
+    public long nextPrivateMessageId(Long sendId, Long recvId) {
+        if (idGenerator == null) {
+            return SnowFlakeFactory.getSnowFlakeFromCache().nextId();
+        }
+        return idGenerator.nextId(this.getSlot(ConversationUtils.getPrivateConversationId(sendId, recvId).hashCode()));
+    }
+
+    /**
+     * 生成群聊消息id，id中嵌入群组所在的槽位
+     *
+     * @param groupId 群组id
+     * @return 消息id
+     */
+    public long nextGroupMessageId(Long groupId) {
+        if (idGenerator == null) {
+            return SnowFlakeFactory.getSnowFlakeFromCache().nextId();
+        }
+        return idGenerator.nextId(this.getSlot(Long.hashCode(groupId)));
+    }
+
+    /**
+     * 获取私聊会话所在的物理表
+     *
+     * @param conversationId 会话id
+     * @return 物理表
+     */
+    public MessageShardTable getPrivateTable(String conversationId) {
+        return privateTables.get(this.getSlot(conversationId.hashCode()) % tables);
+    }
+
+    /**
+     * 获取用户与好友的私聊会话所在的物理表
+     */
+    public MessageShardTable getPrivateTable(Long userId, Long friendId) {
+        return this.getPrivateTable(ConversationUtils.getPrivateConversationId(userId, friendId));
+    }
+
+    /**
+     * 获取群组所在的物理表
+     *
+     * @param groupId 群组id
+     * @return 物理表
+     */
+    public MessageShardTable getGroupTable(Long groupId) {
+        return groupTables.get(this.getSlot(Long.hashCode(groupId)) % tables);
+    }
+
+    /**
+     * 获取私聊会话的消息所在的物理表
+     * 迁移期间会话的消息可能仍在迁移前布局的表中，返回当前表和迁移前的表，当前表在前
+     *
+     * @param conversationId 会话id
+     * @return 物理表列表
+     */
+    public List<MessageShardTable> getPrivateReadTables(String conversationId) {
+        int slot = this.getSlot(conversationId.hashCode());
+        return this.getReadTables(privateTables, previousPrivateTables, slot);
+    }
+
+    /**
+     * 获取用户与好友的私聊会话的消息所在的物理表
+     */
+    public List<MessageShardTable> getPrivateReadTables(Long userId, Long friendId) {
+        return this.getPrivateReadTables(ConversationUtils.getPrivateConversationId(userId, friendId));
+    }
+
+    /**
+     * 获取群组的消息所在的物理表
+     * 迁移期间返回当前表和迁移前的表，当前表在前
+     *
+     * @param groupId 群组id
+     * @return 物理表列表
+     */
+    public List<MessageShardTable> getGroupReadTables(Long groupId) {
+        return this.getReadTables(groupTables, previousGroupTables, this.getSlot(Long.hashCode(groupId)));
+    }
+
+    /**
+     * 获取私聊消息id可能所在的物理表
+     * 新消息从id中的槽位直接定位到一张表，历史消息返回所有分表，迁移期间还包括迁移前布局的表
+     *
+     * @param messageId 消息id
+     * @return 物理表列表
+     */
+    public List<MessageShardTable> getPrivateTablesOfId(Long messageId) {
+        return this.getTablesOfId(privateTables, legacyPrivateTables, messageId);
+    }
+
+    /**
+     * 获取群聊消息id可能所在的物理表
+     */
+    public List<MessageShardTable> getGroupTablesOfId(Long messageId) {
+        return this.getTablesOfId(groupTables, legacyGroupTables, messageId);
+    }
+
+    /**
+     * 获取热表所在数据源的私聊消息归档表，每个数据源一张归档表，未开启冷热分层时返回null
+     *
+     * @param hotTable 热表
+     * @return 归档表
+     */
+    public MessageShardTable getPrivateArchiveTable(MessageShardTable hotTable) {
+        return this.isArchiveEnabled() ? new MessageShardTable(hotTable.getDataSource(), IMPlatformConstants.PRIVATE_MESSAGE_ARCHIVE_TABLE) : null;
+    }
+
+    /**
+     * 获取热表所在数据源的群聊消息归档表，未开启冷热分层时返回null
+     */
+    public MessageShardTable getGroupArchiveTable(MessageShardTable hotTable) {
+        return this.isArchiveEnabled() ? new MessageShardTable(hotTable.getDataSource(), IMPlatformConstants.GROUP_MESSAGE_ARCHIVE_TABLE) : null;
+    }
+
+    /**
+     * 获取私聊消息id可能所在的归档表
+     * 新消息从id中的槽位定位到一个数据源的归档表，历史消息返回所有数据源的归档表，未开启冷热分层时返回空列表
+     *
+     * @param messageId 消息id
+     * @return 归档表列表
+     */
+    public List<MessageShardTable> getPrivateArchiveTablesOfId(Long messageId) {
+        return this.getArchiveTablesOfId(IMPlatformConstants.PRIVATE_MESSAGE_ARCHIVE_TABLE, messageId);
+    }
+
+    /**
+     * 获取群聊消息id可能所在的归档表
+     */
+    public List<MessageShardTable> getGroupArchiveTablesOfId(Long messageId) {
+        return this.getArchiveTablesOfId(IMPlatformConstants.GROUP_MESSAGE_ARCHIVE_TABLE, messageId);
+    }
+
+    /**
+     * 获取各数据源的群聊@提及索引表，未指定群组查询@消息时逐个数据源查询
+     */
+    public List<MessageShardTable> getGroupMentionTables() {
+        List<MessageShardTable> mentionTables = new ArrayList<>(dataSources);
+        for (int i = 0; i < dataSources; i++) {
+            mentionTables.add(new MessageShardTable(i, IMPlatformConstants.GROUP_MESSAGE_MENTION_TABLE));
+        }
+        return mentionTables;
+    }
+
+    /**
+     * 按表名定位私聊消息表所在的数据源，用于配置的迁移源表；不属于当前和迁移前布局的表（单张原表）位于默认数据源
+     *
+     * @param table 物理表名
+     * @return 物理表
+     */
+    public MessageShardTable locatePrivateTable(String table) {
+        return this.locate(legacyPrivateTables, table);
+    }
+
+    /**
+     * 按表名定位群聊消息表所在的数据源
+     */
+    public MessageShardTable locateGroupTable(String table) {
+        return this.locate(legacyGroupTables, table);
+    }
+
+    /**
+     * 是否处于迁移期间，迁移期间按id更新消息时需要更新所有可能存在该消息的表
+     */
+    public boolean isMigrating() {
+        return migrating;
+    }
+
+    public boolean isArchiveEnabled() {
+        return Boolean.TRUE.equals(archiveEnabled);
+    }
+
+    public int getDataSources() {
+        return dataSources;
+    }
+
+    public List<MessageShardTable> getPrivateTables() {
+        return privateTables;
+    }
+
+    public List<MessageShardTable> getGroupTables() {
+        return groupTables;
+    }
+
+    private List<MessageShardTable> getTablesOfId(List<MessageShardTable> allTables, List<MessageShardTable> legacyTables, Long messageId) {
+        if (legacyTables.size() == 1 || !this.isSlotId(messageId)) {
+            return legacyTables;
+        }
+        return Collections.singletonList(allTables.get(this.getSlotOfId(messageId) % tables));
+    }
+
+    private List<MessageShardTable> getArchiveTablesOfId(String archiveTable, Long messageId) {
+        if (!this.isArchiveEnabled()) {
+            return Collections.emptyList();
+        }
+        if (dataSources == 1 || !this.isSlotId(messageId)) {
+            List<MessageShardTable> archiveTables = new ArrayList<>(dataSources);
+            for (int i = 0; i < dataSources; i++) {
+                archiveTables.add(new MessageShardTable(i, archiveTable));
+            }
+            return archiveTables;
+        }
+        return Collections.singletonList(new MessageShardTable(this.getSlotOfId(messageId) % dataSources, archiveTable));
+    }
+
+    private List<MessageShardTable> getReadTables(List<MessageShardTable> currentTables, List<MessageShardTable> oldTables, int slot) {
+        MessageShardTable table = currentTables.get(slot % currentTables.size());
+        if (!migrating) {
+            return Collections.singletonList(table);
+        }
+        MessageShardTable oldTable = oldTables.get(slot % oldTables.size());
+        return table.equals(oldTable) ? Collections.singletonList(table) : Arrays.asList(table, oldTable);
+    }
+
+    private MessageShardTable locate(List<MessageShardTable> knownTables, String table) {
+        for (MessageShardTable shardTable : knownTables) {
+            if (shardTable.getTable().equals(table)) {
+                return shardTable;
+            }
+        }
+        return new MessageShardTable(MessageDataSourceContext.DEFAULT_DATA_SOURCE, table);
+    }
+
+    /**
+     * 消息id是否嵌入了分片槽位
+     */
+    private boolean isSlotId(Long messageId) {
+        return idGenerator != null && messageId != null && this.isLegacyMaxIdConfigured() && messageId > legacyMaxId;
+    }
+
+    private int getSlotOfId(long messageId) {
+        return (int) (messageId & (SLOT_COUNT - 1));
+    }
+
+    private boolean isLegacyMaxIdConfigured() {
+        return legacyMaxId != null && legacyMaxId > 0;
+    }
+
+    private List<MessageShardTable> union(List<MessageShardTable> first, List<MessageShardTable> second) {
+        Set<MessageShardTable> union = new LinkedHashSet<>(first);
+        union.addAll(second);
+        return Collections.unmodifiableList(new ArrayList<>(union));
+    }
+
+    /**
+     * 根据路由键的哈希值计算槽位，高低位混合后取低位
+     */
+    private int getSlot(int hash) {
+        return (hash ^ (hash >>> 16)) & (SLOT_COUNT - 1);
+    }
+
+    /**
+     * 生成物理表，分表序号为i的表位于数据源 i % 数据源数，单张原表位于默认数据源
+     */
+    private List<MessageShardTable> buildTables(String logicTable, int count) {
+        if (count == 1) {
+            return Collections.singletonList(new MessageShardTable(MessageDataSourceContext.DEFAULT_DATA_SOURCE, logicTable));
+        }
+        List<MessageShardTable> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(new MessageShardTable(i % dataSources, logicTable + "_" + i));
+        }
+        return Collections.unmodifiableList(list);
+    }
+}
@@ -0,0 +1,74 @@
+package com.lb.im.platform.message.domain.sharding;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 嵌入分片槽位的消息id生成器
+ * 与SDK雪花id的时间戳位、机器位保持相同布局，只把序列号的低位让给分片槽位：
+ * 时间戳 | 数据中心和机器 | 序列号(sequenceBits - slotBits) | 分片槽位(slotBits)
+ * 时间戳位不变，按id换算时间的逻辑继续有效；按id查询时直接从低位取出槽位定位分表
+ *
+ * 时间戳和序列号合并保存在一个AtomicLong中，通过CAS推进，不加锁；
+ * 同一毫秒序列号用尽或时钟回拨时沿用上一个时间戳继续递增，保证单调且不重复
+ */
+public class ShardedMessageIdGenerator {
+
+    // 雪花算法起始时间
+    private final long epochMillis;
+    // 时间戳左移位数
+    private final int timestampShift;
+    // 数据中心和机器位，已左移到位
+    private final long workerBits;
+    // 分片槽位占用的位数
+    private final int slotBits;
+    // 本生成器可用的序列号位数
+    private final int localSequenceBits;
+    // 序列号掩码
+    private final long sequenceMask;
+    // 上次生成的时间戳和序列号：(时间戳 << localSequenceBits) | 序列号
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * @param epochMillis    雪花算法起始时间
+     * @param timestampShift 时间戳左移位数
+     * @param sequenceBits   SDK雪花id的序列号位数
+     * @param slotBits       分片槽位位数
+     * @param sampleId       SDK生成的一个雪花id，从中取出本机的数据中心和机器位
+     */
+    public ShardedMessageIdGenerator(long epochMillis, int timestampShift, int sequenceBits, int slotBits, long sampleId) {
+        if (slotBits >= sequenceBits || sequenceBits >= timestampShift) {
+            throw new IllegalArgumentException("雪花id布局不支持嵌入分片槽位");
+        }
+        this.epochMillis = epochMillis;
+        this.timestampShift = timestampShift;
+        this.slotBits = slotBits;
+        this.localSequenceBits = sequenceBits - slotBits;
+        this.sequenceMask = (1L << localSequenceBits) - 1;
+        long workerMask = ((1L << timestampShift) - 1) ^ ((1L << sequenceBits) - 1);
+        this.workerBits = sampleId & workerMask;
+    }
+
+    /**
+     * 生成嵌入指定槽位的消息id
+     *
+     * @param slot 分片槽位
+     * @return 消息id
+     */
+    public long nextId(int slot) {
+        while (true) {
+            long now = System.currentTimeMillis() - epochMillis;
+            long last = state.get();
+            long lastTimestamp = last >>> localSequenceBits;
+            long timestamp = Math.max(now, lastTimestamp);
+            long sequence = timestamp == lastTimestamp ? (last & sequenceMask) + 1 : 0L;
+            if (sequence > sequenceMask) {
+                // 当前毫秒序列号用尽，借用下一毫秒
+                timestamp = lastTimestamp + 1;
+                sequence = 0L;
+            }
+            if (state.compareAndSet(last, (timestamp << localSequenceBits) | sequence)) {
+                return (timestamp << timestampShift) | workerBits | (sequence << slotBits) | slot;
+            }
+        }
+    }
+}
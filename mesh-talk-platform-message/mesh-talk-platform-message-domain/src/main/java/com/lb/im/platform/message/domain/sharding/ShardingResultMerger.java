@@ -0,0 +1,61 @@
+package com.lb.im.platform.message.domain.sharding;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 多表查询结果合并
+ * 迁移期间同一条消息可能同时存在于迁移前和迁移后的表中，合并时按消息id去重，保留先出现的一条（当前布局的表在前）
+ */
+public final class ShardingResultMerger {
+
+    private ShardingResultMerger() {
+    }
+
+    /**
+     * 按消息id去重，保留先出现的一条，不改变顺序
+     *
+     * @param list     合并前的结果
+     * @param idGetter 消息id读取函数
+     * @return 去重后的结果
+     */
+    public static <T> List<T> distinct(List<T> list, Function<T, Long> idGetter) {
+        Set<Long> ids = new HashSet<>(list.size());
+        List<T> result = new ArrayList<>(list.size());
+        for (T item : list) {
+            if (ids.add(idGetter.apply(item))) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 去重后按消息id升序截取limit条
+     */
+    public static <T> List<T> mergeAsc(List<T> list, Function<T, Long> idGetter, long limit) {
+        return distinct(list, idGetter).stream()
+                .sorted(Comparator.comparing(idGetter))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 去重后按消息id倒序排列，跳过offset条后截取limit条
+     * 各表需各自返回前offset + limit条，合并后才能得到正确的一页
+     */
+    public static <T> List<T> mergeDesc(List<T> list, Function<T, Long> idGetter, long offset, long limit) {
+        List<T> sorted = distinct(list, idGetter);
+        sorted.sort(Comparator.comparing(idGetter, Collections.reverseOrder()));
+        return sorted.stream()
+                .skip(offset)
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+}
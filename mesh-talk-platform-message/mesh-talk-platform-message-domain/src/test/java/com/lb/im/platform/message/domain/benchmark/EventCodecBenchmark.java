@@ -0,0 +1,150 @@
+package com.lb.im.platform.message.domain.benchmark;
+
+import com.alibaba.fastjson.JSONObject;
+import com.lb.im.common.domain.constans.IMConstants;
+import com.lb.im.platform.common.codec.EventCodec;
+import com.lb.im.platform.common.codec.EventCodecFactory;
+import com.lb.im.platform.common.model.constants.IMPlatformConstants;
+import com.lb.im.platform.common.model.dto.GroupMessageDTO;
+import com.lb.im.platform.common.model.dto.PrivateMessageDTO;
+import com.lb.im.platform.message.domain.event.IMGroupMessageTxEvent;
+import com.lb.im.platform.message.domain.event.IMPrivateMessageTxEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息事务事件编解码基准测试：原fastjson解码路径、JSON编解码器与Kryo编解码器
+ * 原路径为 byte[] -> String -> JSONObject -> String -> 事件对象；
+ * receivers为群聊事件携带的接收者数，0表示精简模式；消息体大小在初始化时输出
+ *
+ * 运行：在测试类路径下执行本类的main方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventCodecBenchmark {
+
+    @Param({"0", "200", "2000"})
+    private int receivers;
+
+    private final EventCodec jsonCodec = EventCodecFactory.getCodec(EventCodecFactory.CODEC_TYPE_JSON);
+
+    private EventCodec kryoCodec;
+
+    private IMPrivateMessageTxEvent privateEvent;
+
+    private IMGroupMessageTxEvent groupEvent;
+
+    private byte[] privateJsonBody;
+
+    private byte[] privateKryoBody;
+
+    private byte[] groupJsonBody;
+
+    private byte[] groupKryoBody;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        EventCodecFactory.registerKryoClasses(IMPrivateMessageTxEvent.class, PrivateMessageDTO.class,
+                                              IMGroupMessageTxEvent.class, GroupMessageDTO.class);
+        kryoCodec = EventCodecFactory.getCodec(EventCodecFactory.CODEC_TYPE_KRYO);
+        Date sendTime = new Date();
+        PrivateMessageDTO privateMessageDTO = new PrivateMessageDTO();
+        privateMessageDTO.setRecvId(10002L);
+        privateMessageDTO.setContent("你好，这是一条用于基准测试的私聊消息");
+        privateMessageDTO.setType(0);
+        privateEvent = new IMPrivateMessageTxEvent(1728000000000000001L, 10001L, 0, IMPlatformConstants.TOPIC_PRIVATE_TX_MESSAGE,
+                                                   sendTime, privateMessageDTO);
+        List<Long> userIds = new ArrayList<>(receivers);
+        for (int i = 0; i < receivers; i++) {
+            userIds.add(10002L + i);
+        }
+        GroupMessageDTO groupMessageDTO = new GroupMessageDTO(20001L, "你好，这是一条用于基准测试的群聊消息", 0, new ArrayList<>(Arrays.asList(10002L, 10003L)));
+        groupEvent = new IMGroupMessageTxEvent(1728000000000000002L, 10001L, "发送者", 0, sendTime, IMPlatformConstants.TOPIC_GROUP_TX_MESSAGE,
+                                               receivers == 0 ? null : userIds, groupMessageDTO);
+        if (receivers == 0) {
+            groupEvent.setMemberVersion(123456789L);
+        }
+        privateJsonBody = jsonCodec.encode(privateEvent);
+        privateKryoBody = kryoCodec.encode(privateEvent);
+        groupJsonBody = jsonCodec.encode(groupEvent);
+        groupKryoBody = kryoCodec.encode(groupEvent);
+        System.out.printf("%n消息体大小(字节)|接收者数:%d|私聊JSON:%d|私聊Kryo:%d|群聊JSON:%d|群聊Kryo:%d%n",
+                          receivers, privateJsonBody.length, privateKryoBody.length, groupJsonBody.length, groupKryoBody.length);
+    }
+
+    @Benchmark
+    public IMPrivateMessageTxEvent privateDecodeLegacyJson() {
+        return legacyDecode(privateJsonBody, IMPrivateMessageTxEvent.class);
+    }
+
+    @Benchmark
+    public IMPrivateMessageTxEvent privateDecodeJson() {
+        return jsonCodec.decode(privateJsonBody, IMPrivateMessageTxEvent.class);
+    }
+
+    @Benchmark
+    public IMPrivateMessageTxEvent privateDecodeKryo() {
+        return kryoCodec.decode(privateKryoBody, IMPrivateMessageTxEvent.class);
+    }
+
+    @Benchmark
+    public IMGroupMessageTxEvent groupDecodeLegacyJson() {
+        return legacyDecode(groupJsonBody, IMGroupMessageTxEvent.class);
+    }
+
+    @Benchmark
+    public IMGroupMessageTxEvent groupDecodeJson() {
+        return jsonCodec.decode(groupJsonBody, IMGroupMessageTxEvent.class);
+    }
+
+    @Benchmark
+    public IMGroupMessageTxEvent groupDecodeKryo() {
+        return kryoCodec.decode(groupKryoBody, IMGroupMessageTxEvent.class);
+    }
+
+    @Benchmark
+    public byte[] groupEncodeJson() {
+        return jsonCodec.encode(groupEvent);
+    }
+
+    @Benchmark
+    public byte[] groupEncodeKryo() {
+        return kryoCodec.encode(groupEvent);
+    }
+
+    /**
+     * 引入编解码器之前消费者的解码方式
+     */
+    private static <T> T legacyDecode(byte[] body, Class<T> clazz) {
+        JSONObject jsonObject = JSONObject.parseObject(new String(body, StandardCharsets.UTF_8));
+        return JSONObject.parseObject(jsonObject.getString(IMConstants.MSG_KEY), clazz);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EventCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,134 @@
+package com.lb.im.platform.message.domain.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 私聊消息写入基准测试：saveOrUpdate（按id查询后INSERT）与appendMessage（仅INSERT）
+ * 默认使用H2内存库（MySQL模式），只能体现语句数的差异；
+ * 通过 -Dbenchmark.jdbc.url/-Dbenchmark.jdbc.user/-Dbenchmark.jdbc.password 指向MySQL时可体现网络往返的差异
+ *
+ * 运行：在测试类路径下执行本类的main方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+public class MessageAppendBenchmark {
+
+    private static final String TABLE = "im_private_message_benchmark";
+
+    private static final String SELECT_SQL = "select id, send_id, recv_id, conversation_id, content, type, status, send_time from " + TABLE + " where id = ?";
+
+    private static final String INSERT_SQL = "insert into " + TABLE + "(id, send_id, recv_id, conversation_id, content, type, status, send_time) " +
+            "values (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // 模拟雪花id，每次写入都是新id
+    private final AtomicLong idGenerator = new AtomicLong(System.currentTimeMillis() << 20);
+
+    @Setup(Level.Trial)
+    public void createTable() throws SQLException {
+        try (Connection connection = getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("drop table if exists " + TABLE);
+            statement.execute("create table " + TABLE + " (id bigint not null primary key, send_id bigint not null, recv_id bigint not null, " +
+                              "conversation_id varchar(64) not null default '', content text, type tinyint not null, status tinyint not null, send_time timestamp null)");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void dropTable() throws SQLException {
+        try (Connection connection = getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("drop table if exists " + TABLE);
+        }
+    }
+
+    /**
+     * 每个线程一个连接，自动提交，与单条消息的本地事务一致
+     */
+    @State(Scope.Thread)
+    public static class ConnectionState {
+        private Connection connection;
+        private PreparedStatement selectStatement;
+        private PreparedStatement insertStatement;
+
+        @Setup(Level.Trial)
+        public void open() throws SQLException {
+            connection = getConnection();
+            connection.setAutoCommit(true);
+            selectStatement = connection.prepareStatement(SELECT_SQL);
+            insertStatement = connection.prepareStatement(INSERT_SQL);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws SQLException {
+            selectStatement.close();
+            insertStatement.close();
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public int saveOrUpdate(ConnectionState state) throws SQLException {
+        long id = idGenerator.incrementAndGet();
+        state.selectStatement.setLong(1, id);
+        try (ResultSet resultSet = state.selectStatement.executeQuery()) {
+            if (resultSet.next()) {
+                return 0;
+            }
+        }
+        return insert(state.insertStatement, id);
+    }
+
+    @Benchmark
+    public int appendMessage(ConnectionState state) throws SQLException {
+        return insert(state.insertStatement, idGenerator.incrementAndGet());
+    }
+
+    private static int insert(PreparedStatement statement, long id) throws SQLException {
+        statement.setLong(1, id);
+        statement.setLong(2, 10001L);
+        statement.setLong(3, 10002L);
+        statement.setString(4, "10001_10002");
+        statement.setString(5, "benchmark message content");
+        statement.setInt(6, 0);
+        statement.setInt(7, 0);
+        statement.setTimestamp(8, new Timestamp(System.currentTimeMillis()));
+        return statement.executeUpdate();
+    }
+
+    private static Connection getConnection() throws SQLException {
+        String url = System.getProperty("benchmark.jdbc.url", "jdbc:h2:mem:message_benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        return DriverManager.getConnection(url, System.getProperty("benchmark.jdbc.user", "sa"), System.getProperty("benchmark.jdbc.password", ""));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MessageAppendBenchmark.class.getSimpleName()).build()).run();
+    }
+}
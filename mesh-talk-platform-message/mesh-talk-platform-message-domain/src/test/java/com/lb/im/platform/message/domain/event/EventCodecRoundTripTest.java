@@ -0,0 +1,78 @@
+package com.lb.im.platform.message.domain.event;
+
+import com.alibaba.fastjson.JSONArray;
+import com.lb.im.platform.common.codec.EventCodec;
+import com.lb.im.platform.common.codec.EventCodecFactory;
+import com.lb.im.platform.common.model.dto.GroupMessageDTO;
+import com.lb.im.platform.common.model.dto.PrivateMessageDTO;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * 事件编解码往返测试
+ * 事件中的List字段可能来自Arrays.asList、subList、不可变视图或fastjson解析结果，两种编解码器都需要能完整还原
+ */
+public class EventCodecRoundTripTest {
+
+    @BeforeAll
+    public static void registerClasses() {
+        // 与IMMessageTxSender的注册顺序保持一致
+        EventCodecFactory.registerKryoClasses(IMPrivateMessageTxEvent.class, PrivateMessageDTO.class,
+                IMGroupMessageTxEvent.class, GroupMessageDTO.class);
+    }
+
+    @Test
+    public void kryoRoundTripWithListImplementations() {
+        this.roundTrip(EventCodecFactory.getCodec(EventCodecFactory.CODEC_TYPE_KRYO));
+    }
+
+    @Test
+    public void jsonRoundTripWithListImplementations() {
+        this.roundTrip(EventCodecFactory.getCodec(EventCodecFactory.CODEC_TYPE_JSON));
+    }
+
+    private void roundTrip(EventCodec codec) {
+        for (Map.Entry<String, List<Long>> entry : this.listImplementations().entrySet()) {
+            List<Long> ids = entry.getValue();
+            GroupMessageDTO groupMessageDTO = new GroupMessageDTO(10L, "hello", 0, ids);
+            IMGroupMessageTxEvent event = new IMGroupMessageTxEvent(1L, 2L, "sender", 0, new Date(), "destination", ids, groupMessageDTO);
+
+            IMGroupMessageTxEvent decoded = EventCodecFactory.decode(codec.encode(event), IMGroupMessageTxEvent.class);
+
+            assertNotNull(decoded, entry.getKey());
+            assertEquals(event.getId(), decoded.getId(), entry.getKey());
+            assertEquals(event.getSendNickName(), decoded.getSendNickName(), entry.getKey());
+            assertEquals(new ArrayList<>(ids), decoded.getUserIds(), entry.getKey());
+            assertEquals(groupMessageDTO.getGroupId(), decoded.getGroupMessageDTO().getGroupId(), entry.getKey());
+            assertEquals(new ArrayList<>(ids), decoded.getGroupMessageDTO().getAtUserIds(), entry.getKey());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, List<Long>> listImplementations() {
+        List<Long> source = new ArrayList<>(Arrays.asList(100L, 101L, 102L, 103L));
+        JSONArray jsonArray = new JSONArray();
+        jsonArray.addAll(source);
+
+        Map<String, List<Long>> lists = new LinkedHashMap<>();
+        lists.put("ArrayList", source);
+        lists.put("Arrays.asList", Arrays.asList(100L, 101L, 102L));
+        lists.put("subList", source.subList(1, 3));
+        lists.put("unmodifiableList", Collections.unmodifiableList(source));
+        lists.put("singletonList", Collections.singletonList(100L));
+        lists.put("emptyList", Collections.emptyList());
+        lists.put("JSONArray", (List<Long>) (List<?>) jsonArray);
+        return lists;
+    }
+}
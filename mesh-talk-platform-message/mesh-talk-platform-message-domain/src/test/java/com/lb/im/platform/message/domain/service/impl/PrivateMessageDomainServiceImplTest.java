@@ -0,0 +1,206 @@
+package com.lb.im.platform.message.domain.service.impl;
+
+import com.lb.im.platform.common.model.constants.IMPlatformConstants;
+import com.lb.im.platform.common.model.entity.PrivateMessage;
+import com.lb.im.platform.message.domain.repository.PrivateMessageRepository;
+import com.lb.im.platform.message.domain.sharding.MessageShardTable;
+import com.lb.im.platform.message.domain.sharding.MessageShardingRouter;
+import com.lb.im.platform.message.domain.sharding.MessageShardingRouterTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 私聊消息迁移与按id更新测试
+ */
+public class PrivateMessageDomainServiceImplTest {
+
+    private PrivateMessageRepository repository;
+
+    private PrivateMessageDomainServiceImpl service;
+
+    @BeforeEach
+    public void setUp() {
+        repository = mock(PrivateMessageRepository.class);
+        service = new PrivateMessageDomainServiceImpl();
+        ReflectionTestUtils.setField(service, "baseMapper", repository);
+    }
+
+    private MessageShardingRouter useRouter(int tables, int previousTables, long legacyMaxId) {
+        return useRouter(tables, previousTables, legacyMaxId, 1);
+    }
+
+    private MessageShardingRouter useRouter(int tables, int previousTables, long legacyMaxId, int dataSources) {
+        MessageShardingRouter router = MessageShardingRouterTest.newRouter(tables, previousTables, legacyMaxId, dataSources);
+        ReflectionTestUtils.setField(service, "messageShardingRouter", router);
+        return router;
+    }
+
+    @Test
+    public void migrateBatchFromOriginalTableSyncsStatusAndKeepsSource() {
+        MessageShardingRouter router = useRouter(4, 1, 0L);
+        PrivateMessage message = message(100L, 1L, 2L);
+        when(repository.getMigrateBatch(IMPlatformConstants.PRIVATE_MESSAGE_TABLE, 0L, 10)).thenReturn(Collections.singletonList(message));
+
+        assertEquals(Long.valueOf(100L), service.migrateBatch(IMPlatformConstants.PRIVATE_MESSAGE_TABLE, 0L, 10));
+
+        String table = router.getPrivateTable(1L, 2L).getTable();
+        InOrder order = inOrder(repository);
+        order.verify(repository).insertIgnoreBatch(table, Collections.singletonList(message));
+        order.verify(repository).syncStatus(table, IMPlatformConstants.PRIVATE_MESSAGE_TABLE, Collections.singletonList(100L));
+        verify(repository, never()).deleteByIds(anyString(), anyList());
+        assertEquals("1_2", message.getConversationId());
+    }
+
+    @Test
+    public void migrateBatchFromShardDeletesAfterSync() {
+        MessageShardingRouter router = useRouter(8, 4, 0L);
+        // 找一个新布局下不在源表的会话
+        long friendId = 2L;
+        String sourceTable = null;
+        String targetTable = null;
+        for (; friendId < 1000L; friendId++) {
+            List<MessageShardTable> readTables = router.getPrivateReadTables(1L, friendId);
+            if (readTables.size() == 2) {
+                targetTable = readTables.get(0).getTable();
+                sourceTable = readTables.get(1).getTable();
+                break;
+            }
+        }
+        PrivateMessage message = message(200L, 1L, friendId);
+        when(repository.getMigrateBatch(sourceTable, 0L, 10)).thenReturn(Collections.singletonList(message));
+
+        service.migrateBatch(sourceTable, 0L, 10);
+
+        InOrder order = inOrder(repository);
+        order.verify(repository).insertIgnoreBatch(targetTable, Collections.singletonList(message));
+        order.verify(repository).syncStatus(targetTable, sourceTable, Collections.singletonList(200L));
+        order.verify(repository).deleteByIds(sourceTable, Collections.singletonList(200L));
+    }
+
+    @Test
+    public void migrateBatchAcrossDataSourcesCopiesStatusWithoutJoin() {
+        MessageShardingRouter router = useRouter(4, 1, 0L, 2);
+        // 找一个分到数据源1的会话，原表位于数据源0
+        long friendId = 2L;
+        while (router.getPrivateTable(1L, friendId).getDataSource() != 1) {
+            friendId++;
+        }
+        String targetTable = router.getPrivateTable(1L, friendId).getTable();
+        PrivateMessage message = message(300L, 1L, friendId);
+        PrivateMessage recalled = message(300L, 1L, friendId);
+        recalled.setStatus(2);
+        when(repository.getMigrateBatch(IMPlatformConstants.PRIVATE_MESSAGE_TABLE, 0L, 10)).thenReturn(Collections.singletonList(message));
+        when(repository.getStatusByIds(IMPlatformConstants.PRIVATE_MESSAGE_TABLE, Collections.singletonList(300L))).thenReturn(Collections.singletonList(recalled));
+
+        service.migrateBatch(IMPlatformConstants.PRIVATE_MESSAGE_TABLE, 0L, 10);
+
+        InOrder order = inOrder(repository);
+        order.verify(repository).insertIgnoreBatch(targetTable, Collections.singletonList(message));
+        order.verify(repository).getStatusByIds(IMPlatformConstants.PRIVATE_MESSAGE_TABLE, Collections.singletonList(300L));
+        order.verify(repository).updateStatusByIds(targetTable, 2, Collections.singletonList(300L));
+        verify(repository, never()).syncStatus(anyString(), anyString(), anyList());
+        verify(repository, never()).deleteByIds(anyString(), anyList());
+    }
+
+    @Test
+    public void migrateBatchReturnsNullWhenSourceDrained() {
+        useRouter(4, 1, 0L);
+        when(repository.getMigrateBatch(IMPlatformConstants.PRIVATE_MESSAGE_TABLE, 300L, 10)).thenReturn(Collections.emptyList());
+        assertNull(service.migrateBatch(IMPlatformConstants.PRIVATE_MESSAGE_TABLE, 300L, 10));
+    }
+
+    @Test
+    public void updateByIdTouchesEveryTableWhileMigrating() {
+        MessageShardingRouter router = useRouter(4, 1, 0L);
+        long messageId = router.nextPrivateMessageId(1L, 2L);
+        when(repository.updateMessageStatusById(anyString(), ArgumentMatchers.anyInt(), anyLong())).thenReturn(1);
+
+        assertEquals(5, service.updateMessageStatusById(2, messageId));
+        for (MessageShardTable table : router.getPrivateTablesOfId(messageId)) {
+            verify(repository).updateMessageStatusById(table.getTable(), 2, messageId);
+        }
+    }
+
+    @Test
+    public void updateByIdStopsAtFirstHitAfterMigration() {
+        MessageShardingRouter router = useRouter(4, 4, 0L);
+        when(repository.updateMessageStatusById(anyString(), ArgumentMatchers.anyInt(), anyLong())).thenReturn(1);
+
+        assertEquals(1, service.updateMessageStatusById(2, 300L));
+        verify(repository, times(1)).updateMessageStatusById(eq(router.getPrivateTables().get(0).getTable()), eq(2), eq(300L));
+        verify(repository, times(1)).updateMessageStatusById(anyString(), ArgumentMatchers.anyInt(), anyLong());
+    }
+
+    @Test
+    public void updateByIdWithLegacyMaxIdHitsSingleShard() {
+        MessageShardingRouter router = useRouter(4, 1, 1000L);
+        long messageId = router.nextPrivateMessageId(1L, 2L);
+        service.updateMessageStatusById(2, messageId);
+        verify(repository).updateMessageStatusById(router.getPrivateTable(1L, 2L).getTable(), 2, messageId);
+        verify(repository, times(1)).updateMessageStatusById(anyString(), ArgumentMatchers.anyInt(), anyLong());
+        assertEquals(Arrays.asList(router.getPrivateTable(1L, 2L)), router.getPrivateTablesOfId(messageId));
+    }
+
+    @Test
+    public void archiveBatchDeletesOnlyRowsMatchingArchive() {
+        MessageShardingRouter router = useRouter(1, 1, 0L);
+        ReflectionTestUtils.setField(router, "archiveEnabled", true);
+        List<PrivateMessage> messages = Arrays.asList(message(1L, 1L, 2L), message(2L, 1L, 2L));
+        when(repository.getArchiveBatch(eq(IMPlatformConstants.PRIVATE_MESSAGE_TABLE), ArgumentMatchers.isNull(), ArgumentMatchers.any(), eq(10))).thenReturn(messages);
+        when(repository.deleteArchived(anyString(), anyString(), anyList())).thenReturn(1);
+
+        assertEquals(2, service.archiveBatch(router.getPrivateTables().get(0), new Date(), 10));
+
+        String archiveTable = IMPlatformConstants.PRIVATE_MESSAGE_ARCHIVE_TABLE;
+        InOrder order = inOrder(repository);
+        order.verify(repository).insertIgnoreBatch(archiveTable, messages);
+        order.verify(repository).syncStatus(archiveTable, IMPlatformConstants.PRIVATE_MESSAGE_TABLE, Arrays.asList(1L, 2L));
+        order.verify(repository).deleteArchived(IMPlatformConstants.PRIVATE_MESSAGE_TABLE, archiveTable, Arrays.asList(1L, 2L));
+        verify(repository, never()).deleteByIds(anyString(), anyList());
+    }
+
+    @Test
+    public void recallFallsBackToArchive() {
+        MessageShardingRouter router = useRouter(1, 1, 0L);
+        ReflectionTestUtils.setField(router, "archiveEnabled", true);
+        when(repository.updateMessageStatusById(IMPlatformConstants.PRIVATE_MESSAGE_TABLE, 2, 5L)).thenReturn(0);
+        when(repository.updateMessageStatusById(IMPlatformConstants.PRIVATE_MESSAGE_ARCHIVE_TABLE, 2, 5L)).thenReturn(1);
+        when(repository.checkExists(IMPlatformConstants.PRIVATE_MESSAGE_ARCHIVE_TABLE, 5L)).thenReturn(1);
+
+        assertEquals(1, service.updateMessageStatusById(2, 5L));
+        assertTrue(service.checkExists(5L));
+        service.getPrivateMessageById(5L);
+        verify(repository).getPrivateMessageById(IMPlatformConstants.PRIVATE_MESSAGE_ARCHIVE_TABLE, 5L);
+    }
+
+    private static PrivateMessage message(Long id, Long sendId, Long recvId) {
+        PrivateMessage message = new PrivateMessage();
+        message.setId(id);
+        message.setSendId(sendId);
+        message.setRecvId(recvId);
+        message.setStatus(0);
+        return message;
+    }
+}
@@ -0,0 +1,234 @@
+package com.lb.im.platform.message.domain.sharding;
+
+import com.baomidou.mybatisplus.extension.spring.MybatisSqlSessionFactoryBean;
+import com.lb.im.platform.common.exception.IMException;
+import com.lb.im.platform.common.model.constants.IMPlatformConstants;
+import com.lb.im.platform.common.model.entity.GroupMessage;
+import com.lb.im.platform.common.model.entity.GroupMessageMention;
+import com.lb.im.platform.common.model.entity.PrivateMessage;
+import com.lb.im.platform.common.utils.ConversationUtils;
+import com.lb.im.platform.message.domain.repository.GroupMessageMentionRepository;
+import com.lb.im.platform.message.domain.repository.GroupMessageRepository;
+import com.lb.im.platform.message.domain.repository.PrivateMessageRepository;
+import com.lb.im.platform.message.domain.service.impl.GroupMessageDomainServiceImpl;
+import com.lb.im.platform.message.domain.service.impl.PrivateMessageDomainServiceImpl;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 消息多数据源测试
+ * 两个H2内存库（MySQL模式）分别作为数据源0和数据源1，每个库只建分到本数据源的分表，路由错误时直接报表不存在；
+ * 经由MessageRoutingDataSource和LazyConnectionDataSourceProxy访问，与生产环境的数据源装配一致
+ */
+public class MessageMultiDataSourceTest {
+
+    private static final int TABLES = 4;
+
+    private static final int DATA_SOURCES = 2;
+
+    private DataSource[] dataSources;
+
+    private MessageShardingRouter router;
+
+    private TransactionTemplate transactionTemplate;
+
+    private PrivateMessageDomainServiceImpl privateMessageService;
+
+    private GroupMessageDomainServiceImpl groupMessageService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        router = MessageShardingRouterTest.newRouter(TABLES, TABLES, 1L, DATA_SOURCES);
+        dataSources = new DataSource[DATA_SOURCES];
+        Map<Object, Object> targetDataSources = new HashMap<>();
+        for (int i = 0; i < DATA_SOURCES; i++) {
+            dataSources[i] = new DriverManagerDataSource("jdbc:h2:mem:message_ds" + i + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+            targetDataSources.put(i, dataSources[i]);
+        }
+        for (MessageShardTable table : router.getPrivateTables()) {
+            new JdbcTemplate(dataSources[table.getDataSource()]).execute("create table " + table.getTable() + " (id bigint not null primary key, " +
+                    "send_id bigint not null, recv_id bigint not null, conversation_id varchar(64) not null default '', content text, " +
+                    "type tinyint not null, status tinyint not null, send_time timestamp null)");
+        }
+        for (MessageShardTable table : router.getGroupTables()) {
+            new JdbcTemplate(dataSources[table.getDataSource()]).execute("create table " + table.getTable() + " (id bigint not null primary key, " +
+                    "group_id bigint not null, send_id bigint not null, send_nick_name varchar(255), at_user_ids varchar(1024), content text, " +
+                    "type tinyint not null, status tinyint not null, send_time timestamp null)");
+        }
+        for (MessageShardTable table : router.getGroupMentionTables()) {
+            new JdbcTemplate(dataSources[table.getDataSource()]).execute("create table " + table.getTable() + " (user_id bigint not null, " +
+                    "group_id bigint not null, message_id bigint not null, primary key (user_id, message_id))");
+        }
+
+        MessageRoutingDataSource routingDataSource = new MessageRoutingDataSource();
+        routingDataSource.setTargetDataSources(targetDataSources);
+        routingDataSource.setDefaultTargetDataSource(dataSources[0]);
+        routingDataSource.afterPropertiesSet();
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        MybatisSqlSessionFactoryBean sqlSessionFactoryBean = new MybatisSqlSessionFactoryBean();
+        sqlSessionFactoryBean.setDataSource(dataSource);
+        SqlSessionFactory sqlSessionFactory = sqlSessionFactoryBean.getObject();
+        sqlSessionFactory.getConfiguration().addMapper(PrivateMessageRepository.class);
+        sqlSessionFactory.getConfiguration().addMapper(GroupMessageRepository.class);
+        sqlSessionFactory.getConfiguration().addMapper(GroupMessageMentionRepository.class);
+        SqlSessionTemplate sqlSession = new SqlSessionTemplate(sqlSessionFactory);
+
+        privateMessageService = new PrivateMessageDomainServiceImpl();
+        ReflectionTestUtils.setField(privateMessageService, "baseMapper", sqlSession.getMapper(PrivateMessageRepository.class));
+        ReflectionTestUtils.setField(privateMessageService, "messageShardingRouter", router);
+        ReflectionTestUtils.setField(privateMessageService, "transactionTemplate", transactionTemplate);
+        groupMessageService = new GroupMessageDomainServiceImpl();
+        ReflectionTestUtils.setField(groupMessageService, "baseMapper", sqlSession.getMapper(GroupMessageRepository.class));
+        ReflectionTestUtils.setField(groupMessageService, "groupMessageMentionRepository", sqlSession.getMapper(GroupMessageMentionRepository.class));
+        ReflectionTestUtils.setField(groupMessageService, "messageShardingRouter", router);
+        ReflectionTestUtils.setField(groupMessageService, "transactionTemplate", transactionTemplate);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        for (DataSource dataSource : dataSources) {
+            new JdbcTemplate(dataSource).execute("drop all objects");
+        }
+    }
+
+    @Test
+    public void privateMessageIsStoredOnConversationDataSource() {
+        for (long friendId = 2; friendId < 20; friendId++) {
+            PrivateMessage privateMessage = this.privateMessage(1L, friendId);
+            assertTrue(privateMessageService.savePrivateMessage(privateMessage));
+
+            MessageShardTable table = router.getPrivateTable(1L, friendId);
+            assertEquals(1, this.count(table, privateMessage.getId()));
+            assertTrue(privateMessageService.checkExists(privateMessage.getId()));
+            assertNotNull(privateMessageService.getPrivateMessageById(privateMessage.getId()));
+            assertEquals(1, privateMessageService.loadMessageByUserIdAndFriendIdBefore(friendId, 1L, null, 10).size());
+            assertEquals(privateMessage.getId(), privateMessageService.getMaxMessageId(friendId, 1L, null));
+        }
+    }
+
+    @Test
+    public void batchSpanningDataSourcesCommitsOnEach() {
+        List<PrivateMessage> privateMessageList = new ArrayList<>();
+        boolean[] covered = new boolean[DATA_SOURCES];
+        for (long friendId = 2; friendId < 40; friendId++) {
+            privateMessageList.add(this.privateMessage(1L, friendId));
+            covered[router.getPrivateTable(1L, friendId).getDataSource()] = true;
+        }
+        assertTrue(covered[0] && covered[1]);
+
+        assertTrue(privateMessageService.saveBatchPrivateMessage(privateMessageList));
+        for (PrivateMessage privateMessage : privateMessageList) {
+            assertEquals(1, this.count(router.getPrivateTable(privateMessage.getConversationId()), privateMessage.getId()));
+        }
+    }
+
+    @Test
+    public void groupMentionsAreStoredWithGroupMessages() {
+        List<GroupMessage> groupMessageList = new ArrayList<>();
+        for (long groupId = 1; groupId < 20; groupId++) {
+            groupMessageList.add(this.groupMessage(groupId, "100,101"));
+        }
+        assertTrue(groupMessageService.saveBatchGroupMessage(groupMessageList));
+
+        for (GroupMessage groupMessage : groupMessageList) {
+            MessageShardTable table = router.getGroupTable(groupMessage.getGroupId());
+            assertEquals(1, this.count(table, groupMessage.getId()));
+            Integer mentions = new JdbcTemplate(dataSources[table.getDataSource()]).queryForObject(
+                    "select count(*) from " + IMPlatformConstants.GROUP_MESSAGE_MENTION_TABLE + " where message_id = ?", Integer.class, groupMessage.getId());
+            assertEquals(2, mentions);
+            assertEquals(1, groupMessageService.getMentions(100L, groupMessage.getGroupId(), null, 10).size());
+        }
+        // 未指定群组时合并各数据源的结果，按消息id倒序截取
+        List<GroupMessageMention> mentions = groupMessageService.getMentions(100L, null, null, 5);
+        assertEquals(5, mentions.size());
+        for (int i = 1; i < mentions.size(); i++) {
+            assertTrue(mentions.get(i - 1).getMessageId() > mentions.get(i).getMessageId());
+        }
+    }
+
+    @Test
+    public void transactionCannotSpanDataSources() {
+        long friendOnDs0 = this.findFriend(0);
+        long friendOnDs1 = this.findFriend(1);
+        PrivateMessage first = this.privateMessage(1L, friendOnDs0);
+        PrivateMessage second = this.privateMessage(1L, friendOnDs1);
+
+        assertThrows(IMException.class, () -> transactionTemplate.execute((status) -> {
+            privateMessageService.savePrivateMessage(first);
+            return privateMessageService.savePrivateMessage(second);
+        }));
+        // 第一条随事务回滚，第二条未写入
+        assertEquals(0, this.count(router.getPrivateTable(1L, friendOnDs0), first.getId()));
+        assertEquals(0, this.count(router.getPrivateTable(1L, friendOnDs1), second.getId()));
+        assertFalse(privateMessageService.checkExists(first.getId()));
+
+        // 事务结束后数据源绑定解除，同一线程可以在另一个数据源开启新事务
+        assertTrue(transactionTemplate.execute((status) -> privateMessageService.savePrivateMessage(second)));
+        assertEquals(1, this.count(router.getPrivateTable(1L, friendOnDs1), second.getId()));
+    }
+
+    private long findFriend(int dataSource) {
+        long friendId = 2L;
+        while (router.getPrivateTable(1L, friendId).getDataSource() != dataSource) {
+            friendId++;
+        }
+        return friendId;
+    }
+
+    private int count(MessageShardTable table, Long id) {
+        Integer count = new JdbcTemplate(dataSources[table.getDataSource()]).queryForObject(
+                "select count(*) from " + table.getTable() + " where id = ?", Integer.class, id);
+        return count == null ? 0 : count;
+    }
+
+    private PrivateMessage privateMessage(Long sendId, Long recvId) {
+        PrivateMessage privateMessage = new PrivateMessage();
+        privateMessage.setId(router.nextPrivateMessageId(sendId, recvId));
+        privateMessage.setSendId(sendId);
+        privateMessage.setRecvId(recvId);
+        privateMessage.setConversationId(ConversationUtils.getPrivateConversationId(sendId, recvId));
+        privateMessage.setContent("hello");
+        privateMessage.setType(0);
+        privateMessage.setStatus(0);
+        privateMessage.setSendTime(new Date());
+        return privateMessage;
+    }
+
+    private GroupMessage groupMessage(Long groupId, String atUserIds) {
+        GroupMessage groupMessage = new GroupMessage();
+        groupMessage.setId(router.nextGroupMessageId(groupId));
+        groupMessage.setGroupId(groupId);
+        groupMessage.setSendId(1L);
+        groupMessage.setSendNickName("sender");
+        groupMessage.setAtUserIds(atUserIds);
+        groupMessage.setContent("hello");
+        groupMessage.setType(0);
+        groupMessage.setStatus(0);
+        groupMessage.setSendTime(new Date());
+        return groupMessage;
+    }
+}
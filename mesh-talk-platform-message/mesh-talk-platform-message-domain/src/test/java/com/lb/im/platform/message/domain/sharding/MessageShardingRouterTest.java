@@ -0,0 +1,191 @@
+package com.lb.im.platform.message.domain.sharding;
+
+import com.lb.im.platform.common.exception.IMException;
+import com.lb.im.platform.common.model.constants.IMPlatformConstants;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 消息分表路由测试：按会话、群组路由，按消息id路由，迁移期间的双读，以及多数据源时表到数据源的分布
+ */
+public class MessageShardingRouterTest {
+
+    private static final long EPOCH_MILLIS = 1480166465631L;
+
+    /**
+     * 创建分表路由
+     *
+     * @param tables         分表数
+     * @param previousTables 迁移前的分表数
+     * @param legacyMaxId    分表前写入的最大消息id
+     */
+    static MessageShardingRouter newRouter(int tables, int previousTables, long legacyMaxId) {
+        return newRouter(tables, previousTables, legacyMaxId, 1);
+    }
+
+    /**
+     * 创建多数据源的分表路由
+     *
+     * @param dataSources 数据源数
+     */
+    static MessageShardingRouter newRouter(int tables, int previousTables, long legacyMaxId, int dataSources) {
+        MessageShardingRouter router = new MessageShardingRouter();
+        ReflectionTestUtils.setField(router, "tables", tables);
+        ReflectionTestUtils.setField(router, "dataSources", dataSources);
+        ReflectionTestUtils.setField(router, "previousTables", previousTables);
+        ReflectionTestUtils.setField(router, "legacyMaxId", legacyMaxId);
+        ReflectionTestUtils.setField(router, "sequenceBits", 12);
+        ReflectionTestUtils.setField(router, "archiveEnabled", false);
+        router.init();
+        // 测试环境未校验雪花id布局，直接装配嵌入槽位的id生成器
+        ReflectionTestUtils.setField(router, "idGenerator",
+                                     new ShardedMessageIdGenerator(EPOCH_MILLIS, 22, 12, IMPlatformConstants.MESSAGE_SHARD_SLOT_BITS, 0L));
+        return router;
+    }
+
+    @Test
+    public void singleTableUsesOriginalTable() {
+        MessageShardingRouter router = newRouter(1, 1, 0L);
+        assertFalse(router.isMigrating());
+        assertEquals(table(0, IMPlatformConstants.PRIVATE_MESSAGE_TABLE), router.getPrivateTable(1L, 2L));
+        assertEquals(Collections.singletonList(table(0, IMPlatformConstants.PRIVATE_MESSAGE_TABLE)), router.getPrivateReadTables(1L, 2L));
+        assertEquals(Collections.singletonList(table(0, IMPlatformConstants.GROUP_MESSAGE_TABLE)), router.getGroupTablesOfId(router.nextGroupMessageId(10L)));
+    }
+
+    @Test
+    public void bothDirectionsOfConversationShareTable() {
+        MessageShardingRouter router = newRouter(4, 4, 1L);
+        for (long friendId = 2; friendId < 50; friendId++) {
+            assertEquals(router.getPrivateTable(1L, friendId), router.getPrivateTable(friendId, 1L));
+        }
+    }
+
+    @Test
+    public void unsetLegacyMaxIdTreatsAllIdsAsLegacy() {
+        MessageShardingRouter router = newRouter(4, 4, 0L);
+        assertFalse(router.isMigrating());
+        long messageId = router.nextPrivateMessageId(1L, 2L);
+        assertEquals(router.getPrivateTables(), router.getPrivateTablesOfId(messageId));
+        assertEquals(router.getGroupTables(), router.getGroupTablesOfId(router.nextGroupMessageId(10L)));
+    }
+
+    @Test
+    public void configuredLegacyMaxIdRoutesNewIdsBySlot() {
+        MessageShardingRouter router = newRouter(4, 4, 1000L);
+        for (long userId = 1; userId < 50; userId++) {
+            long messageId = router.nextPrivateMessageId(userId, userId + 7);
+            assertEquals(Collections.singletonList(router.getPrivateTable(userId, userId + 7)), router.getPrivateTablesOfId(messageId));
+            long groupMessageId = router.nextGroupMessageId(userId);
+            assertEquals(Collections.singletonList(router.getGroupTable(userId)), router.getGroupTablesOfId(groupMessageId));
+        }
+        assertEquals(router.getPrivateTables(), router.getPrivateTablesOfId(1000L));
+        assertEquals(router.getGroupTables(), router.getGroupTablesOfId(999L));
+    }
+
+    @Test
+    public void migrationReadsOriginalTableUntilLegacyMaxIdConfigured() {
+        MessageShardingRouter router = newRouter(4, 1, 0L);
+        assertTrue(router.isMigrating());
+        assertEquals(Arrays.asList(router.getPrivateTable(1L, 2L), table(0, IMPlatformConstants.PRIVATE_MESSAGE_TABLE)), router.getPrivateReadTables(1L, 2L));
+        assertEquals(Arrays.asList(router.getGroupTable(10L), table(0, IMPlatformConstants.GROUP_MESSAGE_TABLE)), router.getGroupReadTables(10L));
+
+        List<MessageShardTable> tablesOfId = router.getPrivateTablesOfId(router.nextPrivateMessageId(1L, 2L));
+        assertEquals(5, tablesOfId.size());
+        assertTrue(tablesOfId.containsAll(router.getPrivateTables()));
+        assertEquals(table(0, IMPlatformConstants.PRIVATE_MESSAGE_TABLE), tablesOfId.get(4));
+
+        MessageShardingRouter migrated = newRouter(4, 1, 1000L);
+        assertFalse(migrated.isMigrating());
+        assertEquals(Collections.singletonList(migrated.getPrivateTable(1L, 2L)), migrated.getPrivateReadTables(1L, 2L));
+        assertEquals(migrated.getPrivateTables(), migrated.getPrivateTablesOfId(1000L));
+    }
+
+    @Test
+    public void reshardingReadsPreviousShard() {
+        MessageShardingRouter router = newRouter(8, 4, 0L);
+        assertTrue(router.isMigrating());
+        for (long groupId = 1; groupId < 100; groupId++) {
+            List<MessageShardTable> readTables = router.getGroupReadTables(groupId);
+            MessageShardTable table = router.getGroupTable(groupId);
+            MessageShardTable previousTable = table(0, IMPlatformConstants.GROUP_MESSAGE_TABLE + "_" + (indexOf(table) % 4));
+            assertEquals(table, readTables.get(0));
+            assertEquals(table.equals(previousTable) ? Collections.singletonList(table) : Arrays.asList(table, previousTable), readTables);
+        }
+        // 迁移前的分表都是当前分表的一部分，按id查询不重复访问
+        assertEquals(router.getGroupTables(), router.getGroupTablesOfId(router.nextGroupMessageId(1L)));
+    }
+
+    @Test
+    public void rejectsTableCountNotDividingSlots() {
+        assertThrows(IMException.class, () -> newRouter(3, 1, 0L));
+        assertThrows(IMException.class, () -> newRouter(4, 3, 0L));
+    }
+
+    @Test
+    public void tablesSpreadAcrossDataSourcesByIndex() {
+        MessageShardingRouter router = newRouter(8, 8, 1000L, 4);
+        for (MessageShardTable table : router.getPrivateTables()) {
+            assertEquals(indexOf(table) % 4, table.getDataSource());
+        }
+        for (long userId = 1; userId < 50; userId++) {
+            // 按id定位的表与按会话定位的表在同一数据源的同一张表
+            long messageId = router.nextPrivateMessageId(userId, userId + 3);
+            assertEquals(Collections.singletonList(router.getPrivateTable(userId, userId + 3)), router.getPrivateTablesOfId(messageId));
+        }
+    }
+
+    @Test
+    public void reshardingStaysWithinDataSource() {
+        MessageShardingRouter router = newRouter(8, 4, 0L, 2);
+        assertTrue(router.isMigrating());
+        for (long groupId = 1; groupId < 200; groupId++) {
+            List<MessageShardTable> readTables = router.getGroupReadTables(groupId);
+            for (MessageShardTable readTable : readTables) {
+                assertEquals(readTables.get(0).getDataSource(), readTable.getDataSource());
+            }
+        }
+        // 配置的迁移源表按表名定位到所在的数据源，单张原表位于默认数据源
+        assertEquals(table(1, IMPlatformConstants.GROUP_MESSAGE_TABLE + "_3"), router.locateGroupTable(IMPlatformConstants.GROUP_MESSAGE_TABLE + "_3"));
+        assertEquals(table(0, IMPlatformConstants.GROUP_MESSAGE_TABLE), router.locateGroupTable(IMPlatformConstants.GROUP_MESSAGE_TABLE));
+    }
+
+    @Test
+    public void archiveTableFollowsHotTableDataSource() {
+        MessageShardingRouter router = newRouter(4, 4, 1000L, 2);
+        ReflectionTestUtils.setField(router, "archiveEnabled", true);
+        MessageShardTable hotTable = router.getPrivateTable(1L, 2L);
+        MessageShardTable archiveTable = router.getPrivateArchiveTable(hotTable);
+        assertEquals(table(hotTable.getDataSource(), IMPlatformConstants.PRIVATE_MESSAGE_ARCHIVE_TABLE), archiveTable);
+        assertEquals(Collections.singletonList(archiveTable), router.getPrivateArchiveTablesOfId(router.nextPrivateMessageId(1L, 2L)));
+        // 历史消息id访问所有数据源的归档表
+        assertEquals(Arrays.asList(table(0, IMPlatformConstants.PRIVATE_MESSAGE_ARCHIVE_TABLE), table(1, IMPlatformConstants.PRIVATE_MESSAGE_ARCHIVE_TABLE)),
+                     router.getPrivateArchiveTablesOfId(999L));
+        assertEquals(2, router.getGroupMentionTables().size());
+    }
+
+    @Test
+    public void rejectsDataSourceCountNotDividingTables() {
+        assertThrows(IMException.class, () -> newRouter(4, 4, 0L, 3));
+        assertThrows(IMException.class, () -> newRouter(1, 1, 0L, 2));
+        assertThrows(IMException.class, () -> newRouter(8, 2, 0L, 4));
+        // 从单张原表拆分到多个数据源
+        assertTrue(newRouter(4, 1, 0L, 2).isMigrating());
+    }
+
+    static MessageShardTable table(int dataSource, String table) {
+        return new MessageShardTable(dataSource, table);
+    }
+
+    private static int indexOf(MessageShardTable table) {
+        return Integer.parseInt(table.getTable().substring(table.getTable().lastIndexOf('_') + 1));
+    }
+}
@@ -0,0 +1,53 @@
+package com.lb.im.platform.message.domain.sharding;
+
+import com.lb.im.platform.common.model.vo.PrivateMessageVO;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 多表查询结果合并测试
+ */
+public class ShardingResultMergerTest {
+
+    @Test
+    public void distinctKeepsFirstOccurrence() {
+        List<PrivateMessageVO> list = Arrays.asList(message(3L, 3), message(1L, 0), message(3L, 0));
+        List<PrivateMessageVO> result = ShardingResultMerger.distinct(list, PrivateMessageVO::getId);
+        assertEquals(Arrays.asList(3L, 1L), ids(result));
+        assertEquals(Integer.valueOf(3), result.get(0).getStatus());
+    }
+
+    @Test
+    public void mergeAscSortsAndLimits() {
+        List<PrivateMessageVO> list = new ArrayList<>(Arrays.asList(message(5L, 0), message(2L, 0), message(4L, 0)));
+        list.addAll(Arrays.asList(message(2L, 0), message(1L, 0)));
+        assertEquals(Arrays.asList(1L, 2L, 4L), ids(ShardingResultMerger.mergeAsc(list, PrivateMessageVO::getId, 3)));
+    }
+
+    @Test
+    public void mergeDescPagesAcrossTables() {
+        // 当前表和迁移前的表各自返回前offset + limit条，其中id为6的消息已迁移，两张表都有
+        List<PrivateMessageVO> list = new ArrayList<>(Arrays.asList(message(9L, 0), message(7L, 0), message(6L, 0), message(3L, 0)));
+        list.addAll(Arrays.asList(message(8L, 0), message(6L, 0), message(5L, 0), message(4L, 0)));
+        assertEquals(Arrays.asList(9L, 8L), ids(ShardingResultMerger.mergeDesc(list, PrivateMessageVO::getId, 0, 2)));
+        assertEquals(Arrays.asList(7L, 6L), ids(ShardingResultMerger.mergeDesc(list, PrivateMessageVO::getId, 2, 2)));
+        assertEquals(Arrays.asList(5L, 4L), ids(ShardingResultMerger.mergeDesc(list, PrivateMessageVO::getId, 4, 2)));
+    }
+
+    private static PrivateMessageVO message(Long id, Integer status) {
+        PrivateMessageVO message = new PrivateMessageVO();
+        message.setId(id);
+        message.setStatus(status);
+        return message;
+    }
+
+    private static List<Long> ids(List<PrivateMessageVO> list) {
+        return list.stream().map(PrivateMessageVO::getId).collect(Collectors.toList());
+    }
+}
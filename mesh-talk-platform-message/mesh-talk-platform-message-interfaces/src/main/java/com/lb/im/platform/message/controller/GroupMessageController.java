@@ -1,14 +1,18 @@
 package com.lb.im.platform.message.controller;
 
 import com.lb.im.platform.common.model.dto.GroupMessageDTO;
+import com.lb.im.platform.common.model.vo.CursorPageVO;
 import com.lb.im.platform.common.model.vo.GroupMessageVO;
+import com.lb.im.platform.common.response.DeferredResponseMessageFactory;
 import com.lb.im.platform.common.response.ResponseMessage;
 import com.lb.im.platform.common.response.ResponseMessageFactory;
 import com.lb.im.platform.message.application.service.GroupMessageService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
@@ -22,12 +26,21 @@ public class GroupMessageController {
     @Autowired
     private GroupMessageService groupMessageService;
 
+    @Value("${message.send.async.timeoutMillis:5000}")
+    private Long asyncSendTimeoutMillis;
+
     @PostMapping("/send")
     @ApiOperation(value = "发送群聊消息", notes = "发送群聊消息")
     public ResponseMessage<Long> sendMessage(@Valid @RequestBody GroupMessageDTO dto) {
         return ResponseMessageFactory.getSuccessResponseMessage(groupMessageService.sendMessage(dto));
     }
 
+    @PostMapping("/send/async")
+    @ApiOperation(value = "异步发送群聊消息", notes = "异步发送群聊消息，本地事务提交后返回消息id，超时返回处理中及消息id")
+    public DeferredResult<ResponseMessage<Long>> sendMessageAsync(@Valid @RequestBody GroupMessageDTO dto) {
+        return DeferredResponseMessageFactory.getDeferredResponseMessage(groupMessageService.sendMessageAsync(dto), asyncSendTimeoutMillis);
+    }
+
     @PostMapping("/pullUnreadMessage")
     @ApiOperation(value = "拉取未读消息", notes = "拉取未读消息")
     public ResponseMessage pullUnreadMessage() {
@@ -49,6 +62,22 @@ public class GroupMessageController {
         return ResponseMessageFactory.getSuccessResponseMessage(groupMessageService.findHistoryMessage(groupId, page, size));
     }
 
+    @GetMapping("/history/cursor")
+    @ApiOperation(value = "按游标查询聊天记录", notes = "按游标查询聊天记录,首次不传beforeId,之后以nextCursor作为beforeId,一次最多拉取100条")
+    public ResponseMessage<CursorPageVO<GroupMessageVO>> findHistoryMessageByCursor(@NotNull(message = "群聊id不能为空") @RequestParam Long groupId,
+                                                                                    @RequestParam(required = false) Long beforeId,
+                                                                                    @NotNull(message = "size不能为空") @RequestParam Long size) {
+        return ResponseMessageFactory.getSuccessResponseMessage(groupMessageService.findHistoryMessageByCursor(groupId, beforeId, size));
+    }
+
+    @GetMapping("/mentions")
+    @ApiOperation(value = "查询@我的消息", notes = "按游标查询@我的群聊消息,不传groupId时查询所有群聊,首次不传beforeId,之后以nextCursor作为beforeId,一次最多拉取100条")
+    public ResponseMessage<CursorPageVO<GroupMessageVO>> findMentionMessageByCursor(@RequestParam(required = false) Long groupId,
+                                                                                    @RequestParam(required = false) Long beforeId,
+                                                                                    @NotNull(message = "size不能为空") @RequestParam Long size) {
+        return ResponseMessageFactory.getSuccessResponseMessage(groupMessageService.findMentionMessageByCursor(groupId, beforeId, size));
+    }
+
     @PutMapping("/readed")
     @ApiOperation(value = "消息已读", notes = "将群聊中的消息状态置为已读")
     public ResponseMessage readedMessage(@RequestParam Long groupId) {
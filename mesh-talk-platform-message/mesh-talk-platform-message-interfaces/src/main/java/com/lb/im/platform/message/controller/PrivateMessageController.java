@@ -1,14 +1,18 @@
 package com.lb.im.platform.message.controller;
 
 import com.lb.im.platform.common.model.dto.PrivateMessageDTO;
+import com.lb.im.platform.common.model.vo.CursorPageVO;
 import com.lb.im.platform.common.model.vo.PrivateMessageVO;
+import com.lb.im.platform.common.response.DeferredResponseMessageFactory;
 import com.lb.im.platform.common.response.ResponseMessage;
 import com.lb.im.platform.common.response.ResponseMessageFactory;
 import com.lb.im.platform.message.application.service.PrivateMessageService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
@@ -27,6 +31,10 @@ public class PrivateMessageController {
     @Autowired
     private PrivateMessageService privateMessageService;
 
+    // 异步发送消息的超时时间，单位毫秒
+    @Value("${message.send.async.timeoutMillis:5000}")
+    private Long asyncSendTimeoutMillis;
+
     /**
      * 发送私聊消息
      * 将消息发送给指定好友，并返回生成的消息ID
@@ -40,6 +48,20 @@ public class PrivateMessageController {
         return ResponseMessageFactory.getSuccessResponseMessage(privateMessageService.sendMessage(dto));
     }
 
+    /**
+     * 异步发送私聊消息
+     * 请求线程在返回后立即释放，本地事务提交后再写回包含消息ID的响应
+     * 在途发送数超过上限时直接返回繁忙，超过超时时间未完成时返回处理中及消息ID，客户端按消息ID确认结果而不是重发
+     *
+     * @param dto 私聊消息数据传输对象，包含接收者ID、消息内容和消息类型等信息
+     * @return 包含生成的消息ID的异步响应对象
+     */
+    @PostMapping("/send/async")
+    @ApiOperation(value = "异步发送消息", notes = "异步发送私聊消息，本地事务提交后返回消息id，超时返回处理中及消息id")
+    public DeferredResult<ResponseMessage<Long>> sendMessageAsync(@Valid @RequestBody PrivateMessageDTO dto) {
+        return DeferredResponseMessageFactory.getDeferredResponseMessage(privateMessageService.sendMessageAsync(dto), asyncSendTimeoutMillis);
+    }
+
     /**
      * 拉取未读私聊消息
      * 获取当前用户的所有未读私聊消息，并通过WebSocket异步推送给用户
@@ -85,6 +107,23 @@ public class PrivateMessageController {
         return ResponseMessageFactory.getSuccessResponseMessage(privateMessageService.getHistoryMessage(friendId, page, size));
     }
 
+    /**
+     * 按游标查询与指定好友的历史聊天记录
+     * 首次请求不传beforeId，之后以返回的nextCursor作为beforeId继续向前翻页，每页查询代价相同
+     *
+     * @param friendId 好友用户ID，必填参数
+     * @param beforeId 游标，返回ID小于此值的消息，可选参数
+     * @param size 每页大小，必填参数，最大100
+     * @return 包含历史消息和下一页游标的响应对象
+     */
+    @GetMapping("/history/cursor")
+    @ApiOperation(value = "按游标查询聊天记录", notes = "按游标查询聊天记录,一次最多拉取100条")
+    public ResponseMessage<CursorPageVO<PrivateMessageVO>> getHistoryMessageByCursor(@NotNull(message = "好友id不能为空") @RequestParam Long friendId,
+                                                                                 @RequestParam(required = false) Long beforeId,
+                                                                                 @NotNull(message = "size不能为空") @RequestParam Long size) {
+        return ResponseMessageFactory.getSuccessResponseMessage(privateMessageService.getHistoryMessageByCursor(friendId, beforeId, size));
+    }
+
     /**
      * 撤回私聊消息
      * 将指定ID的消息标记为已撤回状态
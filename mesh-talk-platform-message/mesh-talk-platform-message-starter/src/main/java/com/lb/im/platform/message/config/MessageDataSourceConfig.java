@@ -0,0 +1,60 @@
+package com.lb.im.platform.message.config;
+
+import com.lb.im.platform.common.exception.IMException;
+import com.lb.im.platform.common.model.enums.HttpCode;
+import com.lb.im.platform.message.domain.sharding.MessageDataSourceContext;
+import com.lb.im.platform.message.domain.sharding.MessageRoutingDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 消息多数据源配置
+ * 消息分表分布在多个数据源时生效：数据源0为spring.datasource，其余数据源按message.sharding.extraDataSources依次配置，
+ * 由MessageRoutingDataSource按分表所在的数据源路由，外层LazyConnectionDataSourceProxy保证事务连接在第一条语句执行时才按路由结果获取
+ */
+@Configuration
+@ConditionalOnExpression("${message.sharding.dataSources:1} > 1")
+public class MessageDataSourceConfig {
+
+    /**
+     * 消息分表所在的数据源数
+     */
+    @Value("${message.sharding.dataSources:1}")
+    private Integer dataSources;
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties dataSourceProperties, Environment environment) {
+        List<DataSourceProperties> extraProperties = Binder.get(environment)
+                .bind("message.sharding.extra-data-sources", Bindable.listOf(DataSourceProperties.class))
+                .orElse(Collections.emptyList());
+        if (extraProperties.size() != dataSources - 1) {
+            throw new IMException(HttpCode.PROGRAM_ERROR, "消息数据源数为" + dataSources + "，需配置" + (dataSources - 1) + "个额外数据源");
+        }
+        Map<Object, Object> targetDataSources = new HashMap<>();
+        DataSource defaultDataSource = dataSourceProperties.initializeDataSourceBuilder().build();
+        targetDataSources.put(MessageDataSourceContext.DEFAULT_DATA_SOURCE, defaultDataSource);
+        for (int i = 0; i < extraProperties.size(); i++) {
+            targetDataSources.put(i + 1, extraProperties.get(i).initializeDataSourceBuilder().build());
+        }
+        MessageRoutingDataSource routingDataSource = new MessageRoutingDataSource();
+        routingDataSource.setTargetDataSources(targetDataSources);
+        routingDataSource.setDefaultTargetDataSource(defaultDataSource);
+        routingDataSource.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+}
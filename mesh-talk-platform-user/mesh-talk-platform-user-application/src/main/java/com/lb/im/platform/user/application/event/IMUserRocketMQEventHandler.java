@@ -1,11 +1,11 @@
 package com.lb.im.platform.user.application.event;
 
-import cn.hutool.core.util.StrUtil;
-import com.alibaba.fastjson.JSONObject;
-import com.lb.im.common.domain.constans.IMConstants;
+import cn.hutool.core.util.ArrayUtil;
+import com.lb.im.platform.common.codec.EventCodecFactory;
 import com.lb.im.platform.common.model.constants.IMPlatformConstants;
 import com.lb.im.platform.user.application.cache.UserCacheService;
 import com.lb.im.platform.user.domain.event.IMUserEvent;
+import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.apache.rocketmq.spring.core.RocketMQListener;
 import org.slf4j.Logger;
@@ -22,7 +22,7 @@ import org.springframework.stereotype.Component;
 @Component
 @ConditionalOnProperty(name = "message.mq.event.type", havingValue = "rocketmq")
 @RocketMQMessageListener(consumerGroup = IMPlatformConstants.EVENT_USER_CONSUMER_GROUP, topic = IMPlatformConstants.TOPIC_EVENT_ROCKETMQ_USER)
-public class IMUserRocketMQEventHandler implements RocketMQListener<String> {
+public class IMUserRocketMQEventHandler implements RocketMQListener<MessageExt> {
 
     private final Logger logger = LoggerFactory.getLogger(IMUserRocketMQEventHandler.class);
 
@@ -30,25 +30,23 @@ public class IMUserRocketMQEventHandler implements RocketMQListener<String> {
     private UserCacheService userCacheService;
 
     @Override
-    public void onMessage(String message) {
-        logger.info("rocketmq|userEvent|接收用户事件|{}", message);
+    public void onMessage(MessageExt message) {
+        logger.info("rocketmq|userEvent|接收用户事件|{}", message.getMsgId());
         // 校验消息参数有效性
-        if (StrUtil.isEmpty(message)){
+        if (ArrayUtil.isEmpty(message.getBody())){
             logger.info("rocketmq|userEvent|接收用户事件参数错误" );
             return;
         }
-        IMUserEvent userEvent = this.getEventMessage(message);
+        IMUserEvent userEvent = this.getEventMessage(message.getBody());
         userCacheService.updateUserCache(userEvent.getId());
     }
 
     /**
-     * 解析消息字符串为IMUserEvent对象。
-     * @param msg 消息内容字符串
+     * 解析消息体为IMUserEvent对象。
+     * @param body 消息体，JSON或Kryo编码
      * @return 解析后的用户事件对象
      */
-    private IMUserEvent getEventMessage(String msg){
-        JSONObject jsonObject = JSONObject.parseObject(msg);
-        String eventStr = jsonObject.getString(IMConstants.MSG_KEY);
-        return JSONObject.parseObject(eventStr, IMUserEvent.class);
+    private IMUserEvent getEventMessage(byte[] body) {
+        return EventCodecFactory.decode(body, IMUserEvent.class);
     }
 }